@@ -0,0 +1,47 @@
+package com.redis.cache.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Map;
+
+// 运行 JMH 并按引擎汇总吞吐量、分配速率和命中率；参数与 JMH 命令行相同，默认带上 GC 分析器
+// mvn -Pjmh compile exec:exec -Djmh.args="-p engine=LRU,LFU -p workload=ZIPFIAN -p capacityPercent=1,10,50"
+public class BenchmarkMain {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(CacheBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        System.out.printf("%n%-16s %-8s %5s %5s %6s %6s %6s %14s %10s %8s %9s%n", "engine", "workload", "cap%", "read%",
+                "ttl", "key", "value", "ops/s", "alloc MB/s", "B/op", "hit ratio");
+        for (RunResult result : results) {
+            Map<String, Result> secondary = result.getSecondaryResults();
+            double hits = score(secondary, "hits"), misses = score(secondary, "misses");
+            System.out.printf("%-16s %-8s %5s %5s %6s %6s %6s %,14.0f %10.1f %8.1f %9s%n",
+                    param(result, "engine"), param(result, "workload"), param(result, "capacityPercent"),
+                    param(result, "readPercent"), param(result, "ttlMillis"), param(result, "keySize"), param(result, "valueSize"),
+                    result.getPrimaryResult().getScore(), score(secondary, "gc.alloc.rate"), score(secondary, "gc.alloc.rate.norm"),
+                    hits + misses > 0 ? String.format("%.3f", hits / (hits + misses)) : "-");
+        }
+    }
+
+    private static String param(RunResult result, String name) {
+        return result.getParams().getParam(name);
+    }
+
+    private static double score(Map<String, Result> results, String name) {
+        Result result = results.get(name);
+        return result == null ? Double.NaN : result.getScore();
+    }
+}
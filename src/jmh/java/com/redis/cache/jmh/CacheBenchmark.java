@@ -0,0 +1,171 @@
+package com.redis.cache.jmh;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// 每次调用按访问序列取一个键：读命中计 hits；读未命中计 misses 并写回（旁路缓存），写为覆盖写入
+// 容量按键空间的百分比给出，小于 100 时持续淘汰；ttlMillis 大于 0 时所有写入都带该 TTL，键在测量期间不断过期
+// 默认参数只覆盖常用组合，其余用 -p 展开，例如 -p readPercent=50,90,100 -p valueSize=16,1024 -p ttlMillis=0,50
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CacheBenchmark {
+    private static final int TRACE_LENGTH = 1 << 20;
+    private static final int VALUE_VARIANTS = 16;
+    private static final double ZIPF_SKEW = 0.99;
+
+    public enum Workload { UNIFORM, ZIPFIAN, SCAN }
+
+    @Param
+    public Engine engine;
+
+    @Param
+    public Workload workload;
+
+    @Param({"90"})
+    public int readPercent;
+
+    @Param({"100000"})
+    public int keyCount;
+
+    @Param({"10", "100"})
+    public int capacityPercent;
+
+    @Param({"16"})
+    public int keySize;
+
+    @Param({"64"})
+    public int valueSize;
+
+    @Param({"0"})
+    public long ttlMillis;
+
+    private String[] keys;
+    private String[] values;
+    private int[] trace;
+    private boolean[] writes;
+    private File directory;
+    private PrintStream stdout;
+    private Engine.Cache cache;
+
+    // 每个线程从序列的随机位置开始，避免各线程按相同的顺序访问；键空间是共享的，热点键仍会被多个线程同时访问
+    @State(Scope.Thread)
+    public static class Cursor {
+        int position;
+
+        @Setup
+        public void setUp() {
+            position = ThreadLocalRandom.current().nextInt(TRACE_LENGTH);
+        }
+    }
+
+    // 命中率 = hits / (hits + misses)，由 BenchmarkMain 汇总
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Hits {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) keys[i] = "key:" + pad(Integer.toString(i), keySize - 4, '0');
+        Random random = new Random(42);
+        values = new String[VALUE_VARIANTS];
+        for (int i = 0; i < VALUE_VARIANTS; i++) {
+            char[] chars = new char[valueSize];
+            for (int j = 0; j < valueSize; j++) chars[j] = (char) ('a' + random.nextInt(26));
+            values[i] = new String(chars);
+        }
+        switch (workload) {
+            case UNIFORM:
+                trace = KeyTrace.uniform(keyCount, TRACE_LENGTH, 42);
+                break;
+            case ZIPFIAN:
+                trace = KeyTrace.zipfian(keyCount, TRACE_LENGTH, ZIPF_SKEW, 42);
+                break;
+            default:
+                trace = KeyTrace.scan(keyCount, TRACE_LENGTH);
+                break;
+        }
+        writes = new boolean[TRACE_LENGTH];
+        for (int i = 0; i < TRACE_LENGTH; i++) writes[i] = random.nextInt(100) >= readPercent;
+        // SimpleCache 和 ExpiryCache 每次淘汰都打印一行，测量期间丢弃标准输出
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        directory = Files.createTempDirectory("cache-bench-").toFile();
+        cache = engine.create(Math.max(1, (int) ((long) keyCount * capacityPercent / 100)), directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.close();
+        System.setOut(stdout);
+        deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public String access(Cursor cursor, Hits counters) {
+        int i = cursor.position++ & (TRACE_LENGTH - 1);
+        String key = keys[trace[i]];
+        if (writes[i]) {
+            cache.put(key, values[i & (VALUE_VARIANTS - 1)], ttlMillis);
+            return null;
+        }
+        String value = cache.get(key);
+        if (value != null) {
+            counters.hits++;
+        } else {
+            counters.misses++;
+            cache.put(key, values[i & (VALUE_VARIANTS - 1)], ttlMillis);
+        }
+        return value;
+    }
+
+    // ShardedCache 的 AOF 在每个分片的子目录里
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+
+    private static String pad(String value, int length, char fill) {
+        if (value.length() >= length) return value;
+        StringBuilder padded = new StringBuilder(length);
+        for (int i = value.length(); i < length; i++) padded.append(fill);
+        return padded.append(value).toString();
+    }
+}
@@ -0,0 +1,189 @@
+package com.redis.cache.jmh;
+
+import com.redis.cache.ConcurrentCache;
+import com.redis.cache.CustomHashMap;
+import com.redis.cache.ExpiryCache;
+import com.redis.cache.HashMapCache;
+import com.redis.cache.LruCache;
+import com.redis.cache.MultiEvictionCache;
+import com.redis.cache.ShardedCache;
+import com.redis.cache.SimpleCache;
+
+import java.io.File;
+
+// 被测的缓存引擎，统一成 get / put；带 AOF 的引擎写到各自的临时目录，与生产一样每秒 fsync
+// 只有 HashMapCache 和 SimpleCache 能写入不过期的键，其他引擎用一个测量期间不会到期的长 TTL 代替
+// HASHMAP_LFU / HASHMAP_CLOCK / HASHMAP_FIFO 与 HASHMAP_CHAINED（APPROX_LFU）同为链式表，只有淘汰策略不同
+// SIMPLE 和 CUSTOM_HASHMAP 不是线程安全的，用 -t 多线程运行时不要选；其余引擎整体加锁，只有 CONCURRENT 和 SHARDED 能并行执行
+public enum Engine {
+    SIMPLE,
+    EXPIRY,
+    LRU,
+    APPROX_LRU,
+    LFU,
+    APPROX_LFU,
+    CLOCK,
+    FIFO,
+    HASHMAP_CHAINED,
+    HASHMAP_OPEN,
+    HASHMAP_LFU,
+    HASHMAP_CLOCK,
+    HASHMAP_FIFO,
+    CONCURRENT,
+    SHARDED,
+    CUSTOM_HASHMAP; // 只有哈希表本身，不限容量、没有过期和淘汰，作为其他引擎的上限参照
+
+    private static final long NO_TTL_MILLIS = 24L * 3600 * 1000;
+    private static final int SHARDS = 4;
+
+    public interface Cache {
+        String get(String key);
+
+        // ttlMillis 为 0 表示不过期
+        void put(String key, String value, long ttlMillis);
+
+        void close();
+    }
+
+    public Cache create(int capacity, File directory) {
+        switch (this) {
+            case SIMPLE:
+                return simple(new SimpleCache(capacity));
+            case EXPIRY:
+                return expiry(new ExpiryCache(capacity));
+            case LRU:
+                return expiry(new LruCache(capacity, false, directory));
+            case APPROX_LRU:
+                return expiry(new LruCache(capacity, true, directory));
+            case LFU:
+                return expiry(new MultiEvictionCache(capacity, MultiEvictionCache.EvictionStrategy.LFU, directory));
+            case APPROX_LFU:
+                return expiry(new MultiEvictionCache(capacity, MultiEvictionCache.EvictionStrategy.APPROX_LFU, directory));
+            case CLOCK:
+                return expiry(new MultiEvictionCache(capacity, MultiEvictionCache.EvictionStrategy.CLOCK, directory));
+            case FIFO:
+                return expiry(new MultiEvictionCache(capacity, MultiEvictionCache.EvictionStrategy.FIFO, directory));
+            case HASHMAP_CHAINED:
+                return hashMap(chained(capacity, MultiEvictionCache.EvictionStrategy.APPROX_LFU, directory));
+            case HASHMAP_OPEN:
+                return hashMap(new HashMapCache(capacity, MultiEvictionCache.EvictionStrategy.APPROX_LFU,
+                        HashMapCache.TableType.OPEN_ADDRESSING, null, directory));
+            case HASHMAP_LFU:
+                return hashMap(chained(capacity, MultiEvictionCache.EvictionStrategy.LFU, directory));
+            case HASHMAP_CLOCK:
+                return hashMap(chained(capacity, MultiEvictionCache.EvictionStrategy.CLOCK, directory));
+            case HASHMAP_FIFO:
+                return hashMap(chained(capacity, MultiEvictionCache.EvictionStrategy.FIFO, directory));
+            case CONCURRENT:
+                return concurrent(new ConcurrentCache(capacity));
+            case SHARDED:
+                return sharded(new ShardedCache(capacity, MultiEvictionCache.EvictionStrategy.APPROX_LFU,
+                        Math.min(SHARDS, capacity), directory));
+            case CUSTOM_HASHMAP:
+                return table(new CustomHashMap<>());
+            default:
+                throw new IllegalArgumentException("Unknown engine " + this);
+        }
+    }
+
+    private static HashMapCache chained(int capacity, MultiEvictionCache.EvictionStrategy strategy, File directory) {
+        return new HashMapCache(capacity, strategy, HashMapCache.TableType.CHAINED, null, directory);
+    }
+
+    // 没有 TTL，忽略 ttlMillis
+    private static Cache simple(SimpleCache cache) {
+        return new Cache() {
+            public String get(String key) {
+                return cache.get(key);
+            }
+
+            public void put(String key, String value, long ttlMillis) {
+                cache.put(key, value);
+            }
+
+            public void close() {
+            }
+        };
+    }
+
+    private static Cache expiry(ExpiryCache cache) {
+        return new Cache() {
+            public String get(String key) {
+                return cache.get(key);
+            }
+
+            public void put(String key, String value, long ttlMillis) {
+                cache.put(key, value, ttlMillis > 0 ? ttlMillis : NO_TTL_MILLIS);
+            }
+
+            public void close() {
+                cache.shutdown();
+            }
+        };
+    }
+
+    private static Cache hashMap(HashMapCache cache) {
+        return new Cache() {
+            public String get(String key) {
+                return cache.get(key);
+            }
+
+            public void put(String key, String value, long ttlMillis) {
+                if (ttlMillis > 0) cache.put(key, value, ttlMillis);
+                else cache.put(key, value);
+            }
+
+            public void close() {
+                cache.shutdown();
+            }
+        };
+    }
+
+    // 没有 AOF 和后台线程，close 不需要做什么
+    private static Cache concurrent(ConcurrentCache cache) {
+        return new Cache() {
+            public String get(String key) {
+                return cache.get(key);
+            }
+
+            public void put(String key, String value, long ttlMillis) {
+                cache.put(key, value, ttlMillis > 0 ? ttlMillis : NO_TTL_MILLIS);
+            }
+
+            public void close() {
+            }
+        };
+    }
+
+    // 同步调用，包含提交到分片队列和等待分片线程完成的开销
+    private static Cache sharded(ShardedCache cache) {
+        return new Cache() {
+            public String get(String key) {
+                return cache.get(key);
+            }
+
+            public void put(String key, String value, long ttlMillis) {
+                cache.put(key, value, ttlMillis > 0 ? ttlMillis : NO_TTL_MILLIS);
+            }
+
+            public void close() {
+                cache.shutdown();
+            }
+        };
+    }
+
+    private static Cache table(CustomHashMap<String, String> table) {
+        return new Cache() {
+            public String get(String key) {
+                return table.get(key);
+            }
+
+            public void put(String key, String value, long ttlMillis) {
+                table.put(key, value);
+            }
+
+            public void close() {
+            }
+        };
+    }
+}
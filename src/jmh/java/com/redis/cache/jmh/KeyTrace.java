@@ -0,0 +1,55 @@
+package com.redis.cache.jmh;
+
+import java.util.Random;
+
+// 预先生成的键下标序列：测量期间只按位置取下标，热路径上没有随机数生成和分配
+public final class KeyTrace {
+    private KeyTrace() {
+    }
+
+    public static int[] uniform(int keyCount, int length, long seed) {
+        Random random = new Random(seed);
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) trace[i] = random.nextInt(keyCount);
+        return trace;
+    }
+
+    // 第 r 热的键被访问的概率正比于 1 / r^skew；skew 0.99 与 YCSB 默认值相同
+    // 热度排名经随机置换映射到键下标，热键分散在整个键空间，不集中在哈希表的相邻桶
+    public static int[] zipfian(int keyCount, int length, double skew, long seed) {
+        double[] cdf = new double[keyCount];
+        double sum = 0;
+        for (int rank = 0; rank < keyCount; rank++) {
+            sum += 1 / Math.pow(rank + 1, skew);
+            cdf[rank] = sum;
+        }
+        Random random = new Random(seed);
+        int[] permutation = new int[keyCount];
+        for (int i = 0; i < keyCount; i++) permutation[i] = i;
+        for (int i = keyCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = swap;
+        }
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            double target = random.nextDouble() * sum;
+            int low = 0, high = keyCount - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cdf[middle] < target) low = middle + 1;
+                else high = middle;
+            }
+            trace[i] = permutation[low];
+        }
+        return trace;
+    }
+
+    // 顺序循环扫描整个键空间，容量小于键空间时是 LRU 的最坏情况
+    public static int[] scan(int keyCount, int length) {
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) trace[i] = i % keyCount;
+        return trace;
+    }
+}
@@ -0,0 +1,551 @@
+package com.redis.cache.jmh;
+
+import com.redis.cache.AofCache;
+import com.redis.cache.AofFormat;
+import com.redis.cache.AofLoader;
+import com.redis.cache.AofWriter;
+import com.redis.cache.ConcurrentCache;
+import com.redis.cache.CustomHashMap;
+import com.redis.cache.HashMapCache;
+import com.redis.cache.LfuList;
+import com.redis.cache.MultiEvictionCache;
+import com.redis.cache.OpenAddressingHashMap;
+import com.redis.cache.RespClient;
+import com.redis.cache.RespServer;
+import com.redis.cache.ShardedCache;
+import com.redis.cache.SlabAllocator;
+import com.redis.cache.ValueEncoding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+// JMH 吞吐量基准之外的测量：最坏单次延迟、每键堆占用、全堆 GC 停顿、fsync 合并、恢复耗时、多线程扩展性
+// 结果取决于机器、JIT 和 GC，只打印不断言；对应的行为由单元测试覆盖
+// mvn -Pjmh compile exec:exec -Djmh.main=com.redis.cache.jmh.Measurements -Djmh.args="rehash encoding"
+// 不带参数时依次运行全部测量
+public class Measurements {
+    private static final List<String> ALL = Arrays.asList("rehash", "heap-per-key", "encoding", "offheap", "batch",
+            "fsync", "restart", "replay", "lfu", "concurrent", "sharded", "resp");
+    private static final List<GarbageCollectorMXBean> GC_BEANS = ManagementFactory.getGarbageCollectorMXBeans();
+
+    public static void main(String[] args) throws Exception {
+        for (String name : args.length == 0 ? ALL : Arrays.asList(args)) {
+            File directory = Files.createTempDirectory("cache-measure-").toFile();
+            try {
+                run(name, directory);
+            } finally {
+                deleteRecursively(directory);
+            }
+        }
+    }
+
+    private static void run(String name, File directory) throws Exception {
+        switch (name) {
+            case "rehash":
+                rehashLatency();
+                break;
+            case "heap-per-key":
+                heapPerKey();
+                break;
+            case "encoding":
+                bytesPerEntryByEncoding(directory);
+                break;
+            case "offheap":
+                offHeapHeapUsageAndGcPause(directory);
+                break;
+            case "batch":
+                batchAgainstSingleCalls(directory);
+                break;
+            case "fsync":
+                fsyncPolicies(directory);
+                break;
+            case "restart":
+                restartWithAndWithoutRdbPreamble(directory);
+                break;
+            case "replay":
+                binaryReplayAgainstTextReplay(directory);
+                break;
+            case "lfu":
+                lfuIncrement();
+                break;
+            case "concurrent":
+                concurrentThroughput();
+                break;
+            case "sharded":
+                shardedThroughput(directory);
+                break;
+            case "resp":
+                respThroughput(directory);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown measurement " + name + ", expected one of " + ALL);
+        }
+    }
+
+    // 渐进式 rehash：0 到 1000 万键的最坏单次 put，一次性 rehash 在百万级时需要数百毫秒
+    private static void rehashLatency() {
+        CustomHashMap<Integer, Integer> map = new CustomHashMap<>();
+        int total = 10_000_000;
+        long worst = 0;
+        for (int i = 0; i < total; i++) {
+            Integer key = i;
+            long gcBefore = gcCount();
+            long start = System.nanoTime();
+            map.put(key, key);
+            long elapsed = System.nanoTime() - start;
+            // 发生 GC 的样本测的是收集器而不是哈希表，排除掉
+            if (elapsed > worst && gcCount() == gcBefore) worst = elapsed;
+        }
+        System.out.printf("rehash: worst single put (0 -> %,d keys) %d us%n", total, worst / 1000);
+    }
+
+    private static void heapPerKey() {
+        int total = 1_000_000;
+        Integer[] keys = new Integer[total];
+        for (int i = 0; i < total; i++) keys[i] = i;
+
+        long before = usedHeap();
+        CustomHashMap<Integer, Integer> chained = new CustomHashMap<>();
+        for (Integer key : keys) chained.put(key, key);
+        long chainedBytes = usedHeap() - before;
+        chained = null;
+
+        before = usedHeap();
+        OpenAddressingHashMap<Integer, Integer> open = new OpenAddressingHashMap<>();
+        for (Integer key : keys) open.put(key, key);
+        long openBytes = usedHeap() - before;
+        System.out.printf("heap per key: chained %d B, open addressing %d B (%d keys)%n",
+                chainedBytes / total, openBytes / total, open.size());
+    }
+
+    // 对照组 MultiEvictionCache 的节点与索引相同，只是值一律保存为 String
+    private static void bytesPerEntryByEncoding(File directory) {
+        int total = 200_000;
+        String[] names = {"shared int", "int", "embstr", "raw"};
+        for (int kind = 0; kind < names.length; kind++) {
+            long[] bytes = new long[2];
+            double[] readBytes = new double[2];
+            for (int encoded = 0; encoded < 2; encoded++) {
+                File dir = new File(directory, names[kind].replace(' ', '-') + "-" + encoded);
+                long before = usedHeap();
+                MultiEvictionCache target = encoded == 1
+                        ? new HashMapCache(total, MultiEvictionCache.EvictionStrategy.FIFO, HashMapCache.TableType.CHAINED, null, dir)
+                        : new MultiEvictionCache(total, MultiEvictionCache.EvictionStrategy.FIFO, dir);
+                target.setAppendFsync(AofWriter.FsyncPolicy.NO);
+                target.setAutoRewrite(0, 0);
+                for (int i = 0; i < total; i++) {
+                    target.put("key:" + i, value(kind, i), 3_600_000);
+                }
+                target.getAofFileSize(); // 写出 AOF 缓冲区，不计入测量
+                bytes[encoded] = (usedHeap() - before) / total;
+                readBytes[encoded] = allocatedPerGet(target, total);
+                target.shutdown();
+            }
+            System.out.printf("encoding %-10s: String %d B/entry, encoded %d B/entry; get allocates %.0f B vs %.0f B%n",
+                    names[kind], bytes[0], bytes[1], readBytes[0], readBytes[1]);
+        }
+    }
+
+    // 每次 get 在当前线程上分配的字节，键事先建好不计入；先预热让 JIT 完成编译
+    private static double allocatedPerGet(MultiEvictionCache target, int total) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[] keys = new String[total];
+        for (int i = 0; i < total; i++) keys[i] = "key:" + i;
+        long sink = 0;
+        for (int round = 0; round < 5; round++) {
+            for (String key : keys) sink += target.get(key).length();
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (String key : keys) sink += target.get(key).length();
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        if (sink == 0) System.out.print("");
+        return (double) allocated / total;
+    }
+
+    private static String value(int kind, int i) {
+        switch (kind) {
+            case 0:
+                return String.valueOf(i % ValueEncoding.SHARED_INTEGERS);
+            case 1:
+                return String.valueOf(1_000_000_000_000L + i);
+            case 2:
+                return "session:" + i;
+            default:
+                return "x".repeat(100) + i;
+        }
+    }
+
+    // 全堆收集的停顿与存活对象数成正比，键和值放到堆外后堆上只剩节点和索引
+    private static void offHeapHeapUsageAndGcPause(File directory) throws IOException {
+        int total = 1_000_000;
+        String payload = "v".repeat(200);
+        for (boolean offHeap : new boolean[]{false, true}) {
+            SlabAllocator slabs = offHeap ? new SlabAllocator() : null;
+            long before = usedHeap();
+            HashMapCache cache = new HashMapCache(total, MultiEvictionCache.EvictionStrategy.APPROX_LFU,
+                    HashMapCache.TableType.OPEN_ADDRESSING, slabs, new File(directory, offHeap ? "off" : "on"));
+            cache.setAppendFsync(AofWriter.FsyncPolicy.NO);
+            cache.setAutoRewrite(0, 0); // 重写会在堆上复制整个键空间，不计入测量
+            Map<String, String> batch = new LinkedHashMap<>();
+            for (int i = 0; i < total; i++) {
+                batch.put("key" + i, payload + i);
+                if (batch.size() == 1000) {
+                    cache.putAll(batch, 3_600_000);
+                    batch.clear();
+                }
+            }
+            long heapBytes = usedHeap() - before;
+            long start = System.nanoTime();
+            System.gc();
+            long pauseMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%s: %d keys x %dB values, heap %d MB, full GC %d ms%s%n",
+                    offHeap ? "off-heap" : "on-heap", total, payload.length(), heapBytes >> 20, pauseMillis,
+                    offHeap ? String.format(", slab %d MB (fragmentation %.2f)", slabs.getReservedBytes() >> 20, slabs.getFragmentationRatio()) : "");
+            cache.shutdown();
+            if (slabs != null) slabs.close();
+        }
+    }
+
+    private static void batchAgainstSingleCalls(File directory) {
+        HashMapCache cache = new HashMapCache(200_000, MultiEvictionCache.EvictionStrategy.APPROX_LFU,
+                HashMapCache.TableType.CHAINED, null, directory);
+        int keys = 100_000, batchSize = 100;
+        for (int round = 0; round < 2; round++) { // 第一轮预热
+            long start = System.nanoTime();
+            for (int i = 0; i < keys; i++) cache.put("single" + i, "value" + i, 60_000);
+            for (int i = 0; i < keys; i++) cache.get("single" + i);
+            long singleNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int from = 0; from < keys; from += batchSize) {
+                Map<String, String> entries = new LinkedHashMap<>();
+                List<String> batch = new ArrayList<>();
+                for (int i = from; i < from + batchSize; i++) {
+                    entries.put("batch" + i, "value" + i);
+                    batch.add("batch" + i);
+                }
+                cache.putAll(entries, 60_000);
+                cache.getAll(batch);
+            }
+            long batchNanos = System.nanoTime() - start;
+            System.out.printf("batch: %d puts + gets, single %d ms, batches of %d %d ms%n",
+                    keys, singleNanos / 1_000_000, batchSize, batchNanos / 1_000_000);
+        }
+
+        // appendfsync always 下逐个写入每次都要等 fsync，批量写入整批只等一次
+        cache.setAppendFsync(AofWriter.FsyncPolicy.ALWAYS);
+        long start = System.nanoTime();
+        for (int i = 0; i < 500; i++) cache.put("always" + i, "value", 60_000);
+        long singleNanos = System.nanoTime() - start;
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) entries.put("always" + i, "value");
+        start = System.nanoTime();
+        for (int i = 0; i < 5; i++) cache.putAll(entries, 60_000);
+        long batchNanos = (System.nanoTime() - start) / 5;
+        System.out.printf("batch: appendfsync always, 500 puts, single %d ms, one batch %d ms%n",
+                singleNanos / 1_000_000, batchNanos / 1_000_000);
+        cache.shutdown();
+    }
+
+    private static void fsyncPolicies(File directory) throws Exception {
+        // 并发写入被合并进同一次 fsync
+        File file = new File(directory, "group-commit.aof");
+        AofWriter writer = new AofWriter(file, AofWriter.FsyncPolicy.ALWAYS);
+        int threads = 8, perThread = 200;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    writer.awaitDurable(writer.append("PUT k v 1\n".getBytes(StandardCharsets.UTF_8)));
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) worker.join();
+        System.out.printf("fsync: always, %d appends from %d threads, %d fsyncs%n",
+                threads * perThread, threads, writer.getFsyncCount());
+        writer.close();
+
+        for (AofWriter.FsyncPolicy policy : AofWriter.FsyncPolicy.values()) {
+            AofCache cache = new AofCache(1_000_000, new File(directory, policy.name()));
+            cache.setAppendFsync(policy);
+            int writes = policy == AofWriter.FsyncPolicy.ALWAYS ? 2_000 : 100_000;
+            long start = System.nanoTime();
+            for (int i = 0; i < writes; i++) {
+                cache.put("key" + i, "value" + i, 60_000);
+            }
+            cache.getAofFileSize(); // 计入把缓冲区写入文件的时间
+            long elapsed = System.nanoTime() - start;
+            cache.shutdown();
+            System.out.printf("fsync: appendfsync %s, %.0f writes/s%n", policy, writes * 1e9 / elapsed);
+        }
+    }
+
+    private static void restartWithAndWithoutRdbPreamble(File directory) {
+        int keys = 500_000;
+        for (boolean preamble : new boolean[]{false, true}) {
+            File dir = new File(directory, preamble ? "preamble" : "plain");
+            HashMapCache cache = new HashMapCache(keys, MultiEvictionCache.EvictionStrategy.FIFO,
+                    HashMapCache.TableType.CHAINED, null, dir);
+            cache.setUseRdbPreamble(preamble);
+            for (int i = 0; i < keys; i++) {
+                cache.put("key" + i, "value" + i, 3_600_000);
+            }
+            cache.rewriteAof();
+            cache.awaitRewrite();
+            cache.shutdown();
+            long fileSize = new File(dir, "appendonly.aof").length();
+
+            cache = new HashMapCache(keys, MultiEvictionCache.EvictionStrategy.FIFO,
+                    HashMapCache.TableType.CHAINED, null, dir);
+            System.out.printf("restart: preamble=%s, %d keys, %d bytes, %d ms%n",
+                    preamble, cache.size(), fileSize, cache.getRecoveryMillis());
+            cache.shutdown();
+        }
+    }
+
+    // 旧的文本格式按行 split 解析，二进制格式按长度直接切分
+    private static void binaryReplayAgainstTextReplay(File directory) throws IOException {
+        int records = 1_000_000;
+        long expiry = System.currentTimeMillis() + 3_600_000;
+        File textFile = new File(directory, "text.aof");
+        File binaryFile = new File(directory, "binary.aof");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(textFile))) {
+            for (int i = 0; i < records; i++) {
+                writer.write("PUT key" + i + " value" + i + " " + expiry + "\n");
+            }
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(binaryFile))) {
+            out.write(AofFormat.header());
+            for (int i = 0; i < records; i++) {
+                out.write(AofFormat.encode(AofFormat.OP_PUT, "key" + i, "value" + i, expiry));
+            }
+        }
+
+        for (int round = 0; round < 2; round++) { // 第一轮预热 JIT 和页缓存
+            long start = System.nanoTime();
+            Map<String, String> text = new HashMap<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(textFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(" ", 4);
+                    if (System.currentTimeMillis() < Long.parseLong(parts[3])) text.put(parts[1], parts[2]);
+                }
+            }
+            long textNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Map<String, String> binary = new HashMap<>();
+            AofLoader.load(binaryFile, (key, value, at) -> {
+                if (value == null) binary.remove(key);
+                else binary.put(key, value);
+            });
+            long binaryNanos = System.nanoTime() - start;
+            System.out.printf("replay: %d records, text %d ms, binary %d ms (%d / %d keys)%n",
+                    records, textNanos / 1_000_000, binaryNanos / 1_000_000, text.size(), binary.size());
+        }
+    }
+
+    // 同一频率桶从 1 万增长到 100 万节点，单次命中的开销应基本不变
+    private static void lfuIncrement() {
+        nanosPerIncrement(10_000); // 预热 JIT
+        for (int bucketSize : new int[]{10_000, 100_000, 1_000_000}) {
+            System.out.printf("lfu: increment in a %,d-entry bucket %d ns%n", bucketSize, nanosPerIncrement(bucketSize));
+        }
+    }
+
+    private static long nanosPerIncrement(int bucketSize) {
+        LfuList lfu = new LfuList();
+        LfuList.Entry[] entries = new LfuList.Entry[bucketSize];
+        for (int i = 0; i < bucketSize; i++) {
+            entries[i] = new LfuList.Entry();
+            lfu.add(entries[i]);
+        }
+        int hits = 200_000;
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < hits; i++) {
+            lfu.increment(entries[random.nextInt(bucketSize)]);
+        }
+        return (System.nanoTime() - start) / hits;
+    }
+
+    // 90% 读 / 8% 写 / 2% 删除
+    private static void concurrentThroughput() throws InterruptedException {
+        int opsPerThread = 200_000;
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            ConcurrentCache cache = new ConcurrentCache(50_000, 64);
+            CountDownLatch ready = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        ready.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < opsPerThread; i++) {
+                        String key = "key" + random.nextInt(100_000);
+                        int op = random.nextInt(100);
+                        if (op < 90) cache.get(key);
+                        else if (op < 98) cache.put(key, "value", 60_000);
+                        else cache.remove(key);
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            long start = System.nanoTime();
+            ready.countDown();
+            for (Thread worker : workers) worker.join();
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("concurrent: threads=%d, %.0f ops/s%n", threads, threads * (double) opsPerThread * 1e9 / elapsed);
+        }
+    }
+
+    // 每个客户端一个线程，每轮异步提交 window 个 SET/GET 后等待全部完成
+    private static void shardedThroughput(File directory) throws InterruptedException {
+        int opsPerClient = 20_000, window = 128, clients = 16;
+        for (int shardCount : new int[]{1, 2, 4, 8, 16}) {
+            ShardedCache cache = new ShardedCache(100_000, MultiEvictionCache.EvictionStrategy.LFU, shardCount,
+                    new File(directory, "shards-" + shardCount));
+            List<Thread> threads = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int c = 0; c < clients; c++) {
+                String prefix = "client" + c + ":";
+                Thread thread = new Thread(() -> {
+                    List<CompletableFuture<?>> pending = new ArrayList<>(window);
+                    for (int i = 0; i < opsPerClient; i += 2) {
+                        String key = prefix + (i % 2000);
+                        pending.add(cache.putAsync(key, "value" + i, 60_000));
+                        pending.add(cache.getAsync(key));
+                        if (pending.size() >= window) {
+                            for (CompletableFuture<?> request : pending) request.join();
+                            pending.clear();
+                        }
+                    }
+                    for (CompletableFuture<?> request : pending) request.join();
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) thread.join();
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("sharded: shards %2d, %.0f ops/s (%d clients, window %d, %d cores)%n", shardCount,
+                    (double) clients * opsPerClient * 1e9 / elapsed, clients, window, Runtime.getRuntime().availableProcessors());
+            cache.shutdown();
+        }
+    }
+
+    // 每个客户端一个连接，每轮管道发送 pipeline 对 SET/GET
+    private static void respThroughput(File directory) throws Exception {
+        int clients = 16, rounds = 400, pipeline = 16;
+        HashMapCache cache = new HashMapCache(100_000, MultiEvictionCache.EvictionStrategy.LFU,
+                HashMapCache.TableType.CHAINED, null, directory);
+        try {
+            for (int ioThreads : new int[]{1, 2, 4}) {
+                RespServer server = new RespServer(cache, 0);
+                server.setIoThreads(ioThreads);
+                server.start();
+                try {
+                    runRespClients(server.getPort(), clients, 50, pipeline); // 预热
+                    long start = System.nanoTime();
+                    runRespClients(server.getPort(), clients, rounds, pipeline);
+                    long elapsed = System.nanoTime() - start;
+                    long commands = (long) clients * rounds * pipeline * 2;
+                    System.out.printf("resp: io-threads %d, %.0f ops/s (%d clients, pipeline %d, %d cores)%n",
+                            ioThreads, commands * 1e9 / elapsed, clients, pipeline * 2, Runtime.getRuntime().availableProcessors());
+                } finally {
+                    server.close();
+                }
+            }
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    private static void runRespClients(int port, int clients, int rounds, int pipeline) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            String prefix = "client" + c + ":";
+            Thread thread = new Thread(() -> {
+                try (Socket client = new Socket("127.0.0.1", port)) {
+                    OutputStream out = new BufferedOutputStream(client.getOutputStream());
+                    InputStream in = new BufferedInputStream(client.getInputStream());
+                    for (int round = 0; round < rounds; round++) {
+                        for (int i = 0; i < pipeline; i++) {
+                            out.write(RespClient.command("SET", prefix + i, "value" + round));
+                            out.write(RespClient.command("GET", prefix + i));
+                        }
+                        out.flush();
+                        for (int i = 0; i < pipeline * 2; i++) skipReply(in);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Failed to run client: " + e.getMessage());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+    }
+
+    // 只跳过简单字符串、错误、整数和批量字符串，SET/GET 不会返回其他类型
+    private static void skipReply(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) throw new IOException("Connection closed");
+        String line = RespClient.readLine(in);
+        if (type == '$') {
+            int length = Integer.parseInt(line);
+            if (length >= 0) in.skipNBytes(length + 2L);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : GC_BEANS) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,117 @@
+package com.redis.cache;
+
+// Redis activeExpireCycle 的自适应主动过期：
+// 每轮随机抽样若干带 TTL 的键并删除其中已过期的，过期比例超过阈值就再来一轮，直到用完本次时间预算
+// 慢周期按固定频率运行；上一次周期耗尽预算说明过期键堆积，此时在慢周期之间插入预算更小的快周期
+public class ActiveExpireCycle {
+    public interface Keyspace {
+        int ttlKeyCount();
+
+        // 随机抽一个带 TTL 的键，已过期则删除并返回 true
+        boolean expireRandomKey(long now);
+    }
+
+    private int keysPerLoop = 20;
+    private int acceptableStalePercent = 10;
+    private long slowCycleBudgetMicros = 25_000;
+    private long fastCycleBudgetMicros = 1_000;
+    private boolean lastCycleTimedOut;
+
+    // 统计信息由清理线程写入，其他线程读取
+    private volatile long cycles;
+    private volatile long fastCycles;
+    private volatile long timedOutCycles;
+    private volatile long sampledKeys;
+    private volatile long expiredKeys;
+    private volatile long timeSpentMicros;
+
+    public boolean runSlowCycle(Keyspace keyspace) {
+        return run(keyspace, slowCycleBudgetMicros);
+    }
+
+    // 只有上一次周期耗尽预算时才运行，否则直接返回
+    public boolean runFastCycle(Keyspace keyspace) {
+        if (!lastCycleTimedOut) return false;
+        fastCycles++;
+        return run(keyspace, fastCycleBudgetMicros);
+    }
+
+    private boolean run(Keyspace keyspace, long budgetMicros) {
+        long start = System.nanoTime();
+        long budgetNanos = budgetMicros * 1000;
+        boolean timedOut = false;
+        int sampled;
+        int expired;
+        do {
+            int samples = Math.min(keysPerLoop, keyspace.ttlKeyCount());
+            if (samples == 0) break;
+            sampled = 0;
+            expired = 0;
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < samples; i++) {
+                sampled++;
+                if (keyspace.expireRandomKey(now)) expired++;
+            }
+            sampledKeys += sampled;
+            expiredKeys += expired;
+            if (System.nanoTime() - start > budgetNanos) {
+                timedOut = true;
+                break;
+            }
+        } while (expired * 100 > sampled * acceptableStalePercent);
+
+        cycles++;
+        if (timedOut) timedOutCycles++;
+        timeSpentMicros += (System.nanoTime() - start) / 1000;
+        lastCycleTimedOut = timedOut;
+        return timedOut;
+    }
+
+    public void setKeysPerLoop(int keysPerLoop) {
+        if (keysPerLoop <= 0) throw new IllegalArgumentException("Keys per loop must be positive");
+        this.keysPerLoop = keysPerLoop;
+    }
+
+    public void setAcceptableStalePercent(int percent) {
+        if (percent < 0 || percent > 100) throw new IllegalArgumentException("Stale percent must be between 0 and 100");
+        this.acceptableStalePercent = percent;
+    }
+
+    public void setSlowCycleBudgetMicros(long micros) {
+        if (micros <= 0) throw new IllegalArgumentException("Budget must be positive");
+        this.slowCycleBudgetMicros = micros;
+    }
+
+    public void setFastCycleBudgetMicros(long micros) {
+        if (micros <= 0) throw new IllegalArgumentException("Budget must be positive");
+        this.fastCycleBudgetMicros = micros;
+    }
+
+    public int getKeysPerLoop() {
+        return keysPerLoop;
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    public long getFastCycles() {
+        return fastCycles;
+    }
+
+    public long getTimedOutCycles() {
+        return timedOutCycles;
+    }
+
+    public long getSampledKeys() {
+        return sampledKeys;
+    }
+
+    public long getExpiredKeys() {
+        return expiredKeys;
+    }
+
+    public long getTimeSpentMicros() {
+        return timeSpentMicros;
+    }
+}
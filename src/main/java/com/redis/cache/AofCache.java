@@ -1,6 +1,16 @@
 package com.redis.cache;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -8,56 +18,992 @@ import java.util.concurrent.TimeUnit;
 
 public class AofCache extends ExpiryCache {
     private File aofFile = new File("appendonly.aof");
+    private File rewriteFile = new File("appendonly.aof.rewrite");
+    private AofWriter aofWriter; // 常驻文件通道 + 追加缓冲区，后台线程组提交
+    private boolean appendOnly = true; // 与 Redis appendonly 相同，关闭时写入不再追加 AOF
+
+    // 后台重写（BGREWRITEAOF）：重写期间的新记录同时写入重写缓冲区，完成后追加到新文件再原子替换
+    private static final int REWRITE_DRAIN_THRESHOLD = 64 * 1024; // 剩余缓冲小于该值时才加锁收尾
+    private static final int REWRITE_MAX_DRAINS = 16;
+    private Thread rewriteThread;
+    private ByteArrayOutputStream rewriteBuffer;
+    private long aofCurrentSize; // 当前 AOF 逻辑大小（含未写入文件的缓冲）
+    private long aofRewriteBaseSize; // 启动或上次重写后的大小，增长比例以此为基准
+    private int autoRewritePercentage = 100; // 与 Redis auto-aof-rewrite-percentage 默认值相同，0 表示关闭
+    private long autoRewriteMinSize = 64L * 1024 * 1024; // auto-aof-rewrite-min-size
+    private volatile long rewriteCount;
+    // aof-use-rdb-preamble：重写时新文件以一份快照开头，之后只追加增量记录，重启时整体加载快照再重放尾部
+    private boolean useRdbPreamble = true;
+
+    // RDB 风格快照（BGSAVE）：开始时只进入新纪元并把游标放在最早的节点上，不遍历键空间；
+    // 后台线程分小批加锁沿链表推进游标读取节点。快照期间节点第一次被修改前由引擎保存修改前的副本（写时复制），
+    // 之后新建的节点带着当前纪元被跳过，删除的节点把删除前的状态放进待写队列，保证快照是开始时刻的视图
+    // AOF 重写和全量同步用同一套机制；同一时间只有一个纪元，后来者等进行中的快照读完再开始
+    private static final int SAVE_BATCH_SIZE = 1024; // 每次加锁推进的节点数
+    private static final long SAVE_RULE_CHECK_MILLIS = 100;
+    private File rdbFile = new File("dump.rdb");
+    private File rdbTempFile = new File("temp-dump.rdb");
+    private long snapshotEpochCounter;
+    private long snapshotEpoch; // 进行中快照的纪元，0 表示没有快照
+    private long snapshotStartedAt; // 进行中快照开始的时间，之前到期的键不写入
+    private EngineNode snapshotCursor; // 下一个要读的节点，null 表示链表已读完
+    private final ArrayDeque<SnapshotRecord> snapshotQueue = new ArrayDeque<>(); // 游标读不到的记录：快照期间删除的节点
+    private Thread saveThread;
+    private long dirty; // 上次快照后的修改次数
+    private long lastSaveTime = System.currentTimeMillis();
+    private final List<long[]> saveRules = new ArrayList<>(); // {秒数, 修改次数}
+    private ScheduledExecutorService saveScheduler;
+    private volatile long saveCount;
+    private long aofOffEpoch = -1; // 关闭 AOF 时的纪元计数，之后开始的快照保存成功才截断 AOF；-1 表示不需要截断
+    private int ttlNodeCount; // 带 TTL 的引擎节点数，自适应抽样按它决定每轮抽多少个
+    private static final int TTL_SAMPLE_ATTEMPTS = 16; // 抽样时跳过永不过期节点的最多重抽次数
+
+    // 快照中的一条记录：基类直接收集它，引擎用它保存节点修改前的副本
+    protected static final class SnapshotRecord {
+        final String key, value;
+        final long expiry, meta;
+        public SnapshotRecord(String key, String value, long expiry, long meta) {
+            this.key = key;
+            this.value = value;
+            this.expiry = expiry;
+            this.meta = meta;
+        }
+    }
+
+    // 引擎节点的公共部分：键、绝对过期时间和写时复制的簿记。三个引擎的节点都继承它，
+    // 快照的收集、读取和修改前保存副本、遍历与抽样过期都在这里按下面的钩子统一处理
+    protected abstract static class EngineNode {
+        String key; // HashMapCache 堆外模式的节点为 null，键经 nodeKey 从 slab 解码
+        long expiry;
+        long version; // 最近一次被快照保存或读取时的纪元
+        SnapshotRecord saved; // 快照期间修改前的副本
+        protected EngineNode(String key, long expiry) {
+            this.key = key;
+            this.expiry = expiry;
+        }
+    }
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    private boolean recovered;
+    private long recoveredRecords;
+    private long recoveryMillis;
+    private List<String> evictionBatch; // 批量写入期间淘汰的键，攒成批量删除记录
+
+    // 主从复制：复制流就是 AOF 记录本身，第一个副本连接时创建积压缓冲区，之后每条记录同时写入
+    private ReplicationBacklog replicationBacklog;
+    private int replicationBacklogSize = ReplicationBacklog.DEFAULT_SIZE;
 
     public AofCache(int capacity) {
+        this(capacity, null);
+    }
+
+    // directory 为 AOF 和快照文件所在目录（不存在时创建），null 表示当前目录
+    public AofCache(int capacity, File directory) {
+        this(capacity, directory, true);
+    }
+
+    // 引擎子类传入 false，在自己的字段初始化完之后再调用 open()
+    protected AofCache(int capacity, File directory, boolean open) {
         super(capacity);
-        loadAof(); // 启动时加载 AOF 文件
+        if (directory != null) {
+            directory.mkdirs();
+            this.aofFile = new File(directory, aofFile.getName());
+            this.rewriteFile = new File(directory, rewriteFile.getName());
+            this.rdbFile = new File(directory, rdbFile.getName());
+            this.rdbTempFile = new File(directory, rdbTempFile.getName());
+        }
+        if (open) {
+            open();
+        }
+    }
+
+    // 启动恢复：单次流式读取 AOF，直接写入具体引擎自己的索引和淘汰结构，然后打开写入器
+    // 恢复会回调引擎的钩子，父类构造时子类字段尚未初始化：引擎的公开构造函数在末尾调用，
+    // 引擎子类经受保护的构造函数跳过父类中的这一步；只执行一次
+    protected final synchronized void open() {
+        if (recovered) return;
+        recovered = true;
+        loadAof();
+        // 与 Redis 一样 AOF 优先；没有 AOF 数据时从快照恢复，并立即重写 AOF 使其包含这些键
+        boolean fromSnapshot = aofFile.length() <= AofFormat.HEADER_SIZE && rdbFile.exists();
+        if (fromSnapshot) {
+            loadSnapshot();
+        }
+        try {
+            if (aofFile.length() == 0) {
+                Files.write(aofFile.toPath(), AofFormat.header());
+            }
+            this.aofWriter = new AofWriter(aofFile, AofWriter.FsyncPolicy.EVERYSEC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open AOF: " + e.getMessage(), e);
+        }
+        this.aofCurrentSize = aofFile.length();
+        this.aofRewriteBaseSize = aofCurrentSize;
+        if (fromSnapshot && size() > 0) {
+            rewriteAof();
+        }
+    }
+
+    // 恢复一条写入记录；恢复期间写入器未打开，淘汰不会再写回 AOF
+    protected void restoreEntry(String key, String value, long expiry) {
+        storeEntry(key, value, expiry);
+    }
+
+    // 按绝对过期时间写入或更新一个键，容量已满时先淘汰；子类重写以直接插入自己的节点，恢复和批量写入共用
+    protected void storeEntry(String key, String value, long expiry) {
+        putWithExpiry(key, value, expiry);
+    }
+
+    // 以给定的当前时间读取一个键，批量读取整批共用一次时钟；子类重写以读取自己的节点
+    protected String getAt(String key, long now) {
+        return get(key);
+    }
+
+    // 删除一个未过期的键，返回是否删除；已过期的键顺带删除但不计数
+    protected boolean removeEntry(String key, long now) {
+        if (get(key) == null) return false;
+        removeKey(key);
+        return true;
+    }
+
+    // 批量写入前按新键数一次腾出位置，按引擎的淘汰策略连续淘汰
+    protected void makeRoom(Collection<String> keys) {
+        CacheTable<String, ? extends EngineNode> table = engineTable();
+        if (table == null) return;
+        int missing = 0;
+        for (String key : keys) {
+            if (table.get(key) == null) missing++;
+        }
+        for (int excess = table.size() + missing - capacity(); excess > 0 && table.size() > 0; excess--) {
+            evictOne();
+        }
+    }
+
+    // 写入前检查单个键值，子类重写以拒绝无法放下的数据；批量写入在改动任何键之前整批检查
+    // 超过一条 AOF 记录上限的写入在这里拒绝：副本把超限的记录视为损坏
+    protected void validateEntry(String key, String value) {
+        if (!AofFormat.fitsInRecord(key, value)) throw new IllegalArgumentException("Entry too large for one AOF record");
+    }
+
+    // 恢复一条淘汰记录
+    protected void restoreRemoval(String key) {
+        CacheTable<String, ? extends EngineNode> table = engineTable();
+        if (table == null) {
+            removeKey(key);
+            return;
+        }
+        EngineNode node = table.get(key);
+        if (node != null) dropNode(node);
+    }
+
+    // 引擎的钩子。engineTable 为 null 表示键保存在父类的 map 中（AofCache 本身），其余钩子不会被调用
+    protected CacheTable<String, ? extends EngineNode> engineTable() {
+        return null;
+    }
+
+    protected String nodeValue(EngineNode node) {
+        throw new IllegalStateException("Cache has no engine nodes");
+    }
+
+    // 节点不持有键的 String 时（HashMapCache 堆外模式）由引擎解码
+    protected String nodeKey(EngineNode node) {
+        return node.key;
+    }
+
+    // 快照中随值保存的淘汰元数据
+    protected long nodeMeta(EngineNode node) {
+        return RdbSnapshot.META_NONE;
+    }
+
+    // 从索引、淘汰结构和过期时间轮中一并删除节点
+    protected void dropNode(EngineNode node) {
+        throw new IllegalStateException("Cache has no engine nodes");
+    }
+
+    // 按淘汰策略淘汰一个键
+    protected void evictOne() {
+    }
+
+    // 快照按 oldestNode、newerNode 的顺序读取节点，加载时依次插入即还原引擎的淘汰顺序
+    protected EngineNode oldestNode() {
+        return null;
+    }
+
+    protected EngineNode newerNode(EngineNode node) {
+        return null;
+    }
+
+    @Override
+    protected void forEachEntry(EntryVisitor visitor) {
+        CacheTable<String, ? extends EngineNode> table = engineTable();
+        if (table == null) {
+            super.forEachEntry(visitor);
+            return;
+        }
+        table.forEach((key, node) -> visitor.visit(key, nodeValue(node), node.expiry));
+    }
+
+    // 时间轮回调（由定时清理线程在锁内调用）；引擎构造期间 engineTable 尚为 null
+    @Override
+    protected void expireKey(String key) {
+        super.expireKey(key);
+        CacheTable<String, ? extends EngineNode> table = engineTable();
+        EngineNode node = table == null ? null : table.get(key);
+        if (node != null && System.currentTimeMillis() >= node.expiry) {
+            dropNode(node);
+        }
+    }
+
+    // 自适应抽样过期的钩子：引擎节点没有单独的过期索引，在整个索引上抽样并跳过永不过期的节点
+    @Override
+    protected int ttlKeyCount() {
+        return engineTable() == null ? super.ttlKeyCount() : ttlNodeCount;
+    }
+
+    // 带 TTL 的键占比很低时重抽也可能抽不到，按未过期处理
+    @Override
+    protected boolean expireRandomKey(long now) {
+        CacheTable<String, ? extends EngineNode> table = engineTable();
+        if (table == null) return super.expireRandomKey(now);
+        if (ttlNodeCount == 0) return false;
+        for (int attempt = 0; attempt < TTL_SAMPLE_ATTEMPTS; attempt++) {
+            EngineNode node = table.randomValue();
+            if (node == null) return false;
+            if (node.expiry == NO_EXPIRY) continue;
+            if (now <= node.expiry) return false;
+            dropNode(node);
+            return true;
+        }
+        return false;
+    }
+
+    // 从快照恢复一个键，引擎重写以还原淘汰元数据
+    protected void restoreSnapshotEntry(String key, String value, long expiry, long meta) {
+        restoreEntry(key, value, expiry);
+    }
+
+    public long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    public long getRecoveryMillis() {
+        return recoveryMillis;
     }
 
     // 重写 put 方法，追加日志
     @Override
     public void put(String key, String value, long ttlMillis) {
-        super.put(key, value, ttlMillis);
-        appendToAof("PUT", key, value, ttlMillis);
+        long offset;
+        synchronized (this) {
+            checkWritable();
+            if (key == null || value == null) throw new IllegalArgumentException("Key or value cannot be null");
+            validateEntry(key, value);
+            super.put(key, value, ttlMillis);
+            offset = appendToAof(AofFormat.OP_PUT, key, value, expiryOf(key));
+        }
+        awaitAof(offset);
     }
 
-    // 追加日志到 AOF 文件
-    void appendToAof(String op, String key, String value, long ttl) {
-        try (FileWriter writer = new FileWriter(aofFile, true);
-             BufferedWriter bufferedWriter = new BufferedWriter(writer)) {
-            bufferedWriter.write(op + " " + key + " " + value + " " + ttl + "\n");
-            bufferedWriter.flush();
+    // 批量读取（MGET）：返回与 keys 一一对应的值，不存在或已过期为 null；整批只加一次锁、读一次时钟
+    public synchronized List<String> getAll(List<String> keys) {
+        for (String key : keys) {
+            if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        }
+        long now = System.currentTimeMillis();
+        List<String> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            values.add(getAt(key, now));
+        }
+        return values;
+    }
+
+    // 批量写入（MSET）：整批共用一个过期时间，先一次淘汰出所需空间，整批只写一条 AOF 记录、等一次 fsync
+    public void putAll(Map<String, String> entries, long ttlMillis) {
+        if (ttlMillis <= 0) throw new IllegalArgumentException("TTL must be positive");
+        awaitAof(putAllAndLog(entries, ttlMillis));
+    }
+
+    // ttlMillis 为 0 表示永不过期；先校验整批，出错时不写入任何键
+    protected synchronized long putAllAndLog(Map<String, String> entries, long ttlMillis) {
+        List<String> keys = new ArrayList<>(entries.size());
+        List<String> values = new ArrayList<>(entries.size());
+        entries.forEach((key, value) -> {
+            if (key == null || value == null) throw new IllegalArgumentException("Key or value cannot be null");
+            validateEntry(key, value);
+            keys.add(key);
+            values.add(value);
+        });
+        if (keys.isEmpty()) return 0;
+        if (!AofFormat.fitsInBatchRecord(keys, values)) throw new IllegalArgumentException("Batch too large for one AOF record");
+        checkWritable();
+        long expiry = ttlMillis == 0 ? NO_EXPIRY : System.currentTimeMillis() + ttlMillis;
+        // 重放时不做淘汰（读不记日志，淘汰结果无法重现），日志须按发生顺序写明每次淘汰：
+        // 通常只有开头一次腾位置；写入某个键时又淘汰了其他键（例如超出 maxmemory），就在此处切开，
+        // 先写出之前的写入，再写出这些淘汰
+        List<String> evictions = new ArrayList<>();
+        evictionBatch = evictions;
+        int from = 0;
+        try {
+            makeRoom(keys);
+            for (int i = 0; i < keys.size(); i++) {
+                storeEntry(keys.get(i), values.get(i), expiry);
+                if (evictions.isEmpty()) continue;
+                if (i > from) {
+                    appendBatchToAof(AofFormat.OP_MPUT, keys.subList(from, i), values.subList(from, i), expiry);
+                }
+                // 这些淘汰发生在插入第 i 个键之前，第 i 个键归入下一段
+                appendBatchToAof(AofFormat.OP_MDEL, evictions, null, 0);
+                evictions.clear();
+                from = i;
+            }
+        } finally {
+            evictionBatch = null;
+        }
+        return appendBatchToAof(AofFormat.OP_MPUT, keys.subList(from, keys.size()), values.subList(from, keys.size()), expiry);
+    }
+
+    // 批量删除（多键 DEL）：返回删除的未过期键数，整批只写一条 AOF 记录
+    public int deleteAll(Collection<String> keys) {
+        List<String> removed = new ArrayList<>();
+        long offset;
+        synchronized (this) {
+            for (String key : keys) {
+                if (key == null) throw new IllegalArgumentException("Key cannot be null");
+            }
+            checkWritable();
+            long now = System.currentTimeMillis();
+            for (String key : keys) {
+                if (removeEntry(key, now)) removed.add(key);
+            }
+            if (removed.isEmpty()) return 0;
+            offset = appendBatchToAof(AofFormat.OP_MDEL, removed, null, 0);
+        }
+        awaitAof(offset);
+        return removed.size();
+    }
+
+    // AOF 写入失败后拒绝写命令（UncheckedIOException），写操作在锁内、修改内存之前调用
+    protected void checkWritable() {
+        if (appendOnly && aofWriter != null) aofWriter.checkWritable();
+    }
+
+    // appendfsync 策略：ALWAYS / EVERYSEC（默认）/ NO
+    public void setAppendFsync(AofWriter.FsyncPolicy policy) {
+        aofWriter.setFsyncPolicy(policy);
+    }
+
+    // 淘汰记为删除，重放时得到与淘汰后相同的键空间；过期不用记录，写入记录带绝对过期时间，加载时已过期的写入按删除处理
+    @Override
+    protected void evicted(String key) {
+        if (evictionBatch != null) {
+            evictionBatch.add(key);
+        } else if (aofWriter != null) {
+            appendToAof(AofFormat.OP_DEL, key, "", 0);
+        }
+    }
+
+    // 自动重写：AOF 超过最小大小且相对基准增长超过给定百分比时触发
+    public synchronized void setAutoRewrite(int percentage, long minSize) {
+        if (percentage < 0) throw new IllegalArgumentException("Percentage cannot be negative");
+        if (minSize < 0) throw new IllegalArgumentException("Min size cannot be negative");
+        this.autoRewritePercentage = percentage;
+        this.autoRewriteMinSize = minSize;
+    }
+
+    // 追加日志到 AOF 缓冲区，返回写入位置；调用方需在锁内调用以保证日志顺序与内存一致
+    long appendToAof(byte op, String key, String value, long expiry) {
+        if (!needsRecords()) return skipRecord(1);
+        return appendRecord(AofFormat.encode(op, key, value, expiry), 1);
+    }
+
+    // 整批写入或删除追加为一条记录，按键数计入修改次数；批量写入已在改动前整批检查过大小，
+    // 批量删除超过一条记录的上限时对半拆成几条，结果相同
+    long appendBatchToAof(byte op, List<String> keys, List<String> values, long expiry) {
+        if (!needsRecords()) return skipRecord(keys.size());
+        if (values == null && keys.size() > 1 && !AofFormat.fitsInBatchRecord(keys, null)) {
+            int half = keys.size() / 2;
+            appendBatchToAof(op, keys.subList(0, half), null, expiry);
+            return appendBatchToAof(op, keys.subList(half, keys.size()), null, expiry);
+        }
+        return appendRecord(AofFormat.encodeBatch(op, keys, values, expiry), keys.size());
+    }
+
+    // AOF 关闭且没有副本、也没有进行中的重写时不必编码记录
+    private boolean needsRecords() {
+        return appendOnly || replicationBacklog != null || rewriteBuffer != null;
+    }
+
+    private long skipRecord(int changes) {
+        dirty += changes;
+        return 0;
+    }
+
+    private long appendRecord(byte[] bytes, int changes) {
+        dirty += changes;
+        if (rewriteBuffer != null) {
+            rewriteBuffer.write(bytes, 0, bytes.length);
+        }
+        if (replicationBacklog != null) {
+            replicationBacklog.append(bytes);
+        }
+        if (!appendOnly) return 0;
+        aofCurrentSize += bytes.length;
+        long offset = aofWriter.append(bytes);
+        if (autoRewriteDue()) {
+            rewriteAof();
+        }
+        return offset;
+    }
+
+    private boolean autoRewriteDue() {
+        if (autoRewritePercentage == 0 || rewriteThread != null || aofCurrentSize < autoRewriteMinSize) {
+            return false;
+        }
+        long base = aofRewriteBaseSize > 0 ? aofRewriteBaseSize : 1;
+        return (aofCurrentSize - base) * 100 / base >= autoRewritePercentage;
+    }
+
+    // 与 Redis CONFIG SET appendonly 相同，默认开启。关闭后写入和淘汰不再追加 AOF，
+    // 旧文件若留着，重启时会从中恢复出之后删除或覆盖掉的值：关闭时先 BGSAVE，快照落盘后才把 AOF 截断为只剩文件头，
+    // 重启与 Redis appendonly no 一样从快照恢复；快照失败时 AOF 保持原样，下一次快照成功后再截断。
+    // 重新开启时先后台重写一次，使 AOF 包含关闭期间的写入
+    // 不需要持久化的场景（如命中率模拟）关闭它以省去每次写入的编码和追加
+    public synchronized void setAppendOnly(boolean appendOnly) {
+        if (appendOnly == this.appendOnly) return;
+        this.appendOnly = appendOnly;
+        if (appendOnly) {
+            aofOffEpoch = -1;
+            rewriteAof(); // 已有重写在进行时，它的重写缓冲区已收下关闭期间的记录
+        } else if (aofCurrentSize > AofFormat.HEADER_SIZE) {
+            aofOffEpoch = snapshotEpochCounter;
+            bgsave(); // 有快照或重写在进行时返回 false，由它结束时再开始
+        }
+    }
+
+    // AOF 已关闭但还没有截断时开始一次 BGSAVE；调用方持有锁，已有快照在进行时什么也不做
+    private void saveBeforeAofTruncation() {
+        if (aofOffEpoch >= 0) bgsave();
+    }
+
+    // 写完缓冲区后截断到文件头并 fsync；只在关闭 AOF 之后开始的快照已落盘时调用
+    private void truncateAof() {
+        aofWriter.flush();
+        try (FileChannel channel = FileChannel.open(aofFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(AofFormat.HEADER_SIZE);
+            channel.force(true);
+            aofWriter.switchTo(aofFile);
         } catch (IOException e) {
-            System.err.println("Failed to append to AOF: " + e.getMessage());
+            System.err.println("Failed to truncate AOF: " + e.getMessage());
         }
+        aofCurrentSize = AofFormat.HEADER_SIZE;
+        aofRewriteBaseSize = aofCurrentSize;
     }
 
-    // 从 AOF 文件恢复数据
-    void loadAof() {
-        if (!aofFile.exists()) {
-            return;
+    public synchronized boolean isAppendOnly() {
+        return appendOnly;
+    }
+
+    // 与 Redis 默认值相同，默认开启；只影响之后的重写，已有文件两种格式都能加载
+    public synchronized void setUseRdbPreamble(boolean useRdbPreamble) {
+        this.useRdbPreamble = useRdbPreamble;
+    }
+
+    // 后台重写 AOF；已有重写在进行时返回 false
+    // 与 BGSAVE 相同，加锁期间只进入新纪元，后台线程分小批加锁读取，生成、写入新文件都在锁外，写请求照常追加
+    // 有快照在进行时，与 Redis 一样推迟到它结束：后台线程等快照读完再开始
+    public synchronized boolean rewriteAof() {
+        if (rewriteThread != null) {
+            return false;
         }
-        try (BufferedReader reader = new BufferedReader(new FileReader(aofFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(" ", 4);
-                if (parts.length == 4 && parts[0].equals("PUT")) {
-                    String key = parts[1];
-                    String value = parts[2];
-                    long ttl = Long.parseLong(parts[3]);
-                    // 只恢复未过期的键
-                    if (System.currentTimeMillis() < ttl) {
-                        super.put(key, value, ttl - System.currentTimeMillis());
+        long epoch = snapshotEpoch == 0 ? beginRewriteSnapshot() : 0;
+        boolean preamble = useRdbPreamble;
+        rewriteThread = new Thread(() -> runRewrite(epoch, preamble), "aof-rewrite");
+        rewriteThread.setDaemon(true);
+        rewriteThread.start();
+        return true;
+    }
+
+    // 进入新纪元，同时开始把新记录写入重写缓冲区；调用方持有锁且没有进行中的快照
+    private long beginRewriteSnapshot() {
+        long epoch = beginSnapshot();
+        rewriteBuffer = new ByteArrayOutputStream();
+        return epoch;
+    }
+
+    public synchronized boolean isRewriteInProgress() {
+        return rewriteThread != null;
+    }
+
+    public long getRewriteCount() {
+        return rewriteCount;
+    }
+
+    // 等待当前重写结束（用于测试和关闭）
+    public void awaitRewrite() {
+        Thread thread;
+        synchronized (this) {
+            thread = rewriteThread;
+        }
+        if (thread == null) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runRewrite(long capturedEpoch, boolean preamble) {
+        boolean swapped = false;
+        long epoch = capturedEpoch;
+        try {
+            long createdAt;
+            synchronized (this) {
+                while (epoch == 0) {
+                    if (snapshotEpoch == 0) {
+                        epoch = beginRewriteSnapshot();
+                    } else {
+                        wait();
                     }
                 }
+                createdAt = snapshotStartedAt;
+            }
+            if (preamble) {
+                try (RdbSnapshot.Writer writer = new RdbSnapshot.Writer(rewriteFile, createdAt)) {
+                    readSnapshot(epoch, createdAt, record -> writer.write(record.key, record.value, record.expiry, record.meta));
+                    writer.finish();
+                }
+            }
+            try (FileChannel out = FileChannel.open(rewriteFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    preamble ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (!preamble) {
+                    // 每个存活键只写一条记录
+                    ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+                    chunk.write(AofFormat.header());
+                    readSnapshot(epoch, createdAt, record -> {
+                        chunk.write(AofFormat.encode(AofFormat.OP_PUT, record.key, record.value, record.expiry));
+                        if (chunk.size() >= REWRITE_DRAIN_THRESHOLD) {
+                            writeFully(out, chunk.toByteArray());
+                            chunk.reset();
+                        }
+                    });
+                    writeFully(out, chunk.toByteArray());
+                }
+                endSnapshot(epoch); // 节点已读完，之后的修改不必再保存副本
+                // 先在锁外追上重写期间的增量，缩短最后加锁的时间
+                for (int i = 0; i < REWRITE_MAX_DRAINS; i++) {
+                    byte[] pending = takeRewriteBuffer();
+                    writeFully(out, pending);
+                    if (pending.length < REWRITE_DRAIN_THRESHOLD) break;
+                }
+                out.force(false);
+                synchronized (this) {
+                    // 重写期间关闭了 AOF：不替换旧文件，由关闭后的快照决定何时截断，finally 删除临时文件
+                    if (!appendOnly) return;
+                    // 收尾：剩余增量写入新文件并 fsync，原子替换旧文件后切换写入器
+                    byte[] pending = takeRewriteBuffer();
+                    writeFully(out, pending);
+                    out.force(false);
+                    Files.move(rewriteFile.toPath(), aofFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    aofWriter.switchTo(aofFile);
+                    aofCurrentSize = out.size();
+                    aofRewriteBaseSize = aofCurrentSize;
+                    swapped = true;
+                }
+            }
+            rewriteCount++;
+        } catch (IOException e) {
+            System.err.println("Failed to rewrite AOF: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.err.println("Failed to rewrite AOF: interrupted");
+        } finally {
+            if (!swapped) rewriteFile.delete();
+            synchronized (this) {
+                endSnapshot(epoch);
+                rewriteBuffer = null;
+                rewriteThread = null;
+            }
+        }
+    }
+
+    // 后台生成快照；已有快照或重写在读取节点时返回 false。加锁期间只进入新纪元
+    public synchronized boolean bgsave() {
+        if (saveThread != null || snapshotEpoch != 0) {
+            return false;
+        }
+        long epoch = beginSnapshot();
+        long startedAt = snapshotStartedAt;
+        long dirtyAtStart = dirty;
+        saveThread = new Thread(() -> runSave(epoch, startedAt, dirtyAtStart), "rdb-save");
+        saveThread.setDaemon(true);
+        saveThread.start();
+        return true;
+    }
+
+    public synchronized boolean isSaveInProgress() {
+        return saveThread != null;
+    }
+
+    // 等待当前快照结束（用于测试和关闭）
+    public void awaitSave() {
+        Thread thread;
+        synchronized (this) {
+            thread = saveThread;
+        }
+        if (thread == null) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getSaveCount() {
+        return saveCount;
+    }
+
+    public synchronized long getLastSaveTime() {
+        return lastSaveTime;
+    }
+
+    public synchronized long getChangesSinceSave() {
+        return dirty;
+    }
+
+    // 与 Redis save <seconds> <changes> 相同：距上次快照超过 seconds 秒且至少有 changes 次修改时自动 BGSAVE
+    public synchronized void addSaveRule(int seconds, int changes) {
+        if (seconds <= 0 || changes <= 0) throw new IllegalArgumentException("Seconds and changes must be positive");
+        saveRules.add(new long[]{seconds, changes});
+        if (saveScheduler == null) {
+            saveScheduler = Executors.newSingleThreadScheduledExecutor();
+            saveScheduler.scheduleAtFixedRate(this::checkSaveRules, SAVE_RULE_CHECK_MILLIS, SAVE_RULE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void checkSaveRules() {
+        if (saveThread != null) return;
+        long elapsed = System.currentTimeMillis() - lastSaveTime;
+        for (long[] rule : saveRules) {
+            if (dirty >= rule[1] && elapsed >= rule[0] * 1000) {
+                bgsave();
+                return;
             }
-        } catch (IOException | NumberFormatException e) {
+        }
+    }
+
+    // 进入新纪元，游标指向最早的节点，O(1)；调用方持有锁且没有进行中的快照
+    // AofCache 本身没有引擎节点，键值直接复制进待写队列
+    private long beginSnapshot() {
+        long epoch = ++snapshotEpochCounter;
+        snapshotEpoch = epoch;
+        snapshotStartedAt = System.currentTimeMillis();
+        if (engineTable() == null) {
+            forEachEntry((key, value, expiry) -> snapshotQueue.add(new SnapshotRecord(key, value, expiry, RdbSnapshot.META_NONE)));
+        } else {
+            snapshotCursor = oldestNode();
+        }
+        return epoch;
+    }
+
+    // 节点读完后退出纪元，唤醒等待开始快照的重写或全量同步；重复调用无影响
+    private synchronized void endSnapshot(long epoch) {
+        if (epoch != 0 && snapshotEpoch == epoch) {
+            snapshotEpoch = 0;
+            snapshotCursor = null;
+            snapshotQueue.clear();
+            notifyAll();
+            saveBeforeAofTruncation();
+        }
+    }
+
+    private interface SnapshotSink {
+        void write(SnapshotRecord record) throws IOException;
+    }
+
+    // 分小批加锁读出节点，跳过 startedAt 之前到期的键；编码和写文件都在锁外
+    private void readSnapshot(long epoch, long startedAt, SnapshotSink sink) throws IOException {
+        List<SnapshotRecord> batch = new ArrayList<>(SAVE_BATCH_SIZE);
+        boolean done = false;
+        while (!done) {
+            batch.clear();
+            synchronized (this) {
+                done = readSnapshotBatch(epoch, batch);
+            }
+            for (SnapshotRecord record : batch) {
+                if (record.expiry > startedAt) sink.write(record);
+            }
+        }
+    }
+
+    // 在锁内先取待写队列，再推进游标，共至多 SAVE_BATCH_SIZE 步；返回是否已读完
+    // 游标上的节点：纪元早于本纪元的读当前值，本纪元被修改过的读修改前的副本，其余（已读过或快照开始后新建）跳过
+    private boolean readSnapshotBatch(long epoch, List<SnapshotRecord> batch) {
+        for (int steps = 0; steps < SAVE_BATCH_SIZE; steps++) {
+            SnapshotRecord removed = snapshotQueue.poll();
+            if (removed != null) {
+                batch.add(removed);
+                continue;
+            }
+            EngineNode node = snapshotCursor;
+            if (node == null) return true;
+            snapshotCursor = newerNode(node);
+            if (node.version < epoch) {
+                batch.add(snapshotRecord(node));
+                node.saved = null; // 之前中断的快照留下的副本
+                node.version = epoch;
+            } else if (node.saved != null) {
+                batch.add(node.saved);
+                node.saved = null;
+            }
+        }
+        return false;
+    }
+
+    // 快照进行中第一次修改或删除节点前保存副本；引擎在改动值、过期时间或淘汰元数据之前调用
+    protected final void preserve(EngineNode node) {
+        if (snapshotEpoch != 0 && node.version < snapshotEpoch) {
+            node.saved = snapshotRecord(node);
+            node.version = snapshotEpoch;
+        }
+    }
+
+    // 新建的节点记下当前纪元：快照开始后新建的节点不在快照中，游标经过时跳过
+    protected final void markCreated(EngineNode node) {
+        node.version = snapshotEpoch;
+        if (node.expiry != NO_EXPIRY) ttlNodeCount++;
+    }
+
+    // 修改已有节点的过期时间，维护带 TTL 的节点数；调用前先 preserve
+    protected final void setExpiry(EngineNode node, long expiry) {
+        if (node.expiry == NO_EXPIRY && expiry != NO_EXPIRY) ttlNodeCount++;
+        if (node.expiry != NO_EXPIRY && expiry == NO_EXPIRY) ttlNodeCount--;
+        node.expiry = expiry;
+    }
+
+    // 引擎把节点摘出链表（删除或移到头部）之前调用：游标不能停在摘下的节点上，移到头部的节点游标之后还会经过
+    protected final void unlinking(EngineNode node) {
+        if (snapshotCursor == node) snapshotCursor = newerNode(node);
+    }
+
+    // 引擎用 replacement 原位替换节点时调用：写时复制的簿记和快照游标随之转到新节点
+    protected final void replacing(EngineNode node, EngineNode replacement) {
+        replacement.version = node.version;
+        replacement.saved = node.saved;
+        node.saved = null;
+        if (snapshotCursor == node) snapshotCursor = replacement;
+    }
+
+    // 引擎删除节点之前调用：游标还没读到的节点把删除前的状态放进待写队列
+    protected final void deleting(EngineNode node) {
+        if (node.expiry != NO_EXPIRY) ttlNodeCount--;
+        if (snapshotEpoch == 0) return;
+        preserve(node);
+        if (node.saved != null) {
+            snapshotQueue.add(node.saved);
+            node.saved = null;
+        }
+        unlinking(node);
+    }
+
+    private SnapshotRecord snapshotRecord(EngineNode node) {
+        return new SnapshotRecord(nodeKey(node), nodeValue(node), node.expiry, nodeMeta(node));
+    }
+
+    private void runSave(long epoch, long startedAt, long dirtyAtStart) {
+        boolean saved = false;
+        try (RdbSnapshot.Writer writer = new RdbSnapshot.Writer(rdbTempFile, startedAt)) {
+            readSnapshot(epoch, startedAt, record -> writer.write(record.key, record.value, record.expiry, record.meta));
+            endSnapshot(epoch);
+            writer.finish();
+            Files.move(rdbTempFile.toPath(), rdbFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            saved = true;
+            saveCount++;
+        } catch (IOException e) {
+            System.err.println("Failed to save snapshot: " + e.getMessage());
+        } finally {
+            if (!saved) rdbTempFile.delete();
+            synchronized (this) {
+                endSnapshot(epoch);
+                saveThread = null;
+                if (saved) {
+                    dirty -= dirtyAtStart;
+                    lastSaveTime = startedAt;
+                }
+                if (saved && aofOffEpoch >= 0 && epoch > aofOffEpoch) {
+                    truncateAof();
+                    aofOffEpoch = -1;
+                } else if (epoch <= aofOffEpoch) {
+                    saveBeforeAofTruncation(); // 这次快照在关闭 AOF 之前开始，不包含关闭前最后的写入
+                }
+            }
+        }
+    }
+
+    private void loadSnapshot() {
+        long start = System.currentTimeMillis();
+        long[] keys = {0};
+        try {
+            RdbSnapshot.load(rdbFile, (key, value, expiry, meta) -> {
+                if (expiry > System.currentTimeMillis()) {
+                    restoreSnapshotEntry(key, value, expiry, meta);
+                    keys[0]++;
+                }
+            });
+            System.out.println("Snapshot loaded: " + keys[0] + " keys in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.err.println("Failed to load snapshot: " + e.getMessage());
+        }
+    }
+
+    // 与 Redis repl-backlog-size 相同；只影响之后创建的积压缓冲区
+    public synchronized void setReplicationBacklogSize(int size) {
+        if (size <= 0) throw new IllegalArgumentException("Backlog size must be positive");
+        this.replicationBacklogSize = size;
+    }
+
+    // 主节点的积压缓冲区，没有时创建；复制偏移量从创建时的 0 开始
+    synchronized ReplicationBacklog replicationBacklog() {
+        if (replicationBacklog == null) {
+            replicationBacklog = new ReplicationBacklog(replicationBacklogSize);
+        }
+        return replicationBacklog;
+    }
+
+    // 主节点的复制偏移量，还没有副本连接过时为 0
+    public synchronized long getReplicationOffset() {
+        return replicationBacklog == null ? 0 : replicationBacklog.getOffset();
+    }
+
+    // 全量同步：与 BGSAVE 相同，锁内收集节点引用并取得对应的复制偏移量，分小批加锁读取、锁外写成快照文件；
+    // 之后的记录都在积压缓冲区中。有快照在进行时等它读完
+    long saveReplicationSnapshot(File file) throws IOException {
+        long epoch, createdAt, offset;
+        synchronized (this) {
+            try {
+                while (snapshotEpoch != 0) wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a snapshot", e);
+            }
+            epoch = beginSnapshot();
+            createdAt = snapshotStartedAt;
+            offset = replicationBacklog().getOffset();
+        }
+        try (RdbSnapshot.Writer writer = new RdbSnapshot.Writer(file, createdAt)) {
+            readSnapshot(epoch, createdAt, record -> writer.write(record.key, record.value, record.expiry, record.meta));
+            endSnapshot(epoch);
+            writer.finish();
+        } finally {
+            endSnapshot(epoch);
+        }
+        return offset;
+    }
+
+    // 副本全量同步：删除现有的键后加载主节点的快照，删除和写入都照常记日志，
+    // 本节点的 AOF 和它自己的副本看到的都是同一个数据集；之后自动重写会压缩 AOF
+    synchronized void loadReplicationSnapshot(File file) throws IOException {
+        long now = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>(size());
+        forEachEntry((key, value, expiry) -> keys.add(key));
+        List<String> removed = new ArrayList<>();
+        for (String key : keys) {
+            if (removeEntry(key, now)) removed.add(key);
+        }
+        if (!removed.isEmpty()) appendBatchToAof(AofFormat.OP_MDEL, removed, null, 0);
+        RdbSnapshot.load(file, (key, value, expiry, meta) -> {
+            if (expiry <= now) return;
+            restoreSnapshotEntry(key, value, expiry, meta);
+            appendToAof(AofFormat.OP_PUT, key, value, expiry);
+        });
+    }
+
+    // 副本应用主节点发来的一段完整记录：逐条应用后把原记录追加到本节点的 AOF，淘汰产生的删除记录排在它之前
+    // 传输途中已过期的写入删除旧值而不是跳过，和主节点上该键过期后的状态一致
+    synchronized void applyReplicationStream(byte[] records) {
+        checkWritable();
+        long now = System.currentTimeMillis();
+        ByteBuffer data = ByteBuffer.wrap(records);
+        int position = 0;
+        while (position < records.length) {
+            int length = AofFormat.RECORD_HEADER_SIZE + data.getInt(position);
+            AofLoader.decodeRecord(data.slice(position, length), (key, value, expiry) -> {
+                if (value == null || expiry <= now) {
+                    restoreRemoval(key);
+                } else {
+                    storeEntry(key, value, expiry);
+                }
+            });
+            appendRecord(Arrays.copyOfRange(records, position, position + length), 1);
+            position += length;
+        }
+    }
+
+    private synchronized byte[] takeRewriteBuffer() {
+        byte[] pending = rewriteBuffer.toByteArray();
+        rewriteBuffer.reset();
+        return pending;
+    }
+
+    private static void writeFully(FileChannel out, byte[] bytes) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        while (data.hasRemaining()) out.write(data);
+    }
+
+    // ALWAYS 策略下等到 offset 之前的日志落盘，其他策略立即返回；写入方在锁外调用，多个写线程可共享一次 fsync
+    void awaitAof(long offset) {
+        aofWriter.awaitDurable(offset);
+    }
+
+    // 从 AOF 文件恢复数据，混合文件的快照前导同时还原淘汰元数据
+    // 已过期的写入删除该键而不是跳过：它覆盖了更早的写入，跳过会让旧值复活
+    // 旧版文本 AOF 记录的是相对 TTL，无法还原，移到一边后从空文件开始
+    private void loadAof() {
+        if (!aofFile.exists()) {
+            return;
+        }
+        if (AofFormat.isLegacyText(aofFile)) {
+            File legacy = new File(aofFile.getPath() + ".legacy");
+            System.err.println("Unrecognized AOF format, moved to " + legacy.getName());
+            aofFile.renameTo(legacy);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long[] lastReport = {start};
+        try {
+            recoveredRecords = AofLoader.load(aofFile, this::restoreSnapshotEntry, (key, value, expiry) -> {
+                if (value == null || expiry <= System.currentTimeMillis()) {
+                    restoreRemoval(key);
+                } else {
+                    restoreEntry(key, value, expiry);
+                }
+            }, (loadedBytes, totalBytes, records) -> {
+                long now = System.currentTimeMillis();
+                if (now - lastReport[0] >= PROGRESS_INTERVAL_MILLIS) {
+                    lastReport[0] = now;
+                    System.out.println("Loading AOF: " + loadedBytes * 100 / totalBytes + "% (" + records + " records)");
+                }
+            });
+            recoveryMillis = System.currentTimeMillis() - start;
+            System.out.println("AOF loaded: " + recoveredRecords + " records, " + size() + " keys in " + recoveryMillis + " ms");
+        } catch (IOException e) {
             System.err.println("Failed to load AOF: " + e.getMessage());
         }
     }
 
     // 获取 AOF 文件大小（用于测试）
     public long getAofFileSize() {
+        aofWriter.flush();
         return aofFile.exists() ? aofFile.length() : 0;
     }
+
+    // 停止定时任务，等待进行中的重写和快照，写完缓冲区并 fsync 后关闭 AOF
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        synchronized (this) {
+            if (saveScheduler != null) saveScheduler.shutdown();
+        }
+        awaitRewrite();
+        awaitSave();
+        if (aofWriter != null) aofWriter.close();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.redis.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// 二进制 AOF 格式：
+// 文件头 8 字节："JAOF" + 版本号
+// 每条记录：[负载长度 int][CRC32C int][操作码 byte][绝对过期时间 long][键长度 int][键 UTF-8][值 UTF-8]
+// CRC 覆盖长度字段和负载，长度字段损坏也能被发现
+// 键值按长度切分，可以包含空格和换行；过期时间是绝对时间戳，重启后无需换算
+// 批量记录：[操作码][过期时间 long][条数 int] 之后每条 [键长度 int][值长度 int][键][值]，整批共用一个过期时间
+public class AofFormat {
+    public static final byte OP_PUT = 1;
+    public static final byte OP_DEL = 2; // 删除或淘汰的键；过期时间为 0，值为空
+    public static final byte OP_MPUT = 3; // 批量写入
+    public static final byte OP_MDEL = 4; // 批量删除；值长度均为 0
+
+    static final byte[] MAGIC = {'J', 'A', 'O', 'F'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8; // 长度 + CRC32C
+    static final int MIN_PAYLOAD_SIZE = 1 + 8 + 4;
+    static final int MAX_PAYLOAD_SIZE = 512 * 1024 * 1024; // 与 Redis proto-max-bulk-len 默认值相同；超过的长度字段视为损坏
+    static final int BATCH_ENTRY_HEADER_SIZE = 4 + 4;
+    private static final byte[] EMPTY = new byte[0];
+
+    public static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putInt(VERSION).array();
+    }
+
+    public static byte[] encode(byte op, String key, String value, long expiry) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        if (MIN_PAYLOAD_SIZE + (long) keyBytes.length + valueBytes.length > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Entry too large for one AOF record");
+        }
+        int payloadSize = MIN_PAYLOAD_SIZE + keyBytes.length + valueBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payloadSize);
+        record.putInt(payloadSize).putInt(0);
+        record.put(op).putLong(expiry).putInt(keyBytes.length).put(keyBytes).put(valueBytes);
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 0, 4);
+        crc.update(record.array(), RECORD_HEADER_SIZE, payloadSize);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    // 每个字符至多 3 个 UTF-8 字节：按字符数估算的上限远小于 MAX_PAYLOAD_SIZE 时不必编码
+    static boolean fitsInRecord(String key, String value) {
+        long chars = (long) key.length() + value.length();
+        if (MIN_PAYLOAD_SIZE + chars * 3 <= MAX_PAYLOAD_SIZE) return true;
+        return MIN_PAYLOAD_SIZE + (long) key.getBytes(StandardCharsets.UTF_8).length
+                + value.getBytes(StandardCharsets.UTF_8).length <= MAX_PAYLOAD_SIZE;
+    }
+
+    // values 为 null 时按批量删除计算
+    static boolean fitsInBatchRecord(List<String> keys, List<String> values) {
+        long chars = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            chars += BATCH_ENTRY_HEADER_SIZE + keys.get(i).length() + (values == null ? 0 : values.get(i).length());
+        }
+        if (MIN_PAYLOAD_SIZE + chars * 3 <= MAX_PAYLOAD_SIZE) return true;
+        long bytes = MIN_PAYLOAD_SIZE;
+        for (int i = 0; i < keys.size(); i++) {
+            bytes += BATCH_ENTRY_HEADER_SIZE + keys.get(i).getBytes(StandardCharsets.UTF_8).length
+                    + (values == null ? 0 : values.get(i).getBytes(StandardCharsets.UTF_8).length);
+        }
+        return bytes <= MAX_PAYLOAD_SIZE;
+    }
+
+    // values 为 null 时按批量删除编码
+    public static byte[] encodeBatch(byte op, List<String> keys, List<String> values, long expiry) {
+        byte[][] keyBytes = new byte[keys.size()][];
+        byte[][] valueBytes = new byte[keys.size()][];
+        long payloadSize = MIN_PAYLOAD_SIZE;
+        for (int i = 0; i < keyBytes.length; i++) {
+            keyBytes[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+            valueBytes[i] = values == null ? EMPTY : values.get(i).getBytes(StandardCharsets.UTF_8);
+            payloadSize += BATCH_ENTRY_HEADER_SIZE + keyBytes[i].length + valueBytes[i].length;
+        }
+        if (payloadSize > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Batch too large for one AOF record");
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + (int) payloadSize);
+        record.putInt((int) payloadSize).putInt(0);
+        record.put(op).putLong(expiry).putInt(keyBytes.length);
+        for (int i = 0; i < keyBytes.length; i++) {
+            record.putInt(keyBytes[i].length).putInt(valueBytes[i].length).put(keyBytes[i]).put(valueBytes[i]);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 0, 4);
+        crc.update(record.array(), RECORD_HEADER_SIZE, (int) payloadSize);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    // 非空且既不以格式头、也不以快照前导开始的文件，即旧版文本 AOF
+    public static boolean isLegacyText(File file) {
+        if (!file.exists() || file.length() == 0) return false;
+        if (file.length() < HEADER_SIZE) return true;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] header = new byte[HEADER_SIZE];
+            in.readFully(header);
+            return !Arrays.equals(header, header()) && !RdbSnapshot.hasMagic(header);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
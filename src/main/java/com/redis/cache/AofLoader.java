@@ -0,0 +1,316 @@
+package com.redis.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+// 二进制 AOF 加载：内存映射读取，扫描线程只读记录长度划分数据块，
+// 多个线程并行校验 CRC 并解码，再按文件顺序在调用线程中逐块应用
+// 结尾不完整的记录（写到一半宕机）会被截掉；中间记录校验失败或长度字段损坏说明文件损坏，拒绝加载且不改动文件
+// 混合持久化（aof-use-rdb-preamble）的文件以一份快照开头，先整体加载快照，再从快照结尾重放增量记录
+public class AofLoader {
+    // 每应用完一个数据块回调一次
+    public interface Progress {
+        void update(long loadedBytes, long totalBytes, long records);
+    }
+
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024; // 每个解码任务处理的字节数
+    private static final long SCAN_WINDOW_SIZE = 1L << 30; // 扫描线程每次映射的窗口
+
+    // 一个数据块的解码结果；corruptOffset >= 0 表示该位置的记录校验失败，之后的记录未解码
+    private static class Chunk {
+        final long start, end;
+        String[] keys;
+        String[] values;
+        long[] expiries;
+        int count;
+        long corruptOffset = -1;
+        long corruptEnd;
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final FileChannel channel;
+    private final ExpiryCache.EntryVisitor apply;
+    private final Progress progress;
+    private final ExecutorService pool;
+    private final int maxPending;
+    private final Deque<Future<Chunk>> pending = new ArrayDeque<>();
+    private final long size;
+    private long applied;
+    private long corruptOffset = -1; // 校验失败的记录，只有它恰好是最后一条时才允许截断
+    private long corruptEnd;
+
+    private AofLoader(FileChannel channel, ExpiryCache.EntryVisitor apply, Progress progress) throws IOException {
+        this.channel = channel;
+        this.apply = apply;
+        this.progress = progress;
+        this.size = channel.size();
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        this.maxPending = threads * 2;
+    }
+
+    public static long load(File file, ExpiryCache.EntryVisitor apply) throws IOException {
+        return load(file, apply, null);
+    }
+
+    public static long load(File file, ExpiryCache.EntryVisitor apply, Progress progress) throws IOException {
+        return load(file, null, apply, progress);
+    }
+
+    // 按文件顺序把写入和删除交给 apply（删除记录的 value 为 null），返回应用的记录数
+    // 已过期的写入也交给 apply：它覆盖了之前的值，调用方应删除该键，否则旧值会在重启后复活
+    // 快照前导中的键交给 preamble 以还原淘汰元数据；preamble 为 null 时也交给 apply。前导是文件开头，
+    // 其中过期的键没有更早的值需要覆盖，直接跳过
+    public static long load(File file, RdbSnapshot.Visitor preamble, ExpiryCache.EntryVisitor apply, Progress progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() == 0) return 0;
+            ByteBuffer header = ByteBuffer.allocate(AofFormat.HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) ;
+            boolean hybrid = RdbSnapshot.hasMagic(header.array());
+            if (!hybrid && (header.hasRemaining() || !Arrays.equals(header.array(), AofFormat.header()))) {
+                throw new IOException("Unrecognized AOF format");
+            }
+            AofLoader loader = new AofLoader(channel, apply, progress);
+            try {
+                long start = hybrid ? loader.loadPreamble(preamble) : AofFormat.HEADER_SIZE;
+                return loader.run(start);
+            } finally {
+                for (Future<Chunk> future : loader.pending) future.cancel(true);
+                if (loader.pool != null) loader.pool.shutdownNow();
+            }
+        }
+    }
+
+    private long loadPreamble(RdbSnapshot.Visitor preamble) throws IOException {
+        long now = System.currentTimeMillis();
+        long end = RdbSnapshot.loadPreamble(channel, (key, value, expiry, meta) -> {
+            if (expiry <= now) return;
+            if (preamble != null) preamble.visit(key, value, expiry, meta);
+            else apply.visit(key, value, expiry);
+            applied++;
+        });
+        if (progress != null) {
+            progress.update(end, size, applied);
+        }
+        return end;
+    }
+
+    private long run(long start) throws IOException {
+        long validEnd = start;
+        MappedByteBuffer window = null;
+        long windowStart = 0;
+        long chunkStart = validEnd;
+        while (validEnd < size) {
+            // 只读记录头的长度字段，跨窗口时从当前记录处重新映射
+            if (window == null || validEnd + AofFormat.RECORD_HEADER_SIZE > windowStart + window.capacity()) {
+                if (size - validEnd < AofFormat.RECORD_HEADER_SIZE) break;
+                windowStart = validEnd;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(SCAN_WINDOW_SIZE, size - windowStart));
+            }
+            int payloadSize = window.getInt((int) (validEnd - windowStart));
+            long recordEnd = validEnd + AofFormat.RECORD_HEADER_SIZE + payloadSize;
+            if (payloadSize < AofFormat.MIN_PAYLOAD_SIZE || payloadSize > AofFormat.MAX_PAYLOAD_SIZE || recordEnd > size) {
+                // 写到一半的结尾之后不会再有完整记录；之后还有校验通过的记录说明是长度字段损坏
+                if (hasValidRecordAfter(validEnd)) {
+                    throw new IllegalStateException("AOF is corrupted at offset " + validEnd);
+                }
+                break;
+            }
+            validEnd = recordEnd;
+            if (validEnd - chunkStart >= CHUNK_SIZE) {
+                submit(chunkStart, validEnd);
+                chunkStart = validEnd;
+            }
+        }
+        if (validEnd > chunkStart) {
+            submit(chunkStart, validEnd);
+        }
+        while (!pending.isEmpty()) {
+            apply(take(pending.poll()));
+        }
+        if (corruptOffset >= 0) {
+            if (corruptEnd != validEnd) {
+                throw new IllegalStateException("AOF is corrupted at offset " + corruptOffset);
+            }
+            validEnd = corruptOffset;
+        }
+        if (validEnd < size) {
+            System.err.println("AOF truncated at offset " + validEnd + ", dropped " + (size - validEnd) + " bytes");
+            channel.truncate(validEnd);
+        }
+        return applied;
+    }
+
+    // 从 offset 之后逐字节查找一条长度合法且 CRC 校验通过的完整记录；只在发现坏记录头时调用，
+    // 写到一半的结尾不足一条记录，很快扫完；损坏在中间时下一条记录的边界就能命中
+    private boolean hasValidRecordAfter(long offset) throws IOException {
+        long from = offset + 1;
+        long length = Math.min(size - from, SCAN_WINDOW_SIZE);
+        if (length < AofFormat.RECORD_HEADER_SIZE + AofFormat.MIN_PAYLOAD_SIZE) return false;
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+        CRC32C crc = new CRC32C();
+        for (int position = 0; position + AofFormat.RECORD_HEADER_SIZE + AofFormat.MIN_PAYLOAD_SIZE <= length; position++) {
+            int payloadSize = data.getInt(position);
+            if (payloadSize < AofFormat.MIN_PAYLOAD_SIZE
+                    || (long) position + AofFormat.RECORD_HEADER_SIZE + payloadSize > length) continue;
+            crc.reset();
+            crc.update(data.slice(position, 4));
+            crc.update(data.slice(position + AofFormat.RECORD_HEADER_SIZE, payloadSize));
+            if ((int) crc.getValue() == data.getInt(position + 4)) return true;
+        }
+        return false;
+    }
+
+    // 提交一个块解码；在途块过多时先按顺序应用最早的块，限制解码结果占用的内存
+    private void submit(long start, long end) throws IOException {
+        Chunk chunk = new Chunk(start, end);
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        if (pool == null) {
+            apply(decode(chunk, data));
+            return;
+        }
+        pending.add(pool.submit(() -> decode(chunk, data)));
+        while (pending.size() > maxPending) {
+            apply(take(pending.poll()));
+        }
+    }
+
+    private static Chunk take(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading AOF", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException("Failed to decode AOF: " + e.getCause(), e.getCause());
+        }
+    }
+
+    private void apply(Chunk chunk) {
+        if (corruptOffset >= 0 && chunk.end > corruptEnd) {
+            // 校验失败的记录之后还有数据，不是写到一半的结尾
+            throw new IllegalStateException("AOF is corrupted at offset " + corruptOffset);
+        }
+        for (int i = 0; i < chunk.count; i++) {
+            apply.visit(chunk.keys[i], chunk.values[i], chunk.expiries[i]);
+        }
+        applied += chunk.count;
+        if (chunk.corruptOffset >= 0) {
+            corruptOffset = chunk.corruptOffset;
+            corruptEnd = chunk.corruptEnd;
+        }
+        if (progress != null) {
+            progress.update(chunk.end, size, applied);
+        }
+    }
+
+    // 解码复制流中的一条完整记录，按顺序回调；校验失败抛 IllegalStateException
+    static void decodeRecord(ByteBuffer record, ExpiryCache.EntryVisitor apply) {
+        Chunk chunk = decode(new Chunk(0, record.capacity()), record);
+        if (chunk.corruptOffset >= 0) {
+            throw new IllegalStateException("Replication stream is corrupted");
+        }
+        for (int i = 0; i < chunk.count; i++) {
+            apply.visit(chunk.keys[i], chunk.values[i], chunk.expiries[i]);
+        }
+    }
+
+    private static Chunk decode(Chunk chunk, ByteBuffer data) {
+        // 按最短记录估算记录数上限，解码时无需扩容
+        int capacity = (int) ((chunk.end - chunk.start) / (AofFormat.RECORD_HEADER_SIZE + AofFormat.MIN_PAYLOAD_SIZE)) + 1;
+        chunk.keys = new String[capacity];
+        chunk.values = new String[capacity];
+        chunk.expiries = new long[capacity];
+        CRC32C crc = new CRC32C();
+        byte[] scratch = new byte[256];
+        int position = 0;
+        int limit = data.capacity();
+        while (position < limit) {
+            int payloadSize = data.getInt(position);
+            int checksum = data.getInt(position + 4);
+            int payload = position + AofFormat.RECORD_HEADER_SIZE;
+            crc.reset();
+            crc.update(data.slice(position, 4));
+            crc.update(data.slice(payload, payloadSize));
+            if ((int) crc.getValue() != checksum) {
+                chunk.corruptOffset = chunk.start + position;
+                chunk.corruptEnd = chunk.start + payload + payloadSize;
+                break;
+            }
+            position = payload + payloadSize;
+
+            byte op = data.get(payload);
+            long expiry = data.getLong(payload + 1);
+            if (op == AofFormat.OP_MPUT || op == AofFormat.OP_MDEL) {
+                scratch = decodeBatch(chunk, data, payload, payloadSize, scratch);
+                continue;
+            }
+            if (op != AofFormat.OP_PUT && op != AofFormat.OP_DEL) {
+                throw new IllegalStateException("Unknown AOF record type " + op + " at offset " + (chunk.start + payload - AofFormat.RECORD_HEADER_SIZE));
+            }
+            int keySize = data.getInt(payload + 9);
+            int valueSize = payloadSize - AofFormat.MIN_PAYLOAD_SIZE - keySize;
+            if (keySize < 0 || valueSize < 0) {
+                throw new IllegalStateException("AOF is corrupted at offset " + (chunk.start + payload - AofFormat.RECORD_HEADER_SIZE));
+            }
+            if (scratch.length < keySize + valueSize) scratch = new byte[keySize + valueSize];
+            data.get(payload + AofFormat.MIN_PAYLOAD_SIZE, scratch, 0, keySize + valueSize);
+            chunk.keys[chunk.count] = new String(scratch, 0, keySize, StandardCharsets.UTF_8);
+            chunk.values[chunk.count] = op == AofFormat.OP_DEL ? null : new String(scratch, keySize, valueSize, StandardCharsets.UTF_8);
+            chunk.expiries[chunk.count] = expiry;
+            chunk.count++;
+        }
+        return chunk;
+    }
+
+    // 批量记录展开成逐条写入或删除；条数可能超过按最短记录估算的容量，需要时扩容
+    private static byte[] decodeBatch(Chunk chunk, ByteBuffer data, int payload, int payloadSize, byte[] scratch) {
+        byte op = data.get(payload);
+        long expiry = data.getLong(payload + 1);
+        int count = data.getInt(payload + 9);
+        int position = payload + AofFormat.MIN_PAYLOAD_SIZE;
+        int end = payload + payloadSize;
+        if (count < 0 || (long) count * AofFormat.BATCH_ENTRY_HEADER_SIZE > end - position) {
+            throw new IllegalStateException("AOF is corrupted at offset " + (chunk.start + payload - AofFormat.RECORD_HEADER_SIZE));
+        }
+        if (chunk.count + count > chunk.keys.length) {
+            int capacity = Math.max(chunk.keys.length * 2, chunk.count + count);
+            chunk.keys = Arrays.copyOf(chunk.keys, capacity);
+            chunk.values = Arrays.copyOf(chunk.values, capacity);
+            chunk.expiries = Arrays.copyOf(chunk.expiries, capacity);
+        }
+        for (int i = 0; i < count; i++) {
+            int keySize = data.getInt(position);
+            int valueSize = data.getInt(position + 4);
+            position += AofFormat.BATCH_ENTRY_HEADER_SIZE;
+            if (keySize < 0 || valueSize < 0 || (long) position + keySize + valueSize > end) {
+                throw new IllegalStateException("AOF is corrupted at offset " + (chunk.start + payload - AofFormat.RECORD_HEADER_SIZE));
+            }
+            if (scratch.length < keySize + valueSize) scratch = new byte[keySize + valueSize];
+            data.get(position, scratch, 0, keySize + valueSize);
+            position += keySize + valueSize;
+            chunk.keys[chunk.count] = new String(scratch, 0, keySize, StandardCharsets.UTF_8);
+            chunk.values[chunk.count] = op == AofFormat.OP_MDEL ? null : new String(scratch, keySize, valueSize, StandardCharsets.UTF_8);
+            chunk.expiries[chunk.count] = expiry;
+            chunk.count++;
+        }
+        return scratch;
+    }
+}
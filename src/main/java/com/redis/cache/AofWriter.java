@@ -0,0 +1,263 @@
+package com.redis.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 长期持有的 AOF 写入器：调用方只把记录拷进内存缓冲区，后台线程整批写入 FileChannel（组提交）
+// fsync 策略与 Redis appendfsync 相同：always 每批写完都 fsync，everysec 每秒一次，no 交给操作系统
+// 写入或 fsync 失败后进入失败状态：写线程退出，之后的追加和等待落盘都抛出异常，与 Redis 写 AOF 出错后拒绝写命令相同
+public class AofWriter {
+    public enum FsyncPolicy { ALWAYS, EVERYSEC, NO }
+
+    private static final long EVERYSEC_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024; // 写入突增撑大的缓冲区用完即丢，不长期占用堆
+
+    private FileChannel channel;
+    private volatile FsyncPolicy fsyncPolicy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingData = lock.newCondition();
+    private final Condition progress = lock.newCondition();
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE]; // 追加缓冲区，写线程整块换出
+    private byte[] spare = new byte[INITIAL_BUFFER_SIZE];
+    private int bufferLength;
+    private long appendedOffset; // 已进入缓冲区的字节数
+    private long writtenOffset; // 已写入文件的字节数
+    private long syncedOffset; // 已 fsync 的字节数
+    private long fsyncCount;
+    private boolean closed;
+    private boolean writing; // 写线程正在锁外写一批数据
+    private IOException failure; // 第一次写入或 fsync 失败的原因，之后不再接受写入
+    private final Thread writerThread;
+
+    public AofWriter(File file, FsyncPolicy fsyncPolicy) throws IOException {
+        this.channel = open(file);
+        this.fsyncPolicy = fsyncPolicy;
+        this.writerThread = new Thread(this::writeLoop, "aof-writer-" + file.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // 追加一条记录，返回其结束位置，可传给 awaitDurable
+    public long append(byte[] record) {
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("AOF writer is closed");
+            checkFailure();
+            if (bufferLength + record.length > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, bufferLength + record.length)];
+                System.arraycopy(buffer, 0, grown, 0, bufferLength);
+                buffer = grown;
+            }
+            System.arraycopy(record, 0, buffer, bufferLength, record.length);
+            bufferLength += record.length;
+            appendedOffset += record.length;
+            pendingData.signal();
+            return appendedOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // always 策略下阻塞到 offset 之前的数据都已 fsync；同一批次的多个调用方共享一次 fsync
+    // 这批数据写入或 fsync 失败时抛出 UncheckedIOException，不当作已落盘返回
+    public void awaitDurable(long offset) {
+        if (fsyncPolicy != FsyncPolicy.ALWAYS) return;
+        lock.lock();
+        try {
+            while (syncedOffset < offset && fsyncPolicy == FsyncPolicy.ALWAYS && !closed && failure == null) {
+                progress.awaitUninterruptibly();
+            }
+            if (syncedOffset < offset) checkFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 等缓冲区里已有的数据全部写入文件（不强制 fsync）
+    public void flush() {
+        lock.lock();
+        try {
+            long target = appendedOffset;
+            pendingData.signal();
+            while (writtenOffset < target && writerThread.isAlive() && failure == null) {
+                progress.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+        lock.lock();
+        try {
+            progress.signalAll(); // 唤醒按旧策略等待 fsync 的调用方
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 写入失败后拒绝写入；调用方在修改内存之前检查，避免内存和 AOF 不一致
+    public void checkWritable() {
+        lock.lock();
+        try {
+            checkFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isFailed() {
+        lock.lock();
+        try {
+            return failure != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Failed to write AOF: " + failure.getMessage(), failure);
+        }
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public long getFsyncCount() {
+        lock.lock();
+        try {
+            return fsyncCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // AOF 重写完成后切换到新文件：调用方保证已写入的记录都已在新文件中并 fsync，
+    // 因此旧缓冲直接丢弃，等待中的调用方全部放行
+    public void switchTo(File file) throws IOException {
+        FileChannel replacement = open(file);
+        FileChannel old;
+        lock.lock();
+        try {
+            while (writing) progress.awaitUninterruptibly();
+            old = channel;
+            channel = replacement;
+            bufferLength = 0;
+            writtenOffset = appendedOffset;
+            syncedOffset = appendedOffset;
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        old.close();
+    }
+
+    // 写完剩余缓冲并 fsync 后关闭文件
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            pendingData.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writerThread.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Failed to close AOF: " + e.getMessage());
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void writeLoop() {
+        long lastFsync = System.nanoTime();
+        while (true) {
+            FileChannel out;
+            byte[] batch;
+            int length;
+            long target;
+            boolean exiting;
+            lock.lock();
+            try {
+                if (bufferLength == 0 && !closed) {
+                    // 空闲时至少每秒醒一次，让 everysec 有机会 fsync
+                    pendingData.awaitNanos(EVERYSEC_NANOS);
+                }
+                batch = buffer;
+                length = bufferLength;
+                target = appendedOffset;
+                buffer = spare;
+                bufferLength = 0;
+                exiting = closed;
+                out = channel;
+                writing = true;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean synced = false;
+            IOException error = null;
+            try {
+                if (length > 0) {
+                    ByteBuffer data = ByteBuffer.wrap(batch, 0, length);
+                    while (data.hasRemaining()) out.write(data);
+                }
+                FsyncPolicy policy = fsyncPolicy;
+                long now = System.nanoTime();
+                boolean due = policy == FsyncPolicy.ALWAYS && length > 0
+                        || policy == FsyncPolicy.EVERYSEC && now - lastFsync >= EVERYSEC_NANOS
+                        || exiting;
+                if (due && target > syncedOffset) {
+                    out.force(false);
+                    lastFsync = now;
+                    synced = true;
+                }
+            } catch (IOException e) {
+                // 这批数据不一定在文件中：不推进写入位置，唤醒等待者让它们收到异常
+                System.err.println("Failed to append to AOF: " + e.getMessage());
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                spare = batch.length > MAX_REUSED_BUFFER_SIZE ? new byte[INITIAL_BUFFER_SIZE] : batch;
+                writing = false;
+                if (error != null) {
+                    failure = error;
+                    progress.signalAll();
+                    return;
+                }
+                writtenOffset = Math.max(writtenOffset, target); // 期间可能已 switchTo 新文件
+                if (synced) {
+                    syncedOffset = Math.max(syncedOffset, target);
+                    fsyncCount++;
+                }
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (exiting) return;
+        }
+    }
+}
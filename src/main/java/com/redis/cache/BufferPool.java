@@ -0,0 +1,45 @@
+package com.redis.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// 固定大小的直接缓冲区池：连接只在有未处理数据时持有缓冲区，空闲连接不占内存
+// 直接缓冲区分配和回收都很贵，用完归还复用；不是线程安全的，每个事件循环线程一个
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private long allocated;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be positive");
+        if (maxPooled < 0) throw new IllegalArgumentException("Max pooled cannot be negative");
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            allocated++;
+        }
+        return buffer;
+    }
+
+    // 只回收标准大小的缓冲区，为超长请求临时扩容的缓冲区交给 GC
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || free.size() >= maxPooled) return;
+        buffer.clear();
+        free.push(buffer);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    // 累计新分配的缓冲区数（用于测试）
+    public long getAllocatedCount() {
+        return allocated;
+    }
+}
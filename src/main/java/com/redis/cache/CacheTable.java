@@ -0,0 +1,21 @@
+package com.redis.cache;
+
+import java.util.function.BiConsumer;
+
+// HashMapCache 底层键索引的最小接口，便于在不同哈希表实现之间切换
+public interface CacheTable<K, V> {
+    V get(K key);
+
+    void put(K key, V value);
+
+    V remove(K key);
+
+    int size();
+
+    // 随机返回一个值/键，供采样淘汰和主动过期使用；表为空时返回 null
+    V randomValue();
+
+    K randomKey();
+
+    void forEach(BiConsumer<? super K, ? super V> action);
+}
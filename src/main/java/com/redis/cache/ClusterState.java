@@ -0,0 +1,317 @@
+package com.redis.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 与 Redis Cluster 相同的 16384 个哈希槽：键按 CRC16 分到槽位，每个槽位归一个节点所有
+// 节点以 host:port 作为 ID；不拥有键所在槽位时回复 MOVED，槽位迁出期间本地没有的键回复 ASK
+// 迁移由源节点的后台线程按批推送：锁内取出一批键并标记为迁移中，锁外用 ASKING + SET 发给目标节点，
+// 收到确认后再在锁内删除；迁移中的键只读，写入回复 TRYAGAIN，两个节点都不会因迁移长时间阻塞
+// 锁顺序：先缓存再本对象；RespServer 在缓存锁内调用 route，检查与执行命令是原子的
+public class ClusterState {
+    public static final int SLOTS = 16384;
+    private static final int MIGRATE_BATCH = 100; // 与 redis-cli --cluster reshard 的 --cluster-pipeline 默认值相同
+    private static final int MIGRATE_TIMEOUT_MILLIS = 10_000;
+
+    private final HashMapCache cache;
+    private final String myself;
+    private final String[] owners = new String[SLOTS];
+    private final String[] migrating = new String[SLOTS]; // 迁出的目标节点
+    private final String[] importing = new String[SLOTS]; // 迁入的源节点
+    private final Set<String> inFlight = new HashSet<>(); // 已发出、等待目标确认的键
+    private final ExecutorService migrator; // 槽位逐个迁移
+    private int pendingMigrations;
+    private long migrateFailures;
+    private String lastMigrateError; // 最近一次失败的迁移，CLUSTER INFO 中可见
+
+    public ClusterState(HashMapCache cache, String myself) {
+        if (cache == null) throw new IllegalArgumentException("Cache cannot be null");
+        this.cache = cache;
+        this.myself = myself;
+        cache.enableSlotIndex();
+        this.migrator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-migrate-" + myself);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 与 Redis keyHashSlot 相同：有非空的 {hash tag} 时只对其中的内容计算 CRC16
+    public static int keySlot(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int from = 0, to = bytes.length;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '{') continue;
+            for (int j = i + 1; j < bytes.length; j++) {
+                if (bytes[j] == '}') {
+                    if (j > i + 1) {
+                        from = i + 1;
+                        to = j;
+                    }
+                    break;
+                }
+            }
+            break;
+        }
+        return crc16(bytes, from, to) & (SLOTS - 1);
+    }
+
+    // CRC16/XMODEM，与 Redis crc16.c 相同
+    private static int crc16(byte[] bytes, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= (bytes[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+        }
+        return crc & 0xFFFF;
+    }
+
+    public String getMyself() {
+        return myself;
+    }
+
+    public synchronized String ownerOf(int slot) {
+        return owners[checkSlot(slot)];
+    }
+
+    // CLUSTER ADDSLOTSRANGE：把未分配的槽位分给本节点
+    public synchronized void addSlots(int start, int end) {
+        checkSlot(start);
+        checkSlot(end);
+        if (start > end) throw new IllegalArgumentException("Invalid slot range");
+        for (int slot = start; slot <= end; slot++) {
+            if (owners[slot] != null) throw new IllegalArgumentException("Slot " + slot + " is already busy");
+        }
+        for (int slot = start; slot <= end; slot++) owners[slot] = myself;
+    }
+
+    // CLUSTER SETSLOT slot IMPORTING source：接受带 ASKING 的请求
+    public synchronized void setImporting(int slot, String source) {
+        if (myself.equals(owners[checkSlot(slot)])) throw new IllegalArgumentException("I'm already the owner of hash slot " + slot);
+        importing[slot] = source;
+    }
+
+    // CLUSTER SETSLOT slot MIGRATING target：本地没有的键回复 ASK，并在后台把现有的键推送给目标节点，
+    // 推送完后把槽位交给目标节点
+    public synchronized void setMigrating(int slot, String target) {
+        if (!myself.equals(owners[checkSlot(slot)])) throw new IllegalArgumentException("I'm not the owner of hash slot " + slot);
+        if (target.equals(myself)) throw new IllegalArgumentException("Can't migrate hash slot to myself");
+        if (target.equals(migrating[slot])) return;
+        migrating[slot] = target;
+        pendingMigrations++;
+        migrator.execute(() -> {
+            try {
+                migrate(slot, target);
+            } finally {
+                synchronized (this) {
+                    pendingMigrations--;
+                    notifyAll();
+                }
+            }
+        });
+    }
+
+    // CLUSTER SETSLOT slot NODE node：迁移完成后由源节点和管理端通知，清除迁移状态
+    public void setNode(int slot, String node) {
+        checkSlot(slot);
+        int keys = cache.countKeysInSlot(slot); // 锁顺序先缓存，在进入本对象的锁之前取
+        synchronized (this) {
+            if (myself.equals(owners[slot]) && !node.equals(myself) && keys > 0) {
+                throw new IllegalArgumentException("Can't assign hashslot " + slot + " to a different node while I still hold keys for this hash slot");
+            }
+            owners[slot] = node;
+            if (node.equals(myself)) importing[slot] = null;
+            migrating[slot] = null;
+        }
+    }
+
+    // CLUSTER SETSLOT slot STABLE：取消迁入或迁出，进行中的迁移在下一批之前停止
+    public synchronized void setStable(int slot) {
+        migrating[checkSlot(slot)] = null;
+        importing[slot] = null;
+    }
+
+    public synchronized String migratingTo(int slot) {
+        return migrating[checkSlot(slot)];
+    }
+
+    public synchronized String importingFrom(int slot) {
+        return importing[checkSlot(slot)];
+    }
+
+    // 等待已开始的迁移全部结束
+    public synchronized void awaitMigrations() {
+        while (pendingMigrations > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // 连续且归属相同的槽位合并成 {起始, 结束, 节点}，用于 CLUSTER SLOTS
+    public synchronized List<Object[]> slotRanges() {
+        List<Object[]> ranges = new ArrayList<>();
+        int start = 0;
+        for (int slot = 1; slot <= SLOTS; slot++) {
+            if (slot < SLOTS && same(owners[slot], owners[start])) continue;
+            if (owners[start] != null) ranges.add(new Object[]{start, slot - 1, owners[start]});
+            start = slot;
+        }
+        return ranges;
+    }
+
+    // 判断一条命令能否在本节点执行，可以时返回 null，否则返回重定向或错误回复；调用方持有缓存锁
+    // 所有键须在同一槽位。迁出中的槽位：键都在本地时执行（写迁移中的键回复 TRYAGAIN），都不在时 ASK 到目标节点
+    public synchronized String route(List<String> keys, boolean write, boolean asking) {
+        int slot = keySlot(keys.get(0));
+        for (int i = 1; i < keys.size(); i++) {
+            if (keySlot(keys.get(i)) != slot) return "CROSSSLOT Keys in request don't hash to the same slot";
+        }
+        String owner = owners[slot];
+        if (owner == null) return "CLUSTERDOWN Hash slot not served";
+        if (!owner.equals(myself)) {
+            if (asking && importing[slot] != null) return null;
+            return "MOVED " + slot + " " + owner;
+        }
+        String target = migrating[slot];
+        if (target == null) return null;
+        int missing = 0;
+        boolean moving = false;
+        for (String key : keys) {
+            if (!cache.exists(key)) missing++;
+            moving |= inFlight.contains(key);
+        }
+        if (missing == keys.size()) return "ASK " + slot + " " + target;
+        if (missing > 0 || write && moving) return "TRYAGAIN Multiple keys request during rehashing of slot";
+        return null;
+    }
+
+    // 源节点后台线程：逐批推送槽位中的键，全部确认后把槽位交给目标节点
+    private void migrate(int slot, String target) {
+        String[] address = target.split(":");
+        try (Socket socket = new Socket(address[0], Integer.parseInt(address[1]))) {
+            socket.setSoTimeout(MIGRATE_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            List<String[]> batch = new ArrayList<>();
+            List<String> keys = new ArrayList<>();
+            while (true) {
+                batch.clear();
+                keys.clear();
+                synchronized (cache) {
+                    synchronized (this) {
+                        if (!target.equals(migrating[slot])) return; // 已被 STABLE 取消
+                        long now = System.currentTimeMillis();
+                        cache.forEachKeyInSlot(slot, MIGRATE_BATCH, (key, value, expiry) -> {
+                            batch.add(expiry == ExpiryCache.NO_EXPIRY ? new String[]{"SET", key, value}
+                                    : new String[]{"SET", key, value, "PX", Long.toString(Math.max(1, expiry - now))});
+                            keys.add(key);
+                        });
+                        if (keys.isEmpty()) break;
+                        inFlight.addAll(keys);
+                    }
+                }
+                try {
+                    for (String[] command : batch) {
+                        out.write(RespClient.command("ASKING"));
+                        out.write(RespClient.command(command));
+                    }
+                    out.flush();
+                    for (int i = 0; i < batch.size() * 2; i++) expectOk(in);
+                    synchronized (cache) {
+                        cache.deleteAll(keys);
+                    }
+                } finally {
+                    synchronized (this) {
+                        inFlight.removeAll(keys);
+                    }
+                }
+            }
+            // 先让目标节点接管，再更新本地；之间到达的请求本地都没有键，会被 ASK 到目标节点
+            out.write(RespClient.command("CLUSTER", "SETSLOT", Integer.toString(slot), "NODE", target));
+            out.flush();
+            expectOk(in);
+            synchronized (this) {
+                if (!target.equals(migrating[slot])) return;
+                owners[slot] = target;
+                migrating[slot] = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            // 与 STABLE 相同清除迁出状态：已确认的键留在目标节点，其余仍在本地，管理端可以重新发起迁移
+            String error = "slot " + slot + " to " + target + ": " + e.getMessage();
+            System.err.println("Failed to migrate " + error);
+            synchronized (this) {
+                if (target.equals(migrating[slot])) migrating[slot] = null;
+                migrateFailures++;
+                lastMigrateError = error;
+            }
+        }
+    }
+
+    public synchronized long getMigrateFailures() {
+        return migrateFailures;
+    }
+
+    // 没有失败过时返回 null
+    public synchronized String getLastMigrateError() {
+        return lastMigrateError;
+    }
+
+    // CLUSTER INFO：Redis 的前两项加上迁移状态和失败次数
+    public synchronized String info() {
+        int assigned = 0, migratingSlots = 0, importingSlots = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (owners[slot] != null) assigned++;
+            if (migrating[slot] != null) migratingSlots++;
+            if (importing[slot] != null) importingSlots++;
+        }
+        StringBuilder info = new StringBuilder()
+                .append("cluster_state:").append(assigned == SLOTS ? "ok" : "fail").append("\r\n")
+                .append("cluster_slots_assigned:").append(assigned).append("\r\n")
+                .append("cluster_slots_migrating:").append(migratingSlots).append("\r\n")
+                .append("cluster_slots_importing:").append(importingSlots).append("\r\n")
+                .append("cluster_migrate_failures:").append(migrateFailures).append("\r\n");
+        if (lastMigrateError != null) info.append("cluster_migrate_last_error:").append(lastMigrateError).append("\r\n");
+        return info.toString();
+    }
+
+    // 读一条简单回复，不是 +OK 时抛 IllegalStateException
+    private static void expectOk(InputStream in) throws IOException {
+        int type = in.read();
+        String line = RespClient.readLine(in);
+        if (type != '+' || !line.equals("OK")) {
+            throw new IllegalStateException("Unexpected reply " + (char) type + line);
+        }
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int checkSlot(int slot) {
+        if (slot < 0 || slot >= SLOTS) throw new IllegalArgumentException("Invalid or out of range slot");
+        return slot;
+    }
+
+    // 停止迁移线程；进行中的一批会被打断在连接超时之后
+    public void shutdown() {
+        migrator.shutdownNow();
+    }
+}
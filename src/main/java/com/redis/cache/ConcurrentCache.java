@@ -0,0 +1,151 @@
+package com.redis.cache;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 线程安全的分段缓存：键空间按哈希分到多个段，每段一把读写锁
+// 读只持共享锁并写访问时间戳，淘汰在写锁下对本段做采样 LRU
+public class ConcurrentCache {
+    private static class Node {
+        final String key;
+        String value; // value/expiry 只在写锁下修改，读锁保证可见性
+        long expiry;
+        volatile long accessTime; // 持读锁的线程也会并发更新
+        Node(String key, String value, long expiry) {
+            this.key = key;
+            this.value = value;
+            this.expiry = expiry;
+            this.accessTime = System.currentTimeMillis();
+        }
+    }
+
+    private static class Segment {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // 开放寻址表的 get 不修改结构（不像 CustomHashMap 会顺带 rehash），可在读锁下并发查找
+        final OpenAddressingHashMap<String, Node> table = new OpenAddressingHashMap<>();
+        final EvictionPool<Node> evictionPool = new EvictionPool<>(EVICTION_POOL_SIZE, node -> table.get(node.key) == node);
+        final int capacity;
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    private static final int EVICTION_POOL_SIZE = 16;
+    private static final int EVICTION_SAMPLES = 5;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    public ConcurrentCache(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public ConcurrentCache(int capacity, int concurrencyLevel) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        if (concurrencyLevel <= 0) throw new IllegalArgumentException("Concurrency level must be positive");
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel && segmentCount * 2 <= capacity) segmentCount <<= 1;
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        // 余数分给前几个段，各段容量之和正好是 capacity
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0));
+        }
+    }
+
+    public String get(String key) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        Segment segment = segmentFor(key);
+        long now = System.currentTimeMillis();
+        Node node;
+        segment.lock.readLock().lock();
+        try {
+            node = segment.table.get(key);
+            if (node != null && now <= node.expiry) {
+                node.accessTime = now;
+                return node.value;
+            }
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+        if (node != null) {
+            // 惰性删除需要写锁，升级前重新确认节点没被其他线程替换
+            segment.lock.writeLock().lock();
+            try {
+                if (segment.table.get(key) == node) segment.table.remove(key);
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+        return null;
+    }
+
+    public void put(String key, String value, long ttlMillis) {
+        if (key == null || value == null) throw new IllegalArgumentException("Key or value cannot be null");
+        if (ttlMillis <= 0) throw new IllegalArgumentException("TTL must be positive");
+        Segment segment = segmentFor(key);
+        long now = System.currentTimeMillis();
+        segment.lock.writeLock().lock();
+        try {
+            Node node = segment.table.get(key);
+            if (node != null) {
+                node.value = value;
+                node.expiry = now + ttlMillis;
+                node.accessTime = now;
+                return;
+            }
+            if (segment.table.size() >= segment.capacity) {
+                evict(segment, now);
+            }
+            segment.table.put(key, new Node(key, value, now + ttlMillis));
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    public String remove(String key) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        Segment segment = segmentFor(key);
+        segment.lock.writeLock().lock();
+        try {
+            Node node = segment.table.remove(key);
+            return node == null ? null : node.value;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.readLock().lock();
+            try {
+                size += segment.table.size();
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    // 调用方已持有写锁：采样本段若干键入淘汰池，淘汰空闲最久者，过期键优先
+    private void evict(Segment segment, long now) {
+        for (int i = 0; i < EVICTION_SAMPLES; i++) {
+            Node node = segment.table.randomValue();
+            if (node == null) break;
+            segment.evictionPool.offer(node, now > node.expiry ? Long.MAX_VALUE : now - node.accessTime);
+        }
+        Node victim = segment.evictionPool.pollBest();
+        if (victim != null) {
+            segment.table.remove(victim.key);
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & segmentMask];
+    }
+}
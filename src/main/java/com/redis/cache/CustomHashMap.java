@@ -1,5 +1,10 @@
 package com.redis.cache;
-public class CustomHashMap<K, V> {
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+public class CustomHashMap<K, V> implements CacheTable<K, V> {
     private static class Entry<K, V> {
         K key;
         V value;
@@ -12,68 +17,203 @@ public class CustomHashMap<K, V> {
         }
     }
 
-    private Entry<K, V>[] table;
+    private Entry<K, V>[] table; // 主表（Redis 的 ht[0]）
+    private Entry<K, V>[] rehashTable; // 渐进式 rehash 的目标表（ht[1]），未 rehash 时为 null
+    private int rehashIndex = -1; // 下一个待迁移的桶，-1 表示当前未在 rehash
     private int size;
-    private int capacity;
     private final float loadFactor;
     private static final int INITIAL_CAPACITY = 16;
     private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    private static final float MIN_FILL_RATIO = 0.1f; // 填充率低于 10% 时收缩
+    private static final int BUCKETS_PER_OPERATION = 1; // 每次 get/put/remove 顺带迁移的桶数
+    private static final int EMPTY_VISITS_PER_BUCKET = 10; // 每迁移一个桶最多跳过的空桶数
 
-    @SuppressWarnings("unchecked")
     public CustomHashMap() {
-        this.capacity = INITIAL_CAPACITY;
         this.loadFactor = DEFAULT_LOAD_FACTOR;
-        this.table = new Entry[INITIAL_CAPACITY];
+        this.table = newTable(INITIAL_CAPACITY);
     }
 
+    @Override
     public V get(K key) {
         if (key == null) throw new IllegalArgumentException("Key cannot be null");
-        int hash = hash(key);
-        int index = hash & (capacity - 1);
-        for (Entry<K, V> entry = table[index]; entry != null; entry = entry.next) {
-            if (entry.hash == hash && (key.equals(entry.key))) {
-                return entry.value;
-            }
-        }
-        return null;
+        if (isRehashing()) rehashStep(BUCKETS_PER_OPERATION);
+        Entry<K, V> entry = findEntry(key, hash(key));
+        return entry == null ? null : entry.value;
     }
 
+    @Override
     public void put(K key, V value) {
         if (key == null || value == null) throw new IllegalArgumentException("Key or value cannot be null");
+        if (isRehashing()) rehashStep(BUCKETS_PER_OPERATION);
         int hash = hash(key);
-        int index = hash & (capacity - 1);
-
-        for (Entry<K, V> entry = table[index]; entry != null; entry = entry.next) {
-            if (entry.hash == hash && key.equals(entry.key)) {
-                entry.value = value;
-                return;
-            }
+        Entry<K, V> entry = findEntry(key, hash);
+        if (entry != null) {
+            entry.value = value;
+            return;
         }
 
-        if (size >= capacity * loadFactor) {
-            resize();
-            index = hash & (capacity - 1);
+        if (!isRehashing() && size >= table.length * loadFactor) {
+            startRehash(table.length * 2);
         }
 
+        // rehash 期间新键只写入目标表，旧表只减不增
+        Entry<K, V>[] target = isRehashing() ? rehashTable : table;
+        int index = hash & (target.length - 1);
         Entry<K, V> newEntry = new Entry<>(key, value, hash);
-        newEntry.next = table[index];
-        table[index] = newEntry;
+        newEntry.next = target[index];
+        target[index] = newEntry;
         size++;
     }
 
+    @Override
     public V remove(K key) {
         if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        if (isRehashing()) rehashStep(BUCKETS_PER_OPERATION);
         int hash = hash(key);
-        int index = hash & (capacity - 1);
+        V removed = removeFrom(table, key, hash);
+        if (removed == null && isRehashing()) {
+            removed = removeFrom(rehashTable, key, hash);
+        }
+        if (removed != null) {
+            size--;
+            shrinkIfSparse();
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public V randomValue() {
+        Entry<K, V> entry = randomEntry();
+        return entry == null ? null : entry.value;
+    }
+
+    @Override
+    public K randomKey() {
+        Entry<K, V> entry = randomEntry();
+        return entry == null ? null : entry.key;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEachIn(table, action);
+        if (isRehashing()) forEachIn(rehashTable, action);
+    }
+
+    // 与 forEach 相同，action 返回 false 时提前停止
+    public void forEachWhile(BiPredicate<? super K, ? super V> action) {
+        if (whileIn(table, action) && isRehashing()) whileIn(rehashTable, action);
+    }
+
+    public boolean isRehashing() {
+        return rehashIndex != -1;
+    }
+
+    // 迁移最多 n 个非空桶，返回 rehash 是否仍未完成
+    public boolean rehashStep(int n) {
+        if (!isRehashing()) return false;
+        int emptyVisits = n * EMPTY_VISITS_PER_BUCKET;
+        while (n > 0 && rehashIndex < table.length) {
+            Entry<K, V> entry = table[rehashIndex];
+            if (entry == null) {
+                rehashIndex++;
+                if (--emptyVisits == 0) break;
+                continue;
+            }
+            while (entry != null) {
+                Entry<K, V> next = entry.next;
+                int index = entry.hash & (rehashTable.length - 1);
+                entry.next = rehashTable[index];
+                rehashTable[index] = entry;
+                entry = next;
+            }
+            table[rehashIndex++] = null;
+            n--;
+        }
+        if (rehashIndex >= table.length) {
+            table = rehashTable;
+            rehashTable = null;
+            rehashIndex = -1;
+            return false;
+        }
+        return true;
+    }
+
+    // 空闲时调用：在给定毫秒数内尽量推进 rehash，返回迁移的批次数
+    public int rehashMilliseconds(long millis) {
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        int rounds = 0;
+        while (rehashStep(100)) {
+            rounds++;
+            if (System.nanoTime() > deadline) break;
+        }
+        return rounds;
+    }
+
+    // 与 Redis dictGetRandomKey 相同：先随机找一个非空桶，再在链上随机取一个
+    private Entry<K, V> randomEntry() {
+        if (size == 0) return null;
+        if (isRehashing()) rehashStep(BUCKETS_PER_OPERATION);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Entry<K, V> bucket;
+        do {
+            if (isRehashing()) {
+                // 旧表中 rehashIndex 之前的桶已迁空，跳过它们
+                int index = rehashIndex + random.nextInt(table.length + rehashTable.length - rehashIndex);
+                bucket = index < table.length ? table[index] : rehashTable[index - table.length];
+            } else {
+                bucket = table[random.nextInt(table.length)];
+            }
+        } while (bucket == null);
+        int length = 0;
+        for (Entry<K, V> entry = bucket; entry != null; entry = entry.next) length++;
+        for (int i = random.nextInt(length); i > 0; i--) bucket = bucket.next;
+        return bucket;
+    }
+
+    private Entry<K, V> findEntry(K key, int hash) {
+        for (Entry<K, V> entry = table[hash & (table.length - 1)]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && key.equals(entry.key)) return entry;
+        }
+        if (isRehashing()) {
+            for (Entry<K, V> entry = rehashTable[hash & (rehashTable.length - 1)]; entry != null; entry = entry.next) {
+                if (entry.hash == hash && key.equals(entry.key)) return entry;
+            }
+        }
+        return null;
+    }
+
+    private void forEachIn(Entry<K, V>[] tab, BiConsumer<? super K, ? super V> action) {
+        for (Entry<K, V> bucket : tab) {
+            for (Entry<K, V> entry = bucket; entry != null; entry = entry.next) {
+                action.accept(entry.key, entry.value);
+            }
+        }
+    }
+
+    private boolean whileIn(Entry<K, V>[] tab, BiPredicate<? super K, ? super V> action) {
+        for (Entry<K, V> bucket : tab) {
+            for (Entry<K, V> entry = bucket; entry != null; entry = entry.next) {
+                if (!action.test(entry.key, entry.value)) return false;
+            }
+        }
+        return true;
+    }
+
+    private V removeFrom(Entry<K, V>[] tab, K key, int hash) {
+        int index = hash & (tab.length - 1);
         Entry<K, V> prev = null;
-        for (Entry<K, V> entry = table[index]; entry != null; entry = entry.next) {
+        for (Entry<K, V> entry = tab[index]; entry != null; entry = entry.next) {
             if (entry.hash == hash && key.equals(entry.key)) {
                 if (prev == null) {
-                    table[index] = entry.next;
+                    tab[index] = entry.next;
                 } else {
                     prev.next = entry.next;
                 }
-                size--;
                 return entry.value;
             }
             prev = entry;
@@ -81,8 +221,13 @@ public class CustomHashMap<K, V> {
         return null;
     }
 
-    public int size() {
-        return size;
+    private void shrinkIfSparse() {
+        if (isRehashing() || table.length <= INITIAL_CAPACITY) return;
+        if (size < table.length * MIN_FILL_RATIO) {
+            int newCapacity = INITIAL_CAPACITY;
+            while (newCapacity < size * 2) newCapacity <<= 1;
+            if (newCapacity < table.length) startRehash(newCapacity);
+        }
     }
 
     private int hash(K key) {
@@ -90,21 +235,18 @@ public class CustomHashMap<K, V> {
         return (h ^ (h >>> 16)) & 0x7fffffff; // 优化分散性，确保正数
     }
 
-    @SuppressWarnings("unchecked")
-    private void resize() {
+    // 只分配目标表，桶的迁移分摊到后续操作中完成
+    private void startRehash(int newCapacity) {
         try {
-            Entry<K, V>[] oldTable = table;
-            capacity *= 2;
-            table = new Entry[capacity];
-            size = 0;
-            for (Entry<K, V> entry : oldTable) {
-                while (entry != null) {
-                    put(entry.key, entry.value);
-                    entry = entry.next;
-                }
-            }
+            rehashTable = newTable(newCapacity);
+            rehashIndex = 0;
         } catch (OutOfMemoryError e) {
             throw new RuntimeException("Failed to resize hashmap due to insufficient memory", e);
         }
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // 泛型数组只能按原始类型创建
+    private static <K, V> Entry<K, V>[] newTable(int capacity) {
+        return new Entry[capacity];
+    }
+}
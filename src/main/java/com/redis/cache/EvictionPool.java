@@ -0,0 +1,79 @@
+package com.redis.cache;
+
+import java.util.function.Predicate;
+
+// Redis 风格的淘汰池：按分数升序保存最近几轮采样里最该淘汰的候选，分数越高越先淘汰
+// 池中候选可能在两次淘汰之间被删除或覆盖，live 判断候选是否仍在缓存中
+public class EvictionPool<T> {
+    private final Object[] items;
+    private final long[] scores;
+    private final Predicate<? super T> live;
+    private int size;
+
+    public EvictionPool(int capacity, Predicate<? super T> live) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        this.items = new Object[capacity];
+        this.scores = new long[capacity];
+        this.live = live;
+    }
+
+    public void offer(T item, long score) {
+        // 同一候选被重复采样时只保留最新分数
+        for (int i = 0; i < size; i++) {
+            if (items[i] == item) {
+                removeAt(i);
+                break;
+            }
+        }
+        if (size == items.length) {
+            removeDead(); // 失效的候选分数再高也不能挤掉新采样的
+            if (size == items.length) {
+                if (score <= scores[0]) return; // 比池中最不该淘汰的还要新，丢弃
+                removeAt(0);
+            }
+        }
+        int pos = size;
+        while (pos > 0 && scores[pos - 1] > score) {
+            items[pos] = items[pos - 1];
+            scores[pos] = scores[pos - 1];
+            pos--;
+        }
+        items[pos] = item;
+        scores[pos] = score;
+        size++;
+    }
+
+    // 取出分数最高且仍在缓存中的候选，途中遇到的失效候选直接丢弃
+    @SuppressWarnings("unchecked")
+    public T pollBest() {
+        while (size > 0) {
+            T item = (T) items[--size];
+            items[size] = null;
+            if (live.test(item)) return item;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removeDead() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!live.test((T) items[i])) continue;
+            items[kept] = items[i];
+            scores[kept] = scores[i];
+            kept++;
+        }
+        for (int i = kept; i < size; i++) items[i] = null;
+        size = kept;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(items, index + 1, items, index, size - index - 1);
+        System.arraycopy(scores, index + 1, scores, index, size - index - 1);
+        items[--size] = null;
+    }
+}
@@ -1,87 +1,208 @@
 package com.redis.cache;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class ExpiryCache extends SimpleCache {
-    private Map<String, Long> expiryTimes; // 存储键的过期时间戳
+    // 主动过期方式：时间轮精确到期，或 Redis 式自适应随机抽样（不为每个键维护定时器）
+    public enum ExpirePolicy { TIMING_WHEEL, ADAPTIVE_SAMPLING }
+
+    // 永不过期的键使用的过期时间（SET 不带 EX/PX）
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    // 遍历键空间时的回调，expiry 为绝对过期时间戳
+    public interface EntryVisitor {
+        void visit(String key, String value, long expiry);
+    }
+
+    private CustomHashMap<String, Long> expiryTimes; // 存储键的过期时间戳，支持随机抽样
+    private TimingWheel<String> expiryWheel; // 过期索引，到期清理只处理真正到期的键
+    private ExpirePolicy expirePolicy = ExpirePolicy.TIMING_WHEEL;
+    private ActiveExpireCycle activeExpireCycle = new ActiveExpireCycle();
+    private ActiveExpireCycle.Keyspace expireKeyspace;
+    private long expireTicks;
     private ScheduledExecutorService scheduler; // 定时清理任务
+    public static final long EXPIRE_INTERVAL_MILLIS = 10;
+    private static final int SLOW_CYCLE_TICKS = 10; // 每 100 毫秒一次慢周期，与 Redis 默认 hz 10 相同
 
     public ExpiryCache(int capacity) {
         super(capacity);
-        this.expiryTimes = new HashMap<>();
+        this.expiryTimes = new CustomHashMap<>();
+        this.expiryWheel = new TimingWheel<>();
+        this.expireKeyspace = new ActiveExpireCycle.Keyspace() {
+            @Override
+            public int ttlKeyCount() {
+                return ExpiryCache.this.ttlKeyCount();
+            }
+
+            @Override
+            public boolean expireRandomKey(long now) {
+                return ExpiryCache.this.expireRandomKey(now);
+            }
+        };
         this.scheduler = Executors.newScheduledThreadPool(1);
-        // 每10秒清理一次过期键
-        scheduler.scheduleAtFixedRate(this::removeExpiredKeys, 10, 10, TimeUnit.SECONDS);
+        // 每10毫秒执行一次主动过期
+        scheduler.scheduleAtFixedRate(this::activeExpireTick, EXPIRE_INTERVAL_MILLIS, EXPIRE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     }
 
-    // 重载 put 方法，支持 TTL
-    public void put(String key, String value, long ttlMillis) {
+    // 重载 put 方法，支持 TTL；与后台清理线程共享 map，需加锁
+    public synchronized void put(String key, String value, long ttlMillis) {
         if (key == null || value == null) {
             throw new IllegalArgumentException("Key or value cannot be null");
         }
         if (ttlMillis <= 0) {
             throw new IllegalArgumentException("TTL must be positive");
         }
+        putWithExpiry(key, value, System.currentTimeMillis() + ttlMillis);
+    }
 
+    // 按绝对过期时间写入，AOF 恢复时也走这里
+    protected synchronized void putWithExpiry(String key, String value, long expiry) {
         // 检查缓存是否已满，尝试移除过期键
-        if (getCache().size() >= super.size()) {
+        if (!getCache().containsKey(key) && getCache().size() >= capacity()) {
             removeRandomExpiredKey();
         }
 
         super.put(key, value);
-        expiryTimes.put(key, System.currentTimeMillis() + ttlMillis);
+        expiryTimes.put(key, expiry);
+        scheduleExpiry(key, expiry);
     }
 
     // 重写 get 方法，实现惰性删除
     @Override
-    public String get(String key) {
+    public synchronized String get(String key) {
         if (key == null) {
             throw new IllegalArgumentException("Key cannot be null");
         }
         Long expiry = expiryTimes.get(key);
         if (expiry != null && System.currentTimeMillis() > expiry) {
-            super.remove(key);
-            expiryTimes.remove(key);
+            removeKey(key);
             return null;
         }
         return super.get(key);
     }
 
-    // 定期清理过期键
-    public void removeExpiredKeys() {
-        expiryTimes.entrySet().removeIf(entry -> {
-            if (System.currentTimeMillis() > entry.getValue()) {
-                super.remove(entry.getKey());
-                return true;
-            }
-            return false;
+    // 定期清理过期键：时间轮模式推进时间轮，抽样模式跑一次慢周期
+    public synchronized void removeExpiredKeys() {
+        if (expirePolicy == ExpirePolicy.TIMING_WHEEL) {
+            expiryWheel.advance(System.currentTimeMillis(), this::expireKey);
+        } else {
+            activeExpireCycle.runSlowCycle(expireKeyspace);
+        }
+    }
+
+    // 切到抽样模式时丢弃时间轮；反过来已有的键不在时间轮里，只允许在空缓存上切换
+    public synchronized void setExpirePolicy(ExpirePolicy policy) {
+        if (policy == ExpirePolicy.TIMING_WHEEL && expirePolicy != ExpirePolicy.TIMING_WHEEL && size() > 0) {
+            throw new IllegalStateException("Cannot switch to TIMING_WHEEL on a non-empty cache");
+        }
+        if (policy == ExpirePolicy.ADAPTIVE_SAMPLING) {
+            expiryWheel = new TimingWheel<>();
+        }
+        this.expirePolicy = policy;
+    }
+
+    // 抽样参数和统计（抽样键数、过期键数、耗时）
+    public ActiveExpireCycle getActiveExpireCycle() {
+        return activeExpireCycle;
+    }
+
+    // 子类登记自身节点的过期时间，到期后回调 expireKey
+    protected void scheduleExpiry(String key, long expiry) {
+        if (expiry == NO_EXPIRY) {
+            expiryWheel.cancel(key); // 可能之前带过 TTL
+        } else if (expirePolicy == ExpirePolicy.TIMING_WHEEL) {
+            expiryWheel.schedule(key, expiry);
+        }
+    }
+
+    protected void cancelExpiry(String key) {
+        expiryWheel.cancel(key);
+    }
+
+    // 因容量不足淘汰了一个未过期的键，AofCache 据此记录删除
+    protected void evicted(String key) {
+    }
+
+    // 时间轮到期回调，子类重写以删除自己的节点
+    protected void expireKey(String key) {
+        Long expiry = expiryTimes.get(key);
+        if (expiry != null && System.currentTimeMillis() >= expiry) {
+            removeKey(key);
+        }
+    }
+
+    protected Long expiryOf(String key) {
+        return expiryTimes.get(key);
+    }
+
+    // 遍历当前所有键（调用方持有锁），子类重写以遍历自己的节点
+    protected void forEachEntry(EntryVisitor visitor) {
+        getCache().forEach((key, value) -> {
+            Long expiry = expiryTimes.get(key);
+            if (expiry != null) visitor.visit(key, value, expiry);
         });
     }
 
-    // 随机移除一个过期键
+    // 抽样模式的两个钩子，子类重写以抽样自己的节点
+    protected int ttlKeyCount() {
+        return expiryTimes.size();
+    }
+
+    protected boolean expireRandomKey(long now) {
+        String key = expiryTimes.randomKey();
+        if (key == null) return false;
+        Long expiry = expiryTimes.get(key);
+        if (expiry == null || now <= expiry) return false;
+        removeKey(key);
+        return true;
+    }
+
+    // 由调用方驱动主动过期（如 ShardedCache 的分片线程）：停掉内部的定时线程，之后调用方每 EXPIRE_INTERVAL_MILLIS 调用一次 activeExpireTick
+    public void stopExpireScheduler() {
+        scheduler.shutdown();
+    }
+
+    // 慢周期之间，只有上一周期耗尽预算时才插入快周期
+    public synchronized void activeExpireTick() {
+        if (expirePolicy == ExpirePolicy.TIMING_WHEEL) {
+            expiryWheel.advance(System.currentTimeMillis(), this::expireKey);
+        } else if (++expireTicks % SLOW_CYCLE_TICKS == 0) {
+            activeExpireCycle.runSlowCycle(expireKeyspace);
+        } else {
+            activeExpireCycle.runFastCycle(expireKeyspace);
+        }
+    }
+
+    // 缓存已满时随机抽样有限个键找过期键腾位置，找不到再移除任意一个
     private void removeRandomExpiredKey() {
-        for (String key : expiryTimes.keySet()) {
+        long now = System.currentTimeMillis();
+        int samples = Math.min(activeExpireCycle.getKeysPerLoop(), expiryTimes.size());
+        for (int i = 0; i < samples; i++) {
+            String key = expiryTimes.randomKey();
             Long expiry = expiryTimes.get(key);
-            if (expiry != null && System.currentTimeMillis() > expiry) {
-                super.remove(key);
-                expiryTimes.remove(key);
+            if (expiry != null && now > expiry) {
+                removeKey(key);
                 return;
             }
         }
         // 若无过期键，调用父类的移除逻辑
-        if (getCache().size() >= super.size()) {
+        if (!getCache().isEmpty()) {
             String firstKey = getCache().keySet().iterator().next();
-            super.remove(firstKey);
-            expiryTimes.remove(firstKey);
+            evicted(firstKey);
+            removeKey(firstKey);
             System.out.println("No expired keys, removed key: " + firstKey);
         }
     }
 
+    protected void removeKey(String key) {
+        super.remove(key);
+        expiryTimes.remove(key);
+        expiryWheel.cancel(key);
+    }
+
     // 关闭定时任务（清理资源）
     public void shutdown() {
         scheduler.shutdown();
     }
-}
\ No newline at end of file
+}
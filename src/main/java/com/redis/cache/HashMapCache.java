@@ -1,108 +1,498 @@
 package com.redis.cache;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class HashMapCache extends MultiEvictionCache {
-    private static class Node {
-        String key, value;
-        long expiry;
-        int accessCount; // LFU
+    public enum TableType { CHAINED, OPEN_ADDRESSING } // 拉链法 CustomHashMap / 开放寻址 OpenAddressingHashMap
+
+    private static class Node extends EngineNode {
+        Object value; // 堆上的值：String 为 raw 或共享整数，byte[] 为 embstr；IntNode 和堆外模式为 null
+        int memory; // 估算的占用字节
         int referenceBit; // CLOCK
+        int lfu; // APPROX_LFU：低 8 位对数计数，其上 16 位分钟时间戳
         long insertionOrder; // FIFO
         Node prev, next;
         Node(String key, String value, long expiry) {
-            this.key = key;
+            super(key, expiry);
             this.value = value;
-            this.expiry = expiry;
-            this.accessCount = 1;
             this.referenceBit = 1;
-            this.insertionOrder = insertionCounter++;
+        }
+
+        // LFU 策略的节点返回频率链表句柄，其他策略为 null
+        LfuList.Handle<Node> frequency() {
+            return null;
+        }
+    }
+
+    // LFU 策略的节点：频率链表指针放在组合进来的 Handle 里，其他策略的节点不带这三个指针
+    private static final class LfuNode extends Node {
+        final LfuList.Handle<Node> frequency = new LfuList.Handle<>(this);
+        LfuNode(String key, String value, long expiry) {
+            super(key, value, expiry);
+        }
+
+        @Override
+        LfuList.Handle<Node> frequency() {
+            return frequency;
+        }
+    }
+
+    // 非共享整数的节点：值存为基本类型 long，不装箱成 Long；读取时转成字符串
+    private static class IntNode extends Node {
+        long number;
+        IntNode(String key, long expiry) {
+            super(key, null, expiry);
+        }
+    }
+
+    private static final class IntLfuNode extends IntNode {
+        final LfuList.Handle<Node> frequency = new LfuList.Handle<>(this);
+        IntLfuNode(String key, long expiry) {
+            super(key, expiry);
+        }
+
+        @Override
+        LfuList.Handle<Node> frequency() {
+            return frequency;
+        }
+    }
+
+    // 堆外模式的节点：键和值在 slab 中的引用，不持有键的 String（key 为 null），堆上模式的节点不带这两个字段
+    private static class OffHeapNode extends Node {
+        final long keyRef;
+        long ref = -1;
+        OffHeapNode(long keyRef, long expiry) {
+            super(null, null, expiry);
+            this.keyRef = keyRef;
+        }
+    }
+
+    private static final class OffHeapLfuNode extends OffHeapNode {
+        final LfuList.Handle<Node> frequency = new LfuList.Handle<>(this);
+        OffHeapLfuNode(long keyRef, long expiry) {
+            super(keyRef, expiry);
+        }
+
+        @Override
+        LfuList.Handle<Node> frequency() {
+            return frequency;
         }
     }
 
-    private CustomHashMap<String, Node> cache;
+    private CacheTable<String, Node> cache;
     private Node head, tail;
     private int capacity;
     private EvictionStrategy strategy;
-    private TreeMap<Integer, List<Node>> freqMap;
+    private LfuList lfuList; // LFU 频率桶
     private Node clockHand;
-    private static long insertionCounter;
+    private long insertionCounter; // FIFO 插入序号，每个实例独立，分片之间不共享
+    private final SlabAllocator slabs; // 为 null 时键和值保存在堆上
+    private CustomHashMap<Node, Node>[] slotKeys; // 集群模式下每个槽位的节点（按节点身份索引，不持有键），未启用时为 null，空槽位为 null
 
     public HashMapCache(int capacity, EvictionStrategy strategy) {
-        super(capacity, strategy);
+        this(capacity, strategy, TableType.CHAINED);
+    }
+
+    public HashMapCache(int capacity, EvictionStrategy strategy, TableType tableType) {
+        this(capacity, strategy, tableType, null);
+    }
+
+    // 堆外模式：键和值的字节保存在 slab 中，节点只保留两个 long 引用，删除和淘汰时交还块；slabs 由调用方关闭
+    // 索引固定为按字节比较键的 SlabKeyTable（忽略 tableType），过期固定用自适应抽样，堆上不长期持有键的 String；
+    // 读写、AOF 和快照仍按 String 键工作，需要时从 slab 解码。节点本身仍在堆上；LruCache 没有堆外模式
+    public HashMapCache(int capacity, EvictionStrategy strategy, TableType tableType, SlabAllocator slabs) {
+        this(capacity, strategy, tableType, slabs, null);
+    }
+
+    // directory 为 AOF 和快照文件所在目录，null 表示当前目录
+    public HashMapCache(int capacity, EvictionStrategy strategy, TableType tableType, SlabAllocator slabs, File directory) {
+        super(capacity, strategy, directory, false);
+        this.slabs = slabs;
         this.capacity = capacity;
         this.strategy = strategy;
-        this.cache = new CustomHashMap<>();
-        this.freqMap = new TreeMap<>();
+        if (slabs != null) {
+            this.cache = new SlabKeyTable<>(slabs, node -> ((OffHeapNode) node).keyRef);
+            setExpirePolicy(ExpirePolicy.ADAPTIVE_SAMPLING);
+        } else {
+            this.cache = tableType == TableType.OPEN_ADDRESSING ? new OpenAddressingHashMap<>() : new CustomHashMap<>();
+        }
+        this.lfuList = new LfuList();
         this.head = new Node(null, null, 0);
         this.tail = new Node(null, null, 0);
         head.next = tail;
         tail.prev = head;
         this.clockHand = head;
-        loadAof();
+        open();
     }
 
     @Override
-    public String get(String key) {
-        if (key == null) throw new IllegalArgumentException("Key cannot be null");
-        Node node = cache.get(key);
-        if (node == null || System.currentTimeMillis() > node.expiry) {
-            if (node != null) {
-                removeNode(node);
-                cache.remove(key);
-                if (strategy == EvictionStrategy.LFU) updateFreqMap(node, -node.accessCount);
-            }
-            return null;
+    public synchronized String get(String key) {
+        return getAt(key, System.currentTimeMillis());
+    }
+
+    // 时间轮按 String 键登记，会把键留在堆上，堆外模式只用自适应抽样
+    @Override
+    public synchronized void setExpirePolicy(ExpirePolicy policy) {
+        if (slabs != null && policy == ExpirePolicy.TIMING_WHEEL) {
+            throw new IllegalStateException("Off-heap mode requires ADAPTIVE_SAMPLING");
         }
+        super.setExpirePolicy(policy);
+    }
+
+    @Override
+    protected String getAt(String key, long now) {
+        Node node = liveNode(key, now);
+        if (node == null) return null;
         updateNodeAccess(node);
-        return node.value;
+        return valueOf(node);
     }
 
     @Override
     public void put(String key, String value, long ttlMillis) {
-        if (key == null || value == null) throw new IllegalArgumentException("Key or value cannot be null");
         if (ttlMillis <= 0) throw new IllegalArgumentException("TTL must be positive");
+        awaitAof(putAndLog(key, value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    // 不带 TTL 写入，键永不过期
+    @Override
+    public void put(String key, String value) {
+        awaitAof(putAndLog(key, value, NO_EXPIRY));
+    }
+
+    private synchronized long putAndLog(String key, String value, long expiry) {
+        if (key == null || value == null) throw new IllegalArgumentException("Key or value cannot be null");
+        validateEntry(key, value);
+        checkWritable();
+
+        Node node = upsert(key, value, expiry);
+        return appendToAof(AofFormat.OP_PUT, key, value, node.expiry);
+    }
+
+    // 不带 TTL 批量写入，键永不过期
+    public void putAll(Map<String, String> entries) {
+        awaitAof(putAllAndLog(entries, 0));
+    }
+
+    // 删除键，返回删除前键是否存在；已过期的键视为不存在
+    public boolean delete(String key) {
+        long offset;
+        synchronized (this) {
+            checkWritable();
+            if (!removeEntry(key, System.currentTimeMillis())) return false;
+            offset = appendToAof(AofFormat.OP_DEL, key, "", 0);
+        }
+        awaitAof(offset);
+        return true;
+    }
 
+    // 重新设置 TTL，返回键是否存在；与 Redis EXPIRE 相同，TTL 不为正时直接删除
+    public boolean expire(String key, long ttlMillis) {
+        if (ttlMillis <= 0) return delete(key);
+        long offset;
+        synchronized (this) {
+            checkWritable();
+            Node node = liveNode(key, System.currentTimeMillis());
+            if (node == null) return false;
+            preserve(node);
+            setExpiry(node, System.currentTimeMillis() + ttlMillis);
+            scheduleExpiry(key, node.expiry);
+            offset = appendToAof(AofFormat.OP_PUT, key, valueOf(node), node.expiry); // AOF 记录绝对过期时间，改期即重写一次
+        }
+        awaitAof(offset);
+        return true;
+    }
+
+    // 剩余 TTL 毫秒数；与 Redis PTTL 相同，键不存在返回 -2，永不过期返回 -1
+    public synchronized long ttl(String key) {
+        long now = System.currentTimeMillis();
+        Node node = liveNode(key, now);
+        if (node == null) return -2;
+        if (node.expiry == NO_EXPIRY) return -1;
+        return Math.max(0, node.expiry - now);
+    }
+
+    // 查找未过期的节点，不更新访问信息；顺带惰性删除已过期的节点
+    private Node liveNode(String key, long now) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        Node node = cache.get(key);
+        if (node != null && now > node.expiry) {
+            deleteNode(node);
+            return null;
+        }
+        return node;
+    }
+
+    // 写入或更新节点，容量已满时先淘汰；put 和 AOF 恢复共用
+    // 超过 maxmemory 时先按策略淘汰，被写的键也可能被淘汰，淘汰后重新查找
+    private Node upsert(String key, String value, long expiry) {
+        int memory = slabs == null ? estimateEntrySize(key, ValueEncoding.heapSize(value)) : estimateEntrySize(key, value);
         Node node = cache.get(key);
+        if (evictForMemory(memory - (node == null ? 0 : node.memory))) {
+            node = cache.get(key);
+        }
         if (node != null) {
-            node.value = value;
-            node.expiry = System.currentTimeMillis() + ttlMillis;
+            preserve(node);
+            trackMemory(memory - node.memory);
+            node.memory = memory;
+            node = setValue(node, value);
+            setExpiry(node, expiry);
             updateNodeAccess(node);
         } else {
             if (cache.size() >= capacity) {
                 removeEvictedNode();
             }
-            node = new Node(key, value, System.currentTimeMillis() + ttlMillis);
+            node = newNode(key, value, expiry);
+            node.insertionOrder = insertionCounter++;
+            setValue(node, value);
+            node.memory = memory;
+            trackMemory(memory);
+            markCreated(node);
             cache.put(key, node);
             addToHead(node);
+            if (slotKeys != null) linkSlot(node, key);
             if (strategy == EvictionStrategy.LFU) {
-                freqMap.computeIfAbsent(1, k -> new ArrayList<>()).add(node);
+                lfuList.add(node.frequency());
+            } else if (strategy == EvictionStrategy.APPROX_LFU) {
+                node.lfu = lfuCounter.init();
             }
         }
-        appendToAof("PUT", key, value, ttlMillis);
+        scheduleExpiry(key, node.expiry);
+        return node;
+    }
+
+    @Override
+    protected void storeEntry(String key, String value, long expiry) {
+        upsert(key, value, expiry);
+    }
+
+    @Override
+    protected boolean removeEntry(String key, long now) {
+        Node node = liveNode(key, now);
+        if (node == null) return false;
+        deleteNode(node);
+        return true;
+    }
+
+    @Override
+    protected void restoreSnapshotEntry(String key, String value, long expiry, long meta) {
+        Node node = upsert(key, value, expiry);
+        long saved = RdbSnapshot.metaValue(meta);
+        int kind = RdbSnapshot.metaKind(meta);
+        if (strategy == EvictionStrategy.LFU && kind == RdbSnapshot.META_LFU && saved > 0) {
+            LfuList.Handle<Node> frequency = node.frequency();
+            lfuList.remove(frequency);
+            lfuList.add(frequency, (int) saved);
+        } else if (strategy == EvictionStrategy.APPROX_LFU && kind == RdbSnapshot.META_APPROX_LFU) {
+            node.lfu = (int) saved;
+        } else if (strategy == EvictionStrategy.CLOCK && kind == RdbSnapshot.META_CLOCK) {
+            node.referenceBit = (int) saved;
+        }
+    }
+
+    // 快照从链表尾部（最早插入）向头部读取，加载时依次插到头部即还原 FIFO/CLOCK 顺序
+    @Override
+    protected EngineNode oldestNode() {
+        return tail.prev == head ? null : tail.prev;
+    }
+
+    @Override
+    protected EngineNode newerNode(EngineNode node) {
+        Node newer = ((Node) node).prev;
+        return newer == head ? null : newer;
+    }
+
+    @Override
+    protected CacheTable<String, ? extends EngineNode> engineTable() {
+        return cache;
+    }
+
+    @Override
+    protected String nodeKey(EngineNode node) {
+        return keyOf((Node) node);
+    }
+
+    @Override
+    protected String nodeValue(EngineNode node) {
+        return valueOf((Node) node);
+    }
+
+    @Override
+    protected void dropNode(EngineNode node) {
+        deleteNode((Node) node);
+    }
+
+    // 键是否存在且未过期
+    public synchronized boolean exists(String key) {
+        return liveNode(key, System.currentTimeMillis()) != null;
+    }
+
+    // 集群模式：与 Redis 7 的 slot_to_keys 相同按槽位索引键，迁移槽位时不必遍历整个键空间
+    // 索引放在节点之外，只在集群模式下分配，非集群模式的节点不带槽位字段
+    @SuppressWarnings({"unchecked", "rawtypes"}) // 泛型数组只能按原始类型创建
+    public synchronized void enableSlotIndex() {
+        if (slotKeys != null) return;
+        slotKeys = new CustomHashMap[ClusterState.SLOTS];
+        cache.forEach((key, node) -> linkSlot(node, key));
+    }
+
+    public synchronized int countKeysInSlot(int slot) {
+        if (slotKeys == null) throw new IllegalStateException("Slot index is not enabled");
+        CustomHashMap<Node, Node> nodes = slotKeys[slot];
+        return nodes == null ? 0 : nodes.size();
+    }
+
+    // 访问槽位中至多 count 个未过期的键，返回访问的个数
+    public synchronized int forEachKeyInSlot(int slot, int count, EntryVisitor visitor) {
+        if (slotKeys == null) throw new IllegalStateException("Slot index is not enabled");
+        CustomHashMap<Node, Node> nodes = slotKeys[slot];
+        if (nodes == null) return 0;
+        long now = System.currentTimeMillis();
+        int[] visited = {0};
+        nodes.forEachWhile((node, same) -> {
+            if (visited[0] >= count) return false;
+            if (now > node.expiry) return true;
+            visitor.visit(keyOf(node), valueOf(node), node.expiry);
+            visited[0]++;
+            return true;
+        });
+        return visited[0];
+    }
+
+    // 与 Redis OBJECT ENCODING 相同，返回 int、embstr 或 raw，键不存在返回 null；堆外模式的值都是 raw
+    public synchronized String encoding(String key) {
+        Node node = liveNode(key, System.currentTimeMillis());
+        if (node == null) return null;
+        if (slabs != null) return ValueEncoding.RAW;
+        Object value = node.value;
+        // raw 的 String 超过 embstr 上限，不会是整数；是整数的 String 只能是共享整数
+        if (node instanceof IntNode || value instanceof String && ValueEncoding.isInteger((String) value)) {
+            return ValueEncoding.INT;
+        }
+        return value instanceof byte[] ? ValueEncoding.EMBSTR : ValueEncoding.RAW;
+    }
+
+    // 堆外节点的键从 slab 解码，每次调用新建一个 String
+    private String keyOf(Node node) {
+        return node.key != null ? node.key : slabs.readString(((OffHeapNode) node).keyRef);
+    }
+
+    // raw 和共享整数直接返回存放的 String；int 和 embstr 每次读取都要新建一个 String
+    private String valueOf(Node node) {
+        if (slabs != null) return slabs.readString(((OffHeapNode) node).ref);
+        if (node instanceof IntNode) return Long.toString(((IntNode) node).number);
+        Object value = node.value;
+        if (value instanceof byte[]) return new String((byte[]) value, StandardCharsets.UTF_8);
+        return (String) value;
+    }
+
+    // 堆上按 int / embstr / raw 编码存放，读取时还原成相同的字符串；返回存放值的节点，
+    // 改写使值在非共享整数和其他编码之间切换时，节点换成另一种子类
+    private Node setValue(Node node, String value) {
+        if (slabs != null) {
+            OffHeapNode offHeap = (OffHeapNode) node;
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            offHeap.ref = offHeap.ref < 0 ? slabs.allocate(bytes) : slabs.reallocate(offHeap.ref, bytes);
+            return node;
+        }
+        boolean integer = ValueEncoding.isInteger(value);
+        long number = integer ? Long.parseLong(value) : 0;
+        String shared = integer ? ValueEncoding.shared(number) : null;
+        boolean intNode = integer && shared == null;
+        if (intNode != node instanceof IntNode) {
+            node = replaceNode(node, heapNode(node.key, node.expiry, intNode));
+        }
+        if (intNode) {
+            ((IntNode) node).number = number;
+        } else if (shared != null) {
+            node.value = shared;
+        } else {
+            byte[] embedded = ValueEncoding.embedded(value);
+            node.value = embedded != null ? embedded : value;
+        }
+        return node;
+    }
+
+    // 节点按策略和值的存放位置选用子类，只带用得到的字段
+    private Node newNode(String key, String value, long expiry) {
+        if (slabs != null) {
+            long keyRef = slabs.allocate(key.getBytes(StandardCharsets.UTF_8));
+            return strategy == EvictionStrategy.LFU ? new OffHeapLfuNode(keyRef, expiry) : new OffHeapNode(keyRef, expiry);
+        }
+        return heapNode(key, expiry, ValueEncoding.isInteger(value) && ValueEncoding.shared(Long.parseLong(value)) == null);
+    }
+
+    private Node heapNode(String key, long expiry, boolean intNode) {
+        if (intNode) {
+            return strategy == EvictionStrategy.LFU ? new IntLfuNode(key, expiry) : new IntNode(key, expiry);
+        }
+        return strategy == EvictionStrategy.LFU ? new LfuNode(key, null, expiry) : new Node(key, null, expiry);
+    }
+
+    // replacement 原位接替 node：索引、链表、槽位索引、频率桶、CLOCK 指针和快照游标都改指新节点，淘汰顺序不变
+    private Node replaceNode(Node node, Node replacement) {
+        replacing(node, replacement);
+        replacement.memory = node.memory;
+        replacement.referenceBit = node.referenceBit;
+        replacement.lfu = node.lfu;
+        replacement.insertionOrder = node.insertionOrder;
+        replacement.prev = node.prev;
+        replacement.next = node.next;
+        node.prev.next = replacement;
+        node.next.prev = replacement;
+        if (clockHand == node) clockHand = replacement;
+        if (slotKeys != null) {
+            CustomHashMap<Node, Node> nodes = slotKeys[ClusterState.keySlot(node.key)];
+            nodes.remove(node);
+            nodes.put(replacement, replacement);
+        }
+        if (node.frequency() != null) lfuList.replace(node.frequency(), replacement.frequency());
+        cache.put(node.key, replacement);
+        return replacement;
+    }
+
+    @Override
+    protected long nodeMeta(EngineNode ref) {
+        Node node = (Node) ref;
+        switch (strategy) {
+            case LFU:
+                return RdbSnapshot.meta(RdbSnapshot.META_LFU, node.frequency().frequency());
+            case APPROX_LFU:
+                return RdbSnapshot.meta(RdbSnapshot.META_APPROX_LFU, node.lfu & 0xFFFFFFFFL);
+            case CLOCK:
+                return RdbSnapshot.meta(RdbSnapshot.META_CLOCK, node.referenceBit);
+            default:
+                return RdbSnapshot.META_NONE;
+        }
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
     }
 
     private void updateNodeAccess(Node node) {
+        preserve(node);
         if (strategy == EvictionStrategy.LFU) {
-            updateFreqMap(node, -node.accessCount);
-            node.accessCount++;
-            updateFreqMap(node, node.accessCount);
-            moveToHead(node);
+            lfuList.increment(node.frequency());
         } else if (strategy == EvictionStrategy.CLOCK) {
             node.referenceBit = 1;
+        } else if (strategy == EvictionStrategy.APPROX_LFU) {
+            node.lfu = lfuCounter.access(node.lfu);
         }
     }
 
+    @Override
+    protected void evictOne() {
+        removeEvictedNode();
+    }
+
     private void removeEvictedNode() {
         if (strategy == EvictionStrategy.LFU) {
-            Map.Entry<Integer, List<Node>> entry = freqMap.firstEntry();
-            if (entry != null) {
-                List<Node> nodes = entry.getValue();
-                Node node = nodes.remove(nodes.size() - 1);
-                if (nodes.isEmpty()) freqMap.remove(entry.getKey());
-                removeNode(node);
-                cache.remove(node.key);
+            LfuList.Entry candidate = lfuList.evictionCandidate();
+            if (candidate != null) {
+                evictNode((Node) ((LfuList.Handle<?>) candidate).owner);
             }
         } else if (strategy == EvictionStrategy.CLOCK) {
             while (true) {
@@ -111,22 +501,25 @@ public class HashMapCache extends MultiEvictionCache {
                 if (System.currentTimeMillis() > clockHand.expiry) {
                     Node toRemove = clockHand;
                     clockHand = clockHand.prev;
-                    removeNode(toRemove);
-                    cache.remove(toRemove.key);
+                    evictNode(toRemove);
                     return;
                 }
                 if (clockHand.referenceBit == 0) {
-                    removeNode(clockHand);
-                    cache.remove(clockHand.key);
+                    evictNode(clockHand);
                     return;
                 }
+                preserve(clockHand);
                 clockHand.referenceBit = 0;
             }
         } else if (strategy == EvictionStrategy.FIFO) {
             Node toRemove = tail.prev;
             if (toRemove != head) {
-                removeNode(toRemove);
-                cache.remove(toRemove.key);
+                evictNode(toRemove);
+            }
+        } else if (strategy == EvictionStrategy.APPROX_LFU) {
+            Node victim = sampleLfuVictim(cache, node -> node.expiry, node -> node.lfu);
+            if (victim != null) {
+                evictNode(victim);
             }
         }
     }
@@ -138,21 +531,48 @@ public class HashMapCache extends MultiEvictionCache {
         head.next = node;
     }
 
-    private void removeNode(Node node) {
-        node.prev.next = node.next;
-        node.next.prev = node.prev;
+    // 因容量淘汰：先记录删除再移除
+    private void evictNode(Node node) {
+        trackEvicted(node.memory);
+        evicted(keyOf(node));
+        deleteNode(node);
     }
 
-    private void moveToHead(Node node) {
+    // 从索引、链表和过期时间轮中一并移除
+    private void deleteNode(Node node) {
+        deleting(node); // 在移出频率桶之前：LFU 节点移出后就读不到频率了
+        if (clockHand == node) clockHand = node.prev;
         removeNode(node);
-        addToHead(node);
+        String key = keyOf(node);
+        if (slotKeys != null) unlinkSlot(node, key);
+        if (node.frequency() != null) lfuList.remove(node.frequency());
+        cache.remove(key);
+        cancelExpiry(key);
+        trackMemory(-node.memory);
+        if (slabs != null) {
+            OffHeapNode offHeap = (OffHeapNode) node;
+            slabs.free(offHeap.ref);
+            slabs.free(offHeap.keyRef); // 最后交还：索引按 slab 中的键查找
+            offHeap.ref = -1;
+        }
     }
 
-    private void updateFreqMap(Node node, int count) {
-        if (strategy != EvictionStrategy.LFU) return;
-        freqMap.computeIfAbsent(count, k -> new ArrayList<>()).remove(node);
-        if (freqMap.get(count) != null && freqMap.get(count).isEmpty()) {
-            freqMap.remove(count);
-        }
+    private void linkSlot(Node node, String key) {
+        int slot = ClusterState.keySlot(key);
+        if (slotKeys[slot] == null) slotKeys[slot] = new CustomHashMap<>();
+        slotKeys[slot].put(node, node);
+    }
+
+    // 槽位的键删空后释放它的表
+    private void unlinkSlot(Node node, String key) {
+        int slot = ClusterState.keySlot(key);
+        CustomHashMap<Node, Node> nodes = slotKeys[slot];
+        nodes.remove(node);
+        if (nodes.size() == 0) slotKeys[slot] = null;
+    }
+
+    private void removeNode(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.redis.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Redis 风格的近似 LFU 计数：一个 int 的低 8 位是对数计数器，其上 16 位是最近一次衰减的分钟时间戳
+public class LfuCounter {
+    public static final int INIT_VALUE = 5; // 新键的初始计数，避免刚写入就被淘汰
+    private static final int COUNTER_MAX = 255;
+    private static final int MINUTES_MASK = 0xFFFF;
+
+    private int logFactor = 10; // lfu-log-factor：越大计数增长越慢
+    private int decayTime = 1; // lfu-decay-time：每过多少分钟计数减一，0 表示不衰减
+
+    public void setLogFactor(int logFactor) {
+        if (logFactor < 0) throw new IllegalArgumentException("lfu-log-factor cannot be negative");
+        this.logFactor = logFactor;
+    }
+
+    public void setDecayTime(int decayTime) {
+        if (decayTime < 0) throw new IllegalArgumentException("lfu-decay-time cannot be negative");
+        this.decayTime = decayTime;
+    }
+
+    public int init() {
+        return pack(nowMinutes(), INIT_VALUE);
+    }
+
+    // 命中：先按空闲时间衰减，再以 1/((counter-INIT)*logFactor+1) 的概率加一
+    public int access(int lfu) {
+        return access(lfu, nowMinutes());
+    }
+
+    public int access(int lfu, int nowMinutes) {
+        int counter = decayedCounter(lfu, nowMinutes);
+        if (counter < COUNTER_MAX) {
+            int base = Math.max(0, counter - INIT_VALUE);
+            double p = 1.0 / (base * logFactor + 1);
+            if (ThreadLocalRandom.current().nextDouble() < p) counter++;
+        }
+        return pack(nowMinutes, counter);
+    }
+
+    public int decayedCounter(int lfu) {
+        return decayedCounter(lfu, nowMinutes());
+    }
+
+    public int decayedCounter(int lfu, int nowMinutes) {
+        int counter = lfu & COUNTER_MAX;
+        if (decayTime == 0) return counter;
+        int periods = elapsedMinutes(lfu >>> 8, nowMinutes & MINUTES_MASK) / decayTime;
+        return periods > counter ? 0 : counter - periods;
+    }
+
+    public static int nowMinutes() {
+        return (int) (System.currentTimeMillis() / 60_000) & MINUTES_MASK;
+    }
+
+    private static int pack(int minutes, int counter) {
+        return ((minutes & MINUTES_MASK) << 8) | counter;
+    }
+
+    // 16 位分钟时钟约 45 天回绕一次
+    private static int elapsedMinutes(int lastMinutes, int nowMinutes) {
+        return nowMinutes >= lastMinutes ? nowMinutes - lastMinutes : MINUTES_MASK - lastMinutes + nowMinutes;
+    }
+}
@@ -0,0 +1,162 @@
+package com.redis.cache;
+
+// O(1) LFU 索引：频率桶按升序串成双向链表，桶内节点也是双向链表（头部最新进入，尾部最旧）
+public class LfuList {
+    // 频率链表指针，访问时无需额外分配
+    public static class Entry {
+        Entry freqPrev, freqNext;
+        Bucket bucket;
+
+        public int frequency() {
+            return bucket == null ? 0 : bucket.frequency;
+        }
+    }
+
+    // 缓存节点以组合方式持有 Handle，只有 LFU 策略的节点带频率链表指针；owner 反向指回节点供淘汰时取用
+    public static final class Handle<T> extends Entry {
+        public final T owner;
+
+        public Handle(T owner) {
+            this.owner = owner;
+        }
+    }
+
+    private static class Bucket {
+        final int frequency;
+        Entry head, tail;
+        Bucket prev, next;
+        Bucket(int frequency) {
+            this.frequency = frequency;
+        }
+    }
+
+    private Bucket minBucket; // 最小频率指针，即桶链表头
+    private int size;
+
+    // 新节点以频率 1 进入
+    public void add(Entry entry) {
+        Bucket bucket = minBucket;
+        if (bucket == null || bucket.frequency != 1) {
+            bucket = linkBucketAfter(null, 1);
+        }
+        pushHead(bucket, entry);
+        size++;
+    }
+
+    // 以指定频率加入（快照加载时使用），需从最小频率桶开始查找位置，O(不同频率数)
+    public void add(Entry entry, int frequency) {
+        if (frequency < 1) throw new IllegalArgumentException("Frequency must be positive");
+        Bucket prev = null;
+        Bucket bucket = minBucket;
+        while (bucket != null && bucket.frequency < frequency) {
+            prev = bucket;
+            bucket = bucket.next;
+        }
+        if (bucket == null || bucket.frequency != frequency) {
+            bucket = linkBucketAfter(prev, frequency);
+        }
+        pushHead(bucket, entry);
+        size++;
+    }
+
+    // 命中时把节点移到频率 +1 的桶
+    public void increment(Entry entry) {
+        Bucket current = entry.bucket;
+        if (current.frequency == Integer.MAX_VALUE) {
+            return;
+        }
+        int frequency = current.frequency + 1;
+        Bucket target = current.next;
+        if (target == null || target.frequency != frequency) {
+            target = linkBucketAfter(current, frequency);
+        }
+        unlink(entry);
+        pushHead(target, entry);
+    }
+
+    public void remove(Entry entry) {
+        if (entry.bucket == null) return;
+        unlink(entry);
+        size--;
+    }
+
+    // replacement 原位接替 entry：频率和桶内顺序都不变
+    public void replace(Entry entry, Entry replacement) {
+        Bucket bucket = entry.bucket;
+        replacement.bucket = bucket;
+        replacement.freqPrev = entry.freqPrev;
+        replacement.freqNext = entry.freqNext;
+        if (entry.freqPrev != null) {
+            entry.freqPrev.freqNext = replacement;
+        } else {
+            bucket.head = replacement;
+        }
+        if (entry.freqNext != null) {
+            entry.freqNext.freqPrev = replacement;
+        } else {
+            bucket.tail = replacement;
+        }
+        entry.freqPrev = entry.freqNext = null;
+        entry.bucket = null;
+    }
+
+    // 淘汰候选：最小频率桶里最旧的节点，频率相同时退化为 LRU
+    public Entry evictionCandidate() {
+        return minBucket == null ? null : minBucket.tail;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private Bucket linkBucketAfter(Bucket prev, int frequency) {
+        Bucket bucket = new Bucket(frequency);
+        Bucket next = prev == null ? minBucket : prev.next;
+        bucket.prev = prev;
+        bucket.next = next;
+        if (prev == null) {
+            minBucket = bucket;
+        } else {
+            prev.next = bucket;
+        }
+        if (next != null) next.prev = bucket;
+        return bucket;
+    }
+
+    private void pushHead(Bucket bucket, Entry entry) {
+        entry.bucket = bucket;
+        entry.freqPrev = null;
+        entry.freqNext = bucket.head;
+        if (bucket.head != null) {
+            bucket.head.freqPrev = entry;
+        } else {
+            bucket.tail = entry;
+        }
+        bucket.head = entry;
+    }
+
+    private void unlink(Entry entry) {
+        Bucket bucket = entry.bucket;
+        if (entry.freqPrev != null) {
+            entry.freqPrev.freqNext = entry.freqNext;
+        } else {
+            bucket.head = entry.freqNext;
+        }
+        if (entry.freqNext != null) {
+            entry.freqNext.freqPrev = entry.freqPrev;
+        } else {
+            bucket.tail = entry.freqPrev;
+        }
+        entry.freqPrev = entry.freqNext = null;
+        entry.bucket = null;
+        if (bucket.head == null) {
+            // 空桶立即摘除，保证 minBucket 始终指向非空的最小频率
+            if (bucket.prev != null) {
+                bucket.prev.next = bucket.next;
+            } else {
+                minBucket = bucket.next;
+            }
+            if (bucket.next != null) bucket.next.prev = bucket.prev;
+        }
+    }
+}
@@ -8,76 +8,206 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class LruCache extends AofCache {
-    private class Node {
-        String key, value;
-        long expiry; // 过期时间戳
+    private class Node extends EngineNode {
+        String value;
         int accessCount; // 访问频率
+        int lruClock; // 近似 LRU：24 位粗粒度访问时钟
         Node prev, next;
         Node(String key, String value, long expiry) {
-            this.key = key;
+            super(key, expiry);
             this.value = value;
-            this.expiry = expiry;
             this.accessCount = 1;
+            this.lruClock = lruClock();
         }
     }
 
-    private Map<String, Node> cache;
+    private static final int LRU_CLOCK_MAX = (1 << 24) - 1;
+    private static final int EVICTION_POOL_SIZE = 16;
+
+    private CacheTable<String, Node> cache;
     private Node head, tail;
     private int capacity;
+    private boolean approximate; // 近似 LRU：读只更新时钟，淘汰时采样
+    private int maxmemorySamples = 5;
+    private long lruClockResolution = 1000; // 时钟精度（毫秒），与 Redis 默认一致
+    private EvictionPool<Node> evictionPool;
 
     public LruCache(int capacity) {
-        super(capacity);
+        this(capacity, false);
+    }
+
+    public LruCache(int capacity, boolean approximate) {
+        this(capacity, approximate, null);
+    }
+
+    // directory 为 AOF 和快照文件所在目录，null 表示当前目录
+    public LruCache(int capacity, boolean approximate, File directory) {
+        super(capacity, directory, false);
         this.capacity = capacity;
-        this.cache = new HashMap<>();
+        this.approximate = approximate;
+        this.cache = new CustomHashMap<>();
+        this.evictionPool = new EvictionPool<>(EVICTION_POOL_SIZE, node -> cache.get(node.key) == node); // 池中节点可能已被删除或覆盖
         this.head = new Node(null, null, 0); // 哨兵节点
         this.tail = new Node(null, null, 0);
         head.next = tail;
         tail.prev = head;
-        loadAof(); // 恢复 AOF 数据
+        open(); // 恢复 AOF 数据
     }
 
     @Override
-    public String get(String key) {
+    public synchronized String get(String key) {
         if (key == null) {
             throw new IllegalArgumentException("Key cannot be null");
         }
+        return getAt(key, System.currentTimeMillis());
+    }
+
+    @Override
+    protected String getAt(String key, long now) {
         Node node = cache.get(key);
-        if (node == null || System.currentTimeMillis() > node.expiry) {
+        if (node == null || now > node.expiry) {
             if (node != null) {
-                removeNode(node);
-                cache.remove(key);
+                deleteNode(node);
             }
             return null;
         }
-        node.accessCount++; // 增加访问频率
-        moveToHead(node); // 移到链表头部
+        preserve(node);
+        if (approximate) {
+            node.lruClock = lruClock(); // 读路径只写一个时间戳
+        } else {
+            node.accessCount++; // 增加访问频率
+            moveToHead(node); // 移到链表头部
+        }
         return node.value;
     }
 
+    public void setMaxmemorySamples(int samples) {
+        if (samples <= 0) throw new IllegalArgumentException("Samples must be positive");
+        this.maxmemorySamples = samples;
+    }
+
+    public void setLruClockResolution(long millis) {
+        if (millis <= 0) throw new IllegalArgumentException("Resolution must be positive");
+        this.lruClockResolution = millis;
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
     @Override
     public void put(String key, String value, long ttlMillis) {
+        awaitAof(putAndLog(key, value, ttlMillis));
+    }
+
+    private synchronized long putAndLog(String key, String value, long ttlMillis) {
         if (key == null || value == null) {
             throw new IllegalArgumentException("Key or value cannot be null");
         }
         if (ttlMillis <= 0) {
             throw new IllegalArgumentException("TTL must be positive");
         }
+        validateEntry(key, value);
+        checkWritable();
+
+        Node node = upsert(key, value, System.currentTimeMillis() + ttlMillis);
+        return appendToAof(AofFormat.OP_PUT, key, value, node.expiry); // 记录到 AOF
+    }
 
+    // 写入或更新节点，容量已满时先淘汰；put 和 AOF 恢复共用
+    private Node upsert(String key, String value, long expiry) {
         Node node = cache.get(key);
         if (node != null) {
+            preserve(node);
             node.value = value;
-            node.expiry = System.currentTimeMillis() + ttlMillis;
-            node.accessCount++;
-            moveToHead(node);
+            setExpiry(node, expiry);
+            if (approximate) {
+                node.lruClock = lruClock();
+            } else {
+                node.accessCount++;
+                moveToHead(node);
+            }
         } else {
             if (cache.size() >= capacity) {
-                removeLruNode(); // 移除最近最少使用的节点
+                if (approximate) {
+                    removeSampledNode();
+                } else {
+                    removeLruNode(); // 移除最近最少使用的节点
+                }
             }
-            node = new Node(key, value, System.currentTimeMillis() + ttlMillis);
+            node = new Node(key, value, expiry);
+            markCreated(node);
             cache.put(key, node);
             addToHead(node);
         }
-        appendToAof("PUT", key, value, ttlMillis); // 记录到 AOF
+        scheduleExpiry(key, node.expiry);
+        return node;
+    }
+
+    @Override
+    protected void storeEntry(String key, String value, long expiry) {
+        upsert(key, value, expiry);
+    }
+
+    @Override
+    protected boolean removeEntry(String key, long now) {
+        Node node = cache.get(key);
+        if (node == null) return false;
+        deleteNode(node);
+        return now <= node.expiry;
+    }
+
+    @Override
+    protected void evictOne() {
+        if (approximate) {
+            removeSampledNode();
+        } else {
+            removeLruNode();
+        }
+    }
+
+    @Override
+    protected void restoreSnapshotEntry(String key, String value, long expiry, long meta) {
+        Node node = upsert(key, value, expiry);
+        if (RdbSnapshot.metaKind(meta) == RdbSnapshot.META_LRU) {
+            long lru = RdbSnapshot.metaValue(meta);
+            node.accessCount = (int) (lru >>> 24);
+            node.lruClock = (int) (lru & LRU_CLOCK_MAX);
+        }
+    }
+
+    // 快照从链表尾部（最久未用）向头部读取，加载时依次插到头部即还原原有顺序
+    @Override
+    protected EngineNode oldestNode() {
+        return tail.prev == head ? null : tail.prev;
+    }
+
+    @Override
+    protected EngineNode newerNode(EngineNode node) {
+        Node newer = ((Node) node).prev;
+        return newer == head ? null : newer;
+    }
+
+    @Override
+    protected CacheTable<String, ? extends EngineNode> engineTable() {
+        return cache;
+    }
+
+    @Override
+    protected String nodeValue(EngineNode node) {
+        return ((Node) node).value;
+    }
+
+    @Override
+    protected long nodeMeta(EngineNode ref) {
+        Node node = (Node) ref;
+        return RdbSnapshot.meta(RdbSnapshot.META_LRU, (long) node.accessCount << 24 | node.lruClock);
+    }
+
+    @Override
+    protected void dropNode(EngineNode node) {
+        deleteNode((Node) node);
     }
 
     private void addToHead(Node node) {
@@ -87,12 +217,27 @@ public class LruCache extends AofCache {
         head.next = node;
     }
 
+    // 因容量淘汰：先记录删除再移除
+    private void evictNode(Node node) {
+        evicted(node.key);
+        deleteNode(node);
+    }
+
+    // 从索引、链表和过期时间轮中一并移除
+    private void deleteNode(Node node) {
+        deleting(node);
+        removeNode(node);
+        cache.remove(node.key);
+        cancelExpiry(node.key);
+    }
+
     private void removeNode(Node node) {
         node.prev.next = node.next;
         node.next.prev = node.prev;
     }
 
     private void moveToHead(Node node) {
+        unlinking(node);
         removeNode(node);
         addToHead(node);
     }
@@ -101,8 +246,7 @@ public class LruCache extends AofCache {
         // 优先移除过期键
         for (Node node = tail.prev; node != head; node = node.prev) {
             if (System.currentTimeMillis() > node.expiry) {
-                removeNode(node);
-                cache.remove(node.key);
+                evictNode(node);
                 return;
             }
         }
@@ -112,24 +256,36 @@ public class LruCache extends AofCache {
             // 寻找低频节点
             for (Node node = tail.prev; node != head; node = node.prev) {
                 if (node.accessCount <= 5) {
-                    removeNode(node);
-                    cache.remove(node.key);
+                    evictNode(node);
                     return;
                 }
             }
         }
         // 默认移除尾部节点
-        removeNode(lru);
-        cache.remove(lru.key);
+        evictNode(lru);
     }
 
-    @Override
-    protected void loadAof() {
-        super.loadAof(); // 调用父类加载 AOF
-        // 重建链表顺序（按插入顺序近似 LRU）
-        for (String key : cache.keySet()) {
-            Node node = cache.get(key);
-            addToHead(node);
+    // 采样若干键放入淘汰池，淘汰池中空闲最久的；过期键视为空闲无穷大
+    private void removeSampledNode() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < maxmemorySamples; i++) {
+            Node node = cache.randomValue();
+            if (node == null) break;
+            evictionPool.offer(node, now > node.expiry ? Long.MAX_VALUE : idleTime(node));
+        }
+        Node victim = evictionPool.pollBest();
+        if (victim != null) {
+            evictNode(victim);
         }
     }
-}
\ No newline at end of file
+
+    private int lruClock() {
+        return (int) (System.currentTimeMillis() / lruClockResolution) & LRU_CLOCK_MAX;
+    }
+
+    private long idleTime(Node node) {
+        int now = lruClock();
+        int ticks = now >= node.lruClock ? now - node.lruClock : LRU_CLOCK_MAX - node.lruClock + now;
+        return ticks * lruClockResolution;
+    }
+}
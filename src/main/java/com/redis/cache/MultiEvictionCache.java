@@ -3,59 +3,177 @@ package com.redis.cache;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 public class MultiEvictionCache extends AofCache {
-    public enum EvictionStrategy { LFU, CLOCK, FIFO }
+    public enum EvictionStrategy { LFU, CLOCK, FIFO, APPROX_LFU }
 
-    private class Node {
-        String key, value;
-        long expiry;
-        int accessCount; // LFU
+    private class Node extends EngineNode {
+        String value;
+        int memory; // 估算的占用字节
         int referenceBit; // CLOCK
+        int lfu; // APPROX_LFU：低 8 位对数计数，其上 16 位分钟时间戳
         long insertionOrder; // FIFO
         Node prev, next;
         Node(String key, String value, long expiry) {
-            this.key = key;
+            super(key, expiry);
             this.value = value;
-            this.expiry = expiry;
-            this.accessCount = 1;
             this.referenceBit = 1;
             this.insertionOrder = insertionCounter++;
         }
     }
 
-    private Map<String, Node> cache;
+    // LFU 策略的节点：频率链表指针放在组合进来的 Handle 里，其他策略的节点不带这三个指针
+    private final class LfuNode extends Node {
+        final LfuList.Handle<Node> frequency = new LfuList.Handle<>(this);
+        LfuNode(String key, String value, long expiry) {
+            super(key, value, expiry);
+        }
+    }
+
+    private CacheTable<String, Node> cache;
     private Node head, tail;
     private int capacity;
     private EvictionStrategy strategy;
-    private TreeMap<Integer, List<Node>> freqMap; // LFU 频率映射
+    private LfuList lfuList; // LFU 频率桶
     private Node clockHand; // CLOCK 指针
     private long insertionCounter; // FIFO 插入序号
+    protected final LfuCounter lfuCounter = new LfuCounter(); // APPROX_LFU 计数参数
+    protected int maxmemorySamples = 5; // 采样淘汰每次抽取的键数
+
+    // maxmemory：按估算字节数限制内存，0 表示不限制，与条数容量同时生效
+    private static final int ENTRY_OVERHEAD = 128; // 节点、索引槽和时间轮登记的估计开销
+    private long maxmemory;
+    private long usedMemory;
+    private long peakMemory;
+    private long evictedBytes;
 
     public MultiEvictionCache(int capacity, EvictionStrategy strategy) {
-        super(capacity);
+        this(capacity, strategy, null);
+    }
+
+    // directory 为 AOF 和快照文件所在目录，null 表示当前目录
+    public MultiEvictionCache(int capacity, EvictionStrategy strategy, File directory) {
+        this(capacity, strategy, directory, true);
+    }
+
+    // 引擎子类传入 false，在自己的字段初始化完之后再调用 open()
+    protected MultiEvictionCache(int capacity, EvictionStrategy strategy, File directory, boolean open) {
+        super(capacity, directory, false);
         this.capacity = capacity;
         this.strategy = strategy;
-        this.cache = new HashMap<>();
-        this.freqMap = new TreeMap<>();
+        this.cache = new CustomHashMap<>();
+        this.lfuList = new LfuList();
         this.head = new Node(null, null, 0);
         this.tail = new Node(null, null, 0);
         head.next = tail;
         tail.prev = head;
         this.clockHand = head;
         this.insertionCounter = 0;
-        loadAof();
+        if (open) {
+            open();
+        }
+    }
+
+    public void setLfuLogFactor(int logFactor) {
+        lfuCounter.setLogFactor(logFactor);
+    }
+
+    public void setLfuDecayTime(int minutes) {
+        lfuCounter.setDecayTime(minutes);
+    }
+
+    public void setMaxmemorySamples(int samples) {
+        if (samples <= 0) throw new IllegalArgumentException("Samples must be positive");
+        this.maxmemorySamples = samples;
+    }
+
+    // 与 Redis CONFIG SET maxmemory 相同，调低时立即淘汰到限制以内
+    public synchronized void setMaxmemory(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("Maxmemory cannot be negative");
+        this.maxmemory = bytes;
+        evictForMemory(0);
+    }
+
+    public synchronized long getMaxmemory() {
+        return maxmemory;
+    }
+
+    public synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+
+    public synchronized long getPeakMemory() {
+        return peakMemory;
+    }
+
+    // 因 maxmemory 或容量淘汰的累计字节数
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    // 估算一个键值对的堆内存：字符串按紧凑编码计（对象头 + 数组头 + 每字符一字节），再加节点开销
+    protected static int estimateEntrySize(String key, String value) {
+        return estimateEntrySize(key, stringSize(value));
+    }
+
+    // 值按紧凑编码存放时由引擎给出值占用的字节
+    protected static int estimateEntrySize(String key, int valueBytes) {
+        return ENTRY_OVERHEAD + stringSize(key) + valueBytes;
+    }
+
+    private static int stringSize(String value) {
+        return 24 + ((16 + value.length() + 7) & ~7);
+    }
+
+    // 淘汰到加上 incoming 字节后不超过 maxmemory，返回是否淘汰了键
+    protected boolean evictForMemory(long incoming) {
+        boolean evicted = false;
+        while (maxmemory > 0 && usedMemory + incoming > maxmemory && size() > 0) {
+            int before = size();
+            evictOne();
+            if (size() == before) break;
+            evicted = true;
+        }
+        return evicted;
+    }
+
+    @Override
+    protected void evictOne() {
+        removeEvictedNode();
+    }
+
+    protected void trackMemory(long delta) {
+        usedMemory += delta;
+        if (usedMemory > peakMemory) peakMemory = usedMemory;
+    }
+
+    protected void trackEvicted(long bytes) {
+        evictedBytes += bytes;
+    }
+
+    // 单个键值超过 maxmemory 时怎么淘汰都放不下，直接拒绝
+    @Override
+    protected void validateEntry(String key, String value) {
+        super.validateEntry(key, value);
+        if (maxmemory > 0 && estimateEntrySize(key, value) > maxmemory) {
+            throw new IllegalArgumentException("Entry larger than maxmemory");
+        }
     }
 
     @Override
-    public String get(String key) {
+    public synchronized String get(String key) {
         if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        return getAt(key, System.currentTimeMillis());
+    }
+
+    @Override
+    protected String getAt(String key, long now) {
         Node node = cache.get(key);
-        if (node == null || System.currentTimeMillis() > node.expiry) {
+        if (node == null || now > node.expiry) {
             if (node != null) {
-                removeNode(node);
-                cache.remove(key);
-                if (strategy == EvictionStrategy.LFU) updateFreqMap(node, -node.accessCount);
+                deleteNode(node);
             }
             return null;
         }
@@ -65,36 +183,138 @@ public class MultiEvictionCache extends AofCache {
 
     @Override
     public void put(String key, String value, long ttlMillis) {
+        awaitAof(putAndLog(key, value, ttlMillis));
+    }
+
+    private synchronized long putAndLog(String key, String value, long ttlMillis) {
         if (key == null || value == null) throw new IllegalArgumentException("Key or value cannot be null");
         if (ttlMillis <= 0) throw new IllegalArgumentException("TTL must be positive");
+        validateEntry(key, value);
+        checkWritable();
+
+        Node node = upsert(key, value, System.currentTimeMillis() + ttlMillis);
+        return appendToAof(AofFormat.OP_PUT, key, value, node.expiry);
+    }
 
+    // 写入或更新节点，容量已满时先淘汰；put 和 AOF 恢复共用
+    // 超过 maxmemory 时先按策略淘汰，被写的键也可能被淘汰，淘汰后重新查找
+    private Node upsert(String key, String value, long expiry) {
+        int memory = estimateEntrySize(key, value);
         Node node = cache.get(key);
+        if (evictForMemory(memory - (node == null ? 0 : node.memory))) {
+            node = cache.get(key);
+        }
         if (node != null) {
+            preserve(node);
+            trackMemory(memory - node.memory);
+            node.memory = memory;
             node.value = value;
-            node.expiry = System.currentTimeMillis() + ttlMillis;
+            setExpiry(node, expiry);
             updateNodeAccess(node);
         } else {
             if (cache.size() >= capacity) {
                 removeEvictedNode();
             }
-            node = new Node(key, value, System.currentTimeMillis() + ttlMillis);
+            node = strategy == EvictionStrategy.LFU ? new LfuNode(key, value, expiry) : new Node(key, value, expiry);
+            node.memory = memory;
+            trackMemory(memory);
+            markCreated(node);
             cache.put(key, node);
             addToHead(node);
             if (strategy == EvictionStrategy.LFU) {
-                freqMap.computeIfAbsent(1, k -> new ArrayList<>()).add(node);
+                lfuList.add(((LfuNode) node).frequency);
+            } else if (strategy == EvictionStrategy.APPROX_LFU) {
+                node.lfu = lfuCounter.init();
             }
         }
-        appendToAof("PUT", key, value, ttlMillis);
+        scheduleExpiry(key, node.expiry);
+        return node;
+    }
+
+    @Override
+    protected void storeEntry(String key, String value, long expiry) {
+        upsert(key, value, expiry);
+    }
+
+    @Override
+    protected boolean removeEntry(String key, long now) {
+        Node node = cache.get(key);
+        if (node == null) return false;
+        deleteNode(node);
+        return now <= node.expiry;
+    }
+
+    @Override
+    protected void restoreSnapshotEntry(String key, String value, long expiry, long meta) {
+        Node node = upsert(key, value, expiry);
+        long saved = RdbSnapshot.metaValue(meta);
+        int kind = RdbSnapshot.metaKind(meta);
+        if (strategy == EvictionStrategy.LFU && kind == RdbSnapshot.META_LFU && saved > 0) {
+            LfuList.Handle<Node> frequency = ((LfuNode) node).frequency;
+            lfuList.remove(frequency);
+            lfuList.add(frequency, (int) saved);
+        } else if (strategy == EvictionStrategy.APPROX_LFU && kind == RdbSnapshot.META_APPROX_LFU) {
+            node.lfu = (int) saved;
+        } else if (strategy == EvictionStrategy.CLOCK && kind == RdbSnapshot.META_CLOCK) {
+            node.referenceBit = (int) saved;
+        }
+    }
+
+    // 快照从链表尾部（最早插入）向头部读取，加载时依次插到头部即还原 FIFO/CLOCK 顺序
+    @Override
+    protected EngineNode oldestNode() {
+        return tail.prev == head ? null : tail.prev;
+    }
+
+    @Override
+    protected EngineNode newerNode(EngineNode node) {
+        Node newer = ((Node) node).prev;
+        return newer == head ? null : newer;
+    }
+
+    @Override
+    protected CacheTable<String, ? extends EngineNode> engineTable() {
+        return cache;
+    }
+
+    @Override
+    protected String nodeValue(EngineNode node) {
+        return ((Node) node).value;
+    }
+
+    @Override
+    protected void dropNode(EngineNode node) {
+        deleteNode((Node) node);
+    }
+
+    @Override
+    protected long nodeMeta(EngineNode ref) {
+        Node node = (Node) ref;
+        switch (strategy) {
+            case LFU:
+                return RdbSnapshot.meta(RdbSnapshot.META_LFU, ((LfuNode) node).frequency.frequency());
+            case APPROX_LFU:
+                return RdbSnapshot.meta(RdbSnapshot.META_APPROX_LFU, node.lfu & 0xFFFFFFFFL);
+            case CLOCK:
+                return RdbSnapshot.meta(RdbSnapshot.META_CLOCK, node.referenceBit);
+            default:
+                return RdbSnapshot.META_NONE;
+        }
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
     }
 
     private void updateNodeAccess(Node node) {
+        preserve(node);
         if (strategy == EvictionStrategy.LFU) {
-            updateFreqMap(node, -node.accessCount);
-            node.accessCount++;
-            updateFreqMap(node, node.accessCount);
-            moveToHead(node);
+            lfuList.increment(((LfuNode) node).frequency);
         } else if (strategy == EvictionStrategy.CLOCK) {
             node.referenceBit = 1;
+        } else if (strategy == EvictionStrategy.APPROX_LFU) {
+            node.lfu = lfuCounter.access(node.lfu);
         } else if (strategy == EvictionStrategy.FIFO) {
             // FIFO 不更新顺序
         }
@@ -102,13 +322,9 @@ public class MultiEvictionCache extends AofCache {
 
     private void removeEvictedNode() {
         if (strategy == EvictionStrategy.LFU) {
-            Map.Entry<Integer, List<Node>> entry = freqMap.firstEntry();
-            if (entry != null) {
-                List<Node> nodes = entry.getValue();
-                Node node = nodes.remove(nodes.size() - 1);
-                if (nodes.isEmpty()) freqMap.remove(entry.getKey());
-                removeNode(node);
-                cache.remove(node.key);
+            LfuList.Entry candidate = lfuList.evictionCandidate();
+            if (candidate != null) {
+                evictNode((Node) ((LfuList.Handle<?>) candidate).owner);
             }
         } else if (strategy == EvictionStrategy.CLOCK) {
             while (true) {
@@ -117,24 +333,45 @@ public class MultiEvictionCache extends AofCache {
                 if (System.currentTimeMillis() > clockHand.expiry) {
                     Node toRemove = clockHand;
                     clockHand = clockHand.prev;
-                    removeNode(toRemove);
-                    cache.remove(toRemove.key);
+                    evictNode(toRemove);
                     return;
                 }
                 if (clockHand.referenceBit == 0) {
-                    removeNode(clockHand);
-                    cache.remove(clockHand.key);
+                    evictNode(clockHand);
                     return;
                 }
+                preserve(clockHand);
                 clockHand.referenceBit = 0;
             }
         } else if (strategy == EvictionStrategy.FIFO) {
             Node toRemove = tail.prev;
             if (toRemove != head) {
-                removeNode(toRemove);
-                cache.remove(toRemove.key);
+                evictNode(toRemove);
+            }
+        } else if (strategy == EvictionStrategy.APPROX_LFU) {
+            Node victim = sampleLfuVictim(cache, node -> node.expiry, node -> node.lfu);
+            if (victim != null) {
+                evictNode(victim);
+            }
+        }
+    }
+
+    // APPROX_LFU：随机采样 maxmemorySamples 个节点，返回衰减后计数最小的；采到过期节点直接返回它
+    protected <N> N sampleLfuVictim(CacheTable<String, N> table, ToLongFunction<N> expiry, ToIntFunction<N> lfu) {
+        N victim = null;
+        int minCounter = Integer.MAX_VALUE;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < maxmemorySamples; i++) {
+            N node = table.randomValue();
+            if (node == null) break;
+            if (now > expiry.applyAsLong(node)) return node;
+            int counter = lfuCounter.decayedCounter(lfu.applyAsInt(node));
+            if (counter < minCounter) {
+                minCounter = counter;
+                victim = node;
             }
         }
+        return victim;
     }
 
     private void addToHead(Node node) {
@@ -144,21 +381,26 @@ public class MultiEvictionCache extends AofCache {
         head.next = node;
     }
 
-    private void removeNode(Node node) {
-        node.prev.next = node.next;
-        node.next.prev = node.prev;
+    // 因容量淘汰：先记录删除再移除
+    private void evictNode(Node node) {
+        trackEvicted(node.memory);
+        evicted(node.key);
+        deleteNode(node);
     }
 
-    private void moveToHead(Node node) {
+    // 从索引、链表和过期时间轮中一并移除
+    private void deleteNode(Node node) {
+        deleting(node); // 在移出频率桶之前：LFU 节点移出后就读不到频率了
+        if (clockHand == node) clockHand = node.prev;
         removeNode(node);
-        addToHead(node);
+        if (node instanceof LfuNode) lfuList.remove(((LfuNode) node).frequency);
+        cache.remove(node.key);
+        cancelExpiry(node.key);
+        trackMemory(-node.memory);
     }
 
-    private void updateFreqMap(Node node, int count) {
-        if (strategy != EvictionStrategy.LFU) return;
-        freqMap.computeIfAbsent(count, k -> new ArrayList<>()).remove(node);
-        if (freqMap.get(count) != null && freqMap.get(count).isEmpty()) {
-            freqMap.remove(count);
-        }
+    private void removeNode(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
     }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+package com.redis.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+
+// SwissTable 风格的开放寻址哈希表：控制字节 + 平行的键/值数组，插入不分配 Entry 对象
+public class OpenAddressingHashMap<K, V> implements CacheTable<K, V> {
+    private static final byte EMPTY = (byte) 0x80; // 空槽，探测到即可停止
+    private static final byte DELETED = (byte) 0xFE; // 墓碑，探测需越过
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float MAX_LOAD = 0.875f; // 含墓碑的最大占用率
+    private static final float MIN_FILL_RATIO = 0.1f;
+
+    private byte[] ctrl; // 满槽保存哈希低 7 位（h2），先比对字节再比对键
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+    private int tombstones;
+
+    public OpenAddressingHashMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        int slot = findSlot(key, hash(key));
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (key == null || value == null) throw new IllegalArgumentException("Key or value cannot be null");
+        int hash = hash(key);
+        int slot = findSlot(key, hash);
+        if (slot >= 0) {
+            values[slot] = value;
+            return;
+        }
+
+        if (size + tombstones + 1 > ctrl.length * MAX_LOAD) {
+            // 墓碑过多时原尺寸重建即可，否则扩容一倍
+            resize(size + 1 > ctrl.length * MAX_LOAD / 2 ? ctrl.length * 2 : ctrl.length);
+        }
+        insertNew(key, value, hash);
+        size++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        int slot = findSlot(key, hash(key));
+        if (slot < 0) return null;
+        V removed = (V) values[slot];
+        keys[slot] = null;
+        values[slot] = null;
+        // 线性探测下，后继为空槽时不会有探测链经过此处，可直接置空而不留墓碑
+        if (ctrl[(slot + 1) & (ctrl.length - 1)] == EMPTY) {
+            ctrl[slot] = EMPTY;
+        } else {
+            ctrl[slot] = DELETED;
+            tombstones++;
+        }
+        size--;
+        if (ctrl.length > INITIAL_CAPACITY && size < ctrl.length * MIN_FILL_RATIO) {
+            resize(Math.max(INITIAL_CAPACITY, ctrl.length / 2));
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V randomValue() {
+        int slot = randomSlot();
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K randomKey() {
+        int slot = randomSlot();
+        return slot < 0 ? null : (K) keys[slot];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < ctrl.length; i++) {
+            if (ctrl[i] >= 0) action.accept((K) keys[i], (V) values[i]);
+        }
+    }
+
+    private int randomSlot() {
+        if (size == 0) return -1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int slot;
+        do {
+            slot = random.nextInt(ctrl.length);
+        } while (ctrl[slot] < 0);
+        return slot;
+    }
+
+    private int findSlot(Object key, int hash) {
+        int mask = ctrl.length - 1;
+        byte h2 = (byte) (hash & 0x7f);
+        for (int i = (hash >>> 7) & mask; ; i = (i + 1) & mask) {
+            byte c = ctrl[i];
+            if (c == EMPTY) return -1;
+            if (c == h2 && key.equals(keys[i])) return i;
+        }
+    }
+
+    private void insertNew(Object key, Object value, int hash) {
+        int mask = ctrl.length - 1;
+        int i = (hash >>> 7) & mask;
+        while (ctrl[i] >= 0) { // 满槽的控制字节非负
+            i = (i + 1) & mask;
+        }
+        if (ctrl[i] == DELETED) tombstones--;
+        ctrl[i] = (byte) (hash & 0x7f);
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private void resize(int newCapacity) {
+        byte[] oldCtrl = ctrl;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        try {
+            allocate(newCapacity);
+        } catch (OutOfMemoryError e) {
+            throw new RuntimeException("Failed to resize hashmap due to insufficient memory", e);
+        }
+        for (int i = 0; i < oldCtrl.length; i++) {
+            if (oldCtrl[i] >= 0) {
+                insertNew(oldKeys[i], oldValues[i], hash(oldKeys[i]));
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        ctrl = new byte[capacity];
+        Arrays.fill(ctrl, EMPTY);
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        tombstones = 0;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9; // 乘法散列，打散顺序整数键
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,267 @@
+package com.redis.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+// RDB 风格的二进制快照：
+// 文件头 16 字节："JRDB" + 版本号 int + 生成时间 long
+// 每个键：[0x01][键长度 varint][键][值长度 varint][值][绝对过期时间 varint][淘汰元数据 varint]
+// 结尾：[0xFF][键数 long][之前所有字节的 CRC32C int]
+// 淘汰元数据低 3 位是类型，其余是数值；加载的引擎只接受自己认识的类型
+public class RdbSnapshot {
+    public interface Visitor {
+        void visit(String key, String value, long expiry, long meta);
+    }
+
+    public static final int META_NONE = 0;
+    public static final int META_LRU = 1; // 访问次数 << 24 | 24 位 LRU 时钟
+    public static final int META_LFU = 2; // LfuList 频率
+    public static final int META_APPROX_LFU = 3; // LfuCounter 打包值
+    public static final int META_CLOCK = 4; // CLOCK 引用位
+
+    static final byte[] MAGIC = {'J', 'R', 'D', 'B'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    private static final byte OP_ENTRY = 1;
+    private static final byte OP_EOF = (byte) 0xFF;
+    private static final int TRAILER_SIZE = 1 + 8 + 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024; // 加载时每次映射的窗口
+
+    public static long meta(int kind, long value) {
+        return value << 3 | kind;
+    }
+
+    public static int metaKind(long meta) {
+        return (int) (meta & 7);
+    }
+
+    public static long metaValue(long meta) {
+        return meta >>> 3;
+    }
+
+    // 顺序写出快照，写入时同步计算 CRC
+    public static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long count;
+
+        public Writer(File file, long createdAt) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.put(MAGIC).putInt(VERSION).putLong(createdAt);
+        }
+
+        public void write(String key, String value, long expiry, long meta) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(1 + 10 + keyBytes.length + 10 + valueBytes.length + 10 + 10);
+            buffer.put(OP_ENTRY);
+            putVarLong(keyBytes.length);
+            buffer.put(keyBytes);
+            putVarLong(valueBytes.length);
+            buffer.put(valueBytes);
+            putVarLong(expiry);
+            putVarLong(meta);
+            count++;
+        }
+
+        // 写结尾并 fsync
+        public void finish() throws IOException {
+            ensure(TRAILER_SIZE);
+            buffer.put(OP_EOF).putLong(count);
+            flush();
+            ByteBuffer checksum = ByteBuffer.allocate(4).putInt((int) crc.getValue());
+            checksum.flip();
+            while (checksum.hasRemaining()) channel.write(checksum);
+            channel.force(false);
+        }
+
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            flush();
+            if (buffer.capacity() < bytes) buffer = ByteBuffer.allocate(bytes);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        private void putVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+    }
+
+    // 内存映射读取：先校验整个文件的 CRC，再按顺序解码；返回快照生成时间
+    public static long load(File file, Visitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IllegalStateException("Snapshot is truncated: " + file.getName());
+            }
+            ByteBuffer expected = ByteBuffer.allocate(4);
+            while (expected.hasRemaining() && channel.read(expected, size - 4 + expected.position()) > 0) ;
+            verifyChecksum(channel, size - 4, expected.getInt(0));
+            return read(new MappedReader(channel, size - 4), visitor);
+        }
+    }
+
+    // AOF 混合持久化：文件开头是一份完整快照，后面紧跟增量记录
+    // 结尾位置事先未知，先只读长度字段跳过所有键找到结尾并校验 CRC，再解码；返回增量记录开始的位置
+    static long loadPreamble(FileChannel channel, Visitor visitor) throws IOException {
+        long size = channel.size();
+        MappedReader scanner = new MappedReader(channel, size);
+        read(scanner, null);
+        long end = scanner.position();
+        scanner.ensure(4);
+        verifyChecksum(channel, end, scanner.getInt());
+        read(new MappedReader(channel, end), visitor);
+        return end + 4;
+    }
+
+    // 文件是否以快照头开始
+    static boolean hasMagic(byte[] header) {
+        return header.length >= MAGIC.length && Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    // 解码到结尾的键数为止；visitor 为 null 时只跳过键值，用于定位快照结尾
+    private static long read(MappedReader reader, Visitor visitor) throws IOException {
+        reader.ensure(HEADER_SIZE);
+        byte[] magic = new byte[MAGIC.length];
+        for (int i = 0; i < magic.length; i++) magic[i] = reader.get();
+        int version = reader.getInt();
+        if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+            throw new IOException("Unrecognized snapshot format");
+        }
+        long createdAt = reader.getLong();
+        long count = 0;
+        while (true) {
+            reader.ensure(1);
+            byte op = reader.get();
+            if (op == OP_EOF) break;
+            if (op != OP_ENTRY) {
+                throw new IllegalStateException("Unknown snapshot record type " + op);
+            }
+            if (visitor == null) {
+                reader.skip(reader.getVarLong());
+                reader.skip(reader.getVarLong());
+                reader.getVarLong();
+                reader.getVarLong();
+            } else {
+                String key = reader.getString();
+                String value = reader.getString();
+                long expiry = reader.getVarLong();
+                long meta = reader.getVarLong();
+                visitor.visit(key, value, expiry, meta);
+            }
+            count++;
+        }
+        reader.ensure(8);
+        if (reader.getLong() != count) {
+            throw new IllegalStateException("Snapshot key count mismatch");
+        }
+        return createdAt;
+    }
+
+    private static void verifyChecksum(FileChannel channel, long dataSize, int expected) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long position = 0; position < dataSize; position += WINDOW_SIZE) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, dataSize - position)));
+        }
+        if ((int) crc.getValue() != expected) {
+            throw new IllegalStateException("Snapshot checksum mismatch");
+        }
+    }
+
+    // 按窗口映射文件，读到窗口末尾时从当前位置重新映射
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final long limit;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private byte[] scratch = new byte[256];
+
+        MappedReader(FileChannel channel, long limit) {
+            this.channel = channel;
+            this.limit = limit;
+        }
+
+        void ensure(long bytes) throws IOException {
+            long position = position();
+            if (position + bytes > limit) {
+                throw new IllegalStateException("Snapshot is truncated at offset " + position);
+            }
+            if (window != null && window.remaining() >= bytes) return;
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(limit - position, Math.max(WINDOW_SIZE, bytes)));
+        }
+
+        long position() {
+            return windowStart + (window == null ? 0 : window.position());
+        }
+
+        byte get() {
+            return window.get();
+        }
+
+        int getInt() {
+            return window.getInt();
+        }
+
+        long getLong() {
+            return window.getLong();
+        }
+
+        long getVarLong() throws IOException {
+            ensure(Math.min(10, limit - windowStart - window.position()));
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = window.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+            throw new IllegalStateException("Malformed varint in snapshot");
+        }
+
+        void skip(long length) throws IOException {
+            if (length > Integer.MAX_VALUE) throw new IllegalStateException("Snapshot string too long");
+            ensure(length);
+            window.position(window.position() + (int) length);
+        }
+
+        String getString() throws IOException {
+            long length = getVarLong();
+            if (length > Integer.MAX_VALUE) throw new IllegalStateException("Snapshot string too long");
+            ensure(length);
+            int size = (int) length;
+            if (scratch.length < size) scratch = new byte[size];
+            window.get(scratch, 0, size);
+            return new String(scratch, 0, size, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.redis.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+// 主节点上一个副本的发送线程：PSYNC 之后连接从事件循环移交给它
+// 复制 ID 相同且偏移量仍在积压缓冲区内时回复 +CONTINUE 并从该偏移量继续（部分重同步），
+// 否则回复 +FULLRESYNC <id> <offset> 并以批量字符串发送该偏移量时刻的快照（全量同步）；之后持续转发新的记录
+// 副本跟不上、需要的数据已被覆盖时断开，副本重连后重新全量同步
+public class ReplicaFeed implements Closeable {
+    private static final long POLL_MILLIS = 100;
+
+    private final AofCache cache;
+    private final SocketChannel channel;
+    private final String replicationId;
+    private final long offset;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // channel 为非阻塞模式，可以仍注册在事件循环的 Selector 上（键已取消）
+    ReplicaFeed(AofCache cache, SocketChannel channel, String replicationId, long offset) {
+        this.cache = cache;
+        this.channel = channel;
+        this.replicationId = replicationId;
+        this.offset = offset;
+        this.thread = new Thread(this::run, "replica-feed");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    public boolean isRunning() {
+        return thread.isAlive();
+    }
+
+    private void run() {
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_WRITE);
+            ReplicationBacklog backlog = cache.replicationBacklog();
+            long position;
+            if (backlog.getReplicationId().equals(replicationId) && backlog.contains(offset)) {
+                write(selector, ascii("+CONTINUE " + replicationId + "\r\n"));
+                position = offset;
+            } else {
+                position = fullResync(selector, backlog);
+            }
+            while (running) {
+                byte[] data = backlog.readFrom(position, POLL_MILLIS);
+                if (data == null) {
+                    System.err.println("Replica fell behind the replication backlog, disconnecting");
+                    return;
+                }
+                write(selector, ByteBuffer.wrap(data));
+                position += data.length;
+            }
+        } catch (IOException e) {
+            if (running) System.err.println("Failed to feed replica: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close replica connection: " + e.getMessage());
+            }
+        }
+    }
+
+    // 快照先写到临时文件再发送，写快照期间的新记录留在积压缓冲区，发完后从快照对应的偏移量继续
+    private long fullResync(Selector selector, ReplicationBacklog backlog) throws IOException {
+        File file = File.createTempFile("temp-repl-", ".rdb");
+        try {
+            long start = cache.saveReplicationSnapshot(file);
+            try (FileChannel in = FileChannel.open(file.toPath())) {
+                long size = in.size();
+                write(selector, ascii("+FULLRESYNC " + backlog.getReplicationId() + " " + start + "\r\n$" + size + "\r\n"));
+                long sent = 0;
+                while (sent < size) {
+                    long n = in.transferTo(sent, size - sent, channel);
+                    if (n == 0) awaitWritable(selector);
+                    sent += n;
+                }
+            }
+            return start;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void write(Selector selector, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (channel.write(data) == 0) awaitWritable(selector);
+        }
+    }
+
+    // 副本的接收缓冲区满了，等到可写；关闭时不再等待
+    private void awaitWritable(Selector selector) throws IOException {
+        if (!running) throw new IOException("Replica feed closed");
+        selector.select(POLL_MILLIS);
+        selector.selectedKeys().clear();
+    }
+
+    // 断开副本并等待发送线程退出
+    @Override
+    public void close() {
+        running = false;
+        try {
+            channel.close();
+            thread.join();
+        } catch (IOException e) {
+            System.err.println("Failed to close replica connection: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ByteBuffer ascii(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,183 @@
+package com.redis.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+// 副本到主节点的复制连接：后台线程发送 PSYNC <复制 ID> <偏移量>，按回复全量加载快照或直接继续，
+// 之后逐段应用主节点转发的 AOF 记录并累加偏移量；连接断开后带着复制 ID 和偏移量重连，尝试部分重同步
+// 与 Redis 一样只是异步复制：主节点不等副本确认，副本落后的部分在主节点宕机时会丢失
+// 过期不经复制流，主从按记录中的绝对过期时间各自过期；副本的容量不应小于主节点，否则副本自己的淘汰会使数据集分叉
+public class ReplicaLink implements Closeable {
+    private static final long RETRY_MILLIS = 100;
+    private static final int APPLY_BATCH_SIZE = 64 * 1024; // 接收缓冲区中已有的记录攒到该大小后加一次锁应用
+
+    private final AofCache cache;
+    private final String host;
+    private final int port;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile Socket socket;
+    private volatile String replicationId = "?"; // 还没有同步过时为 ?，与 Redis 相同
+    private volatile long offset = -1;
+    private volatile long fullSyncs;
+    private volatile long partialSyncs;
+
+    public ReplicaLink(AofCache cache, String host, int port) {
+        if (cache == null) throw new IllegalArgumentException("Cache cannot be null");
+        if (port <= 0 || port > 65535) throw new IllegalArgumentException("Port out of range");
+        this.cache = cache;
+        this.host = host;
+        this.port = port;
+        this.thread = new Thread(this::run, "replica-link-" + host + ":" + port);
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public String getMaster() {
+        return host + ":" + port;
+    }
+
+    public String getReplicationId() {
+        return replicationId;
+    }
+
+    // 已应用的复制偏移量，与主节点的 getReplicationOffset 相等时已追上
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getFullSyncs() {
+        return fullSyncs;
+    }
+
+    public long getPartialSyncs() {
+        return partialSyncs;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                sync();
+            } catch (IOException | RuntimeException e) {
+                if (running) System.err.println("Failed to replicate from " + getMaster() + ": " + e.getMessage());
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            this.socket = socket;
+            if (!running) return;
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), APPLY_BATCH_SIZE));
+            OutputStream out = socket.getOutputStream();
+            out.write(RespClient.command("PSYNC", replicationId, Long.toString(offset)));
+            out.flush();
+            String reply = RespClient.readLine(in);
+            if (reply.startsWith("+FULLRESYNC ")) {
+                String[] parts = reply.split(" ");
+                String header = RespClient.readLine(in);
+                if (parts.length != 3 || !header.startsWith("$")) throw new IllegalStateException("Unexpected PSYNC reply " + reply);
+                loadSnapshot(in, Long.parseLong(header.substring(1)));
+                replicationId = parts[1];
+                offset = Long.parseLong(parts[2]);
+                fullSyncs++;
+            } else if (reply.startsWith("+CONTINUE")) {
+                partialSyncs++;
+            } else {
+                throw new IllegalStateException("Unexpected PSYNC reply " + reply);
+            }
+            stream(in);
+        } finally {
+            this.socket = null;
+        }
+    }
+
+    // 与 Redis 一样先把快照存到临时文件，收完再清空本地数据集并加载
+    private void loadSnapshot(DataInputStream in, long length) throws IOException {
+        File file = File.createTempFile("temp-repl-", ".rdb");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                byte[] buffer = new byte[APPLY_BATCH_SIZE];
+                for (long remaining = length; remaining > 0; ) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (n < 0) throw new IOException("Connection closed during full resync");
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            }
+            cache.loadReplicationSnapshot(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    // 读出完整的记录，接收缓冲区暂时读空或攒够一批时应用；断开时只丢掉不完整的最后一条
+    private void stream(DataInputStream in) throws IOException {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        byte[] header = new byte[AofFormat.RECORD_HEADER_SIZE];
+        while (running) {
+            try {
+                in.readFully(header);
+            } catch (EOFException e) {
+                throw new IOException("Connection closed");
+            }
+            int payloadSize = ByteBuffer.wrap(header).getInt();
+            // 与 AofLoader 相同检查长度字段，损坏的长度不能用来分配缓冲区
+            if (payloadSize < AofFormat.MIN_PAYLOAD_SIZE || payloadSize > AofFormat.MAX_PAYLOAD_SIZE) {
+                throw new IllegalStateException("Replication stream is corrupted");
+            }
+            byte[] record = new byte[header.length + payloadSize];
+            System.arraycopy(header, 0, record, 0, header.length);
+            in.readFully(record, header.length, payloadSize);
+            batch.write(record, 0, record.length);
+            if (in.available() == 0 || batch.size() >= APPLY_BATCH_SIZE) {
+                byte[] records = batch.toByteArray();
+                batch.reset();
+                cache.applyReplicationStream(records);
+                offset += records.length;
+            }
+        }
+    }
+
+    // 断开当前连接（模拟网络中断），线程随后重连并尝试部分重同步
+    public void disconnect() {
+        Socket current = socket;
+        if (current == null) return;
+        try {
+            current.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close replication connection: " + e.getMessage());
+        }
+    }
+
+    // 停止复制；已应用的数据保留
+    @Override
+    public void close() {
+        running = false;
+        disconnect();
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
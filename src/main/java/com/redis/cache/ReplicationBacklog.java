@@ -0,0 +1,77 @@
+package com.redis.cache;
+
+import java.security.SecureRandom;
+
+// 主节点的复制积压缓冲区，与 Redis repl-backlog 相同：环形保存最近写入的复制流（二进制 AOF 记录），
+// 偏移量为创建以来写入的总字节数；断开不久的副本带着复制 ID 和偏移量重连，数据仍在缓冲区内即可部分重同步
+public class ReplicationBacklog {
+    public static final int DEFAULT_SIZE = 1024 * 1024; // 与 Redis repl-backlog-size 默认值相同
+
+    private final String replicationId;
+    private final byte[] buffer;
+    private long offset;
+
+    public ReplicationBacklog(int size) {
+        if (size <= 0) throw new IllegalArgumentException("Backlog size must be positive");
+        this.buffer = new byte[size];
+        this.replicationId = randomId();
+    }
+
+    public String getReplicationId() {
+        return replicationId;
+    }
+
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    // 仍在缓冲区内的最早偏移量
+    public synchronized long getFirstOffset() {
+        return Math.max(0, offset - buffer.length);
+    }
+
+    public synchronized boolean contains(long from) {
+        return from >= getFirstOffset() && from <= offset;
+    }
+
+    // 调用方在缓存锁内按写入顺序追加完整的记录
+    public synchronized void append(byte[] data) {
+        int length = data.length;
+        int from = 0;
+        if (length > buffer.length) { // 只需保留最后一段
+            from = length - buffer.length;
+        }
+        int position = (int) ((offset + from) % buffer.length);
+        int first = Math.min(length - from, buffer.length - position);
+        System.arraycopy(data, from, buffer, position, first);
+        System.arraycopy(data, from + first, buffer, 0, length - from - first);
+        offset += length;
+        notifyAll();
+    }
+
+    // 等待 from 之后的数据，返回其拷贝；超时返回空数组，from 已被覆盖返回 null
+    public synchronized byte[] readFrom(long from, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (offset == from) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return new byte[0];
+            wait(remaining);
+        }
+        if (!contains(from)) return null;
+        byte[] data = new byte[(int) (offset - from)];
+        int position = (int) (from % buffer.length);
+        int first = Math.min(data.length, buffer.length - position);
+        System.arraycopy(buffer, position, data, 0, first);
+        System.arraycopy(buffer, 0, data, first, data.length - first);
+        return data;
+    }
+
+    // 40 位十六进制，与 Redis 的复制 ID 形式相同
+    private static String randomId() {
+        byte[] bytes = new byte[20];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder id = new StringBuilder(40);
+        for (byte b : bytes) id.append(String.format("%02x", b));
+        return id.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package com.redis.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// 作为客户端连其他节点时用的 RESP 编解码：槽迁移、副本的 PSYNC 和压测客户端共用
+// 请求按多条批量格式编码，长度按 UTF-8 字节数计算；回复逐行读取，由调用方按类型解释
+public final class RespClient {
+    private RespClient() {
+    }
+
+    public static byte[] command(String... args) {
+        StringBuilder request = new StringBuilder("*").append(args.length).append("\r\n");
+        for (String arg : args) {
+            request.append('$').append(arg.getBytes(StandardCharsets.UTF_8).length).append("\r\n").append(arg).append("\r\n");
+        }
+        return request.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 读到 \r 为止并跳过随后的 \n；连接关闭时抛 IOException
+    public static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) throw new IOException("Connection closed");
+            line.append((char) b);
+        }
+        in.read();
+        return line.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package com.redis.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// RESP 请求解析：直接在读缓冲区上定位参数，只记录每个参数的位置和长度，不拷贝数据
+// 支持客户端使用的多条批量格式（*N\r\n$len\r\n...\r\n）和 telnet 式内联命令
+// 一次解析一条命令，数据不完整时保持缓冲区位置不变，等下次读到更多数据再解析；格式错误抛 IllegalStateException
+public class RespParser {
+    static final int MAX_INLINE_LENGTH = 64 * 1024; // 与 Redis PROTO_INLINE_MAX_SIZE 相同
+    static final int MAX_BULK_LENGTH = 512 * 1024 * 1024; // 与 Redis proto-max-bulk-len 默认值相同
+    static final int MAX_ARGS = 1024 * 1024;
+
+    private ByteBuffer buffer;
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private int argc;
+    private byte[] scratch = new byte[256];
+
+    // 从 position 开始解析一条命令：完整时 position 移到命令之后并返回 true（空命令的 argc 为 0），否则返回 false
+    public boolean parse(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.argc = 0;
+        int start = buffer.position();
+        int end = buffer.get(start) == '*' ? parseMultiBulk(start) : parseInline(start);
+        if (end < 0) {
+            argc = 0;
+            return false;
+        }
+        buffer.position(end);
+        return true;
+    }
+
+    public int argc() {
+        return argc;
+    }
+
+    public int argLength(int index) {
+        return lengths[index];
+    }
+
+    // 按 ASCII 忽略大小写比较参数，name 须为大写；用于匹配命令名和选项，不分配对象
+    public boolean argEquals(int index, byte[] name) {
+        if (lengths[index] != name.length) return false;
+        int offset = offsets[index];
+        for (int i = 0; i < name.length; i++) {
+            int b = buffer.get(offset + i);
+            if (b >= 'a' && b <= 'z') b -= 'a' - 'A';
+            if (b != name[i]) return false;
+        }
+        return true;
+    }
+
+    public String argString(int index) {
+        int length = lengths[index];
+        if (scratch.length < length) scratch = new byte[length];
+        buffer.get(offsets[index], scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // 在缓冲区上直接解析十进制整数，不是合法的 long 时抛 NumberFormatException
+    public long argLong(int index) {
+        return parseLong(offsets[index], offsets[index] + lengths[index]);
+    }
+
+    // 返回命令结束位置，数据不完整返回 -1
+    private int parseMultiBulk(int start) {
+        int limit = buffer.limit();
+        int lineEnd = findCrlf(start + 1, limit);
+        if (lineEnd < 0) return -1;
+        long count = parseHeader(start + 1, lineEnd, "multibulk length");
+        if (count > MAX_ARGS) throw new IllegalStateException("Protocol error: invalid multibulk length");
+        int position = lineEnd + 2;
+        for (int i = 0; i < count; i++) {
+            if (position >= limit) return -1;
+            if (buffer.get(position) != '$') {
+                throw new IllegalStateException("Protocol error: expected '$', got '" + (char) buffer.get(position) + "'");
+            }
+            lineEnd = findCrlf(position + 1, limit);
+            if (lineEnd < 0) return -1;
+            long length = parseHeader(position + 1, lineEnd, "bulk length");
+            if (length < 0 || length > MAX_BULK_LENGTH) throw new IllegalStateException("Protocol error: invalid bulk length");
+            int data = lineEnd + 2;
+            if ((long) data + length + 2 > limit) return -1;
+            if (buffer.get(data + (int) length) != '\r' || buffer.get(data + (int) length + 1) != '\n') {
+                throw new IllegalStateException("Protocol error: bulk data not terminated by CRLF");
+            }
+            addArg(data, (int) length);
+            position = data + (int) length + 2;
+        }
+        return position;
+    }
+
+    // 内联命令以 \n 结束（\r 可选），参数以空格分隔
+    private int parseInline(int start) {
+        int limit = buffer.limit();
+        int newline = -1;
+        for (int i = start; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                newline = i;
+                break;
+            }
+        }
+        if (newline < 0) {
+            if (limit - start > MAX_INLINE_LENGTH) throw new IllegalStateException("Protocol error: too big inline request");
+            return -1;
+        }
+        int lineEnd = newline > start && buffer.get(newline - 1) == '\r' ? newline - 1 : newline;
+        int i = start;
+        while (i < lineEnd) {
+            while (i < lineEnd && buffer.get(i) == ' ') i++;
+            int argStart = i;
+            while (i < lineEnd && buffer.get(i) != ' ') i++;
+            if (i > argStart) addArg(argStart, i - argStart);
+        }
+        return newline + 1;
+    }
+
+    private void addArg(int offset, int length) {
+        if (argc == offsets.length) {
+            offsets = Arrays.copyOf(offsets, argc * 2);
+            lengths = Arrays.copyOf(lengths, argc * 2);
+        }
+        offsets[argc] = offset;
+        lengths[argc] = length;
+        argc++;
+    }
+
+    // 找到从 from 开始的第一个 \r\n，返回 \r 的位置；一行过长说明不是合法的长度行
+    private int findCrlf(int from, int limit) {
+        for (int i = from; i + 1 < limit; i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') return i;
+            if (i - from > 20) throw new IllegalStateException("Protocol error: invalid length line");
+        }
+        return -1;
+    }
+
+    private long parseHeader(int from, int to, String what) {
+        try {
+            return parseLong(from, to);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Protocol error: invalid " + what);
+        }
+    }
+
+    private long parseLong(int from, int to) {
+        if (from >= to) throw new NumberFormatException("Empty integer");
+        boolean negative = buffer.get(from) == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to) throw new NumberFormatException("Invalid integer");
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("Invalid integer");
+            // 按负数累加，Long.MIN_VALUE 也能表示
+            if (value < (Long.MIN_VALUE + digit) / 10) throw new NumberFormatException("Integer overflow");
+            value = value * 10 - digit;
+        }
+        if (negative) return value;
+        if (value == Long.MIN_VALUE) throw new NumberFormatException("Integer overflow");
+        return -value;
+    }
+}
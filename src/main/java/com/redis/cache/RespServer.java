@@ -0,0 +1,995 @@
+package com.redis.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// RESP2/RESP3 协议的 TCP 服务，Redis 客户端和 redis-benchmark 可以直接连接
+// 每次可读时读一批数据，解析其中所有完整命令（管道），回复先拼进写缓冲区，整批只写一次 socket
+// 写不完时暂停读取该连接，等回复发完再继续，积压的请求留在内核缓冲区形成背压
+// io-threads 为 1 时一个事件循环线程完成所有工作；大于 1 时与 Redis 6 的多线程 I/O 相同：
+// N 个 I/O 线程各自一个 Selector 负责读取、解析、序列化和写出，访问缓存的命令按连接整批交给唯一的命令线程顺序执行
+// 集群模式下每个节点拥有一部分哈希槽，键不归本节点时回复 MOVED/ASK，由 ClusterState 负责槽位和迁移
+// 主从复制：副本连接发来 PSYNC 后移交给 ReplicaFeed 线程；REPLICAOF 使本节点成为副本，由 ReplicaLink 接收，期间只读
+public class RespServer implements Closeable {
+    private static final int BUFFER_SIZE = 16 * 1024; // 与 Redis PROTO_IOBUF_LEN 相同
+    private static final int MAX_POOLED_BUFFERS = 1024;
+    private static final int MAX_QUERY_BUFFER = 1024 * 1024 * 1024; // 与 Redis client-query-buffer-limit 默认值相同
+
+    private static final byte[] GET = ascii("GET");
+    private static final byte[] SET = ascii("SET");
+    private static final byte[] DEL = ascii("DEL");
+    private static final byte[] MGET = ascii("MGET");
+    private static final byte[] MSET = ascii("MSET");
+    private static final byte[] EXPIRE = ascii("EXPIRE");
+    private static final byte[] TTL = ascii("TTL");
+    private static final byte[] PING = ascii("PING");
+    private static final byte[] ECHO = ascii("ECHO");
+    private static final byte[] HELLO = ascii("HELLO");
+    private static final byte[] SELECT = ascii("SELECT");
+    private static final byte[] CONFIG = ascii("CONFIG");
+    private static final byte[] COMMAND = ascii("COMMAND");
+    private static final byte[] CLIENT = ascii("CLIENT");
+    private static final byte[] OBJECT = ascii("OBJECT");
+    private static final byte[] QUIT = ascii("QUIT");
+    private static final byte[] CLUSTER = ascii("CLUSTER");
+    private static final byte[] ASKING = ascii("ASKING");
+    private static final byte[] PSYNC = ascii("PSYNC");
+    private static final byte[] REPLICAOF = ascii("REPLICAOF");
+    private static final byte[] EX = ascii("EX");
+    private static final byte[] PX = ascii("PX");
+    private static final byte[] SETNAME = ascii("SETNAME");
+    private static final byte[] SETINFO = ascii("SETINFO");
+    private static final byte[] ENCODING = ascii("ENCODING");
+
+    private static final byte[] OK = ascii("+OK\r\n");
+    private static final byte[] PONG = ascii("+PONG\r\n");
+    private static final byte[] NULL_BULK = ascii("$-1\r\n");
+    private static final byte[] NULL_RESP3 = ascii("_\r\n");
+    private static final byte[] EMPTY_ARRAY = ascii("*0\r\n");
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final Object HELLO_REPLY = new Object(); // 序列化时按连接信息生成
+    private static final byte[] NO_REPLY = new byte[0]; // PSYNC 的回复由 ReplicaFeed 发送
+
+    // 需要访问缓存、由命令线程执行的操作
+    private static final int OP_NONE = 0;
+    private static final int OP_GET = 1;
+    private static final int OP_SET = 2;
+    private static final int OP_DEL = 3;
+    private static final int OP_EXPIRE = 4;
+    private static final int OP_TTL = 5;
+    private static final int OP_MGET = 6;
+    private static final int OP_MSET = 7;
+    private static final int OP_OBJECT_ENCODING = 8;
+    private static final int OP_CLUSTER = 9;
+
+    // 一条已解析的命令：I/O 线程解码参数，命令线程执行后填入回复，再由 I/O 线程序列化
+    // 回复为 byte[] 时原样写出，String 为批量字符串，Long 为整数，List 为批量字符串数组，ErrorReply 为错误，null 为空值
+    private static final class Command {
+        int op;
+        String[] args = new String[2]; // 不含命令名
+        int argc;
+        long number; // SET 的 TTL 毫秒数、EXPIRE 的秒数
+        int protocol; // 解析时连接使用的协议版本
+        boolean asking; // 前一条命令是 ASKING，可以访问本节点正在迁入的槽位
+        Object reply;
+    }
+
+    private static final class ErrorReply {
+        final String message;
+        ErrorReply(String message) {
+            this.message = message;
+        }
+    }
+
+    // 一个客户端连接：缓冲区只在有未处理的请求或未发完的回复时持有
+    // 有一批命令在命令线程执行时不读取该连接，保证同一连接的回复按请求顺序返回
+    private static final class Connection {
+        final SocketChannel channel;
+        final long id;
+        SelectionKey key;
+        ByteBuffer in; // 写模式，[0, position) 是未处理的请求
+        ByteBuffer out; // 写模式，[0, position) 是未发出的回复
+        final List<Command> batch = new ArrayList<>(); // 复用的命令对象，前 batchSize 个属于当前批次
+        int batchSize;
+        int protocol = 2;
+        boolean asking;
+        boolean closeAfterReply;
+        String[] psync; // 发完之前的回复后移交给 ReplicaFeed 的 {复制 ID, 偏移量}
+        Connection(SocketChannel channel, long id) {
+            this.channel = channel;
+            this.id = id;
+        }
+
+        Command nextCommand() {
+            if (batchSize == batch.size()) batch.add(new Command());
+            Command command = batch.get(batchSize++);
+            command.op = OP_NONE;
+            command.argc = 0;
+            command.reply = null;
+            command.protocol = protocol;
+            command.asking = asking;
+            asking = false; // ASKING 只对下一条命令有效
+            return command;
+        }
+    }
+
+    private final HashMapCache cache;
+    private final InetSocketAddress address;
+    private int ioThreadCount = 1;
+    private IoThread[] ioThreads;
+    private ExecutorService commandThread; // 只有多线程 I/O 时才有
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private long nextClientId = 1;
+    private int nextIoThread;
+    private final AtomicLong commandCount = new AtomicLong();
+    private boolean clusterEnabled;
+    private volatile ClusterState cluster; // 集群模式启动后才有
+    private volatile ReplicaLink replicaLink; // 作为副本时才有
+    private final List<ReplicaFeed> replicaFeeds = new ArrayList<>();
+
+    // 与 Redis 默认的 bind 127.0.0.1 相同，只监听本机；port 为 0 时由系统分配
+    public RespServer(HashMapCache cache, int port) {
+        this(cache, "127.0.0.1", port);
+    }
+
+    public RespServer(HashMapCache cache, String host, int port) {
+        if (cache == null) throw new IllegalArgumentException("Cache cannot be null");
+        if (port < 0 || port > 65535) throw new IllegalArgumentException("Port out of range");
+        this.cache = cache;
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    // 与 Redis io-threads 相同，默认 1；需在 start 之前设置
+    public synchronized void setIoThreads(int ioThreads) {
+        if (ioThreads <= 0) throw new IllegalArgumentException("I/O threads must be positive");
+        if (running) throw new IllegalStateException("Cannot change I/O threads while running");
+        this.ioThreadCount = ioThreads;
+    }
+
+    // 与 Redis cluster-enabled 相同；需在 start 之前设置，节点 ID 为实际监听的 host:port
+    public synchronized void setClusterEnabled(boolean clusterEnabled) {
+        if (running) throw new IllegalStateException("Cannot change cluster mode while running");
+        this.clusterEnabled = clusterEnabled;
+    }
+
+    public ClusterState getCluster() {
+        return cluster;
+    }
+
+    // 与 Redis REPLICAOF host port 相同：从主节点全量同步后持续接收写入，期间拒绝客户端的写命令；
+    // host 为 null 时（REPLICAOF NO ONE）停止复制并恢复可写，已有的数据保留
+    public synchronized void replicaOf(String host, int port) {
+        if (cluster != null) throw new IllegalStateException("REPLICAOF not allowed in cluster mode");
+        if (replicaLink != null) {
+            replicaLink.close();
+            replicaLink = null;
+        }
+        if (host == null) return;
+        ReplicaLink link = new ReplicaLink(cache, host, port);
+        link.start();
+        replicaLink = link;
+    }
+
+    public ReplicaLink getReplicaLink() {
+        return replicaLink;
+    }
+
+    // 当前连接的副本数
+    public synchronized int getConnectedReplicas() {
+        replicaFeeds.removeIf(feed -> !feed.isRunning());
+        return replicaFeeds.size();
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) return;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 511); // 与 Redis tcp-backlog 默认值相同
+        serverChannel.configureBlocking(false);
+        if (clusterEnabled && cluster == null) {
+            cluster = new ClusterState(cache, address.getHostString() + ":" + getPort());
+        }
+        ioThreads = new IoThread[ioThreadCount];
+        for (int i = 0; i < ioThreadCount; i++) {
+            ioThreads[i] = new IoThread(i);
+        }
+        serverChannel.register(ioThreads[0].selector, SelectionKey.OP_ACCEPT); // 第一个 I/O 线程负责接受连接
+        if (ioThreadCount > 1) {
+            commandThread = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "resp-command"));
+        }
+        running = true;
+        for (IoThread ioThread : ioThreads) {
+            ioThread.thread.start();
+        }
+    }
+
+    // 实际监听的端口
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    // 停止事件循环并关闭所有连接；缓存由调用方关闭
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+            for (IoThread ioThread : ioThreads) ioThread.selector.wakeup();
+        }
+        try {
+            for (IoThread ioThread : ioThreads) ioThread.thread.join();
+            if (commandThread != null) {
+                commandThread.shutdown();
+                commandThread.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            if (cluster != null) cluster.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<ReplicaFeed> feeds;
+        synchronized (this) {
+            if (replicaLink != null) replicaLink.close();
+            replicaLink = null;
+            feeds = new ArrayList<>(replicaFeeds);
+            replicaFeeds.clear();
+        }
+        for (ReplicaFeed feed : feeds) feed.close();
+    }
+
+    // 一个 I/O 线程：自己的 Selector、缓冲区池和解析器，连接固定归属一个线程
+    private final class IoThread implements Runnable {
+        final Selector selector;
+        final BufferPool pool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+        final RespParser parser = new RespParser();
+        final ConcurrentLinkedQueue<Connection> accepted = new ConcurrentLinkedQueue<>(); // 接受线程分配来的新连接
+        final ConcurrentLinkedQueue<Connection> completed = new ConcurrentLinkedQueue<>(); // 命令线程执行完的批次
+        final Thread thread;
+
+        IoThread(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "resp-io-" + index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerAccepted();
+                    replyCompleted();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isWritable()) {
+                                flush(connection);
+                            } else if (key.isReadable()) {
+                                read(connection);
+                            }
+                        } catch (IOException e) {
+                            close(connection); // 客户端断开
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to run RESP server: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) close((Connection) key.attachment());
+                }
+                try {
+                    if (this == ioThreads[0]) serverChannel.close();
+                    selector.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close RESP server: " + e.getMessage());
+                }
+            }
+        }
+
+        // 按轮转把新连接分给各个 I/O 线程
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                IoThread target = ioThreads[nextIoThread++ % ioThreads.length];
+                Connection connection = new Connection(channel, nextClientId++);
+                if (target == this) {
+                    register(connection);
+                } else {
+                    target.accepted.add(connection);
+                    target.selector.wakeup();
+                }
+            }
+        }
+
+        private void registerAccepted() throws IOException {
+            Connection connection;
+            while ((connection = accepted.poll()) != null) {
+                register(connection);
+            }
+        }
+
+        private void register(Connection connection) throws IOException {
+            connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+
+        private void read(Connection connection) throws IOException {
+            if (connection.in == null) {
+                connection.in = pool.acquire();
+            } else if (!connection.in.hasRemaining()) {
+                if (connection.in.capacity() >= MAX_QUERY_BUFFER) {
+                    close(connection); // 与 Redis 一样直接断开超过查询缓冲区上限的客户端
+                    return;
+                }
+                connection.in = grow(connection.in); // 一条命令超过了缓冲区
+            }
+            int read = connection.channel.read(connection.in);
+            if (read < 0) {
+                close(connection);
+                return;
+            }
+            if (read == 0) return;
+            ByteBuffer in = connection.in;
+            in.flip();
+            boolean needsCache = false;
+            try {
+                while (in.hasRemaining() && !connection.closeAfterReply && parser.parse(in)) {
+                    if (parser.argc() > 0) {
+                        Command command = connection.nextCommand();
+                        prepare(connection, parser, command);
+                        needsCache |= command.op != OP_NONE;
+                    }
+                }
+            } catch (IllegalStateException e) {
+                // 与 Redis 一样回复协议错误后断开，无法再确定下一条命令从哪里开始
+                connection.nextCommand().reply = new ErrorReply("ERR " + e.getMessage());
+                connection.closeAfterReply = true;
+            }
+            if (in.hasRemaining() && !connection.closeAfterReply) {
+                in.compact(); // 半条命令留到下次读取
+            } else {
+                pool.release(in);
+                connection.in = null;
+            }
+            commandCount.addAndGet(connection.batchSize);
+            if (!needsCache) {
+                reply(connection);
+            } else if (commandThread == null) {
+                executeBatch(connection);
+                reply(connection);
+            } else {
+                connection.key.interestOps(0); // 批次执行完之前不再读取
+                commandThread.execute(() -> {
+                    executeBatch(connection);
+                    completed.add(connection);
+                    selector.wakeup();
+                });
+            }
+        }
+
+        private void replyCompleted() {
+            Connection connection;
+            while ((connection = completed.poll()) != null) {
+                if (!connection.key.isValid()) continue;
+                try {
+                    reply(connection);
+                } catch (IOException e) {
+                    close(connection);
+                }
+            }
+        }
+
+        // 序列化当前批次的所有回复并写出
+        private void reply(Connection connection) throws IOException {
+            for (int i = 0; i < connection.batchSize; i++) {
+                serialize(connection, connection.batch.get(i));
+            }
+            connection.batchSize = 0;
+            flush(connection);
+        }
+
+        // 整批回复一次写出；写不完时改为等待可写，暂停读取
+        private void flush(Connection connection) throws IOException {
+            ByteBuffer out = connection.out;
+            if (out != null) {
+                out.flip();
+                connection.channel.write(out);
+                if (out.hasRemaining()) {
+                    out.compact();
+                    connection.key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                pool.release(out);
+                connection.out = null;
+            }
+            if (connection.psync != null) {
+                handOff(connection);
+                return;
+            }
+            if (connection.closeAfterReply) {
+                close(connection);
+                return;
+            }
+            if (connection.key.interestOps() != SelectionKey.OP_READ) {
+                connection.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        // 副本连接离开事件循环，之后由 ReplicaFeed 线程独占
+        private void handOff(Connection connection) {
+            connection.key.cancel();
+            ReplicaFeed feed = new ReplicaFeed(cache, connection.channel, connection.psync[0], Long.parseLong(connection.psync[1]));
+            synchronized (RespServer.this) {
+                if (!running) {
+                    close(connection);
+                    return;
+                }
+                replicaFeeds.removeIf(existing -> !existing.isRunning());
+                replicaFeeds.add(feed);
+            }
+            feed.start();
+        }
+
+        private void close(Connection connection) {
+            connection.key.cancel();
+            if (connection.in != null) pool.release(connection.in);
+            if (connection.out != null) pool.release(connection.out);
+            connection.in = null;
+            connection.out = null;
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close connection: " + e.getMessage());
+            }
+        }
+
+        private void serialize(Connection connection, Command command) {
+            Object reply = command.reply;
+            if (reply == null) {
+                raw(connection, command.protocol == 3 ? NULL_RESP3 : NULL_BULK);
+            } else if (reply instanceof byte[]) {
+                raw(connection, (byte[]) reply);
+            } else if (reply instanceof String) {
+                bulk(connection, (String) reply);
+            } else if (reply instanceof Long) {
+                integer(connection, (Long) reply);
+            } else if (reply instanceof List) {
+                array(connection, (List<?>) reply, command.protocol);
+            } else if (reply instanceof ErrorReply) {
+                error(connection, ((ErrorReply) reply).message);
+            } else if (reply == HELLO_REPLY) {
+                hello(connection, command.protocol);
+            }
+        }
+
+        // 以下把回复追加到写缓冲区，整批处理完后一起写出
+
+        private void raw(Connection connection, byte[] bytes) {
+            ensure(connection, bytes.length).put(bytes);
+        }
+
+        // 错误信息可能带有客户端发来的参数，与 Redis addReplyErrorLength 相同把换行换成空格，免得拆出额外的回复
+        private void error(Connection connection, String message) {
+            ByteBuffer out = ensure(connection, message.length() + 3);
+            out.put((byte) '-');
+            putString(out, message.replace('\r', ' ').replace('\n', ' '));
+            out.put(CRLF);
+        }
+
+        private void integer(Connection connection, long value) {
+            ByteBuffer out = ensure(connection, 23);
+            out.put((byte) ':');
+            putLong(out, value);
+            out.put(CRLF);
+        }
+
+        private void header(Connection connection, char type, long count) {
+            ByteBuffer out = ensure(connection, 23);
+            out.put((byte) type);
+            putLong(out, count);
+            out.put(CRLF);
+        }
+
+        private void bulk(Connection connection, String value) {
+            int length = utf8Length(value);
+            ByteBuffer out = ensure(connection, length + 25);
+            out.put((byte) '$');
+            putLong(out, length);
+            out.put(CRLF);
+            if (length == value.length()) {
+                putString(out, value);
+            } else {
+                out.put(value.getBytes(StandardCharsets.UTF_8));
+            }
+            out.put(CRLF);
+        }
+
+        // MGET 的回复，不存在的键为空值；CLUSTER SLOTS 的回复嵌套数组和整数
+        private void array(Connection connection, List<?> values, int protocol) {
+            header(connection, '*', values.size());
+            for (Object value : values) {
+                if (value == null) raw(connection, protocol == 3 ? NULL_RESP3 : NULL_BULK);
+                else if (value instanceof Long) integer(connection, (Long) value);
+                else if (value instanceof List) array(connection, (List<?>) value, protocol);
+                else bulk(connection, (String) value);
+            }
+        }
+
+        // HELLO 回复服务信息；RESP3 下为 map
+        private void hello(Connection connection, int protocol) {
+            header(connection, protocol == 3 ? '%' : '*', protocol == 3 ? 6 : 12);
+            bulk(connection, "server");
+            bulk(connection, "redis");
+            bulk(connection, "version");
+            bulk(connection, "7.0.0"); // 客户端按版本号判断可用的命令，报告兼容的 Redis 版本
+            bulk(connection, "proto");
+            integer(connection, protocol);
+            bulk(connection, "id");
+            integer(connection, connection.id);
+            bulk(connection, "mode");
+            bulk(connection, cluster != null ? "cluster" : "standalone");
+            bulk(connection, "role");
+            bulk(connection, replicaLink != null ? "replica" : "master");
+        }
+
+        // 写缓冲区至少留出 bytes 字节；不够时扩容，同一批回复仍只写一次
+        private ByteBuffer ensure(Connection connection, int bytes) {
+            ByteBuffer out = connection.out;
+            if (out == null) {
+                out = connection.out = pool.acquire();
+            }
+            if (out.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                grown.put(out);
+                pool.release(out);
+                out = connection.out = grown;
+            }
+            return out;
+        }
+    }
+
+    // I/O 线程中解析一条命令：检查参数、解码键值；不访问缓存的命令直接得出回复
+    private void prepare(Connection connection, RespParser parser, Command command) {
+        int argc = parser.argc();
+        try {
+            if (parser.argEquals(0, GET)) {
+                if (arity(parser, command, argc == 2)) decode(parser, command, OP_GET);
+            } else if (parser.argEquals(0, SET)) {
+                prepareSet(parser, command);
+            } else if (parser.argEquals(0, DEL)) {
+                if (arity(parser, command, argc >= 2)) decode(parser, command, OP_DEL);
+            } else if (parser.argEquals(0, MGET)) {
+                if (arity(parser, command, argc >= 2)) decode(parser, command, OP_MGET);
+            } else if (parser.argEquals(0, MSET)) {
+                if (arity(parser, command, argc >= 3 && argc % 2 == 1)) decode(parser, command, OP_MSET);
+            } else if (parser.argEquals(0, EXPIRE)) {
+                if (!arity(parser, command, argc == 3)) return;
+                long seconds = parser.argLong(2);
+                if (seconds > (ExpiryCache.NO_EXPIRY - System.currentTimeMillis()) / 1000) {
+                    command.reply = new ErrorReply("ERR invalid expire time in 'expire' command");
+                    return;
+                }
+                command.number = seconds;
+                decode(parser, command, OP_EXPIRE);
+                command.argc = 1;
+            } else if (parser.argEquals(0, TTL)) {
+                if (arity(parser, command, argc == 2)) decode(parser, command, OP_TTL);
+            } else if (parser.argEquals(0, PING)) {
+                if (!arity(parser, command, argc <= 2)) return;
+                command.reply = argc == 1 ? PONG : parser.argString(1);
+            } else if (parser.argEquals(0, ECHO)) {
+                if (arity(parser, command, argc == 2)) command.reply = parser.argString(1);
+            } else if (parser.argEquals(0, HELLO)) {
+                prepareHello(connection, parser, command);
+            } else if (parser.argEquals(0, SELECT)) {
+                if (!arity(parser, command, argc == 2)) return;
+                command.reply = parser.argLong(1) == 0 ? OK : new ErrorReply("ERR DB index is out of range");
+            } else if (parser.argEquals(0, CONFIG) || parser.argEquals(0, COMMAND)) {
+                command.reply = EMPTY_ARRAY; // redis-benchmark 和 redis-cli 连接时会查询，没有可返回的配置
+            } else if (parser.argEquals(0, CLIENT)) {
+                boolean known = argc >= 2 && (parser.argEquals(1, SETNAME) || parser.argEquals(1, SETINFO));
+                command.reply = known ? OK : new ErrorReply("ERR unknown subcommand for 'client' command");
+            } else if (parser.argEquals(0, OBJECT)) {
+                if (argc == 3 && parser.argEquals(1, ENCODING)) {
+                    decode(parser, command, OP_OBJECT_ENCODING);
+                } else {
+                    command.reply = new ErrorReply("ERR unknown subcommand for 'object' command");
+                }
+            } else if (parser.argEquals(0, CLUSTER)) {
+                if (cluster == null) command.reply = new ErrorReply("ERR This instance has cluster support disabled");
+                else if (arity(parser, command, argc >= 2)) decode(parser, command, OP_CLUSTER);
+            } else if (parser.argEquals(0, ASKING)) {
+                if (cluster == null) {
+                    command.reply = new ErrorReply("ERR This instance has cluster support disabled");
+                } else if (arity(parser, command, argc == 1)) {
+                    connection.asking = true;
+                    command.reply = OK;
+                }
+            } else if (parser.argEquals(0, PSYNC)) {
+                if (!arity(parser, command, argc == 3)) return;
+                parser.argLong(2);
+                connection.psync = new String[]{parser.argString(1), parser.argString(2)};
+                connection.closeAfterReply = true; // 之后的数据不再按命令解析
+                command.reply = NO_REPLY;
+            } else if (parser.argEquals(0, REPLICAOF)) {
+                if (!arity(parser, command, argc == 3)) return;
+                String host = parser.argString(1);
+                boolean noOne = host.equalsIgnoreCase("NO") && parser.argString(2).equalsIgnoreCase("ONE");
+                int port = noOne ? 0 : (int) parser.argLong(2);
+                try {
+                    replicaOf(noOne ? null : host, port);
+                    command.reply = OK;
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    command.reply = new ErrorReply("ERR " + e.getMessage());
+                }
+            } else if (parser.argEquals(0, QUIT)) {
+                command.reply = OK;
+                connection.closeAfterReply = true;
+            } else {
+                command.reply = new ErrorReply("ERR unknown command '" + parser.argString(0) + "'");
+            }
+        } catch (NumberFormatException e) {
+            command.op = OP_NONE;
+            command.reply = new ErrorReply("ERR value is not an integer or out of range");
+        }
+    }
+
+    // SET key value [EX seconds | PX milliseconds]
+    private static void prepareSet(RespParser parser, Command command) {
+        int argc = parser.argc();
+        if (!arity(parser, command, argc >= 3)) return;
+        long ttlMillis = 0;
+        for (int i = 3; i < argc; i++) {
+            boolean seconds = parser.argEquals(i, EX);
+            if ((!seconds && !parser.argEquals(i, PX)) || i + 1 >= argc || ttlMillis != 0) {
+                command.reply = new ErrorReply("ERR syntax error");
+                return;
+            }
+            long value = parser.argLong(++i);
+            long max = (ExpiryCache.NO_EXPIRY - System.currentTimeMillis()) / (seconds ? 1000 : 1);
+            if (value <= 0 || value > max) {
+                command.reply = new ErrorReply("ERR invalid expire time in 'set' command");
+                return;
+            }
+            ttlMillis = seconds ? value * 1000 : value;
+        }
+        command.number = ttlMillis;
+        decode(parser, command, OP_SET);
+        command.argc = 2;
+    }
+
+    // HELLO [protover]：切换协议版本，之后解析的命令按新协议回复
+    private static void prepareHello(Connection connection, RespParser parser, Command command) {
+        if (parser.argc() >= 2) {
+            long version;
+            try {
+                version = parser.argLong(1);
+            } catch (NumberFormatException e) {
+                command.reply = new ErrorReply("ERR Protocol version is not an integer or out of range");
+                return;
+            }
+            if (version != 2 && version != 3) {
+                command.reply = new ErrorReply("NOPROTO unsupported protocol version");
+                return;
+            }
+            connection.protocol = (int) version;
+            command.protocol = connection.protocol;
+        }
+        command.reply = HELLO_REPLY;
+    }
+
+    // 解码命令名之后的所有参数，交给命令线程
+    private static void decode(RespParser parser, Command command, int op) {
+        int argc = parser.argc() - 1;
+        if (command.args.length < argc) command.args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            command.args[i] = parser.argString(i + 1);
+        }
+        command.argc = argc;
+        command.op = op;
+    }
+
+    // 参数个数不对时填入错误回复，返回是否可以继续
+    private static boolean arity(RespParser parser, Command command, boolean valid) {
+        if (!valid) {
+            command.reply = new ErrorReply("ERR wrong number of arguments for '" + parser.argString(0).toLowerCase() + "' command");
+        }
+        return valid;
+    }
+
+    // 执行一个连接的整批命令；多线程 I/O 时只在命令线程中调用，缓存的锁不会有竞争
+    private void executeBatch(Connection connection) {
+        for (int i = 0; i < connection.batchSize; i++) {
+            Command command = connection.batch.get(i);
+            if (command.op != OP_NONE) execute(command);
+        }
+    }
+
+    private void execute(Command command) {
+        if (replicaLink != null && isWrite(command.op)) {
+            command.reply = new ErrorReply("READONLY You can't write against a read only replica.");
+            Arrays.fill(command.args, 0, command.argc, null);
+            return;
+        }
+        if (cluster == null || command.op == OP_CLUSTER) {
+            run(command);
+            return;
+        }
+        // 在缓存锁内检查槽位并执行，迁移线程取键和删除键也持有该锁，检查结果在执行时仍然成立
+        synchronized (cache) {
+            String redirect;
+            try {
+                redirect = cluster.route(keys(command), isWrite(command.op), command.asking);
+            } catch (RuntimeException e) {
+                redirect = "ERR " + e.getMessage();
+            }
+            if (redirect == null) {
+                run(command);
+            } else {
+                command.reply = new ErrorReply(redirect);
+                Arrays.fill(command.args, 0, command.argc, null);
+            }
+        }
+    }
+
+    private void run(Command command) {
+        String[] args = command.args;
+        try {
+            switch (command.op) {
+                case OP_GET:
+                    command.reply = cache.get(args[0]);
+                    break;
+                case OP_SET:
+                    if (command.number > 0) cache.put(args[0], args[1], command.number);
+                    else cache.put(args[0], args[1]);
+                    command.reply = OK;
+                    break;
+                case OP_DEL:
+                    command.reply = command.argc == 1 ? (cache.delete(args[0]) ? 1L : 0L)
+                            : (long) cache.deleteAll(Arrays.asList(args).subList(0, command.argc));
+                    break;
+                case OP_MGET:
+                    command.reply = cache.getAll(Arrays.asList(args).subList(0, command.argc));
+                    break;
+                case OP_MSET:
+                    Map<String, String> entries = new LinkedHashMap<>();
+                    for (int i = 0; i < command.argc; i += 2) {
+                        entries.put(args[i], args[i + 1]); // 重复的键以最后一次为准
+                    }
+                    cache.putAll(entries);
+                    command.reply = OK;
+                    break;
+                case OP_OBJECT_ENCODING:
+                    command.reply = cache.encoding(args[1]);
+                    break;
+                case OP_EXPIRE:
+                    command.reply = cache.expire(args[0], command.number * 1000) ? 1L : 0L;
+                    break;
+                case OP_TTL:
+                    long ttl = cache.ttl(args[0]);
+                    command.reply = ttl < 0 ? ttl : (ttl + 500) / 1000; // 与 Redis 一样四舍五入到秒
+                    break;
+                case OP_CLUSTER:
+                    command.reply = executeCluster(args, command.argc);
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            command.reply = new ErrorReply("ERR value is not an integer or out of range");
+        } catch (RuntimeException e) {
+            command.reply = new ErrorReply("ERR " + e.getMessage());
+        }
+        Arrays.fill(args, 0, command.argc, null); // 不再持有键值
+    }
+
+    // 命令涉及的键，用于集群模式下检查槽位
+    private static List<String> keys(Command command) {
+        String[] args = command.args;
+        switch (command.op) {
+            case OP_DEL:
+            case OP_MGET:
+                return Arrays.asList(args).subList(0, command.argc);
+            case OP_MSET:
+                List<String> keys = new ArrayList<>(command.argc / 2);
+                for (int i = 0; i < command.argc; i += 2) keys.add(args[i]);
+                return keys;
+            case OP_OBJECT_ENCODING:
+                return Collections.singletonList(args[1]);
+            default:
+                return Collections.singletonList(args[0]);
+        }
+    }
+
+    private static boolean isWrite(int op) {
+        return op == OP_SET || op == OP_DEL || op == OP_MSET || op == OP_EXPIRE;
+    }
+
+    // CLUSTER 子命令：KEYSLOT、ADDSLOTS、ADDSLOTSRANGE、SETSLOT、COUNTKEYSINSLOT、GETKEYSINSLOT、SLOTS、MYID、INFO
+    private Object executeCluster(String[] args, int argc) {
+        String subcommand = args[0].toUpperCase();
+        switch (subcommand) {
+            case "KEYSLOT":
+                if (argc != 2) break;
+                return (long) ClusterState.keySlot(args[1]);
+            case "ADDSLOTS":
+                if (argc < 2) break;
+                for (int i = 1; i < argc; i++) {
+                    int slot = Integer.parseInt(args[i]);
+                    cluster.addSlots(slot, slot);
+                }
+                return OK;
+            case "ADDSLOTSRANGE":
+                if (argc < 3 || argc % 2 == 0) break;
+                for (int i = 1; i < argc; i += 2) {
+                    cluster.addSlots(Integer.parseInt(args[i]), Integer.parseInt(args[i + 1]));
+                }
+                return OK;
+            case "SETSLOT":
+                return setSlot(args, argc);
+            case "COUNTKEYSINSLOT":
+                if (argc != 2) break;
+                return (long) cache.countKeysInSlot(slotArg(args[1]));
+            case "GETKEYSINSLOT":
+                if (argc != 3) break;
+                List<String> keys = new ArrayList<>();
+                cache.forEachKeyInSlot(slotArg(args[1]), Integer.parseInt(args[2]), (key, value, expiry) -> keys.add(key));
+                return keys;
+            case "SLOTS":
+                if (argc != 1) break;
+                List<Object> slots = new ArrayList<>();
+                for (Object[] range : cluster.slotRanges()) {
+                    String node = (String) range[2];
+                    int colon = node.lastIndexOf(':');
+                    slots.add(Arrays.asList((long) (int) range[0], (long) (int) range[1],
+                            Arrays.asList(node.substring(0, colon), Long.parseLong(node.substring(colon + 1)), node)));
+                }
+                return slots;
+            case "MYID":
+                if (argc != 1) break;
+                return cluster.getMyself();
+            case "INFO":
+                if (argc != 1) break;
+                return cluster.info();
+            default:
+                break;
+        }
+        return new ErrorReply("ERR unknown subcommand or wrong number of arguments for '" + args[0] + "'");
+    }
+
+    // CLUSTER SETSLOT slot IMPORTING|MIGRATING|NODE node-id 或 CLUSTER SETSLOT slot STABLE
+    private Object setSlot(String[] args, int argc) {
+        if (argc < 3) return new ErrorReply("ERR wrong number of arguments for 'cluster|setslot' command");
+        int slot = slotArg(args[1]);
+        String action = args[2].toUpperCase();
+        if (action.equals("STABLE") && argc == 3) {
+            cluster.setStable(slot);
+            return OK;
+        }
+        if (argc != 4) return new ErrorReply("ERR syntax error");
+        switch (action) {
+            case "IMPORTING":
+                cluster.setImporting(slot, args[3]);
+                return OK;
+            case "MIGRATING":
+                cluster.setMigrating(slot, args[3]);
+                return OK;
+            case "NODE":
+                cluster.setNode(slot, args[3]);
+                return OK;
+            default:
+                return new ErrorReply("ERR Invalid CLUSTER SETSLOT action or number of arguments");
+        }
+    }
+
+    private static int slotArg(String arg) {
+        int slot = Integer.parseInt(arg);
+        if (slot < 0 || slot >= ClusterState.SLOTS) throw new IllegalArgumentException("Invalid or out of range slot");
+        return slot;
+    }
+
+    private static ByteBuffer grow(ByteBuffer in) {
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min((long) in.capacity() * 2, MAX_QUERY_BUFFER));
+        in.flip();
+        grown.put(in);
+        return grown;
+    }
+
+    // ASCII 字符串逐字节写入，不分配临时数组
+    private static void putString(ByteBuffer out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            out.put(c < 0x80 ? (byte) c : (byte) '?');
+        }
+    }
+
+    private static void putLong(ByteBuffer out, long value) {
+        if (value == Long.MIN_VALUE) {
+            putString(out, Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            out.put((byte) '-');
+            value = -value;
+        }
+        int start = out.position();
+        do {
+            out.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value > 0);
+        // 数字是倒序写入的，原地翻转
+        for (int i = start, j = out.position() - 1; i < j; i++, j--) {
+            byte b = out.get(i);
+            out.put(i, out.get(j));
+            out.put(j, b);
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) return value.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return length;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // 独立启动：java com.redis.cache.RespServer [port] [capacity] [io-threads] [maxmemory] [cluster-enabled yes|no] [replicaof host:port]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 6379;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int ioThreads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        long maxmemory = args.length > 3 ? Long.parseLong(args[3]) : 0; // 字节，0 表示只按条数限制
+        boolean clusterEnabled = args.length > 4 && args[4].equalsIgnoreCase("yes");
+        HashMapCache cache = new HashMapCache(capacity, MultiEvictionCache.EvictionStrategy.APPROX_LFU);
+        cache.setMaxmemory(maxmemory);
+        RespServer server = new RespServer(cache, port);
+        server.setIoThreads(ioThreads);
+        server.setClusterEnabled(clusterEnabled);
+        server.start();
+        if (args.length > 5) {
+            int colon = args[5].lastIndexOf(':');
+            server.replicaOf(args[5].substring(0, colon), Integer.parseInt(args[5].substring(colon + 1)));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            cache.shutdown();
+        }));
+        System.out.println("RESP server listening on port " + server.getPort() + " with " + ioThreads + " I/O threads");
+    }
+}
@@ -0,0 +1,298 @@
+package com.redis.cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// 无共享的分片引擎：键空间按哈希分到 N 个分片，每个分片是一个独立的 HashMapCache，
+// 拥有自己的哈希表、淘汰结构、过期索引和 AOF（directory/shard-i/appendonly.aof）
+// 调用方把请求放进目标分片的无锁队列后立即返回 CompletableFuture，分片线程按到达顺序逐个执行；
+// 同一分片内的请求与单线程 Redis 一样串行，不同分片之间没有任何共享的锁或数据结构
+// 主动过期也由分片线程在请求之间驱动，不再有定时线程抢分片的锁；
+// 分片自己的 AOF 写入线程只处理缓冲区，不持有分片的锁，AOF 重写和 bgsave 线程按批短暂持有
+// 结果在分片线程上完成，thenApply 等回调也在分片线程上执行，回调里不应阻塞
+public class ShardedCache {
+    private static final long EXPIRE_TICK_NANOS = ExpiryCache.EXPIRE_INTERVAL_MILLIS * 1_000_000;
+
+    // 队列中的一个请求：在分片线程上执行并完成 result；分片停止后仍留在队列里的请求以异常完成
+    private static final class Request<T> {
+        final Supplier<T> operation;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Request(Supplier<T> operation) {
+            this.operation = operation;
+        }
+
+        void run() {
+            try {
+                result.complete(operation.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e); // Error 也要完成，否则调用方的 join 永远等待
+            }
+        }
+
+        void reject() {
+            result.completeExceptionally(new IllegalStateException("Sharded cache is shut down"));
+        }
+    }
+
+    private static final class Shard implements Runnable {
+        final HashMapCache cache;
+        final Queue<Request<?>> requests = new ConcurrentLinkedQueue<>();
+        final Thread thread;
+        volatile boolean sleeping; // 队列为空、线程即将或已经 park
+        volatile boolean running = true;
+        volatile boolean terminated; // 线程已退出，之后入队的请求不会再被执行
+
+        Shard(HashMapCache cache, String name) {
+            this.cache = cache;
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+            cache.stopExpireScheduler();
+        }
+
+        void submit(Request<?> request) {
+            if (!running) throw new IllegalStateException("Sharded cache is shut down");
+            requests.offer(request);
+            // 检查 running 之后 shutdown 才开始、线程已经退出：不会再有人执行这个请求，自己以异常完成
+            if (terminated) rejectPending();
+            else if (sleeping) LockSupport.unpark(thread);
+        }
+
+        void rejectPending() {
+            Request<?> request;
+            while ((request = requests.poll()) != null) request.reject();
+        }
+
+        @Override
+        public void run() {
+            long nextTick = System.nanoTime() + EXPIRE_TICK_NANOS;
+            while (true) {
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    cache.activeExpireTick();
+                    nextTick = now + EXPIRE_TICK_NANOS;
+                }
+                Request<?> request = requests.poll();
+                if (request != null) {
+                    request.run();
+                    continue;
+                }
+                if (!running) return;
+                // 先标记再检查队列：提交方要么看到 sleeping 并 unpark，要么它的请求在这里被看到
+                sleeping = true;
+                if (requests.isEmpty() && running) LockSupport.parkNanos(this, Math.max(1, nextTick - System.nanoTime()));
+                sleeping = false;
+            }
+        }
+    }
+
+    private final Shard[] shards;
+
+    public ShardedCache(int capacity, MultiEvictionCache.EvictionStrategy strategy, int shardCount, File directory) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        if (shardCount <= 0) throw new IllegalArgumentException("Shard count must be positive");
+        if (shardCount > capacity) throw new IllegalArgumentException("Shard count cannot exceed capacity");
+        if (directory == null) throw new IllegalArgumentException("Directory cannot be null");
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            int perShard = capacity / shardCount + (i < capacity % shardCount ? 1 : 0); // 各分片容量之和正好是 capacity
+            HashMapCache cache = new HashMapCache(perShard, strategy, HashMapCache.TableType.CHAINED, null,
+                    new File(directory, "shard-" + i));
+            shards[i] = new Shard(cache, "shard-" + i);
+        }
+        for (Shard shard : shards) shard.thread.start();
+    }
+
+    public CompletableFuture<String> getAsync(String key) {
+        Shard shard = shardFor(key);
+        return submit(shard, () -> shard.cache.get(key));
+    }
+
+    public CompletableFuture<Void> putAsync(String key, String value, long ttlMillis) {
+        Shard shard = shardFor(key);
+        return submit(shard, () -> {
+            shard.cache.put(key, value, ttlMillis);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(String key) {
+        Shard shard = shardFor(key);
+        return submit(shard, () -> shard.cache.delete(key));
+    }
+
+    public String get(String key) {
+        return await(getAsync(key));
+    }
+
+    public void put(String key, String value, long ttlMillis) {
+        await(putAsync(key, value, ttlMillis));
+    }
+
+    public boolean delete(String key) {
+        return await(deleteAsync(key));
+    }
+
+    // 按分片拆开，每个分片一次批量读取，结果按 keys 的顺序合并
+    public List<String> getAll(List<String> keys) {
+        List<List<String>> groups = new ArrayList<>();
+        List<List<Integer>> positions = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            groups.add(new ArrayList<>());
+            positions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            int shard = shardOf(keys.get(i));
+            groups.get(shard).add(keys.get(i));
+            positions.get(shard).add(i);
+        }
+        String[] values = new String[keys.size()];
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (groups.get(i).isEmpty()) continue;
+            Shard shard = shards[i];
+            List<String> group = groups.get(i);
+            List<Integer> position = positions.get(i);
+            parts.add(submit(shard, () -> {
+                List<String> found = shard.cache.getAll(group);
+                for (int j = 0; j < found.size(); j++) values[position.get(j)] = found.get(j);
+                return null;
+            }));
+        }
+        for (CompletableFuture<Void> part : parts) await(part);
+        return Arrays.asList(values);
+    }
+
+    // 每个分片一次批量写入，各分片各自保证原子性
+    public void putAll(Map<String, String> entries, long ttlMillis) {
+        if (ttlMillis <= 0) throw new IllegalArgumentException("TTL must be positive");
+        dispatchPutAll(entries, ttlMillis);
+    }
+
+    // 不带 TTL 批量写入，键永不过期
+    public void putAll(Map<String, String> entries) {
+        dispatchPutAll(entries, 0);
+    }
+
+    // ttlMillis 为 0 表示永不过期
+    private void dispatchPutAll(Map<String, String> entries, long ttlMillis) {
+        List<Map<String, String>> groups = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) groups.add(new LinkedHashMap<>());
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            groups.get(shardOf(entry.getKey())).put(entry.getKey(), entry.getValue());
+        }
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (groups.get(i).isEmpty()) continue;
+            Shard shard = shards[i];
+            Map<String, String> group = groups.get(i);
+            parts.add(submit(shard, () -> {
+                if (ttlMillis == 0) {
+                    shard.cache.putAll(group);
+                } else {
+                    shard.cache.putAll(group, ttlMillis);
+                }
+                return null;
+            }));
+        }
+        for (CompletableFuture<Void> part : parts) await(part);
+    }
+
+    public int deleteAll(Collection<String> keys) {
+        List<List<String>> groups = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) groups.add(new ArrayList<>());
+        for (String key : keys) groups.get(shardOf(key)).add(key);
+        List<CompletableFuture<Integer>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (groups.get(i).isEmpty()) continue;
+            Shard shard = shards[i];
+            List<String> group = groups.get(i);
+            parts.add(submit(shard, () -> shard.cache.deleteAll(group)));
+        }
+        int deleted = 0;
+        for (CompletableFuture<Integer> part : parts) deleted += await(part);
+        return deleted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < shards.length; i++) size += shardSize(i);
+        return size;
+    }
+
+    public int shardSize(int shard) {
+        HashMapCache cache = shards[shard].cache;
+        return await(submit(shards[shard], cache::size));
+    }
+
+    public void setAppendFsync(AofWriter.FsyncPolicy policy) {
+        for (Shard shard : shards) {
+            await(submit(shard, () -> {
+                shard.cache.setAppendFsync(policy);
+                return null;
+            }));
+        }
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // 键所属的分片；用哈希的高位选分片，低位留给分片内的哈希表，避免同一分片的键在表里挤进少数桶
+    public int shardOf(String key) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        long mixed = (key.hashCode() * 0x9E3779B9) & 0xFFFFFFFFL;
+        return (int) ((mixed * shards.length) >>> 32);
+    }
+
+    // 执行完已提交的请求后停止分片线程，再关闭各分片（写完并 fsync 各自的 AOF）
+    // 与 shutdown 并发提交、线程退出后才入队的请求以 IllegalStateException 完成
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            shard.terminated = true;
+            shard.rejectPending();
+            shard.cache.shutdown();
+        }
+    }
+
+    private Shard shardFor(String key) {
+        return shards[shardOf(key)];
+    }
+
+    private static <T> CompletableFuture<T> submit(Shard shard, Supplier<T> operation) {
+        Request<T> request = new Request<>(operation);
+        shard.submit(request);
+        return request.result;
+    }
+
+    // 同步调用：分片上抛出的 IllegalArgumentException 等异常原样抛给调用方
+    private static <T> T await(CompletableFuture<T> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -43,6 +43,10 @@ public class SimpleCache {
         return cache;
     }
 
+    protected int capacity() {
+        return capacity;
+    }
+
     protected void remove(String key) {
         cache.remove(key);
     }
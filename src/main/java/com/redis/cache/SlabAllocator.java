@@ -0,0 +1,255 @@
+package com.redis.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// memcached 风格的堆外 slab 分配器：按 1 MB 页向系统申请直接内存或文件映射，每页切成同一大小级别的块
+// 大小级别从 64 字节起按 1.25 倍增长，每个级别一个空闲块栈，释放的块优先给同级别的新数据复用
+// 块内是 [长度 int][数据]；超过一页的数据单独分配直接内存，释放时整块交还
+// 引用为 页号 << 20 | 页内偏移，堆上只需保存一个 long；不是线程安全的，由持有者在锁内调用
+public class SlabAllocator implements Closeable {
+    public static final int PAGE_SIZE = 1 << 20;
+    private static final int OFFSET_BITS = 20;
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25; // 与 memcached -f 默认值相同
+    private static final int LENGTH_SIZE = 4;
+    private static final int LARGE = -1; // 单独分配的大块所在页的级别
+
+    private final int[] chunkSizes;
+    private final long[][] freeChunks; // 每个级别的空闲块引用栈
+    private final int[] freeCounts;
+    private final int[] currentPage; // 每个级别正在切分的页，-1 表示没有
+    private final int[] nextOffset;
+    private final List<ByteBuffer> pages = new ArrayList<>(); // 大块释放后留下 null，页号复用
+    private int[] pageClasses = new int[16];
+    private int[] freePageSlots = new int[16];
+    private int freePageSlotCount;
+    private final File file; // 文件映射模式的换页文件，直接内存模式为 null
+    private final FileChannel channel;
+    private long mappedBytes;
+    private byte[] scratch = new byte[256];
+
+    private long reservedBytes; // 已向系统申请的页和大块
+    private long chunkBytes; // 使用中的块
+    private long usedBytes; // 块中实际存放的数据（含长度字段）
+    private long items;
+
+    // 直接内存模式
+    public SlabAllocator() {
+        this(null, null);
+    }
+
+    // 文件映射模式：页映射到文件上，由操作系统负责换出；文件只是换页空间，关闭时删除
+    public SlabAllocator(File file) throws IOException {
+        this(file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    private SlabAllocator(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+        this.chunkSizes = buildChunkSizes();
+        this.freeChunks = new long[chunkSizes.length][16];
+        this.freeCounts = new int[chunkSizes.length];
+        this.currentPage = new int[chunkSizes.length];
+        this.nextOffset = new int[chunkSizes.length];
+        Arrays.fill(currentPage, -1);
+    }
+
+    // 8 字节对齐，最大一级正好是一页
+    private static int[] buildChunkSizes() {
+        List<Integer> sizes = new ArrayList<>();
+        for (double size = MIN_CHUNK_SIZE; size < PAGE_SIZE / 2; size *= GROWTH_FACTOR) {
+            int aligned = ((int) size + 7) & ~7;
+            if (sizes.isEmpty() || sizes.get(sizes.size() - 1) != aligned) sizes.add(aligned);
+        }
+        sizes.add(PAGE_SIZE);
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public long allocate(byte[] data) {
+        int size = LENGTH_SIZE + data.length;
+        int slabClass = classFor(size);
+        long ref = slabClass == LARGE ? allocateLarge(size) : allocateChunk(slabClass);
+        write(ref, data);
+        chunkBytes += slabClass == LARGE ? size : chunkSizes[slabClass];
+        usedBytes += size;
+        items++;
+        return ref;
+    }
+
+    // 更新数据：仍落在同一级别时原地覆盖，否则换一个块
+    public long reallocate(long ref, byte[] data) {
+        int page = page(ref);
+        int slabClass = pageClasses[page];
+        int oldSize = length(ref) + LENGTH_SIZE;
+        int size = LENGTH_SIZE + data.length;
+        if (slabClass != LARGE && classFor(size) == slabClass) {
+            write(ref, data);
+            usedBytes += size - oldSize;
+            return ref;
+        }
+        free(ref);
+        return allocate(data);
+    }
+
+    public void free(long ref) {
+        int page = page(ref);
+        int slabClass = pageClasses[page];
+        usedBytes -= length(ref) + LENGTH_SIZE;
+        items--;
+        if (slabClass == LARGE) {
+            reservedBytes -= pages.get(page).capacity();
+            chunkBytes -= pages.get(page).capacity();
+            pages.set(page, null);
+            if (freePageSlotCount == freePageSlots.length) freePageSlots = Arrays.copyOf(freePageSlots, freePageSlotCount * 2);
+            freePageSlots[freePageSlotCount++] = page;
+            return;
+        }
+        chunkBytes -= chunkSizes[slabClass];
+        if (freeCounts[slabClass] == freeChunks[slabClass].length) {
+            freeChunks[slabClass] = Arrays.copyOf(freeChunks[slabClass], freeCounts[slabClass] * 2);
+        }
+        freeChunks[slabClass][freeCounts[slabClass]++] = ref;
+    }
+
+    public int length(long ref) {
+        return pages.get(page(ref)).getInt(offset(ref));
+    }
+
+    public byte[] read(long ref) {
+        byte[] data = new byte[length(ref)];
+        pages.get(page(ref)).get(offset(ref) + LENGTH_SIZE, data);
+        return data;
+    }
+
+    // 经复用的临时数组解码，只分配结果字符串
+    public String readString(long ref) {
+        int length = length(ref);
+        if (scratch.length < length) scratch = new byte[length];
+        pages.get(page(ref)).get(offset(ref) + LENGTH_SIZE, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // 块中的数据是否与 bytes 相同，经临时数组比较，不分配
+    public boolean matches(long ref, byte[] bytes) {
+        int length = length(ref);
+        if (length != bytes.length) return false;
+        if (scratch.length < length) scratch = new byte[length];
+        pages.get(page(ref)).get(offset(ref) + LENGTH_SIZE, scratch, 0, length);
+        return Arrays.equals(scratch, 0, length, bytes, 0, length);
+    }
+
+    // 已向系统申请的字节数
+    public long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    // 实际存放的数据字节数
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getItemCount() {
+        return items;
+    }
+
+    // 与 Redis mem_fragmentation_ratio 含义相同：申请的内存 / 实际数据，越接近 1 越好
+    public double getFragmentationRatio() {
+        return usedBytes == 0 ? 0 : (double) reservedBytes / usedBytes;
+    }
+
+    // 内部碎片：使用中的块里没有用到的字节
+    public long getInternalFragmentation() {
+        return chunkBytes - usedBytes;
+    }
+
+    // 外部碎片：空闲块和页尾未切分的字节，只能给同级别的数据复用
+    public long getFreeBytes() {
+        return reservedBytes - chunkBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pages.clear();
+        reservedBytes = chunkBytes = usedBytes = items = 0;
+        if (channel != null) {
+            channel.close();
+            file.delete();
+        }
+    }
+
+    private int classFor(int size) {
+        if (size > PAGE_SIZE) return LARGE;
+        int index = Arrays.binarySearch(chunkSizes, size);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private long allocateChunk(int slabClass) {
+        if (freeCounts[slabClass] > 0) {
+            return freeChunks[slabClass][--freeCounts[slabClass]];
+        }
+        if (currentPage[slabClass] < 0 || nextOffset[slabClass] + chunkSizes[slabClass] > PAGE_SIZE) {
+            currentPage[slabClass] = addPage(newPage(PAGE_SIZE), slabClass);
+            nextOffset[slabClass] = 0;
+        }
+        long ref = (long) currentPage[slabClass] << OFFSET_BITS | nextOffset[slabClass];
+        nextOffset[slabClass] += chunkSizes[slabClass];
+        return ref;
+    }
+
+    // 大块总是用直接内存，释放后即可由 GC 交还给系统
+    private long allocateLarge(int size) {
+        return (long) addPage(ByteBuffer.allocateDirect(size), LARGE) << OFFSET_BITS;
+    }
+
+    private ByteBuffer newPage(int size) {
+        if (channel == null) return ByteBuffer.allocateDirect(size);
+        try {
+            ByteBuffer page = channel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, size);
+            mappedBytes += size;
+            return page;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map slab page: " + e.getMessage(), e);
+        }
+    }
+
+    private int addPage(ByteBuffer buffer, int slabClass) {
+        reservedBytes += buffer.capacity();
+        int page;
+        if (freePageSlotCount > 0) {
+            page = freePageSlots[--freePageSlotCount];
+            pages.set(page, buffer);
+        } else {
+            page = pages.size();
+            pages.add(buffer);
+            if (page == pageClasses.length) pageClasses = Arrays.copyOf(pageClasses, page * 2);
+        }
+        pageClasses[page] = slabClass;
+        return page;
+    }
+
+    private void write(long ref, byte[] data) {
+        ByteBuffer page = pages.get(page(ref));
+        int offset = offset(ref);
+        page.putInt(offset, data.length);
+        page.put(offset + LENGTH_SIZE, data);
+    }
+
+    private static int page(long ref) {
+        return (int) (ref >>> OFFSET_BITS);
+    }
+
+    private static int offset(long ref) {
+        return (int) (ref & (PAGE_SIZE - 1));
+    }
+}
@@ -0,0 +1,172 @@
+package com.redis.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+// 堆外模式的键索引：键的 UTF-8 字节保存在 slab 中，表里只有值（节点）和哈希，不持有键的 String
+// 与 OpenAddressingHashMap 相同的控制字节 + 线性探测；查找时把参数编码成字节，与 slab 中的键逐字节比较
+// keyRef 从值取出键在 slab 中的引用；只有遍历和随机取键时才解码出 String
+public class SlabKeyTable<V> implements CacheTable<String, V> {
+    private static final byte EMPTY = (byte) 0x80;
+    private static final byte DELETED = (byte) 0xFE;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float MAX_LOAD = 0.875f;
+    private static final float MIN_FILL_RATIO = 0.1f;
+
+    private final SlabAllocator slabs;
+    private final ToLongFunction<V> keyRef;
+    private byte[] ctrl;
+    private int[] hashes; // 扩容时按保存的哈希重新放置，不必再读 slab
+    private Object[] values;
+    private int size;
+    private int tombstones;
+
+    public SlabKeyTable(SlabAllocator slabs, ToLongFunction<V> keyRef) {
+        this.slabs = slabs;
+        this.keyRef = keyRef;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(bytes, hash(bytes));
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    // value 的键须已写入 slab，且与 key 相同
+    @Override
+    public void put(String key, V value) {
+        if (key == null || value == null) throw new IllegalArgumentException("Key or value cannot be null");
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        int slot = findSlot(bytes, hash);
+        if (slot >= 0) {
+            values[slot] = value;
+            return;
+        }
+
+        if (size + tombstones + 1 > ctrl.length * MAX_LOAD) {
+            resize(size + 1 > ctrl.length * MAX_LOAD / 2 ? ctrl.length * 2 : ctrl.length);
+        }
+        insertNew(value, hash);
+        size++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(String key) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(bytes, hash(bytes));
+        if (slot < 0) return null;
+        V removed = (V) values[slot];
+        values[slot] = null;
+        if (ctrl[(slot + 1) & (ctrl.length - 1)] == EMPTY) {
+            ctrl[slot] = EMPTY;
+        } else {
+            ctrl[slot] = DELETED;
+            tombstones++;
+        }
+        size--;
+        if (ctrl.length > INITIAL_CAPACITY && size < ctrl.length * MIN_FILL_RATIO) {
+            resize(Math.max(INITIAL_CAPACITY, ctrl.length / 2));
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V randomValue() {
+        int slot = randomSlot();
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    @Override
+    public String randomKey() {
+        V value = randomValue();
+        return value == null ? null : slabs.readString(keyRef.applyAsLong(value));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super String, ? super V> action) {
+        for (int i = 0; i < ctrl.length; i++) {
+            if (ctrl[i] >= 0) {
+                V value = (V) values[i];
+                action.accept(slabs.readString(keyRef.applyAsLong(value)), value);
+            }
+        }
+    }
+
+    private int randomSlot() {
+        if (size == 0) return -1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int slot;
+        do {
+            slot = random.nextInt(ctrl.length);
+        } while (ctrl[slot] < 0);
+        return slot;
+    }
+
+    // 控制字节和完整哈希都相同时才读 slab 比较
+    @SuppressWarnings("unchecked")
+    private int findSlot(byte[] key, int hash) {
+        int mask = ctrl.length - 1;
+        byte h2 = (byte) (hash & 0x7f);
+        for (int i = (hash >>> 7) & mask; ; i = (i + 1) & mask) {
+            byte c = ctrl[i];
+            if (c == EMPTY) return -1;
+            if (c == h2 && hashes[i] == hash && slabs.matches(keyRef.applyAsLong((V) values[i]), key)) return i;
+        }
+    }
+
+    private void insertNew(Object value, int hash) {
+        int mask = ctrl.length - 1;
+        int i = (hash >>> 7) & mask;
+        while (ctrl[i] >= 0) {
+            i = (i + 1) & mask;
+        }
+        if (ctrl[i] == DELETED) tombstones--;
+        ctrl[i] = (byte) (hash & 0x7f);
+        hashes[i] = hash;
+        values[i] = value;
+    }
+
+    private void resize(int newCapacity) {
+        byte[] oldCtrl = ctrl;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        try {
+            allocate(newCapacity);
+        } catch (OutOfMemoryError e) {
+            throw new RuntimeException("Failed to resize hashmap due to insufficient memory", e);
+        }
+        for (int i = 0; i < oldCtrl.length; i++) {
+            if (oldCtrl[i] >= 0) insertNew(oldValues[i], oldHashes[i]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        ctrl = new byte[capacity];
+        Arrays.fill(ctrl, EMPTY);
+        hashes = new int[capacity];
+        values = new Object[capacity];
+        tombstones = 0;
+    }
+
+    private static int hash(byte[] key) {
+        int h = Arrays.hashCode(key) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,140 @@
+package com.redis.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// 分层时间轮：6 层 × 64 槽，第 0 层每格 1 毫秒，逐层放大 64 倍，可覆盖约 2^36 毫秒
+// 推进时只访问走过的槽和真正到期的键；重新设置 TTL 只需从旧槽摘链再挂到新槽
+public class TimingWheel<K> {
+    private static final int LEVEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << LEVEL_BITS;
+    private static final int SLOT_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 6;
+    private static final long MAX_DELAY = (1L << (LEVEL_BITS * LEVELS)) - 1;
+
+    private static class Timer<K> {
+        final K key;
+        long deadline;
+        Timer<K> prev, next;
+        Timer(K key) {
+            this.key = key;
+            this.prev = this;
+            this.next = this;
+        }
+    }
+
+    private final Timer<K>[][] slots; // 每个槽一个哨兵，挂成环形双向链表
+    private final Map<K, Timer<K>> timers = new HashMap<>();
+    private long currentTick; // 下一个待处理的毫秒
+
+    public TimingWheel() {
+        this(System.currentTimeMillis());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // 泛型数组只能按原始类型创建
+    public TimingWheel(long startMillis) {
+        this.currentTick = startMillis;
+        this.slots = new Timer[LEVELS][WHEEL_SIZE];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                slots[level][slot] = new Timer<>(null);
+            }
+        }
+    }
+
+    // 登记或改期：已存在的键 O(1) 摘链后按新到期时间重新挂入
+    public void schedule(K key, long deadline) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        Timer<K> timer = timers.get(key);
+        if (timer == null) {
+            timer = new Timer<>(key);
+            timers.put(key, timer);
+        } else {
+            unlink(timer);
+        }
+        timer.deadline = deadline;
+        place(timer);
+    }
+
+    public boolean cancel(K key) {
+        Timer<K> timer = timers.remove(key);
+        if (timer == null) return false;
+        unlink(timer);
+        return true;
+    }
+
+    public int size() {
+        return timers.size();
+    }
+
+    // 推进到 now（含），每个到期键回调一次，返回到期键数
+    public int advance(long now, Consumer<K> onExpire) {
+        int expired = 0;
+        while (currentTick <= now) {
+            if (timers.isEmpty()) {
+                currentTick = now + 1; // 没有定时器时直接跳到当前时间
+                break;
+            }
+            int index = (int) (currentTick & SLOT_MASK);
+            if (index == 0) cascade();
+            Timer<K> head = slots[0][index];
+            while (head.next != head) {
+                Timer<K> timer = head.next;
+                unlink(timer);
+                if (timer.deadline <= currentTick) {
+                    timers.remove(timer.key);
+                    onExpire.accept(timer.key);
+                    expired++;
+                } else {
+                    place(timer); // 超出覆盖范围而被截断的定时器，继续等待
+                }
+            }
+            currentTick++;
+        }
+        return expired;
+    }
+
+    // 第 0 层转完一圈时，把上层当前槽的定时器重新分配到下层
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int slot = (int) ((currentTick >>> (LEVEL_BITS * level)) & SLOT_MASK);
+            Timer<K> head = slots[level][slot];
+            Timer<K> timer = head.next;
+            head.next = head;
+            head.prev = head;
+            while (timer != head) {
+                Timer<K> next = timer.next;
+                place(timer);
+                timer = next;
+            }
+            if (slot != 0) break;
+        }
+    }
+
+    private void place(Timer<K> timer) {
+        long delta = timer.deadline - currentTick;
+        Timer<K> head;
+        if (delta < WHEEL_SIZE) {
+            long tick = delta < 0 ? currentTick : timer.deadline; // 已到期的放进当前槽
+            head = slots[0][(int) (tick & SLOT_MASK)];
+        } else {
+            long deadline = delta > MAX_DELAY ? currentTick + MAX_DELAY : timer.deadline;
+            delta = deadline - currentTick;
+            int level = 1;
+            while (level < LEVELS - 1 && delta >= 1L << (LEVEL_BITS * (level + 1))) level++;
+            head = slots[level][(int) ((deadline >>> (LEVEL_BITS * level)) & SLOT_MASK)];
+        }
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+    }
+
+    private void unlink(Timer<K> timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = timer;
+        timer.next = timer;
+    }
+}
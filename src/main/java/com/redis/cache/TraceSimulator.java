@@ -0,0 +1,272 @@
+package com.redis.cache;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+// 按访问序列回放，比较各淘汰策略在不同容量下的命中率和单线程吞吐量
+// 每次访问先 get，未命中再 put（旁路缓存）；与常见缓存模拟器一样不区分读写，序列中的每条请求都算一次访问
+// 缓存关闭 AOF 运行，回放只经过内存中的索引和淘汰结构；吞吐量包含 JIT 预热，严格对比用 JMH 基准
+public class TraceSimulator {
+    private static final String VALUE = "1";
+    private static final long NO_TTL_MILLIS = 365L * 24 * 3600 * 1000; // LruCache 只接受带 TTL 的写入，回放期间不会到期
+    private static final double[] DEFAULT_CAPACITY_FRACTIONS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.25, 0.5};
+
+    // LRU 和 APPROX_LRU 为 LruCache，其余为生产使用的 HashMapCache 上的各 EvictionStrategy
+    public enum Policy {
+        LRU, APPROX_LRU, LFU, APPROX_LFU, CLOCK, FIFO;
+
+        public AofCache create(int capacity, File directory) {
+            switch (this) {
+                case LRU:
+                    return new LruCache(capacity, false, directory);
+                case APPROX_LRU:
+                    LruCache cache = new LruCache(capacity, true, directory);
+                    cache.setLruClockResolution(1); // 默认 1 秒的时钟在回放速度下区分不出先后，淘汰退化为随机
+                    return cache;
+                default:
+                    return new HashMapCache(capacity, MultiEvictionCache.EvictionStrategy.valueOf(name()),
+                            HashMapCache.TableType.CHAINED, null, directory);
+            }
+        }
+    }
+
+    // 访问序列的格式
+    // PLAIN：每行一个键，空行和 # 开头的行跳过；LIRS 论文的 .trc 序列也是这种格式
+    // ARC：ARC 论文（Megiddo & Modha）的块序列，每行“起始块 块数 忽略 请求号”，展开为连续的块
+    // SPC：SPC-1 / UMass 存储序列，每行“ASU,LBA,字节数,操作,时间戳”，按 512 字节展开为块
+    // TWITTER：Twitter 缓存集群序列，每行“时间戳,键,键长,值长,客户端,操作,TTL”，取第二列的键
+    public enum Format {
+        PLAIN, ARC, SPC, TWITTER;
+
+        private static final int SPC_BLOCK_SIZE = 512;
+
+        void parse(String line, List<String> keys) {
+            switch (this) {
+                case PLAIN:
+                    keys.add(line);
+                    break;
+                case ARC: {
+                    String[] fields = line.split("\\s+");
+                    long start = Long.parseLong(fields[0]);
+                    int count = Integer.parseInt(fields[1]);
+                    for (int i = 0; i < count; i++) keys.add(Long.toString(start + i));
+                    break;
+                }
+                case SPC: {
+                    String[] fields = line.split(",");
+                    String asu = fields[0].trim();
+                    long lba = Long.parseLong(fields[1].trim());
+                    int blocks = Math.max(1, (Integer.parseInt(fields[2].trim()) + SPC_BLOCK_SIZE - 1) / SPC_BLOCK_SIZE);
+                    for (int i = 0; i < blocks; i++) keys.add(asu + ":" + (lba + i));
+                    break;
+                }
+                default: {
+                    int first = line.indexOf(',');
+                    int second = line.indexOf(',', first + 1);
+                    if (first < 0) throw new IllegalArgumentException("Missing key field");
+                    keys.add(second < 0 ? line.substring(first + 1) : line.substring(first + 1, second));
+                    break;
+                }
+            }
+        }
+    }
+
+    // 访问序列：键映射为稠密下标，回放时按下标取预先生成的键，热路径上没有解析和分配
+    public static class Trace {
+        private final String[] keys;
+        private final int[] accesses;
+
+        Trace(String[] keys, int[] accesses) {
+            this.keys = keys;
+            this.accesses = accesses;
+        }
+
+        public int length() {
+            return accesses.length;
+        }
+
+        public int distinctKeys() {
+            return keys.length;
+        }
+    }
+
+    // 一次回放的结果，命中率只统计 get
+    public static class Result {
+        public final Policy policy;
+        public final int capacity;
+        public final long hits;
+        public final long misses;
+        public final long nanos;
+
+        Result(Policy policy, int capacity, long hits, long misses, long nanos) {
+            this.policy = policy;
+            this.capacity = capacity;
+            this.hits = hits;
+            this.misses = misses;
+            this.nanos = nanos;
+        }
+
+        public double hitRatio() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        public double opsPerSecond() {
+            return nanos == 0 ? 0 : (hits + misses) * 1e9 / nanos;
+        }
+    }
+
+    private TraceSimulator() {
+    }
+
+    // 读取序列文件，.gz 结尾时按 gzip 解压
+    public static Trace load(File file, Format format) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            if (file.getName().endsWith(".gz")) in = new GZIPInputStream(in);
+            return read(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), format);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static Trace read(BufferedReader reader, Format format) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        List<String> parsed = new ArrayList<>();
+        int[] accesses = new int[1024];
+        int length = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            parsed.clear();
+            try {
+                format.parse(line, parsed);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed " + format + " trace at line " + lineNumber + ": " + line);
+            }
+            for (String key : parsed) {
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = keys.size();
+                    ids.put(key, id);
+                    keys.add(key);
+                }
+                if (length == accesses.length) accesses = Arrays.copyOf(accesses, length * 2);
+                accesses[length++] = id;
+            }
+        }
+        return new Trace(keys.toArray(new String[0]), Arrays.copyOf(accesses, length));
+    }
+
+    // 默认容量：不同键数的 0.1% 到 50%
+    public static int[] defaultCapacities(Trace trace) {
+        int[] capacities = new int[DEFAULT_CAPACITY_FRACTIONS.length];
+        int count = 0;
+        for (double fraction : DEFAULT_CAPACITY_FRACTIONS) {
+            int capacity = Math.max(1, (int) (trace.distinctKeys() * fraction));
+            if (count == 0 || capacities[count - 1] != capacity) capacities[count++] = capacity;
+        }
+        return Arrays.copyOf(capacities, count);
+    }
+
+    public static List<Result> simulate(Trace trace, Policy[] policies, int[] capacities) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (Policy policy : policies) {
+            for (int capacity : capacities) {
+                results.add(replay(policy, trace, capacity));
+            }
+        }
+        return results;
+    }
+
+    // 每次回放用新的缓存和临时目录，结果互不影响
+    public static Result replay(Policy policy, Trace trace, int capacity) throws IOException {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        File directory = Files.createTempDirectory("trace-sim-").toFile();
+        AofCache cache = policy.create(capacity, directory);
+        try {
+            cache.setAppendOnly(false);
+            HashMapCache noTtl = cache instanceof HashMapCache ? (HashMapCache) cache : null;
+            String[] keys = trace.keys;
+            int[] accesses = trace.accesses;
+            long hits = 0;
+            long start = System.nanoTime();
+            for (int access : accesses) {
+                String key = keys[access];
+                if (cache.get(key) != null) {
+                    hits++;
+                } else if (noTtl != null) {
+                    noTtl.put(key, VALUE);
+                } else {
+                    cache.put(key, VALUE, NO_TTL_MILLIS);
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            return new Result(policy, capacity, hits, accesses.length - hits, nanos);
+        } finally {
+            cache.shutdown();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    // 每个策略一行，每个容量一列命中率，最后一列为所有容量的平均吞吐量
+    public static void print(Trace trace, List<Result> results, PrintStream out) {
+        List<Integer> capacities = new ArrayList<>();
+        List<Policy> policies = new ArrayList<>();
+        for (Result result : results) {
+            if (!capacities.contains(result.capacity)) capacities.add(result.capacity);
+            if (!policies.contains(result.policy)) policies.add(result.policy);
+        }
+        out.printf("%,d accesses, %,d distinct keys%n%-12s", trace.length(), trace.distinctKeys(), "policy");
+        for (int capacity : capacities) out.printf(" %10s", capacity);
+        out.printf(" %14s%n", "ops/s");
+        for (Policy policy : policies) {
+            out.printf("%-12s", policy);
+            long operations = 0, nanos = 0;
+            for (int capacity : capacities) {
+                Result found = null;
+                for (Result result : results) {
+                    if (result.policy == policy && result.capacity == capacity) found = result;
+                }
+                out.printf(" %10s", found == null ? "-" : String.format("%.4f", found.hitRatio()));
+                if (found != null) {
+                    operations += found.hits + found.misses;
+                    nanos += found.nanos;
+                }
+            }
+            out.printf(" %,14.0f%n", nanos == 0 ? 0 : operations * 1e9 / nanos);
+        }
+    }
+
+    // java com.redis.cache.TraceSimulator <trace 文件> [格式] [容量,...] [策略,...]
+    // 格式默认 PLAIN；容量默认为不同键数的 0.1% 到 50%；策略默认全部
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceSimulator <trace> [PLAIN|ARC|SPC|TWITTER] [capacity,...] [policy,...]");
+            return;
+        }
+        Format format = args.length > 1 ? Format.valueOf(args[1].toUpperCase()) : Format.PLAIN;
+        Trace trace = load(new File(args[0]), format);
+        int[] capacities = args.length > 2
+                ? Arrays.stream(args[2].split(",")).mapToInt(Integer::parseInt).toArray()
+                : defaultCapacities(trace);
+        Policy[] policies = args.length > 3
+                ? Arrays.stream(args[3].split(",")).map(name -> Policy.valueOf(name.toUpperCase())).toArray(Policy[]::new)
+                : Policy.values();
+        print(trace, simulate(trace, policies, capacities), System.out);
+    }
+}
@@ -0,0 +1,88 @@
+package com.redis.cache;
+
+import java.nio.charset.StandardCharsets;
+
+// 与 Redis 对象编码相同的值表示：
+// int：规范十进制整数存为节点里的 long，不再持有字符串和字节数组；0 ~ 9999 直接引用共享的不可变字符串
+// embstr：不超过 44 字节的短字符串存为 UTF-8 字节数组，省掉 String 对象头和哈希字段
+// raw：更长的值保留 String，避免每次读取重新解码
+public final class ValueEncoding {
+    public static final String INT = "int";
+    public static final String EMBSTR = "embstr";
+    public static final String RAW = "raw";
+    public static final int SHARED_INTEGERS = 10_000; // 与 Redis OBJ_SHARED_INTEGERS 相同
+    public static final int EMBSTR_SIZE_LIMIT = 44; // 与 Redis OBJ_ENCODING_EMBSTR_SIZE_LIMIT 相同
+
+    private static final String[] SHARED = new String[SHARED_INTEGERS];
+
+    static {
+        for (int i = 0; i < SHARED_INTEGERS; i++) {
+            SHARED[i] = Integer.toString(i);
+        }
+    }
+
+    private ValueEncoding() {
+    }
+
+    // 与 Redis string2ll 判定相同：可选负号、无前导零、无正号和空白、在 long 范围内，转回字符串与原值完全一致
+    public static boolean isInteger(String value) {
+        int length = value.length();
+        if (length == 0 || length > 20) return false;
+        int i = value.charAt(0) == '-' ? 1 : 0;
+        if (i == length) return false;
+        if (value.charAt(i) == '0') return length == 1; // "0" 合法，"-0"、"01" 不合法
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return false;
+            // 按负数累加，Long.MIN_VALUE 也能表示
+            if (result < (Long.MIN_VALUE + digit) / 10) return false;
+            result = result * 10 - digit;
+        }
+        return value.charAt(0) == '-' || result != Long.MIN_VALUE;
+    }
+
+    // 共享的整数字符串，不在共享范围内返回 null
+    public static String shared(long value) {
+        return value >= 0 && value < SHARED_INTEGERS ? SHARED[(int) value] : null;
+    }
+
+    // 短字符串的 UTF-8 字节，超过 embstr 上限返回 null
+    public static byte[] embedded(String value) {
+        if (value.length() > EMBSTR_SIZE_LIMIT) return null;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= EMBSTR_SIZE_LIMIT ? bytes : null;
+    }
+
+    // 值按编码存放后比普通节点多占用的堆字节：共享整数为 0，其他 int 为节点多出的 long 字段，embstr 只有数组，raw 为 String 加数组
+    public static int heapSize(String value) {
+        if (isInteger(value)) return shared(Long.parseLong(value)) != null ? 0 : 8;
+        if (value.length() <= EMBSTR_SIZE_LIMIT) {
+            int bytes = utf8Length(value);
+            if (bytes <= EMBSTR_SIZE_LIMIT) return align(16 + bytes);
+        }
+        return 24 + align(16 + value.length());
+    }
+
+    private static int utf8Length(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4; // 代理对合计 4 字节
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 7) & ~7;
+    }
+}
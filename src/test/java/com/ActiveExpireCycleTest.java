@@ -0,0 +1,79 @@
+package com;
+
+import com.redis.cache.ActiveExpireCycle;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ActiveExpireCycleTest {
+    // 测试用键空间：只记录过期时间，随机抽样时删除已过期的
+    private static class FakeKeyspace implements ActiveExpireCycle.Keyspace {
+        final List<Long> expiries = new ArrayList<>();
+        final Random random = new Random(1);
+
+        @Override
+        public int ttlKeyCount() {
+            return expiries.size();
+        }
+
+        @Override
+        public boolean expireRandomKey(long now) {
+            int index = random.nextInt(expiries.size());
+            if (now <= expiries.get(index)) return false;
+            // 与末尾交换后删除，O(1)
+            expiries.set(index, expiries.get(expiries.size() - 1));
+            expiries.remove(expiries.size() - 1);
+            return true;
+        }
+    }
+
+    @Test
+    public void testRepeatsWhileStaleRatioHigh() {
+        FakeKeyspace keyspace = new FakeKeyspace();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10_000; i++) {
+            keyspace.expiries.add(i % 2 == 0 ? now - 1000 : now + 60_000); // 一半已过期
+        }
+        ActiveExpireCycle cycle = new ActiveExpireCycle();
+        cycle.setSlowCycleBudgetMicros(10_000_000);
+        assertFalse(cycle.runSlowCycle(keyspace));
+
+        // 一轮只抽 20 个，过期比例高于 10% 时继续下一轮；某一轮抽到的过期键不超过 2 个才停止
+        assertTrue(cycle.getSampledKeys() > 20);
+        assertTrue(cycle.getExpiredKeys() > 20);
+        assertEquals(10_000 - keyspace.ttlKeyCount(), cycle.getExpiredKeys());
+        assertEquals(1, cycle.getCycles());
+    }
+
+    @Test
+    public void testStopsAtBudgetAndEnablesFastCycle() {
+        FakeKeyspace keyspace = new FakeKeyspace();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1_000_000; i++) keyspace.expiries.add(now - 1000); // 全部过期
+        ActiveExpireCycle cycle = new ActiveExpireCycle();
+        cycle.setSlowCycleBudgetMicros(1);
+        assertTrue(cycle.runSlowCycle(keyspace)); // 预算耗尽
+        assertEquals(1, cycle.getTimedOutCycles());
+        assertTrue(keyspace.ttlKeyCount() > 0);
+
+        cycle.setFastCycleBudgetMicros(1);
+        assertTrue(cycle.runFastCycle(keyspace));
+        assertEquals(1, cycle.getFastCycles());
+        assertTrue(cycle.getTimeSpentMicros() >= 0);
+
+        // 上一周期没耗尽预算时，快周期直接跳过
+        ActiveExpireCycle idle = new ActiveExpireCycle();
+        assertFalse(idle.runFastCycle(keyspace));
+        assertEquals(0, idle.getFastCycles());
+    }
+
+    @Test
+    public void testEmptyKeyspace() {
+        ActiveExpireCycle cycle = new ActiveExpireCycle();
+        assertFalse(cycle.runSlowCycle(new FakeKeyspace()));
+        assertEquals(0, cycle.getSampledKeys());
+    }
+}
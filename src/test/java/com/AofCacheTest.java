@@ -0,0 +1,348 @@
+package com;
+
+import com.redis.cache.AofCache;
+import com.redis.cache.AofFormat;
+import com.redis.cache.AofLoader;
+import com.redis.cache.AofWriter;
+import com.redis.cache.HashMapCache;
+import com.redis.cache.LruCache;
+import com.redis.cache.MultiEvictionCache;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AofCacheTest {
+    private File aofFile = new File("appendonly.aof");
+
+    @Before
+    public void setUp() {
+        if (aofFile.exists()) aofFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        if (aofFile.exists()) aofFile.delete();
+    }
+
+    @Test
+    public void testAppendIsBufferedAndFlushed() throws Exception {
+        AofCache cache = new AofCache(100);
+        for (int i = 0; i < 50; i++) {
+            cache.put("key" + i, "value" + i, 60_000);
+        }
+        assertTrue(cache.getAofFileSize() > 0); // getAofFileSize 会先等缓冲区写完
+        cache.shutdown();
+        List<String> records = records();
+        assertEquals(50, records.size());
+        assertEquals("key0=value0", records.get(0));
+    }
+
+    @Test
+    public void testGroupCommitSharesFsync() throws Exception {
+        AofWriter writer = new AofWriter(aofFile, AofWriter.FsyncPolicy.ALWAYS);
+        int threads = 8, perThread = 200;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    writer.awaitDurable(writer.append("PUT k v 1\n".getBytes(StandardCharsets.UTF_8)));
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) worker.join();
+        long fsyncs = writer.getFsyncCount();
+        writer.close();
+        // 每条记录都已 fsync 才返回，但并发写入被合并进同一次 fsync
+        assertTrue(fsyncs < threads * perThread);
+        assertEquals(threads * perThread * 10L, aofFile.length());
+    }
+
+    @Test
+    public void testWriteFailureIsNotReportedAsDurable() throws Exception {
+        File full = new File("/dev/full"); // 写入总是返回 ENOSPC
+        Assume.assumeTrue(full.exists());
+        AofWriter writer = new AofWriter(full, AofWriter.FsyncPolicy.ALWAYS);
+        try {
+            long offset = writer.append("PUT k v 1\n".getBytes(StandardCharsets.UTF_8));
+            try {
+                writer.awaitDurable(offset);
+                fail("Expected UncheckedIOException");
+            } catch (UncheckedIOException e) {
+                assertTrue(writer.isFailed());
+            }
+            // 失败后不再接受写入
+            try {
+                writer.append("PUT k v 2\n".getBytes(StandardCharsets.UTF_8));
+                fail("Expected UncheckedIOException");
+            } catch (UncheckedIOException e) {
+                assertTrue(e.getMessage().startsWith("Failed to write AOF"));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testEveryFsyncPolicyRecoversWrites() {
+        for (AofWriter.FsyncPolicy policy : AofWriter.FsyncPolicy.values()) {
+            if (aofFile.exists()) aofFile.delete();
+            AofCache cache = new AofCache(1000);
+            cache.setAppendFsync(policy);
+            for (int i = 0; i < 200; i++) {
+                cache.put("key" + i, "value" + i, 60_000);
+            }
+            cache.shutdown();
+
+            cache = new AofCache(1000);
+            assertEquals(policy.toString(), 200, cache.getRecoveredRecords());
+            assertEquals("value199", cache.get("key199"));
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testRewriteKeepsOnlyLiveKeys() throws Exception {
+        AofCache cache = new AofCache(1000);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++) {
+                cache.put("key" + i, "value" + round, 60_000);
+            }
+        }
+        cache.put("short", "gone", 1);
+        Thread.sleep(20);
+        assertTrue(cache.rewriteAof());
+        cache.awaitRewrite();
+        assertEquals(1, cache.getRewriteCount());
+
+        Map<String, String> replayed = replay();
+        assertEquals(100, records().size());
+        assertEquals(100, replayed.size());
+        assertEquals("value19", replayed.get("key42"));
+        assertFalse(replayed.containsKey("short"));
+        cache.shutdown();
+    }
+
+    @Test
+    public void testWritesDuringRewriteAreKept() throws Exception {
+        AofCache cache = new AofCache(100_000);
+        for (int i = 0; i < 50_000; i++) {
+            cache.put("key" + i, "old", 60_000);
+        }
+        assertTrue(cache.rewriteAof());
+        // 重写期间继续写入，这些记录先进入重写缓冲区，再追加到新文件
+        for (int i = 0; i < 50_000; i++) {
+            cache.put("key" + i, "new", 60_000);
+        }
+        cache.awaitRewrite();
+        cache.put("after", "swap", 60_000);
+        cache.shutdown();
+
+        Map<String, String> replayed = replay();
+        assertEquals(50_001, replayed.size());
+        assertEquals("new", replayed.get("key0"));
+        assertEquals("new", replayed.get("key49999"));
+        assertEquals("swap", replayed.get("after"));
+    }
+
+    @Test
+    public void testRewriteDuringBgsaveWaitsForIt() throws Exception {
+        HashMapCache cache = new HashMapCache(100_000, MultiEvictionCache.EvictionStrategy.LFU);
+        try {
+            for (int i = 0; i < 50_000; i++) {
+                cache.put("key" + i, "old", 60_000);
+            }
+            assertTrue(cache.bgsave());
+            assertTrue(cache.rewriteAof()); // 快照读完节点后才开始收集
+            assertFalse(cache.bgsave());
+            for (int i = 0; i < 50_000; i += 2) {
+                cache.put("key" + i, "new", 60_000);
+            }
+            assertTrue(cache.delete("key1"));
+            cache.awaitRewrite();
+            cache.awaitSave();
+            assertEquals(1, cache.getRewriteCount());
+            assertEquals(1, cache.getSaveCount());
+        } finally {
+            cache.shutdown();
+            new File("dump.rdb").delete();
+        }
+
+        Map<String, String> replayed = replay();
+        assertEquals(49_999, replayed.size());
+        assertEquals("new", replayed.get("key0"));
+        assertEquals("old", replayed.get("key3"));
+        assertFalse(replayed.containsKey("key1"));
+    }
+
+    @Test
+    public void testAutoRewriteOnGrowth() throws Exception {
+        AofCache cache = new AofCache(100);
+        cache.setAutoRewrite(100, 16 * 1024);
+        long written = 0;
+        for (int i = 0; i < 20_000; i++) {
+            cache.put("key" + (i % 10), "value" + i, 60_000);
+            written += AofFormat.encode(AofFormat.OP_PUT, "key0", "value" + i, 0).length;
+            // 等触发的重写完成再继续，文件大小不取决于重写线程抢到锁的时机（重写期间的写入见 testWritesDuringRewriteAreKept）
+            cache.awaitRewrite();
+        }
+        assertTrue(cache.getRewriteCount() > 0);
+        // 只有 10 个存活键，文件远小于写入总量
+        assertTrue(cache.getAofFileSize() < written / 2);
+        cache.shutdown();
+        assertEquals("value19999", replay().get("key9"));
+    }
+
+    @Test
+    public void testRdbPreambleRestoresKeysFrequencyAndTail() throws Exception {
+        HashMapCache cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.LFU);
+        cache.put("key1", "value1", 60_000);
+        cache.put("key2", "value2", 60_000);
+        for (int i = 0; i < 5; i++) cache.get("key1");
+        assertTrue(cache.rewriteAof());
+        cache.awaitRewrite();
+        cache.put("key3", "value3", 60_000); // 增量记录接在快照前导之后
+        cache.get("key3");
+        cache.shutdown();
+
+        byte[] magic = new byte[4];
+        try (RandomAccessFile file = new RandomAccessFile(aofFile, "r")) {
+            file.readFully(magic);
+        }
+        assertEquals("JRDB", new String(magic, StandardCharsets.US_ASCII));
+        long validLength = aofFile.length();
+        byte[] record = AofFormat.encode(AofFormat.OP_PUT, "partial", "value", System.currentTimeMillis() + 60_000);
+        try (OutputStream out = new FileOutputStream(aofFile, true)) {
+            out.write(record, 0, record.length - 3); // 尾部写到一半宕机
+        }
+
+        cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.LFU);
+        assertEquals(3, cache.getRecoveredRecords());
+        assertEquals(validLength, aofFile.length());
+        cache.put("key4", "value4", 60_000); // 频率随快照前导恢复，淘汰最低频的 key2
+        assertNull(cache.get("key2"));
+        assertEquals("value1", cache.get("key1"));
+        assertEquals("value3", cache.get("key3"));
+        cache.shutdown();
+    }
+
+    @Test
+    public void testExpiredOverwriteDoesNotResurrectOlderValue() throws Exception {
+        HashMapCache cache = new HashMapCache(10, MultiEvictionCache.EvictionStrategy.LFU);
+        cache.put("k", "v1", 3_600_000);
+        cache.put("k", "v2", 200);
+        cache.shutdown();
+        Thread.sleep(400);
+
+        cache = new HashMapCache(10, MultiEvictionCache.EvictionStrategy.LFU);
+        assertNull(cache.get("k"));
+        assertEquals(0, cache.size());
+        cache.shutdown();
+    }
+
+    @Test
+    public void testSubclassRecoversAndAppends() {
+        HashMapCache cache = new HashMapCache(10, MultiEvictionCache.EvictionStrategy.LFU);
+        cache.put("k", "v", 60_000);
+        cache.shutdown();
+
+        // 引擎的子类（包括匿名子类）同样恢复 AOF 并打开写入器
+        HashMapCache subclass = new HashMapCache(10, MultiEvictionCache.EvictionStrategy.LFU) {
+        };
+        assertEquals("v", subclass.get("k"));
+        subclass.put("k2", "v2", 60_000);
+        subclass.shutdown();
+        LruCache lru = new LruCache(10) {
+        };
+        assertEquals("v2", lru.get("k2"));
+        lru.shutdown();
+    }
+
+    @Test
+    public void testRestartWithAndWithoutRdbPreamble() {
+        int keys = 5_000;
+        for (boolean preamble : new boolean[]{false, true}) {
+            if (aofFile.exists()) aofFile.delete();
+            HashMapCache cache = new HashMapCache(keys, MultiEvictionCache.EvictionStrategy.FIFO);
+            cache.setUseRdbPreamble(preamble);
+            for (int i = 0; i < keys; i++) {
+                cache.put("key" + i, "value" + i, 3_600_000);
+            }
+            cache.rewriteAof();
+            cache.awaitRewrite();
+            cache.shutdown();
+
+            cache = new HashMapCache(keys, MultiEvictionCache.EvictionStrategy.FIFO);
+            assertEquals(keys, cache.size());
+            assertEquals("value42", cache.get("key42"));
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testAppendOnlyOffKeepsDataUntilSnapshot() {
+        HashMapCache cache = new HashMapCache(10, MultiEvictionCache.EvictionStrategy.LFU);
+        try {
+            cache.put("deleted", "1", 60_000);
+            cache.put("overwritten", "old", 60_000);
+            cache.put("untouched", "1", 60_000);
+            cache.setAppendOnly(false);
+            cache.awaitSave();
+            // 快照落盘后 AOF 才截断为只剩文件头
+            assertEquals(1, cache.getSaveCount());
+            assertEquals(AofFormat.header().length, aofFile.length());
+            cache.delete("deleted");
+            cache.put("overwritten", "new", 60_000);
+            assertTrue(cache.bgsave());
+            cache.awaitSave();
+        } finally {
+            cache.shutdown();
+        }
+
+        // 重启从快照恢复：关闭前写入的键都在，截断后的 AOF 不会恢复出已删除或已被覆盖的旧值
+        cache = new HashMapCache(10, MultiEvictionCache.EvictionStrategy.LFU);
+        try {
+            assertEquals("1", cache.get("untouched"));
+            assertNull(cache.get("deleted"));
+            assertEquals("new", cache.get("overwritten"));
+        } finally {
+            cache.shutdown();
+            new File("dump.rdb").delete();
+        }
+    }
+
+    // 按文件顺序读出的未过期记录
+    private List<String> records() throws Exception {
+        List<String> records = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        AofLoader.load(aofFile, (key, value, expiry) -> {
+            if (value == null || expiry > now) records.add(key + "=" + value);
+        });
+        return records;
+    }
+
+    // 按文件顺序重放，后写的覆盖先写的，已过期的写入删除该键
+    private Map<String, String> replay() throws Exception {
+        Map<String, String> entries = new HashMap<>();
+        long now = System.currentTimeMillis();
+        AofLoader.load(aofFile, (key, value, expiry) -> {
+            if (value == null || expiry <= now) entries.remove(key);
+            else entries.put(key, value);
+        });
+        return entries;
+    }
+}
@@ -0,0 +1,152 @@
+package com;
+
+import com.redis.cache.AofCache;
+import com.redis.cache.AofFormat;
+import com.redis.cache.AofLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class AofLoaderTest {
+    private File aofFile = new File("appendonly.aof");
+    private File logFile;
+
+    @Before
+    public void setUp() throws Exception {
+        if (aofFile.exists()) aofFile.delete();
+        logFile = File.createTempFile("aof-loader", ".aof");
+    }
+
+    @After
+    public void tearDown() {
+        if (aofFile.exists()) aofFile.delete();
+        logFile.delete();
+    }
+
+    @Test
+    public void testKeysAndValuesWithSpacesAndNewlines() throws Exception {
+        AofCache cache = new AofCache(10);
+        cache.put("key with space", "line1\nline2", 60_000);
+        cache.put("键", "值 value", 60_000);
+        cache.shutdown();
+
+        Map<String, String> replayed = load(aofFile);
+        assertEquals("line1\nline2", replayed.get("key with space"));
+        assertEquals("值 value", replayed.get("键"));
+    }
+
+    @Test
+    public void testExpiredRecordsRemoveEarlierValues() throws Exception {
+        long now = System.currentTimeMillis();
+        writeLog(logFile, 10, now + 60_000);
+        try (OutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(AofFormat.encode(AofFormat.OP_PUT, "expired", "value", now - 1));
+            // 已过期的覆盖写入同样交给调用方，旧值不能复活
+            out.write(AofFormat.encode(AofFormat.OP_PUT, "key0", "newer", now - 1));
+            out.write(AofFormat.encodeBatch(AofFormat.OP_MPUT, Arrays.asList("key1", "key2"), Arrays.asList("a", "b"), now - 1));
+        }
+        Map<String, String> replayed = load(logFile);
+        assertEquals(7, replayed.size());
+        assertFalse(replayed.containsKey("expired"));
+        assertFalse(replayed.containsKey("key0"));
+        assertFalse(replayed.containsKey("key2"));
+        assertEquals("value3", replayed.get("key3"));
+    }
+
+    @Test
+    public void testTruncatedTailIsDropped() throws Exception {
+        writeLog(logFile, 10, System.currentTimeMillis() + 60_000);
+        long validLength = logFile.length();
+        byte[] record = AofFormat.encode(AofFormat.OP_PUT, "partial", "value", System.currentTimeMillis() + 60_000);
+        try (OutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(record, 0, record.length - 3); // 写到一半宕机
+        }
+        assertEquals(10, load(logFile).size());
+        assertEquals(validLength, logFile.length());
+    }
+
+    @Test
+    public void testTornLastRecordFailsChecksumAndIsDropped() throws Exception {
+        writeLog(logFile, 10, System.currentTimeMillis() + 60_000);
+        long validLength = logFile.length();
+        byte[] record = AofFormat.encode(AofFormat.OP_PUT, "torn", "value", System.currentTimeMillis() + 60_000);
+        for (int i = 8; i < record.length; i++) record[i] = 0; // 长度已落盘，内容还没有
+        try (OutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(record);
+        }
+        assertEquals(10, load(logFile).size());
+        assertEquals(validLength, logFile.length());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCorruptedRecordInTheMiddleIsRejected() throws Exception {
+        writeLog(logFile, 10, System.currentTimeMillis() + 60_000);
+        int recordSize = AofFormat.encode(AofFormat.OP_PUT, "key0", "value0", 0).length;
+        long offset = AofFormat.header().length + 6L * recordSize - 1; // 第 6 条记录值的最后一个字节
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.seek(offset);
+            int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 0xFF);
+        }
+        load(logFile);
+    }
+
+    @Test
+    public void testCorruptedLengthInTheMiddleIsRejectedWithoutTruncating() throws Exception {
+        writeLog(logFile, 100, System.currentTimeMillis() + 60_000);
+        int recordSize = AofFormat.encode(AofFormat.OP_PUT, "key0", "value0", 0).length;
+        long length = logFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.seek(AofFormat.header().length + recordSize); // 第 2 条记录的长度字段
+            file.writeInt(0x7FFF0000);
+        }
+        try {
+            load(logFile);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("offset " + (AofFormat.header().length + recordSize)));
+        }
+        assertEquals(length, logFile.length());
+    }
+
+    @Test
+    public void testTornHeaderWithGarbageLengthIsDropped() throws Exception {
+        writeLog(logFile, 10, System.currentTimeMillis() + 60_000);
+        long validLength = logFile.length();
+        try (OutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(new byte[]{0x7F, 0x12, 0x34, 0x56, 0, 0, 0, 0, 1, 2, 3}); // 最后一次写入只落盘了开头
+        }
+        assertEquals(10, load(logFile).size());
+        assertEquals(validLength, logFile.length());
+    }
+
+    private static void writeLog(File file, int records, long expiry) throws Exception {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            out.write(AofFormat.header());
+            for (int i = 0; i < records; i++) {
+                out.write(AofFormat.encode(AofFormat.OP_PUT, "key" + i, "value" + i, expiry));
+            }
+        }
+    }
+
+    private static Map<String, String> load(File file) throws Exception {
+        Map<String, String> entries = new HashMap<>();
+        long now = System.currentTimeMillis();
+        AofLoader.load(file, (key, value, expiry) -> {
+            if (value == null || expiry <= now) entries.remove(key);
+            else entries.put(key, value);
+        });
+        return entries;
+    }
+}
@@ -0,0 +1,259 @@
+package com;
+
+import com.redis.cache.ClusterState;
+import com.redis.cache.HashMapCache;
+import com.redis.cache.RespServer;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static com.RespNodes.call;
+import static com.RespNodes.connect;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ClusterStateTest {
+    private final RespNodes nodes = new RespNodes("cluster-node-", true);
+
+    @After
+    public void tearDown() {
+        nodes.close();
+    }
+
+    @Test
+    public void testKeySlot() {
+        // 与 Redis CLUSTER KEYSLOT 的结果相同
+        assertEquals(12182, ClusterState.keySlot("foo"));
+        assertEquals(5061, ClusterState.keySlot("bar"));
+        assertEquals(11058, ClusterState.keySlot("somekey"));
+        assertEquals(ClusterState.keySlot("user1000"), ClusterState.keySlot("{user1000}.following"));
+        assertEquals(ClusterState.keySlot("{user1000}.followers"), ClusterState.keySlot("{user1000}.following"));
+        assertEquals(ClusterState.keySlot("foo{}{bar}"), ClusterState.keySlot("foo{}{bar}")); // 空标签对整个键计算
+        assertNotEquals(ClusterState.keySlot("bar"), ClusterState.keySlot("foo{}{bar}"));
+        assertEquals(ClusterState.keySlot("{bar"), ClusterState.keySlot("foo{{bar}}zap"));
+    }
+
+    @Test
+    public void testMovedAndCrossSlotReplies() throws Exception {
+        RespServer a = nodes.startNode(), b = nodes.startNode();
+        String idA = a.getCluster().getMyself(), idB = b.getCluster().getMyself();
+        try (Socket toA = connect(a); Socket toB = connect(b)) {
+            assertEquals("OK", call(toA, "CLUSTER", "ADDSLOTSRANGE", "0", "8191"));
+            assertEquals("OK", call(toB, "CLUSTER", "ADDSLOTSRANGE", "8192", "16383"));
+            assertEquals("OK", call(toA, "CLUSTER", "SETSLOT", "12182", "NODE", idB));
+            assertEquals("OK", call(toB, "CLUSTER", "SETSLOT", "5061", "NODE", idA));
+
+            assertEquals("MOVED 12182 " + idB, call(toA, "SET", "foo", "1")); // foo 在 12182 槽
+            assertEquals("OK", call(toB, "SET", "foo", "1"));
+            assertEquals("1", call(toB, "GET", "foo"));
+            assertEquals("OK", call(toA, "SET", "bar", "2")); // bar 在 5061 槽
+            assertEquals("CROSSSLOT Keys in request don't hash to the same slot", call(toA, "MSET", "bar", "1", "foo", "2"));
+            assertEquals("OK", call(toA, "MSET", "{bar}1", "x", "{bar}2", "y"));
+            assertEquals(3L, call(toA, "CLUSTER", "COUNTKEYSINSLOT", "5061"));
+            assertEquals(5061L, call(toA, "CLUSTER", "KEYSLOT", "{bar}1"));
+            assertEquals("ERR Slot 0 is already busy", call(toA, "CLUSTER", "ADDSLOTS", "0"));
+
+            List<?> slots = (List<?>) call(toA, "CLUSTER", "SLOTS");
+            assertEquals(Arrays.asList(0L, 8191L, Arrays.asList("127.0.0.1", (long) a.getPort(), idA)), slots.get(0));
+            assertEquals(Arrays.asList(12182L, 12182L, Arrays.asList("127.0.0.1", (long) b.getPort(), idB)), slots.get(1));
+            assertEquals(2, slots.size()); // A 只知道 B 拥有 12182
+        }
+    }
+
+    @Test
+    public void testAskDuringMigration() throws Exception {
+        RespServer a = nodes.startNode(), b = nodes.startNode();
+        String idA = a.getCluster().getMyself(), idB = b.getCluster().getMyself();
+        try (Socket toA = connect(a); Socket toB = connect(b)) {
+            call(toA, "CLUSTER", "ADDSLOTSRANGE", "0", "16383");
+            call(toB, "CLUSTER", "SETSLOT", "12182", "NODE", idA);
+            for (int i = 0; i < 500; i++) call(toA, "SET", "{foo}" + i, "v" + i);
+
+            assertEquals("MOVED 12182 " + idA, call(toB, "GET", "{foo}1"));
+            assertEquals("OK", call(toB, "CLUSTER", "SETSLOT", "12182", "IMPORTING", idA));
+            assertEquals("OK", call(toA, "CLUSTER", "SETSLOT", "12182", "MIGRATING", idB));
+            a.getCluster().awaitMigrations();
+
+            assertEquals(0L, call(toA, "CLUSTER", "COUNTKEYSINSLOT", "12182"));
+            assertEquals(500L, call(toB, "CLUSTER", "COUNTKEYSINSLOT", "12182"));
+            assertEquals("MOVED 12182 " + idB, call(toA, "GET", "{foo}1")); // 迁移完成后源节点已交出槽位
+            assertEquals("v1", call(toB, "GET", "{foo}1")); // 目标节点已接管，不再需要 ASKING
+            assertEquals(idB, b.getCluster().ownerOf(12182));
+            assertNull(b.getCluster().importingFrom(12182));
+        }
+    }
+
+    @Test
+    public void testFailedMigrationClearsStateAndIsReported() throws Exception {
+        RespServer a = nodes.startNode(), b = nodes.startNode();
+        String idA = a.getCluster().getMyself(), idB = b.getCluster().getMyself();
+        try (Socket toA = connect(a); Socket toB = connect(b)) {
+            call(toA, "CLUSTER", "ADDSLOTSRANGE", "0", "16383");
+            call(toB, "CLUSTER", "SETSLOT", "12182", "NODE", idA);
+            for (int i = 0; i < 50; i++) call(toA, "SET", "{foo}" + i, "v" + i);
+
+            // 目标节点没有 SETSLOT IMPORTING，对 ASKING + SET 回复 MOVED，迁移失败
+            assertEquals("OK", call(toA, "CLUSTER", "SETSLOT", "12182", "MIGRATING", idB));
+            a.getCluster().awaitMigrations();
+            assertNull(a.getCluster().migratingTo(12182)); // 与 STABLE 相同清除，不会一直回复 ASK
+            assertEquals(1, a.getCluster().getMigrateFailures());
+            String info = (String) call(toA, "CLUSTER", "INFO");
+            assertTrue(info, info.contains("cluster_slots_migrating:0\r\n"));
+            assertTrue(info, info.contains("cluster_migrate_failures:1\r\n"));
+            assertTrue(info, info.contains("cluster_migrate_last_error:slot 12182 to " + idB + ": Unexpected reply -MOVED 12182 " + idA));
+            assertEquals(50L, call(toA, "CLUSTER", "COUNTKEYSINSLOT", "12182"));
+            assertEquals("v1", call(toA, "GET", "{foo}1"));
+
+            // 补上 IMPORTING 后重新发起
+            assertEquals("OK", call(toB, "CLUSTER", "SETSLOT", "12182", "IMPORTING", idA));
+            assertEquals("OK", call(toA, "CLUSTER", "SETSLOT", "12182", "MIGRATING", idB));
+            a.getCluster().awaitMigrations();
+            assertEquals(idB, a.getCluster().ownerOf(12182));
+            assertEquals(50L, call(toB, "CLUSTER", "COUNTKEYSINSLOT", "12182"));
+            assertEquals(1, a.getCluster().getMigrateFailures());
+        }
+    }
+
+    @Test
+    public void testRebalanceUnderLoad() throws Exception {
+        RespServer a = nodes.startNode(), b = nodes.startNode();
+        String idA = a.getCluster().getMyself(), idB = b.getCluster().getMyself();
+        a.getCluster().addSlots(0, ClusterState.SLOTS - 1);
+        for (int slot = 0; slot < ClusterState.SLOTS; slot++) b.getCluster().setNode(slot, idA);
+        int tags = 64;
+        int[] slots = new int[tags];
+        for (int t = 0; t < tags; t++) slots[t] = ClusterState.keySlot("{tag" + t + "}");
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong redirects = new AtomicLong();
+        List<Thread> clients = new ArrayList<>();
+        List<Map<String, String>> written = new ArrayList<>();
+        for (int c = 0; c < 4; c++) {
+            int client = c;
+            Map<String, String> values = new HashMap<>();
+            written.add(values);
+            Thread thread = new Thread(() -> {
+                try (ClusterClient cluster = new ClusterClient(a.getPort(), redirects)) {
+                    for (int round = 0; !stop.get() || round < 2; round++) {
+                        for (int i = 0; i < 200; i++) {
+                            String key = "{tag" + (i % tags) + "}client" + client + ":" + i;
+                            String value = "v" + round;
+                            assertEquals("OK", cluster.call("SET", key, value));
+                            values.put(key, value);
+                            assertEquals(value, cluster.call("GET", key));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            clients.add(thread);
+            thread.start();
+        }
+
+        // 与 redis-cli --cluster reshard 相同：目标 IMPORTING，源 MIGRATING，迁完后通知所有节点
+        Thread.sleep(200);
+        try (Socket toA = connect(a); Socket toB = connect(b)) {
+            for (int t = 0; t < tags; t += 2) {
+                String slot = Integer.toString(slots[t]);
+                assertEquals("OK", call(toB, "CLUSTER", "SETSLOT", slot, "IMPORTING", idA));
+                assertEquals("OK", call(toA, "CLUSTER", "SETSLOT", slot, "MIGRATING", idB));
+                a.getCluster().awaitMigrations();
+                assertEquals("OK", call(toA, "CLUSTER", "SETSLOT", slot, "NODE", idB));
+                assertEquals("OK", call(toB, "CLUSTER", "SETSLOT", slot, "NODE", idB));
+            }
+        }
+        stop.set(true);
+        for (Thread thread : clients) thread.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+
+        for (int t = 0; t < tags; t++) {
+            HashMapCache owner = t % 2 == 0 ? nodes.caches.get(1) : nodes.caches.get(0);
+            HashMapCache other = t % 2 == 0 ? nodes.caches.get(0) : nodes.caches.get(1);
+            assertEquals(4 * 200 / tags + (t < 200 % tags ? 4 : 0), owner.countKeysInSlot(slots[t]));
+            assertEquals(0, other.countKeysInSlot(slots[t]));
+        }
+        try (ClusterClient cluster = new ClusterClient(a.getPort(), redirects)) {
+            for (Map<String, String> values : written) {
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    assertEquals(entry.getValue(), cluster.call("GET", entry.getKey())); // 迁移期间的写入都没有丢
+                }
+            }
+        }
+        assertTrue(redirects.get() > 0); // 迁走的槽位在源节点上收到 MOVED 或 ASK
+    }
+
+    // 跟随重定向的简单集群客户端：MOVED 更新槽位表后重试，ASK 发 ASKING 后在目标节点重试一次，TRYAGAIN 稍后重试
+    private static class ClusterClient implements AutoCloseable {
+        private final Map<Integer, Socket> connections = new HashMap<>();
+        private final Map<Integer, InputStream> inputs = new HashMap<>();
+        private final Map<Integer, Integer> slotPorts = new HashMap<>();
+        private final int defaultPort;
+        private final AtomicLong redirects;
+
+        ClusterClient(int defaultPort, AtomicLong redirects) {
+            this.defaultPort = defaultPort;
+            this.redirects = redirects;
+        }
+
+        Object call(String... args) throws IOException, InterruptedException {
+            int slot = ClusterState.keySlot(args[1]);
+            int port = slotPorts.getOrDefault(slot, defaultPort);
+            boolean asking = false;
+            for (int attempt = 0; attempt < 100; attempt++) {
+                Socket socket = connection(port);
+                InputStream in = inputs.get(port);
+                if (asking) assertEquals("OK", RespNodes.call(socket.getOutputStream(), in, "ASKING"));
+                Object reply = RespNodes.call(socket.getOutputStream(), in, args);
+                asking = false;
+                if (!(reply instanceof String)) return reply;
+                String text = (String) reply;
+                if (text.startsWith("MOVED ")) {
+                    port = portOf(text);
+                    slotPorts.put(slot, port);
+                } else if (text.startsWith("ASK ")) {
+                    port = portOf(text);
+                    asking = true;
+                } else if (text.startsWith("TRYAGAIN")) {
+                    Thread.sleep(1);
+                } else {
+                    return reply;
+                }
+                redirects.incrementAndGet();
+            }
+            throw new AssertionError("Too many redirects for " + Arrays.toString(args));
+        }
+
+        private Socket connection(int port) throws IOException {
+            Socket socket = connections.get(port);
+            if (socket == null) {
+                socket = new Socket("127.0.0.1", port);
+                socket.setSoTimeout(10_000);
+                socket.setTcpNoDelay(true);
+                connections.put(port, socket);
+                inputs.put(port, new BufferedInputStream(socket.getInputStream()));
+            }
+            return socket;
+        }
+
+        private static int portOf(String redirect) {
+            return Integer.parseInt(redirect.substring(redirect.lastIndexOf(':') + 1));
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Socket socket : connections.values()) socket.close();
+        }
+    }
+}
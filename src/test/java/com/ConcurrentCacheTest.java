@@ -0,0 +1,96 @@
+package com;
+
+import com.redis.cache.ConcurrentCache;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentCacheTest {
+    @Test
+    public void testBasicOperations() throws InterruptedException {
+        ConcurrentCache cache = new ConcurrentCache(4, 1);
+        cache.put("key1", "value1", 5000);
+        cache.put("key2", "value2", 5000);
+        assertEquals("value1", cache.get("key1"));
+        cache.put("key1", "newValue", 5000);
+        assertEquals("newValue", cache.get("key1"));
+        assertEquals("value2", cache.remove("key2"));
+        assertNull(cache.get("key2"));
+
+        cache.put("key3", "value3", 100);
+        Thread.sleep(200);
+        assertNull(cache.get("key3")); // 过期
+
+        for (int i = 0; i < 10; i++) cache.put("fill" + i, "value" + i, 5000);
+        assertEquals(4, cache.size()); // 采样淘汰保持容量
+
+        try {
+            cache.put(null, "value", 1000);
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // 预期异常
+        }
+    }
+
+    @Test
+    public void testSegmentCapacitiesSumToCapacity() {
+        // 容量不能被段数整除时，总容量仍与请求的一致；段数不超过容量
+        for (int capacity : new int[]{3, 10, 1000}) {
+            ConcurrentCache cache = new ConcurrentCache(capacity, 16);
+            assertTrue(cache.segmentCount() <= capacity);
+            for (int i = 0; i < 20_000; i++) cache.put("key" + i, "value", 60_000);
+            assertEquals(capacity, cache.size());
+        }
+    }
+
+    @Test
+    public void testConcurrentStress() throws InterruptedException {
+        int capacity = 10_000;
+        ConcurrentCache cache = new ConcurrentCache(capacity, 16);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        runThreads(8, 100_000, cache, failure);
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertTrue(cache.size() <= capacity);
+    }
+
+    // 90% 读 / 8% 写 / 2% 删除；每个键的值固定，读到的值必须与键对应
+    private static void runThreads(int threads, int ops, ConcurrentCache cache, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < ops; i++) {
+                        int k = random.nextInt(100_000);
+                        String key = "key" + k;
+                        int op = random.nextInt(100);
+                        if (op < 90) {
+                            String value = cache.get(key);
+                            if (value != null && !value.equals("value" + k)) {
+                                throw new AssertionError("Wrong value for " + key + ": " + value);
+                            }
+                        } else if (op < 98) {
+                            cache.put(key, "value" + k, 60_000);
+                        } else {
+                            cache.remove(key);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+    }
+}
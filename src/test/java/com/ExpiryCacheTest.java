@@ -1,5 +1,6 @@
 package com;
 
+import com.redis.cache.ActiveExpireCycle;
 import com.redis.cache.ExpiryCache;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -39,4 +40,35 @@ public class ExpiryCacheTest {
         // 清理资源
         cache.shutdown();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAdaptiveSamplingExpiry() throws InterruptedException {
+        ExpiryCache cache = new ExpiryCache(10_000);
+        cache.setExpirePolicy(ExpiryCache.ExpirePolicy.ADAPTIVE_SAMPLING);
+        for (int i = 0; i < 5000; i++) {
+            cache.put("short" + i, "value", 50);
+            cache.put("long" + i, "value", 60_000);
+        }
+        Thread.sleep(300); // 后台慢周期每 100 毫秒运行一次
+        cache.removeExpiredKeys();
+
+        ActiveExpireCycle cycle = cache.getActiveExpireCycle();
+        // 后台周期在缓存锁内运行，持有锁时统计和键数不会变化，两者才能对比
+        synchronized (cache) {
+            assertTrue(cycle.getCycles() > 0);
+            assertTrue(cycle.getSampledKeys() >= cycle.getExpiredKeys());
+            // 抽样不保证清空，但不经过 get 也已删掉部分过期键
+            assertTrue(cycle.getExpiredKeys() > 0);
+            assertEquals(10_000 - cycle.getExpiredKeys(), cache.size());
+        }
+        assertEquals("value", cache.get("long0"));
+
+        try {
+            cache.setExpirePolicy(ExpiryCache.ExpirePolicy.TIMING_WHEEL);
+            fail("Should throw IllegalStateException");
+        } catch (IllegalStateException e) {
+            // 预期异常
+        }
+        cache.shutdown();
+    }
+}
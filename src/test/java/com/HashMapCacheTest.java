@@ -1,13 +1,25 @@
 package com;
+import com.redis.cache.ActiveExpireCycle;
+import com.redis.cache.AofWriter;
+import com.redis.cache.ClusterState;
 import com.redis.cache.CustomHashMap;
+import com.redis.cache.ExpiryCache;
 import com.redis.cache.HashMapCache;
 import com.redis.cache.MultiEvictionCache;
+import com.redis.cache.OpenAddressingHashMap;
+import com.redis.cache.SlabAllocator;
+import com.redis.cache.ValueEncoding;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class HashMapCacheTest {
     private HashMapCache cache;
@@ -49,6 +61,82 @@ public class HashMapCacheTest {
         assertEquals("value10", map.get("key10"));
     }
 
+    @Test
+    public void testCustomHashMapIncrementalRehash() {
+        CustomHashMap<String, String> map = new CustomHashMap<>();
+        boolean sawRehashing = false;
+        for (int i = 0; i < 1000; i++) {
+            map.put("key" + i, "value" + i);
+            if (map.isRehashing()) {
+                // 扩容不在一次 put 里迁完；rehash 期间两张表都要能查到
+                sawRehashing = true;
+                assertEquals("value0", map.get("key0"));
+                assertEquals("value" + i, map.get("key" + i));
+            }
+        }
+        assertTrue(sawRehashing);
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value" + i, map.get("key" + i));
+        }
+
+        // 删除到稀疏后渐进式收缩
+        for (int i = 0; i < 990; i++) {
+            assertEquals("value" + i, map.remove("key" + i));
+        }
+        assertEquals(10, map.size());
+        assertTrue(map.isRehashing());
+        map.rehashMilliseconds(10);
+        assertFalse(map.isRehashing());
+        for (int i = 990; i < 1000; i++) {
+            assertEquals("value" + i, map.get("key" + i));
+        }
+        assertNull(map.get("key0"));
+    }
+
+    @Test
+    public void testOpenAddressingHashMap() {
+        OpenAddressingHashMap<String, String> map = new OpenAddressingHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.put("key" + i, "value" + i);
+        }
+        assertEquals(1000, map.size());
+        map.put("key1", "newValue");
+        assertEquals("newValue", map.get("key1"));
+        assertEquals(1000, map.size());
+
+        // 删除后留下的墓碑不能打断其他键的探测链
+        for (int i = 0; i < 1000; i += 2) {
+            assertNotNull(map.remove("key" + i));
+        }
+        assertEquals(500, map.size());
+        for (int i = 0; i < 1000; i++) {
+            if (i % 2 == 0) {
+                assertNull(map.get("key" + i));
+            } else {
+                assertNotNull(map.get("key" + i));
+            }
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            map.put("key" + i, "value" + i);
+        }
+        assertEquals(1000, map.size());
+        assertEquals("value998", map.get("key998"));
+        assertNull(map.remove("missing"));
+    }
+
+    @Test
+    public void testHashMapCacheOpenAddressing() {
+        cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.FIFO, HashMapCache.TableType.OPEN_ADDRESSING);
+        cache.put("key1", "value1", 5000);
+        cache.put("key2", "value2", 5000);
+        cache.put("key3", "value3", 5000);
+        cache.put("key4", "value4", 5000); // 移除 key1（最早插入）
+        assertNull(cache.get("key1"));
+        assertEquals("value2", cache.get("key2"));
+        assertEquals("value4", cache.get("key4"));
+    }
+
     @Test
     public void testHashMapCache() throws InterruptedException {
         cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.LFU);
@@ -68,6 +156,314 @@ public class HashMapCacheTest {
         assertEquals("value1", cache.get("key1")); // AOF 恢复
     }
 
+    @Test
+    public void testActiveExpiry() throws InterruptedException {
+        cache = new HashMapCache(10, MultiEvictionCache.EvictionStrategy.FIFO);
+        cache.put("short", "value", 50);
+        cache.put("long", "value", 60_000);
+        cache.put("short", "value", 30); // 改期
+        Thread.sleep(200);
+        // 不经过 get，时间轮已在后台清理到期键
+        assertEquals(1, cache.size());
+        assertEquals("value", cache.get("long"));
+    }
+
+    @Test
+    public void testBatchOperations() {
+        cache = new HashMapCache(5, MultiEvictionCache.EvictionStrategy.FIFO);
+        cache.put("key1", "value1", 60_000);
+        cache.put("key2", "value2", 60_000);
+        cache.put("key3", "value3", 60_000);
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("key3", "new3");
+        entries.put("key4", "value4");
+        entries.put("key5", "value5");
+        entries.put("key6", "value6");
+        cache.putAll(entries, 60_000); // 3 个新键，一次淘汰最早的 key1
+        assertEquals(5, cache.size());
+        assertEquals(Arrays.asList(null, "value2", "new3", "value6", null),
+                cache.getAll(Arrays.asList("key1", "key2", "key3", "key6", "missing")));
+
+        assertEquals(2, cache.deleteAll(Arrays.asList("key2", "key4", "key2", "missing")));
+        assertEquals(3, cache.size());
+        cache.shutdown();
+
+        cache = new HashMapCache(5, MultiEvictionCache.EvictionStrategy.FIFO);
+        assertEquals(10, cache.getRecoveredRecords()); // 3 次写入 + 批量淘汰 1 + 批量写入 4 + 批量删除 2
+        assertEquals(Arrays.asList(null, null, "new3", null, "value5", "value6"),
+                cache.getAll(Arrays.asList("key1", "key2", "key3", "key4", "key5", "key6")));
+        assertTrue(cache.ttl("key5") > 0); // 批量记录保留整批的过期时间
+    }
+
+    @Test
+    public void testBatchMatchesSingleCalls() {
+        // appendfsync always 下逐个写入每次等一次 fsync，批量写入整批只等一次，结果和恢复都应相同
+        cache = new HashMapCache(1000, MultiEvictionCache.EvictionStrategy.APPROX_LFU);
+        cache.setAppendFsync(AofWriter.FsyncPolicy.ALWAYS);
+        Map<String, String> entries = new LinkedHashMap<>();
+        List<String> singles = new ArrayList<>(), batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            cache.put("single" + i, "value" + i, 60_000);
+            entries.put("batch" + i, "value" + i);
+            singles.add("single" + i);
+            batch.add("batch" + i);
+        }
+        cache.putAll(entries, 60_000);
+        List<String> expected = new ArrayList<>();
+        for (String key : singles) expected.add(cache.get(key));
+        assertEquals(expected, cache.getAll(batch));
+        cache.shutdown();
+
+        cache = new HashMapCache(1000, MultiEvictionCache.EvictionStrategy.APPROX_LFU);
+        assertEquals(expected, cache.getAll(singles));
+        assertEquals(expected, cache.getAll(batch));
+    }
+
+    @Test
+    public void testOffHeapStorage() throws Exception {
+        try (SlabAllocator slabs = new SlabAllocator()) {
+            cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.FIFO, HashMapCache.TableType.OPEN_ADDRESSING, slabs);
+            cache.put("key1", "值 value1", 60_000);
+            cache.put("key2", "value2", 60_000);
+            cache.put("key2", "value2 updated", 60_000);
+            cache.put("key3", "value3", 60_000);
+            assertEquals("值 value1", cache.get("key1"));
+            assertEquals("value2 updated", cache.get("key2"));
+            assertEquals(6, slabs.getItemCount()); // 每个键一个键块一个值块
+
+            cache.put("key4", "value4", 60_000); // 淘汰 key1，两个块都交还给 slab
+            assertTrue(cache.delete("key2"));
+            assertEquals(4, slabs.getItemCount());
+            assertNull(cache.get("key1"));
+            cache.shutdown();
+
+            cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.FIFO, HashMapCache.TableType.OPEN_ADDRESSING, slabs);
+            assertEquals("value3", cache.get("key3")); // AOF 恢复写回 slab
+            assertEquals("value4", cache.get("key4"));
+        }
+    }
+
+    @Test
+    public void testOffHeapKeysLiveInTheSlab() throws Exception {
+        try (SlabAllocator slabs = new SlabAllocator()) {
+            cache = new HashMapCache(100, MultiEvictionCache.EvictionStrategy.FIFO, HashMapCache.TableType.CHAINED, slabs);
+            for (int i = 0; i < 50; i++) cache.put("{user}键" + i, "value" + i, 60_000);
+            cache.put("other", "value", 60_000);
+            assertEquals("value7", cache.get("{user}键7"));
+            assertNull(cache.get("{user}键50"));
+            assertTrue(cache.exists("other"));
+
+            // 快照和槽位索引从 slab 解码键
+            cache.enableSlotIndex();
+            int slot = ClusterState.keySlot("{user}");
+            assertEquals(50, cache.countKeysInSlot(slot));
+            List<String> keys = new ArrayList<>();
+            cache.forEachKeyInSlot(slot, 10, (key, value, expiry) -> keys.add(key));
+            assertEquals(10, keys.size());
+            assertTrue(keys.get(0), keys.get(0).startsWith("{user}键"));
+            assertTrue(cache.bgsave());
+            cache.awaitSave();
+            cache.shutdown();
+            aofFile.delete(); // 只从快照恢复
+
+            cache = new HashMapCache(100, MultiEvictionCache.EvictionStrategy.FIFO, HashMapCache.TableType.CHAINED, slabs);
+            assertEquals(51, cache.size());
+            assertEquals("value49", cache.get("{user}键49"));
+            try {
+                cache.setExpirePolicy(ExpiryCache.ExpirePolicy.TIMING_WHEEL); // 时间轮会把键留在堆上
+                fail("Should throw IllegalStateException");
+            } catch (IllegalStateException e) {
+                // 预期异常
+            }
+        } finally {
+            new File("dump.rdb").delete();
+        }
+    }
+
+    @Test
+    public void testOffHeapLfuEviction() throws Exception {
+        try (SlabAllocator slabs = new SlabAllocator()) {
+            cache = new HashMapCache(2, MultiEvictionCache.EvictionStrategy.LFU, HashMapCache.TableType.CHAINED, slabs);
+            cache.put("hot", "value1", 60_000);
+            cache.put("cold", "value2", 60_000);
+            for (int i = 0; i < 5; i++) cache.get("hot");
+            cache.put("new", "12345678901234", 60_000); // 淘汰访问最少的 cold
+            assertNull(cache.get("cold"));
+            assertEquals("value1", cache.get("hot"));
+            assertEquals("12345678901234", cache.get("new"));
+            assertEquals(ValueEncoding.RAW, cache.encoding("new")); // 堆外模式不做 int 编码
+            assertEquals(4, slabs.getItemCount());
+        }
+    }
+
+    @Test
+    public void testMaxmemoryCountsBytesNotEntries() {
+        cache = new HashMapCache(100_000, MultiEvictionCache.EvictionStrategy.FIFO);
+        cache.setMaxmemory(6L << 20);
+        for (int i = 0; i < 10_000; i++) cache.put("counter" + i, String.valueOf(i), 60_000);
+        assertEquals(10_000, cache.size());
+        long counters = cache.getUsedMemory();
+
+        char[] chars = new char[5 << 20];
+        Arrays.fill(chars, 'x');
+        cache.put("blob", new String(chars), 60_000); // 一个 5 MB 的值挤掉大部分计数器
+        assertTrue(cache.getUsedMemory() <= cache.getMaxmemory());
+        assertTrue(cache.size() < 10_000);
+        assertEquals(counters + (5L << 20), cache.getUsedMemory() + cache.getEvictedBytes(), 1024);
+        assertNull(cache.get("counter0"));
+        assertEquals(String.valueOf(9_999), cache.get("counter9999"));
+        assertTrue(cache.getPeakMemory() >= cache.getUsedMemory());
+
+        assertTrue(cache.delete("blob"));
+        assertTrue(cache.getUsedMemory() < 1 << 20);
+    }
+
+    @Test
+    public void testBatchEvictingItsOwnKeysReplaysTheSame() {
+        cache = new HashMapCache(100, MultiEvictionCache.EvictionStrategy.FIFO);
+        cache.put("old", "value", 60_000);
+        cache.setMaxmemory(3 * cache.getUsedMemory());
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) entries.put("key" + i, "value");
+        entries.put("old", "value"); // 先被淘汰又写回
+        cache.putAll(entries, 60_000); // 后写入的键淘汰同一批中先写入的键
+        List<String> keys = Arrays.asList("old", "key0", "key1", "key2", "key3", "key4");
+        List<String> before = cache.getAll(keys);
+        assertEquals(3, cache.size());
+        cache.shutdown();
+
+        cache = new HashMapCache(100, MultiEvictionCache.EvictionStrategy.FIFO);
+        assertEquals(before, cache.getAll(keys));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testAdaptiveSamplingSkipsKeysWithoutTtl() throws InterruptedException {
+        cache = new HashMapCache(10_000, MultiEvictionCache.EvictionStrategy.FIFO);
+        cache.setExpirePolicy(ExpiryCache.ExpirePolicy.ADAPTIVE_SAMPLING);
+        cache.stopExpireScheduler(); // 由测试驱动周期
+        ActiveExpireCycle cycle = cache.getActiveExpireCycle();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("persistent" + i, "value");
+            cache.put("ttl" + i, "value", 50);
+        }
+        cache.put("renewed", "value", 50);
+        cache.put("renewed", "value"); // 改写为永不过期
+        Thread.sleep(100);
+        for (int i = 0; i < 100; i++) cache.activeExpireTick();
+        assertTrue(cycle.getExpiredKeys() > 0);
+        assertEquals(2001 - cycle.getExpiredKeys(), cache.size());
+
+        for (int i = 0; i < 1000; i++) assertNull(cache.get("ttl" + i)); // 惰性删除剩下的过期键
+        assertEquals(1001, cache.size());
+        long sampled = cycle.getSampledKeys();
+        for (int i = 0; i < 100; i++) cache.activeExpireTick();
+        assertEquals(sampled, cycle.getSampledKeys()); // 只剩永不过期的键，不再抽样
+        assertEquals("value", cache.get("renewed"));
+        assertEquals("value", cache.get("persistent0"));
+    }
+
+    @Test
+    public void testValueEncodings() {
+        cache = new HashMapCache(100, MultiEvictionCache.EvictionStrategy.FIFO);
+        String[][] cases = {
+                {"shared", "42", ValueEncoding.INT},
+                {"int", "-1234567890123", ValueEncoding.INT},
+                {"notInt", "007", ValueEncoding.EMBSTR},
+                {"short", "值 value", ValueEncoding.EMBSTR},
+                {"raw", "x".repeat(45), ValueEncoding.RAW},
+        };
+        for (String[] c : cases) cache.put(c[0], c[1], 60_000);
+        for (String[] c : cases) {
+            assertEquals(c[1], cache.get(c[0]));
+            assertEquals(c[0], c[2], cache.encoding(c[0]));
+        }
+        assertSame(cache.get("shared"), cache.get("shared")); // 共享对象，读取不分配
+
+        cache.put("shared", "not a number", 60_000); // 改写时重新选择编码
+        assertEquals(ValueEncoding.EMBSTR, cache.encoding("shared"));
+        cache.put("raw", "12", 60_000);
+        assertEquals(ValueEncoding.INT, cache.encoding("raw"));
+        assertNull(cache.encoding("missing"));
+        cache.shutdown();
+
+        cache = new HashMapCache(100, MultiEvictionCache.EvictionStrategy.FIFO);
+        assertEquals("not a number", cache.get("shared"));
+        assertEquals("-1234567890123", cache.get("int"));
+        assertEquals("12", cache.get("raw"));
+        assertEquals(ValueEncoding.INT, cache.encoding("int"));
+    }
+
+    @Test
+    public void testSwitchingIntEncodingKeepsEvictionState() {
+        cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.FIFO);
+        cache.put("a", "1234567890123", 60_000);
+        cache.put("b", "value", 60_000);
+        cache.put("c", "value", 60_000);
+        cache.put("a", "text", 60_000); // int 节点换成普通节点，仍在最早插入的位置
+        cache.put("b", "-9876543210", 60_000); // 普通节点换成 int 节点
+        assertEquals(ValueEncoding.EMBSTR, cache.encoding("a"));
+        assertEquals(ValueEncoding.INT, cache.encoding("b"));
+        cache.put("d", "value", 60_000);
+        assertNull(cache.get("a"));
+        assertEquals("-9876543210", cache.get("b"));
+
+        cache.shutdown();
+        aofFile.delete();
+        cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.LFU);
+        cache.put("hot", "1234567890123", 60_000);
+        for (int i = 0; i < 5; i++) cache.get("hot");
+        cache.put("hot", "text", 60_000); // 替换后的节点接着原来的频率
+        cache.put("cold", "value", 60_000);
+        cache.put("warm", "value", 60_000);
+        cache.get("warm");
+        cache.put("new", "value", 60_000);
+        assertNull(cache.get("cold"));
+        assertEquals("text", cache.get("hot"));
+        assertEquals("value", cache.get("warm"));
+    }
+
+    @Test
+    public void testEncodedValuesAreAccountedSmaller() {
+        // 对照组 MultiEvictionCache 的节点与索引相同，只是值一律按 String 计算占用
+        String[] names = {"shared int", "int", "embstr", "raw"};
+        for (int kind = 0; kind < names.length; kind++) {
+            MultiEvictionCache plain = new MultiEvictionCache(1000, MultiEvictionCache.EvictionStrategy.FIFO);
+            long plainBytes = usedMemory(plain, kind);
+            plain.shutdown();
+            aofFile.delete();
+            cache = new HashMapCache(1000, MultiEvictionCache.EvictionStrategy.FIFO);
+            long encodedBytes = usedMemory(cache, kind);
+            assertEquals(value(kind, 123), cache.get("key:123"));
+            cache.shutdown();
+            cache = null;
+            aofFile.delete();
+            if (kind == 3) {
+                assertEquals(names[kind], plainBytes, encodedBytes); // raw 与 String 相同
+            } else {
+                assertTrue(names[kind], encodedBytes < plainBytes);
+            }
+        }
+    }
+
+    private static long usedMemory(MultiEvictionCache target, int kind) {
+        for (int i = 0; i < 1000; i++) target.put("key:" + i, value(kind, i), 60_000);
+        return target.getUsedMemory();
+    }
+
+    private static String value(int kind, int i) {
+        switch (kind) {
+            case 0:
+                return String.valueOf(i % ValueEncoding.SHARED_INTEGERS);
+            case 1:
+                return String.valueOf(1_000_000_000_000L + i);
+            case 2:
+                return "session:" + i;
+            default:
+                return "x".repeat(100) + i;
+        }
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testInvalidInput() {
         cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.LFU);
@@ -1,4 +1,5 @@
 package com;
+import com.redis.cache.EvictionPool;
 import com.redis.cache.LruCache;
 import org.junit.After;
 import org.junit.Before;
@@ -8,6 +9,14 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 public class LruCacheTest {
     private LruCache cache;
@@ -59,4 +68,127 @@ public class LruCacheTest {
         cache = new LruCache(3);
         assertEquals("value1", cache.get("key1"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRecoveryReplaysEvictions() {
+        cache.put("key1", "value1", 5000);
+        cache.put("key2", "value2", 5000);
+        cache.put("key3", "value3", 5000);
+        cache.get("key1");
+        cache.put("key4", "value4", 5000); // 淘汰 key2，AOF 中记为删除
+        cache.shutdown();
+
+        cache = new LruCache(3);
+        assertEquals(5, cache.getRecoveredRecords()); // 4 次写入 + 1 次淘汰，只读一遍
+        assertEquals(3, cache.size());
+        assertNull(cache.get("key2"));
+        assertEquals("value1", cache.get("key1"));
+        assertEquals("value3", cache.get("key3"));
+        assertEquals("value4", cache.get("key4"));
+    }
+
+    @Test
+    public void testPutAllEvictsOnceForTheWholeBatch() {
+        cache.put("key1", "value1", 5000);
+        cache.put("key2", "value2", 5000);
+        cache.put("key3", "value3", 5000);
+        cache.get("key1");
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("key4", "value4");
+        entries.put("key5", "value5");
+        cache.putAll(entries, 5000); // 淘汰 key2、key3，AOF 中记为一条批量删除
+        assertEquals(Arrays.asList("value1", null, null, "value4", "value5"),
+                cache.getAll(Arrays.asList("key1", "key2", "key3", "key4", "key5")));
+        cache.shutdown();
+
+        cache = new LruCache(3);
+        assertEquals(7, cache.getRecoveredRecords());
+        assertEquals(3, cache.size());
+        assertNull(cache.get("key2"));
+        assertEquals("value1", cache.get("key1"));
+        assertEquals("value5", cache.get("key5"));
+    }
+
+    @Test
+    public void testApproximateLruHitRatio() {
+        int keys = 5000, capacity = 500, accesses = 30_000;
+        int[] trace = zipfTrace(keys, accesses, 0.99, new Random(7));
+
+        LruCache exact = new LruCache(capacity);
+        double exactRatio = hitRatio(exact, trace);
+        exact.shutdown();
+        aofFile.delete(); // 不从上一个缓存的 AOF 预热
+
+        LruCache approximate = new LruCache(capacity, true);
+        approximate.setLruClockResolution(1); // 测试跑得快，用毫秒时钟区分访问先后
+        approximate.setMaxmemorySamples(10);
+        double approximateRatio = hitRatio(approximate, trace);
+        approximate.shutdown();
+
+        assertEquals(capacity, approximate.size());
+        assertTrue(approximateRatio > exactRatio - 0.05);
+    }
+
+    @Test
+    public void testEvictionPoolDropsDeadEntriesBeforeComparing() {
+        Set<String> live = new HashSet<>();
+        EvictionPool<String> pool = new EvictionPool<>(4, live::contains);
+        for (int i = 0; i < 4; i++) pool.offer("dead" + i, 1000 + i); // 池已满，分数都比新采样高
+        live.add("fresh");
+        pool.offer("fresh", 1);
+        assertEquals("fresh", pool.pollBest());
+        assertNull(pool.pollBest());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testSampledEvictionAfterDeletes() throws InterruptedException {
+        cache.shutdown();
+        cache = new LruCache(20, true);
+        cache.setLruClockResolution(1);
+        cache.setMaxmemorySamples(20);
+        List<String> keys = new ArrayList<>();
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 40; i++) {
+                String key = "round" + round + ":" + i;
+                cache.put(key, "value", 60_000);
+                keys.add(key);
+                assertTrue(cache.size() <= 20);
+            }
+            Thread.sleep(5); // 让已有键的空闲时间高于下一轮的新键
+            // 淘汰之间删除池里可能还留着的键，下一轮淘汰不能只处理这些失效候选
+            cache.deleteAll(keys);
+            keys.clear();
+            assertEquals(0, cache.size());
+        }
+        for (int i = 0; i < 40; i++) cache.put("last" + i, "value", 60_000);
+        assertEquals(20, cache.size());
+    }
+
+    private static double hitRatio(LruCache lru, int[] trace) {
+        int hits = 0;
+        for (int key : trace) {
+            if (lru.get("key" + key) != null) {
+                hits++;
+            } else {
+                lru.put("key" + key, "value" + key, 60_000);
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    private static int[] zipfTrace(int keys, int length, double skew, Random random) {
+        double[] cdf = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[i] = index >= 0 ? index : -index - 1;
+        }
+        return trace;
+    }
+}
@@ -1,5 +1,7 @@
 package com;
 
+import com.redis.cache.LfuCounter;
+import com.redis.cache.LfuList;
 import com.redis.cache.MultiEvictionCache;
 import org.junit.After;
 import org.junit.Before;
@@ -35,6 +37,58 @@ public class MultiEvictionCacheTest {
         assertEquals("value1", cache.get("key1"));
     }
 
+    @Test
+    public void testMaxmemoryEviction() {
+        cache = new MultiEvictionCache(1000, MultiEvictionCache.EvictionStrategy.FIFO);
+        cache.put("key1", "value1", 5000);
+        long entry = cache.getUsedMemory(); // 每个键值估算大小相同
+        assertTrue(entry > "key1value1".length());
+        cache.setMaxmemory(3 * entry);
+        cache.put("key2", "value2", 5000);
+        cache.put("key3", "value3", 5000);
+        cache.put("key4", "value4", 5000); // 条数远未到容量，按字节淘汰最早的 key1
+        assertNull(cache.get("key1"));
+        assertEquals(3, cache.size());
+        assertEquals(3 * entry, cache.getUsedMemory());
+        assertEquals(3 * entry, cache.getPeakMemory());
+        assertEquals(entry, cache.getEvictedBytes());
+
+        char[] chars = new char[5000];
+        assertThrows(IllegalArgumentException.class, () -> cache.put("big", new String(chars), 5000));
+        assertEquals(3, cache.size()); // 放不下的值不会清空缓存
+
+        cache.setMaxmemory(2 * entry); // 调低后立即淘汰
+        assertEquals(2, cache.size());
+        assertNull(cache.get("key2"));
+        assertEquals(2 * entry, cache.getUsedMemory());
+    }
+
+    @Test
+    public void testLfuListBuckets() {
+        LfuList lfu = new LfuList();
+        LfuList.Entry[] entries = new LfuList.Entry[5];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new LfuList.Entry();
+            lfu.add(entries[i]);
+        }
+        assertSame(entries[0], lfu.evictionCandidate()); // 频率相同时淘汰最早进入的
+        lfu.increment(entries[0]);
+        lfu.increment(entries[0]);
+        lfu.increment(entries[1]);
+        assertEquals(3, entries[0].frequency());
+        assertSame(entries[2], lfu.evictionCandidate());
+
+        lfu.remove(entries[2]);
+        lfu.remove(entries[3]);
+        lfu.remove(entries[4]);
+        assertEquals(0, entries[4].frequency());
+        assertSame(entries[1], lfu.evictionCandidate()); // 空桶摘除后最小频率为 2
+        lfu.add(entries[4], 3); // 快照加载时按保存的频率放回
+        lfu.remove(entries[1]);
+        assertSame(entries[0], lfu.evictionCandidate()); // 频率 3 的桶里 entries[0] 先进入
+        assertEquals(2, lfu.size());
+    }
+
     @Test
     public void testClockEviction() {
         cache = new MultiEvictionCache(3, MultiEvictionCache.EvictionStrategy.CLOCK);
@@ -57,6 +111,46 @@ public class MultiEvictionCacheTest {
         assertEquals("value4", cache.get("key4"));
     }
 
+    @Test
+    public void testApproxLfuEviction() {
+        cache = new MultiEvictionCache(3, MultiEvictionCache.EvictionStrategy.APPROX_LFU);
+        cache.setMaxmemorySamples(20);
+        cache.put("key1", "value1", 5000);
+        cache.put("key2", "value2", 5000);
+        cache.put("key3", "value3", 5000);
+        for (int i = 0; i < 10; i++) cache.get("key1"); // key1 计数至少加一
+        cache.put("key4", "value4", 5000); // 采样淘汰 key2 或 key3
+        assertEquals(3, cache.size());
+        assertEquals("value1", cache.get("key1"));
+        assertEquals("value4", cache.get("key4"));
+    }
+
+    @Test
+    public void testLfuCounterLogAndDecay() {
+        LfuCounter counter = new LfuCounter();
+        int now = LfuCounter.nowMinutes();
+        int lfu = counter.init();
+        assertEquals(LfuCounter.INIT_VALUE, counter.decayedCounter(lfu, now));
+
+        // 对数增长：十万次访问后 8 位计数仍未饱和
+        for (int i = 0; i < 100_000; i++) lfu = counter.access(lfu, now);
+        int hot = counter.decayedCounter(lfu, now);
+        assertTrue("counter=" + hot, hot > 100 && hot < 255);
+
+        // 每过 lfu-decay-time 分钟减一，热点会随时间冷却
+        assertEquals(hot - 10, counter.decayedCounter(lfu, now + 10));
+        counter.setDecayTime(5);
+        assertEquals(hot - 2, counter.decayedCounter(lfu, now + 10));
+        counter.setDecayTime(0);
+        assertEquals(hot, counter.decayedCounter(lfu, now + 1000));
+
+        // log-factor 为 0 时每次访问都加一
+        counter.setLogFactor(0);
+        lfu = counter.init();
+        for (int i = 0; i < 10; i++) lfu = counter.access(lfu, now);
+        assertEquals(LfuCounter.INIT_VALUE + 10, counter.decayedCounter(lfu, now));
+    }
+
     @Test
     public void testTtlAndAof() throws InterruptedException {
         cache = new MultiEvictionCache(3, MultiEvictionCache.EvictionStrategy.LFU);
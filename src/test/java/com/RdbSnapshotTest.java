@@ -0,0 +1,167 @@
+package com;
+
+import com.redis.cache.HashMapCache;
+import com.redis.cache.LruCache;
+import com.redis.cache.MultiEvictionCache;
+import com.redis.cache.RdbSnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RdbSnapshotTest {
+    private File aofFile = new File("appendonly.aof");
+    private File rdbFile = new File("dump.rdb");
+
+    @Before
+    public void setUp() {
+        if (aofFile.exists()) aofFile.delete();
+        if (rdbFile.exists()) rdbFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        if (aofFile.exists()) aofFile.delete();
+        if (rdbFile.exists()) rdbFile.delete();
+    }
+
+    @Test
+    public void testSnapshotRestoresKeysAndLfuFrequency() {
+        HashMapCache cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.LFU);
+        cache.put("key1", "value1", 60_000);
+        cache.put("key2", "value2", 60_000);
+        cache.put("key3", "value3", 60_000);
+        for (int i = 0; i < 5; i++) cache.get("key1");
+        cache.get("key3");
+        assertTrue(cache.bgsave());
+        cache.awaitSave();
+        assertEquals(1, cache.getSaveCount());
+        assertEquals(0, cache.getChangesSinceSave());
+        cache.shutdown();
+        aofFile.delete(); // 只剩快照，从快照恢复
+
+        cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.LFU);
+        assertEquals(3, cache.size());
+        cache.put("key4", "value4", 60_000); // 频率随快照恢复，淘汰最低频的 key2
+        assertNull(cache.get("key2"));
+        assertEquals("value1", cache.get("key1"));
+        assertEquals("value3", cache.get("key3"));
+        cache.shutdown();
+
+        // 从快照恢复后立即重写 AOF，之后可以只靠 AOF 重启
+        rdbFile.delete();
+        cache = new HashMapCache(3, MultiEvictionCache.EvictionStrategy.LFU);
+        assertEquals("value4", cache.get("key4"));
+        cache.shutdown();
+    }
+
+    @Test
+    public void testSnapshotIsPointInTime() throws Exception {
+        int keys = 200_000;
+        LruCache cache = new LruCache(keys * 2);
+        for (int i = 0; i < keys; i++) {
+            cache.put("key" + i, "old", 60_000);
+        }
+        assertTrue(cache.bgsave());
+        assertFalse(cache.bgsave()); // 同时只能有一个快照
+        // 快照进行中继续写：覆盖已有键、新增键，快照里都不应出现
+        for (int i = 0; i < keys; i++) {
+            cache.put("key" + i, "new", 60_000);
+            cache.put("extra" + i, "new", 60_000);
+        }
+        cache.awaitSave();
+        cache.shutdown();
+
+        Map<String, String> snapshot = new HashMap<>();
+        RdbSnapshot.load(rdbFile, (key, value, expiry, meta) -> snapshot.put(key, value));
+        assertEquals(keys, snapshot.size());
+        for (String value : snapshot.values()) {
+            assertEquals("old", value);
+        }
+    }
+
+    @Test
+    public void testSnapshotIsPointInTimeUnderDeletesAndMoves() throws Exception {
+        int keys = 200_000;
+        LruCache lru = new LruCache(keys * 2);
+        for (int i = 0; i < keys; i++) {
+            lru.put("key" + i, "old", 60_000);
+        }
+        assertTrue(lru.bgsave()); // 开始快照不遍历键空间，游标随后台线程推进
+        // 读把节点移到链表头部（游标前方），删除把未读到的节点留给快照，新键带着本纪元被跳过
+        List<String> deleted = new ArrayList<>();
+        for (int i = keys - 1; i >= 0; i--) {
+            if (i % 3 == 0) lru.get("key" + i);
+            if (i % 3 == 1) deleted.add("key" + i);
+            lru.put("extra" + i, "new", 60_000);
+        }
+        lru.deleteAll(deleted);
+        lru.awaitSave();
+        lru.shutdown();
+        assertPointInTime(keys, "old");
+
+        rdbFile.delete();
+        aofFile.delete();
+        HashMapCache lfu = new HashMapCache(keys * 2, MultiEvictionCache.EvictionStrategy.LFU);
+        for (int i = 0; i < keys; i++) {
+            lfu.put("key" + i, "1234567890123", 60_000); // int 编码，改写为字符串时节点被原位替换
+        }
+        assertTrue(lfu.bgsave());
+        lfu.deleteAll(deleted);
+        for (int i = 0; i < keys; i += 2) {
+            lfu.put("key" + i, "new", 60_000);
+        }
+        lfu.awaitSave();
+        lfu.shutdown();
+        assertPointInTime(keys, "1234567890123");
+    }
+
+    private void assertPointInTime(int keys, String expected) throws Exception {
+        Map<String, String> snapshot = new HashMap<>();
+        RdbSnapshot.load(rdbFile, (key, value, expiry, meta) -> assertNull(key, snapshot.put(key, value)));
+        assertEquals(keys, snapshot.size());
+        for (int i = 0; i < keys; i++) {
+            assertEquals(expected, snapshot.get("key" + i));
+        }
+    }
+
+    @Test
+    public void testSaveRuleTriggersBackgroundSave() throws Exception {
+        LruCache cache = new LruCache(1000);
+        cache.addSaveRule(1, 100);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i, 60_000);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getSaveCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, cache.getSaveCount());
+        cache.shutdown();
+        assertTrue(rdbFile.exists());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCorruptedSnapshotIsRejected() throws Exception {
+        LruCache cache = new LruCache(100);
+        for (int i = 0; i < 50; i++) {
+            cache.put("key" + i, "value" + i, 60_000);
+        }
+        cache.bgsave();
+        cache.shutdown();
+        try (RandomAccessFile file = new RandomAccessFile(rdbFile, "rw")) {
+            file.seek(rdbFile.length() / 2);
+            int b = file.read();
+            file.seek(rdbFile.length() / 2);
+            file.write(b ^ 0xFF);
+        }
+        RdbSnapshot.load(rdbFile, (key, value, expiry, meta) -> { });
+    }
+}
@@ -0,0 +1,171 @@
+package com;
+
+import com.redis.cache.HashMapCache;
+import com.redis.cache.MultiEvictionCache;
+import com.redis.cache.ReplicaLink;
+import com.redis.cache.RespServer;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static com.RespNodes.call;
+import static com.RespNodes.connect;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ReplicationTest {
+    private final RespNodes nodes = new RespNodes("replication-node-", false);
+
+    @After
+    public void tearDown() {
+        nodes.close();
+    }
+
+    @Test
+    public void testFullSyncThenCommandStream() throws Exception {
+        RespServer primary = nodes.startNode();
+        HashMapCache primaryCache = nodes.caches.get(0);
+        for (int i = 0; i < 2000; i++) {
+            if (i % 2 == 0) primaryCache.put("key" + i, "value" + i, 60_000);
+            else primaryCache.put("key" + i, "value" + i);
+        }
+
+        // 两个副本先全量同步已有的键
+        RespServer replicaA = nodes.startNode(), replicaB = nodes.startNode();
+        replicaA.replicaOf("127.0.0.1", primary.getPort());
+        replicaB.replicaOf("127.0.0.1", primary.getPort());
+        awaitSync(primaryCache, replicaA.getReplicaLink());
+        awaitSync(primaryCache, replicaB.getReplicaLink());
+        assertEquals(2, primary.getConnectedReplicas());
+        assertEquals(2000, nodes.caches.get(1).size());
+
+        // 之后的写入、删除、批量操作和改期都经复制流到达
+        primaryCache.put("key0", "changed", 60_000);
+        primaryCache.put("short", "gone", 50);
+        assertTrue(primaryCache.delete("key1"));
+        Map<String, String> batch = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) batch.put("batch" + i, "b" + i);
+        primaryCache.putAll(batch, 60_000);
+        assertEquals(2, primaryCache.deleteAll(Arrays.asList("key2", "key3", "missing")));
+        assertTrue(primaryCache.expire("key5", 120_000));
+        awaitSync(primaryCache, replicaA.getReplicaLink());
+        awaitSync(primaryCache, replicaB.getReplicaLink());
+        Thread.sleep(60); // short 按绝对过期时间在副本上同样过期
+        for (int i = 1; i <= 2; i++) assertSameData(primaryCache, nodes.caches.get(i));
+        assertNull(nodes.caches.get(1).get("short"));
+        assertTrue(nodes.caches.get(1).ttl("key5") > 60_000);
+        assertEquals(1, replicaA.getReplicaLink().getFullSyncs());
+
+        // 副本只读，读请求照常服务
+        try (Socket socket = connect(replicaA)) {
+            assertEquals("changed", call(socket, "GET", "key0"));
+            assertEquals("READONLY You can't write against a read only replica.", call(socket, "SET", "key0", "x"));
+            assertEquals("READONLY You can't write against a read only replica.", call(socket, "DEL", "key0"));
+            assertEquals("OK", call(socket, "REPLICAOF", "NO", "ONE"));
+            assertEquals("OK", call(socket, "SET", "key0", "x")); // 停止复制后恢复可写
+        }
+        assertNull(replicaA.getReplicaLink());
+    }
+
+    @Test
+    public void testPartialResyncAfterDisconnect() throws Exception {
+        RespServer primary = nodes.startNode(), replica = nodes.startNode();
+        HashMapCache primaryCache = nodes.caches.get(0);
+        for (int i = 0; i < 500; i++) primaryCache.put("key" + i, "value" + i);
+        replica.replicaOf("127.0.0.1", primary.getPort());
+        ReplicaLink link = replica.getReplicaLink();
+        awaitSync(primaryCache, link);
+
+        // 持有主节点的锁，副本重连后的 PSYNC 要等这些写入都进入积压缓冲区
+        synchronized (primaryCache) {
+            link.disconnect();
+            for (int i = 0; i < 100; i++) primaryCache.put("key" + i, "updated" + i);
+            primaryCache.delete("key499");
+        }
+        awaitSync(primaryCache, link);
+        assertEquals(1, link.getFullSyncs());
+        assertEquals(1, link.getPartialSyncs()); // 只补发了断开期间的记录
+        assertSameData(primaryCache, nodes.caches.get(1));
+
+        // 副本把收到的记录写进自己的 AOF，重启后数据仍在
+        nodes.servers.remove(replica);
+        replica.close();
+        nodes.caches.get(1).shutdown();
+        HashMapCache reopened = new HashMapCache(100_000, MultiEvictionCache.EvictionStrategy.LFU,
+                HashMapCache.TableType.CHAINED, null, nodes.directories.get(1));
+        nodes.caches.set(1, reopened);
+        assertSameData(primaryCache, reopened);
+    }
+
+    @Test
+    public void testFullResyncWhenBacklogOverrun() throws Exception {
+        RespServer primary = nodes.startNode(), replica = nodes.startNode();
+        HashMapCache primaryCache = nodes.caches.get(0);
+        primaryCache.setReplicationBacklogSize(4096);
+        for (int i = 0; i < 500; i++) primaryCache.put("key" + i, "value" + i);
+        replica.replicaOf("127.0.0.1", primary.getPort());
+        ReplicaLink link = replica.getReplicaLink();
+        awaitSync(primaryCache, link);
+        String replicationId = link.getReplicationId();
+
+        // 断开期间的写入超过积压缓冲区，只能重新全量同步；全量同步时副本删掉主节点上已不存在的键
+        synchronized (primaryCache) {
+            link.disconnect();
+            for (int i = 0; i < 500; i++) primaryCache.put("key" + i, "updated" + i);
+            primaryCache.deleteAll(Arrays.asList("key0", "key1", "key2"));
+        }
+        awaitSync(primaryCache, link);
+        assertEquals(2, link.getFullSyncs());
+        assertEquals(0, link.getPartialSyncs());
+        assertEquals(replicationId, link.getReplicationId());
+        assertSameData(primaryCache, nodes.caches.get(1));
+        assertNull(nodes.caches.get(1).get("key0"));
+    }
+
+    @Test
+    public void testOversizedRecordLengthIsCorruption() throws Exception {
+        try (ServerSocket master = new ServerSocket(0)) {
+            master.setSoTimeout(10_000);
+            RespServer replica = nodes.startNode();
+            replica.replicaOf("127.0.0.1", master.getLocalPort());
+            try (Socket first = master.accept()) {
+                OutputStream out = first.getOutputStream();
+                out.write("+CONTINUE\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.write(ByteBuffer.allocate(8).putInt(1 << 30).putInt(0).array()); // 超过记录上限的长度字段
+                out.flush();
+                // 副本按损坏处理并重连，不按这个长度分配缓冲区、也不一直等它读满
+                try (Socket second = master.accept()) {
+                    assertTrue(second.isConnected());
+                }
+            }
+            assertEquals(-1, replica.getReplicaLink().getOffset());
+        }
+    }
+
+    // 等到副本完成同步并追上主节点的复制偏移量
+    private static void awaitSync(HashMapCache primary, ReplicaLink link) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (link.getFullSyncs() == 0 || link.getOffset() != primary.getReplicationOffset()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Replica did not catch up: " + link.getOffset() + " / " + primary.getReplicationOffset());
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static void assertSameData(HashMapCache expected, HashMapCache actual) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) keys.add("key" + i);
+        for (int i = 0; i < 100; i++) keys.add("batch" + i);
+        assertEquals(expected.getAll(keys), actual.getAll(keys));
+        assertEquals(expected.size(), actual.size());
+    }
+}
@@ -0,0 +1,103 @@
+package com;
+
+import com.redis.cache.HashMapCache;
+import com.redis.cache.MultiEvictionCache;
+import com.redis.cache.RespClient;
+import com.redis.cache.RespServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// 网络测试共用：按序号启动带独立数据目录的节点，close 时全部关闭并删除目录；以及一个只读一条回复的 RESP 客户端
+class RespNodes implements AutoCloseable {
+    final List<HashMapCache> caches = new ArrayList<>();
+    final List<RespServer> servers = new ArrayList<>();
+    final List<File> directories = new ArrayList<>();
+    private final String prefix;
+    private final boolean clusterEnabled;
+
+    RespNodes(String prefix, boolean clusterEnabled) {
+        this.prefix = prefix;
+        this.clusterEnabled = clusterEnabled;
+    }
+
+    RespServer startNode() throws IOException {
+        File directory = new File(prefix + servers.size());
+        directories.add(directory);
+        HashMapCache cache = new HashMapCache(100_000, MultiEvictionCache.EvictionStrategy.LFU,
+                HashMapCache.TableType.CHAINED, null, directory);
+        RespServer server = new RespServer(cache, 0);
+        server.setClusterEnabled(clusterEnabled);
+        server.start();
+        caches.add(cache);
+        servers.add(server);
+        return server;
+    }
+
+    @Override
+    public void close() {
+        for (RespServer server : servers) server.close();
+        for (HashMapCache cache : caches) cache.shutdown();
+        for (File directory : directories) deleteRecursively(directory);
+    }
+
+    static Socket connect(RespServer server) throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    static Object call(Socket socket, String... args) throws IOException {
+        return call(socket.getOutputStream(), socket.getInputStream(), args);
+    }
+
+    static Object call(OutputStream out, InputStream in, String... args) throws IOException {
+        out.write(RespClient.command(args));
+        out.flush();
+        return readReply(in);
+    }
+
+    // 简单字符串和错误返回 String，整数返回 Long，数组和 map 展开成 List
+    static Object readReply(InputStream in) throws IOException {
+        int type = in.read();
+        String line = RespClient.readLine(in);
+        switch (type) {
+            case '+':
+            case '-':
+                return line;
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) return null;
+                byte[] data = in.readNBytes(length + 2);
+                return new String(data, 0, length, StandardCharsets.UTF_8);
+            }
+            case '*':
+            case '%': {
+                int count = Integer.parseInt(line) * (type == '%' ? 2 : 1);
+                List<Object> items = new ArrayList<>();
+                for (int i = 0; i < count; i++) items.add(readReply(in));
+                return items;
+            }
+            case '_':
+                return null;
+            default:
+                throw new IOException("Unexpected reply type " + (char) type);
+        }
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
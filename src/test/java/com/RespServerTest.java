@@ -0,0 +1,220 @@
+package com;
+
+import com.redis.cache.HashMapCache;
+import com.redis.cache.MultiEvictionCache;
+import com.redis.cache.RespClient;
+import com.redis.cache.RespServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RespServerTest {
+    private File aofFile = new File("appendonly.aof");
+    private HashMapCache cache;
+    private RespServer server;
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+
+    @Before
+    public void setUp() throws Exception {
+        if (aofFile.exists()) aofFile.delete();
+        cache = new HashMapCache(1000, MultiEvictionCache.EvictionStrategy.LFU);
+        server = new RespServer(cache, 0);
+        server.start();
+        connect();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        socket.close();
+        server.close();
+        cache.shutdown();
+        if (aofFile.exists()) aofFile.delete();
+    }
+
+    @Test
+    public void testGetSetDelExpireTtl() throws Exception {
+        assertEquals("OK", call("SET", "key", "值 value"));
+        assertEquals("值 value", call("GET", "key"));
+        assertEquals(-1L, call("TTL", "key"));
+        assertEquals(1L, call("EXPIRE", "key", "100"));
+        assertEquals(100L, call("TTL", "key"));
+        assertEquals("OK", call("SET", "short", "v", "PX", "50"));
+        assertEquals(0L, call("EXPIRE", "missing", "10"));
+        assertEquals(2L, call("DEL", "key", "short", "missing"));
+        assertNull(call("GET", "key"));
+        assertEquals(-2L, call("TTL", "key"));
+
+        assertEquals("OK", call("set", "key", "v", "ex", "10")); // 命令和选项不区分大小写
+        assertEquals(10L, call("TTL", "key"));
+        assertEquals("v", cache.get("key")); // 与进程内访问同一份数据
+        assertEquals("ERR syntax error", call("SET", "key", "v", "EX"));
+        assertEquals("ERR invalid expire time in 'set' command", call("SET", "key", "v", "EX", "0"));
+        assertEquals("ERR value is not an integer or out of range", call("EXPIRE", "key", "ten"));
+        assertEquals("ERR wrong number of arguments for 'get' command", call("GET"));
+        assertEquals("ERR unknown command 'FLUSHALL'", call("FLUSHALL"));
+        assertEquals("ERR unknown command 'X  +OK  '", call("X\r\n+OK\r\n")); // 参数里的换行不能拆出伪造的回复
+        assertEquals("PONG", call("PING"));
+    }
+
+    @Test
+    public void testMgetMsetAndMultiKeyDel() throws Exception {
+        assertEquals("OK", call("MSET", "k1", "v1", "k2", "值", "k1", "v1'")); // 重复的键以最后一次为准
+        assertEquals(Arrays.asList("v1'", "值", null), call("MGET", "k1", "k2", "missing"));
+        assertEquals(-1L, call("TTL", "k1"));
+        assertEquals("ERR wrong number of arguments for 'mset' command", call("MSET", "k1", "v1", "k2"));
+        assertEquals("ERR wrong number of arguments for 'mget' command", call("MGET"));
+        assertEquals(2L, call("DEL", "k1", "k2", "k1"));
+        assertEquals(Arrays.asList(null, null), call("MGET", "k1", "k2"));
+    }
+
+    @Test
+    public void testObjectEncoding() throws Exception {
+        call("MSET", "n", "12345", "s", "short", "r", "x".repeat(45));
+        assertEquals(Arrays.asList("int", "embstr", "raw"),
+                Arrays.asList(call("OBJECT", "ENCODING", "n"), call("OBJECT", "ENCODING", "s"), call("OBJECT", "ENCODING", "r")));
+        assertEquals("12345", call("GET", "n"));
+        assertNull(call("OBJECT", "ENCODING", "missing"));
+        assertEquals("ERR unknown subcommand for 'object' command", call("OBJECT", "FREQ", "n"));
+    }
+
+    @Test
+    public void testPipelinedRequestsGetOneReplyEach() throws Exception {
+        int requests = 5000; // 远超一个读缓冲区，命令会被截断在缓冲区边界上
+        ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+        for (int i = 0; i < requests; i++) {
+            pipeline.writeBytes(RespClient.command("SET", "key" + i, "value" + i));
+            pipeline.writeBytes(RespClient.command("GET", "key" + i));
+        }
+        out.write(pipeline.toByteArray());
+        out.flush();
+        for (int i = 0; i < requests; i++) {
+            assertEquals("OK", readReply());
+            assertEquals("value" + i, readReply());
+        }
+        assertEquals(requests * 2L, server.getCommandCount());
+    }
+
+    @Test
+    public void testCommandSplitAcrossReads() throws Exception {
+        byte[] request = RespClient.command("SET", "split", "value");
+        for (byte b : request) {
+            out.write(b);
+            out.flush();
+            Thread.sleep(1); // 每个字节单独到达服务端
+        }
+        assertEquals("OK", readReply());
+        out.write("GET split\r\n".getBytes(StandardCharsets.UTF_8)); // 内联命令
+        out.flush();
+        assertEquals("value", readReply());
+    }
+
+    @Test
+    public void testValueLargerThanBuffers() throws Exception {
+        char[] chars = new char[200 * 1024];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        assertEquals("OK", call("SET", "big", value));
+        assertEquals(value, call("GET", "big"));
+    }
+
+    @Test
+    public void testHelloSwitchesToResp3() throws Exception {
+        List<?> hello = (List<?>) call("HELLO", "3");
+        assertEquals("proto", hello.get(4));
+        assertEquals(3L, hello.get(5));
+        out.write(RespClient.command("GET", "missing"));
+        out.flush();
+        assertEquals('_', in.read()); // RESP3 的 null
+        assertEquals('\r', in.read());
+        assertEquals('\n', in.read());
+        assertEquals("NOPROTO unsupported protocol version", call("HELLO", "4"));
+    }
+
+    @Test
+    public void testProtocolErrorClosesConnection() throws Exception {
+        out.write("*1\r\n+GET\r\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        assertEquals("ERR Protocol error: expected '$', got '+'", readReply());
+        assertEquals(-1, in.read());
+        connect(); // 其他连接不受影响
+        assertEquals("PONG", call("PING"));
+    }
+
+    @Test
+    public void testPipelinedClientsWithIoThreads() throws Exception {
+        RespServer threaded = new RespServer(cache, 0);
+        threaded.setIoThreads(4);
+        threaded.start();
+        try {
+            List<Throwable> failures = runClients(threaded.getPort(), 8, 50, 20);
+            assertTrue(failures.toString(), failures.isEmpty());
+            assertEquals(8 * 50 * 20 * 2L, threaded.getCommandCount());
+        } finally {
+            threaded.close();
+        }
+    }
+
+    // 每个客户端一个连接，每轮管道发送 pipeline 对 SET/GET 并校验回复顺序，返回出现的错误
+    private static List<Throwable> runClients(int port, int clients, int rounds, int pipeline) throws InterruptedException {
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            String prefix = "client" + c + ":";
+            Thread thread = new Thread(() -> {
+                try (Socket client = new Socket("127.0.0.1", port)) {
+                    client.setSoTimeout(10_000);
+                    OutputStream clientOut = new BufferedOutputStream(client.getOutputStream());
+                    InputStream clientIn = new BufferedInputStream(client.getInputStream());
+                    for (int round = 0; round < rounds; round++) {
+                        for (int i = 0; i < pipeline; i++) {
+                            clientOut.write(RespClient.command("SET", prefix + i, "value" + round));
+                            clientOut.write(RespClient.command("GET", prefix + i));
+                        }
+                        clientOut.flush();
+                        for (int i = 0; i < pipeline; i++) {
+                            assertEquals("OK", RespNodes.readReply(clientIn));
+                            assertEquals("value" + round, RespNodes.readReply(clientIn));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        return failures;
+    }
+
+    private void connect() throws IOException {
+        socket = RespNodes.connect(server);
+        out = socket.getOutputStream();
+        in = new BufferedInputStream(socket.getInputStream());
+    }
+
+    private Object call(String... args) throws IOException {
+        return RespNodes.call(out, in, args);
+    }
+
+    private Object readReply() throws IOException {
+        return RespNodes.readReply(in);
+    }
+}
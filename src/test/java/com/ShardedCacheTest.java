@@ -0,0 +1,189 @@
+package com;
+
+import com.redis.cache.MultiEvictionCache;
+import com.redis.cache.ShardedCache;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ShardedCacheTest {
+    private final File directory = new File("shards");
+    private ShardedCache cache;
+
+    @After
+    public void tearDown() {
+        if (cache != null) cache.shutdown();
+        RespNodes.deleteRecursively(directory);
+    }
+
+    @Test
+    public void testKeysRouteToOwningShard() {
+        cache = new ShardedCache(10_000, MultiEvictionCache.EvictionStrategy.LFU, 4, directory);
+        for (int i = 0; i < 1000; i++) cache.put("key" + i, "value" + i, 60_000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value" + i, cache.get("key" + i));
+            assertTrue(cache.shardOf("key" + i) >= 0 && cache.shardOf("key" + i) < 4);
+        }
+        assertEquals(1000, cache.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(cache.shardSize(i) > 150); // 哈希大致均匀
+            assertTrue(new File(directory, "shard-" + i + "/appendonly.aof").exists()); // 每个分片一份 AOF
+        }
+        assertTrue(cache.delete("key1"));
+        assertFalse(cache.delete("key1"));
+        assertNull(cache.get("key1"));
+        try {
+            cache.put("key", null, 1000);
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // 分片上的异常原样抛给调用方
+        }
+    }
+
+    @Test
+    public void testShardCapacitiesSumToCapacity() {
+        cache = new ShardedCache(10, MultiEvictionCache.EvictionStrategy.FIFO, 4, directory);
+        for (int i = 0; i < 1000; i++) cache.put("key" + i, "value", 60_000);
+        assertEquals(10, cache.size()); // 3 + 3 + 2 + 2
+        try {
+            new ShardedCache(2, MultiEvictionCache.EvictionStrategy.FIFO, 4, directory);
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // 预期异常
+        }
+    }
+
+    @Test
+    public void testBatchOperationsAcrossShards() {
+        cache = new ShardedCache(10_000, MultiEvictionCache.EvictionStrategy.FIFO, 8, directory);
+        Map<String, String> entries = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            entries.put("k" + i, "v" + i);
+            keys.add("k" + i);
+        }
+        cache.putAll(entries);
+        keys.add(50, "missing");
+        List<String> values = cache.getAll(keys);
+        assertEquals(101, values.size());
+        assertNull(values.get(50));
+        assertEquals("v0", values.get(0));
+        assertEquals("v99", values.get(100)); // 结果按请求顺序合并
+        assertEquals(100, cache.deleteAll(keys));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRecoveryFromPerShardAof() {
+        cache = new ShardedCache(10_000, MultiEvictionCache.EvictionStrategy.LFU, 4, directory);
+        for (int i = 0; i < 500; i++) cache.put("key" + i, "value" + i, 60_000);
+        cache.deleteAll(Arrays.asList("key0", "key1"));
+        cache.shutdown();
+
+        cache = new ShardedCache(10_000, MultiEvictionCache.EvictionStrategy.LFU, 4, directory);
+        assertEquals(498, cache.size());
+        assertNull(cache.get("key0"));
+        assertEquals("value499", cache.get("key499"));
+    }
+
+    @Test
+    public void testPipelinedAsyncClients() throws InterruptedException {
+        cache = new ShardedCache(100_000, MultiEvictionCache.EvictionStrategy.LFU, 4, directory);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        runClients(4, 2_000, 64, failure);
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertEquals(4 * 1000, cache.size()); // 每个客户端写 1000 个不同的键
+    }
+
+    @Test
+    public void testShardThreadDrivesActiveExpiry() throws InterruptedException {
+        cache = new ShardedCache(10_000, MultiEvictionCache.EvictionStrategy.FIFO, 4, directory);
+        for (int i = 0; i < 200; i++) cache.put("temp" + i, "v", 50);
+        cache.put("kept", "v", 60_000);
+        // 不访问过期的键，只靠分片线程的主动过期周期删除
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (cache.size() > 1 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertEquals(1, cache.size());
+        assertEquals("v", cache.get("kept"));
+    }
+
+    @Test
+    public void testSubmitRacingShutdownNeverHangs() throws Exception {
+        cache = new ShardedCache(10_000, MultiEvictionCache.EvictionStrategy.FIFO, 4, directory);
+        List<CompletableFuture<?>> submitted = new ArrayList<>();
+        Thread client = new Thread(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                try {
+                    CompletableFuture<?> request = cache.putAsync("key" + i, "v", 60_000);
+                    synchronized (submitted) {
+                        submitted.add(request);
+                    }
+                } catch (IllegalStateException e) {
+                    return; // 已经 shutdown
+                }
+            }
+        });
+        client.start();
+        Thread.sleep(5);
+        cache.shutdown();
+        client.join();
+        // 每个已提交的请求要么执行完，要么以 IllegalStateException 完成，不会一直挂起
+        synchronized (submitted) {
+            for (CompletableFuture<?> request : submitted) {
+                try {
+                    request.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+        }
+        try {
+            cache.getAsync("key0");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("Sharded cache is shut down", e.getMessage());
+        }
+        cache = null;
+    }
+
+    // 每个客户端一个线程，每轮异步提交 window 个 SET/GET 后等待全部完成
+    private void runClients(int clients, int opsPerClient, int window, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            String prefix = "client" + c + ":";
+            Thread thread = new Thread(() -> {
+                try {
+                    List<CompletableFuture<?>> pending = new ArrayList<>(window);
+                    for (int i = 0; i < opsPerClient; i += 2) {
+                        String key = prefix + (i % 2000);
+                        pending.add(cache.putAsync(key, "value" + i, 60_000));
+                        String expected = "value" + i;
+                        pending.add(cache.getAsync(key).thenAccept(value -> assertEquals(expected, value)));
+                        if (pending.size() >= window) {
+                            for (CompletableFuture<?> request : pending) request.join();
+                            pending.clear();
+                        }
+                    }
+                    for (CompletableFuture<?> request : pending) request.join();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+    }
+}
@@ -0,0 +1,103 @@
+package com;
+
+import com.redis.cache.SlabAllocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class SlabAllocatorTest {
+    private SlabAllocator slabs;
+
+    @Before
+    public void setUp() {
+        slabs = new SlabAllocator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        slabs.close();
+    }
+
+    @Test
+    public void testAllocateReadAndFree() {
+        long a = slabs.allocate(bytes("值 value"));
+        long b = slabs.allocate(new byte[0]);
+        assertEquals("值 value", slabs.readString(a));
+        assertEquals(0, slabs.length(b));
+        assertEquals(2, slabs.getItemCount());
+        assertEquals(SlabAllocator.PAGE_SIZE, slabs.getReservedBytes()); // 同一级别共用一页
+
+        slabs.free(a);
+        long c = slabs.allocate(bytes("other"));
+        assertEquals(a, c); // 同级别的空闲块被复用
+        assertEquals("other", slabs.readString(c));
+        assertEquals(0, slabs.length(b));
+    }
+
+    @Test
+    public void testReallocateInPlaceWithinSizeClass() {
+        long ref = slabs.allocate(bytes("small"));
+        assertEquals(ref, slabs.reallocate(ref, bytes("smaller"))); // 仍在 64 字节一级，原地覆盖
+        assertEquals("smaller", slabs.readString(ref));
+
+        byte[] big = new byte[1000];
+        Arrays.fill(big, (byte) 'x');
+        long moved = slabs.reallocate(ref, big);
+        assertNotEquals(ref, moved);
+        assertArrayEquals(big, slabs.read(moved));
+        assertEquals(1, slabs.getItemCount());
+        assertEquals(1004, slabs.getUsedBytes());
+    }
+
+    @Test
+    public void testLargeItemsAreReturnedOnFree() {
+        byte[] big = new byte[3 * SlabAllocator.PAGE_SIZE];
+        big[big.length - 1] = 7;
+        long ref = slabs.allocate(big);
+        assertArrayEquals(big, slabs.read(ref));
+        assertTrue(slabs.getReservedBytes() > 3L * SlabAllocator.PAGE_SIZE);
+        slabs.free(ref);
+        assertEquals(0, slabs.getReservedBytes());
+        assertEquals(0, slabs.getItemCount());
+    }
+
+    @Test
+    public void testFragmentationStats() {
+        long[] refs = new long[10_000];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = slabs.allocate(new byte[90]); // 94 字节落在 104 字节一级
+        }
+        assertEquals(10_000L * 94, slabs.getUsedBytes());
+        assertEquals(10_000L * 10, slabs.getInternalFragmentation());
+        double full = slabs.getFragmentationRatio();
+        assertTrue(full < 1.2);
+
+        for (int i = 0; i < refs.length; i += 2) slabs.free(refs[i]);
+        assertEquals(5_000L * 94, slabs.getUsedBytes());
+        assertTrue(slabs.getFragmentationRatio() > full); // 页仍保留，释放的块等待复用
+        long reserved = slabs.getReservedBytes();
+        for (int i = 0; i < refs.length; i += 2) refs[i] = slabs.allocate(new byte[90]);
+        assertEquals(reserved, slabs.getReservedBytes());
+    }
+
+    @Test
+    public void testMemoryMappedPages() throws Exception {
+        File file = File.createTempFile("slab", ".bin");
+        try (SlabAllocator mapped = new SlabAllocator(file)) {
+            long[] refs = new long[50_000];
+            for (int i = 0; i < refs.length; i++) refs[i] = mapped.allocate(bytes("value" + i));
+            for (int i = 0; i < refs.length; i++) assertEquals("value" + i, mapped.readString(refs[i]));
+            assertEquals(mapped.getReservedBytes(), file.length());
+        }
+        assertFalse(file.exists());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,75 @@
+package com;
+
+import com.redis.cache.TimingWheel;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TimingWheelTest {
+    @Test
+    public void testExpiresExactlyAtDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        long[] deadlines = {0, 5, 63, 64, 100, 4095, 4096, 5000, 262_144, 300_000, 1L << 26};
+        for (long deadline : deadlines) {
+            wheel.schedule("key" + deadline, deadline);
+        }
+        Map<String, Long> firedAt = new HashMap<>();
+        long[] now = new long[1];
+        for (now[0] = 0; now[0] < (1L << 26) + 7; now[0] += 7) {
+            wheel.advance(now[0], key -> firedAt.put(key, now[0]));
+        }
+        assertEquals(0, wheel.size());
+        for (long deadline : deadlines) {
+            long fired = firedAt.get("key" + deadline);
+            // 每 7 毫秒推进一次，到期键应在第一次越过其到期时间时触发
+            assertTrue("key" + deadline + " fired at " + fired, fired >= deadline && fired < deadline + 7);
+        }
+    }
+
+    @Test
+    public void testRescheduleAndCancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(1000);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule("a", 1100);
+        wheel.schedule("b", 1100);
+        wheel.schedule("c", 1100);
+        wheel.schedule("a", 1050); // 提前
+        wheel.schedule("b", 9000); // 推后
+        assertTrue(wheel.cancel("c"));
+        assertFalse(wheel.cancel("c"));
+        assertEquals(2, wheel.size());
+
+        wheel.advance(1050, fired::add);
+        assertEquals(List.of("a"), fired);
+        wheel.advance(5000, fired::add);
+        assertEquals(List.of("a"), fired);
+        wheel.advance(9000, fired::add);
+        assertEquals(List.of("a", "b"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testOnlyDueKeysAreVisited() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(0);
+        for (int i = 0; i < 200_000; i++) {
+            wheel.schedule(i, 3_600_000 + i); // 一小时后
+        }
+        for (int i = 0; i < 10; i++) {
+            wheel.schedule(-i - 1, 10 + i);
+        }
+        List<Integer> fired = new ArrayList<>();
+        int expired = wheel.advance(100, fired::add);
+        assertEquals(10, expired);
+        assertEquals(10, fired.size());
+        assertEquals(200_000, wheel.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullKey() {
+        new TimingWheel<String>().schedule(null, 0);
+    }
+}
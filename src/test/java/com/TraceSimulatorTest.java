@@ -0,0 +1,159 @@
+package com;
+
+import com.redis.cache.HashMapCache;
+import com.redis.cache.MultiEvictionCache;
+import com.redis.cache.TraceSimulator;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+public class TraceSimulatorTest {
+    private File directory;
+
+    @After
+    public void tearDown() {
+        if (directory == null) return;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testParseFormats() throws IOException {
+        TraceSimulator.Trace plain = read("# comment\na\nb\n\na\n", TraceSimulator.Format.PLAIN);
+        assertEquals(3, plain.length());
+        assertEquals(2, plain.distinctKeys());
+
+        // ARC：起始块 10 连续 3 块，再访问块 11
+        TraceSimulator.Trace arc = read("10 3 0 1\n11 1 0 2\n", TraceSimulator.Format.ARC);
+        assertEquals(4, arc.length());
+        assertEquals(3, arc.distinctKeys());
+
+        // SPC：1024 字节占 2 块，不足一块按一块算；不同 ASU 的相同 LBA 是不同的块
+        TraceSimulator.Trace spc = read("0,100,1024,r,0.1\n0,101,100,w,0.2\n1,100,512,r,0.3\n", TraceSimulator.Format.SPC);
+        assertEquals(4, spc.length());
+        assertEquals(3, spc.distinctKeys());
+
+        TraceSimulator.Trace twitter = read("0,key1,4,10,1,get,0\n1,key2,4,10,1,set,60\n2,key1,4,10,2,get,0\n",
+                TraceSimulator.Format.TWITTER);
+        assertEquals(3, twitter.length());
+        assertEquals(2, twitter.distinctKeys());
+
+        try {
+            read("10 x 0 1\n", TraceSimulator.Format.ARC);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("line 1"));
+        }
+    }
+
+    @Test
+    public void testLoadGzipFile() throws IOException {
+        directory = Files.createTempDirectory("trace-test-").toFile();
+        File file = new File(directory, "keys.trc.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write("1\n2\n3\n1\n".getBytes(StandardCharsets.UTF_8));
+        }
+        TraceSimulator.Trace trace = TraceSimulator.load(file, TraceSimulator.Format.PLAIN);
+        assertEquals(4, trace.length());
+        assertEquals(3, trace.distinctKeys());
+    }
+
+    @Test
+    public void testHitRatioCurve() throws IOException {
+        // 热点集中的序列：容量越大命中率越高，所有策略都装得下全部键时只有首次访问未命中
+        Random random = new Random(42);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(10) < 8 ? random.nextInt(50) : random.nextInt(1000);
+            lines.append("key").append(key).append('\n');
+        }
+        TraceSimulator.Trace trace = read(lines.toString(), TraceSimulator.Format.PLAIN);
+        int[] capacities = {10, 100, 500, trace.distinctKeys()};
+        List<TraceSimulator.Result> results = TraceSimulator.simulate(trace, TraceSimulator.Policy.values(), capacities);
+        assertEquals(TraceSimulator.Policy.values().length * capacities.length, results.size());
+        for (TraceSimulator.Policy policy : TraceSimulator.Policy.values()) {
+            double previous = -1;
+            for (TraceSimulator.Result result : results) {
+                if (result.policy != policy) continue;
+                assertEquals(trace.length(), result.hits + result.misses);
+                assertTrue(policy + " at " + result.capacity, result.hitRatio() >= previous);
+                previous = result.hitRatio();
+                if (result.capacity == trace.distinctKeys()) {
+                    assertEquals(policy.toString(), trace.distinctKeys(), result.misses);
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TraceSimulator.print(trace, results, new PrintStream(out, true, StandardCharsets.UTF_8));
+        String table = out.toString(StandardCharsets.UTF_8);
+        for (TraceSimulator.Policy policy : TraceSimulator.Policy.values()) assertTrue(table.contains(policy.toString()));
+    }
+
+    @Test
+    public void testLoopLargerThanCapacityDefeatsLruAndFifo() throws IOException {
+        // 循环扫描 100 个键、容量 50：LRU 和 FIFO 每次都淘汰下一个要访问的键
+        StringBuilder lines = new StringBuilder();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) lines.append(i).append('\n');
+        }
+        TraceSimulator.Trace trace = read(lines.toString(), TraceSimulator.Format.PLAIN);
+        assertEquals(0, TraceSimulator.replay(TraceSimulator.Policy.LRU, trace, 50).hits);
+        assertEquals(0, TraceSimulator.replay(TraceSimulator.Policy.FIFO, trace, 50).hits);
+        assertEquals(100, TraceSimulator.replay(TraceSimulator.Policy.LRU, trace, 100).misses);
+    }
+
+    @Test
+    public void testAppendOnlyOffSkipsAof() throws IOException {
+        directory = Files.createTempDirectory("trace-test-").toFile();
+        HashMapCache cache = new HashMapCache(10, MultiEvictionCache.EvictionStrategy.LFU,
+                HashMapCache.TableType.CHAINED, null, directory);
+        try {
+            cache.put("kept", "1");
+            cache.setAppendOnly(false);
+            assertFalse(cache.isAppendOnly());
+            cache.awaitSave(); // 关闭时的快照落盘后 AOF 截断为只剩文件头
+            long size = cache.getAofFileSize();
+            for (int i = 0; i < 100; i++) cache.put("key" + i, "v");
+            assertEquals(10, cache.size());
+            assertEquals(size, cache.getAofFileSize());
+
+            // 重新开启时重写一次，AOF 包含关闭期间的写入
+            cache.setAppendOnly(true);
+            cache.awaitRewrite();
+            cache.put("after", "2");
+        } finally {
+            cache.shutdown();
+        }
+        HashMapCache recovered = new HashMapCache(20, MultiEvictionCache.EvictionStrategy.LFU,
+                HashMapCache.TableType.CHAINED, null, directory);
+        try {
+            assertEquals(10, recovered.size()); // 关闭期间留下的 10 个键淘汰一个给 after
+            assertEquals("2", recovered.get("after"));
+            assertNull(recovered.get("kept"));
+        } finally {
+            recovered.shutdown();
+        }
+    }
+
+    private static TraceSimulator.Trace read(String text, TraceSimulator.Format format) throws IOException {
+        return TraceSimulator.read(new BufferedReader(new StringReader(text)), format);
+    }
+}
@@ -0,0 +1,41 @@
+package com;
+
+import com.redis.cache.ValueEncoding;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ValueEncodingTest {
+    @Test
+    public void testIntegerDetectionMatchesRedis() {
+        for (String value : new String[]{"0", "7", "-1", "10000", "9223372036854775807", "-9223372036854775808"}) {
+            assertTrue(value, ValueEncoding.isInteger(value));
+        }
+        // 转回字符串后与原值不同的都不能按整数存放
+        for (String value : new String[]{"", "-", "-0", "01", "+1", " 1", "1 ", "1.0", "1e3", "9223372036854775808",
+                "-9223372036854775809", "12345678901234567890", "１２"}) {
+            assertFalse(value, ValueEncoding.isInteger(value));
+        }
+    }
+
+    @Test
+    public void testSharedIntegersAreTheSameObject() {
+        assertSame(ValueEncoding.shared(42), ValueEncoding.shared(42));
+        assertEquals("9999", ValueEncoding.shared(9999));
+        assertNull(ValueEncoding.shared(ValueEncoding.SHARED_INTEGERS));
+        assertNull(ValueEncoding.shared(-1));
+    }
+
+    @Test
+    public void testEmbeddedLimitCountsUtf8Bytes() {
+        assertArrayEquals("short".getBytes(), ValueEncoding.embedded("short"));
+        assertNotNull(ValueEncoding.embedded("x".repeat(44)));
+        assertNull(ValueEncoding.embedded("x".repeat(45)));
+        assertNotNull(ValueEncoding.embedded("值".repeat(14))); // 42 字节
+        assertNull(ValueEncoding.embedded("值".repeat(15))); // 45 字节
+
+        assertEquals(0, ValueEncoding.heapSize("42")); // 共享整数
+        assertEquals(8, ValueEncoding.heapSize("123456789012")); // 节点里的 long 字段
+        assertEquals(24, ValueEncoding.heapSize("short")); // 数组头 16 + 5 字节，按 8 对齐
+        assertEquals(24 + 64, ValueEncoding.heapSize("x".repeat(45))); // String 对象 + 数组
+    }
+}